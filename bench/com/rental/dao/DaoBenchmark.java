@@ -0,0 +1,88 @@
+// com/rental/dao/DaoBenchmark.java
+package com.rental.dao;
+
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.util.DBUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VehicleDAOImpl / UserDAOImpl round trips against an in-memory H2 database
+ * (PostgreSQL mode, same schema as supabase_setup.sql) through the DBUtil pool.
+ * Absolute numbers are lower than against Supabase; use them to compare commits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+
+    @Param({"100", "10000"})
+    public int vehicles;
+
+    private VehicleDAO vehicleDAO;
+    private UserDAO userDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        // DBUtil reads these once, so set them before its first use in this fork
+        System.setProperty("DB_URL", "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASSWORD", "");
+
+        try (Connection conn = DBUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            st.execute("CREATE TABLE users (id SERIAL PRIMARY KEY, name VARCHAR(100), email VARCHAR(100) UNIQUE, "
+                    + "password VARCHAR(255), role VARCHAR(20))");
+            st.execute("CREATE TABLE vehicles (id SERIAL PRIMARY KEY, type VARCHAR(10), brand VARCHAR(50), "
+                    + "model VARCHAR(50), reg_number VARCHAR(20) UNIQUE, price_per_day DECIMAL(10,2), "
+                    + "available BOOLEAN DEFAULT TRUE)");
+            st.execute("CREATE INDEX idx_vehicles_type ON vehicles(type, available)");
+            st.execute("INSERT INTO users (name, email, password, role) "
+                    + "VALUES ('Bench', 'bench@rental.com', 'bench', 'CUSTOMER')");
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO vehicles "
+                    + "(type, brand, model, reg_number, price_per_day, available) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= vehicles; i++) {
+                    ps.setString(1, i % 2 == 0 ? "CAR" : "BIKE");
+                    ps.setString(2, "Brand" + (i % 50));
+                    ps.setString(3, "Model" + (i % 400));
+                    ps.setString(4, "KA-" + i);
+                    ps.setDouble(5, 500 + (i % 3000));
+                    ps.setBoolean(6, i % 10 != 0);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        // The raw implementations, not the caching wrapper from DAOFactory
+        vehicleDAO = new VehicleDAOImpl();
+        userDAO = new UserDAOImpl();
+    }
+
+    @Benchmark
+    public List<Vehicle> listAvailableCars() {
+        return vehicleDAO.getAvailableVehiclesByType("CAR");
+    }
+
+    @Benchmark
+    public Vehicle vehicleById() {
+        return vehicleDAO.getVehicleById(ThreadLocalRandom.current().nextInt(1, vehicles + 1));
+    }
+
+    @Benchmark
+    public User login() {
+        return userDAO.login("bench@rental.com", "bench");
+    }
+}
@@ -0,0 +1,65 @@
+// com/rental/server/CommandParseBenchmark.java
+package com.rental.server;
+
+import com.rental.protocol.BinaryCodec;
+import com.rental.protocol.ProtocolIO;
+import com.rental.protocol.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one request into fields and dispatching it, in both wire formats
+ * Uses commands that never reach the database so only parsing and
+ * ClientHandler.handleCommand are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParseBenchmark {
+
+    @Param({"LOGOUT", "#17|LIST_VEHICLES|CAR", "BOOK|42|2025-01-01|2025-01-05", "HELLO|TEXT|1"})
+    public String line;
+
+    private byte[] textBytes;
+    private byte[] binaryPayload;
+    private ClientHandler handler;
+
+    @Setup
+    public void setUp() {
+        textBytes = line.getBytes(StandardCharsets.UTF_8);
+        binaryPayload = BinaryCodec.encodeRequest(line.split("\\|"));
+        // Not logged in: LIST_VEHICLES / BOOK stop at the session check
+        handler = new ClientHandler("bench", null, null, null);
+    }
+
+    @Benchmark
+    public String[] parseText() {
+        return ProtocolIO.splitLine(textBytes, 0, textBytes.length);
+    }
+
+    /** What the engines did before splitLine(): decode the line, then split it */
+    @Benchmark
+    public String[] parseTextRegexSplit() {
+        return new String(textBytes, StandardCharsets.UTF_8).split("\\|");
+    }
+
+    @Benchmark
+    public String[] parseBinary() {
+        return BinaryCodec.decodeRequest(binaryPayload);
+    }
+
+    @Benchmark
+    public Response dispatchText() {
+        return handler.processText(ProtocolIO.splitLine(textBytes, 0, textBytes.length));
+    }
+
+    @Benchmark
+    public Response dispatchBinary() {
+        return handler.processFields(BinaryCodec.decodeRequest(binaryPayload));
+    }
+}
@@ -0,0 +1,198 @@
+// com/rental/server/ListVehiclesBenchmark.java
+package com.rental.server;
+
+import com.rental.dao.DuplicatePolicy;
+import com.rental.dao.UserDAO;
+import com.rental.dao.VehicleDAO;
+import com.rental.dao.VehicleEvents;
+import com.rental.dao.VehicleQuery;
+import com.rental.dao.VehicleVisitor;
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.protocol.BinaryCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and encoding a LIST_VEHICLES response for catalogs of different sizes
+ * The DAOs are in-memory, so this measures ClientHandler.handleListVehicles plus
+ * the wire encoding only. With cached=true the reply comes from ListVehiclesCache,
+ * as on a server whose catalog did not change since the last LIST_VEHICLES.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListVehiclesBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int vehicles;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private ClientHandler handler;
+    private String[] request;
+
+    @Setup
+    public void setUp() {
+        List<Vehicle> catalog = new ArrayList<>(vehicles);
+        for (int i = 1; i <= vehicles; i++) {
+            catalog.add(new Vehicle(i, "CAR", "Brand" + (i % 50), "Model" + (i % 400),
+                    "KA-" + i, 1000 + (i % 5000), true));
+        }
+        VehicleDAO vehicleDAO = new FixedVehicleDAO(catalog);
+        handler = cached
+                ? new ClientHandler("bench", new FixedUserDAO(), vehicleDAO, null,
+                        new ListVehiclesCache(vehicleDAO, new VehicleEvents(vehicleDAO, 1), Long.MAX_VALUE, 16))
+                : new ClientHandler("bench", new FixedUserDAO(), vehicleDAO, null);
+        handler.processLine("LOGIN|bench@rental.com|bench");
+        request = new String[] { "LIST_VEHICLES", "CAR" };
+    }
+
+    @Benchmark
+    public byte[] text() {
+        return handler.processText(request).toLineBytes();
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return BinaryCodec.encodeFrame(handler.processFields(request));
+    }
+
+    /**
+     * Accepts any login
+     */
+    private static class FixedUserDAO implements UserDAO {
+        @Override
+        public User login(String email, String password) {
+            return new User(1, "Bench", email, password, "CUSTOMER");
+        }
+
+        @Override
+        public List<User> findByCredentials(String email, String password) {
+            return new ArrayList<>(Collections.singletonList(login(email, password)));
+        }
+
+        @Override
+        public User register(User user) {
+            return user;
+        }
+
+        @Override
+        public List<User> getUsersPage(int afterId, int limit) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Returns the same catalog for every type, like a warm vehicle cache
+     */
+    private static class FixedVehicleDAO implements VehicleDAO {
+        private final List<Vehicle> catalog;
+
+        FixedVehicleDAO(List<Vehicle> catalog) {
+            this.catalog = Collections.unmodifiableList(catalog);
+        }
+
+        @Override
+        public List<Vehicle> getAvailableVehiclesByType(String type) {
+            return catalog;
+        }
+
+        @Override
+        public Vehicle getVehicleById(int id) {
+            return id >= 1 && id <= catalog.size() ? catalog.get(id - 1) : null;
+        }
+
+        @Override
+        public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+            List<Vehicle> found = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                Vehicle v = getVehicleById(id);
+                if (v != null) {
+                    found.add(v);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+            List<Vehicle> found = new ArrayList<>();
+            for (Vehicle v : catalog) {
+                if (regNumbers.contains(v.getRegNumber())) {
+                    found.add(v);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+            return false;
+        }
+
+        @Override
+        public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+            List<Vehicle> page = new ArrayList<>(limit);
+            for (Vehicle v : catalog) {
+                if (v.getId() > afterId && page.size() < limit) {
+                    page.add(v);
+                }
+            }
+            return page;
+        }
+
+        @Override
+        public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+            return getAvailableVehiclesPage(null, afterId, limit);
+        }
+
+        @Override
+        public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+            int visited = 0;
+            for (Vehicle v : catalog) {
+                visited++;
+                if (!visitor.visit(v)) {
+                    break;
+                }
+            }
+            return visited;
+        }
+
+        @Override
+        public int forEachVehicle(VehicleVisitor visitor) {
+            return forEachAvailableVehicle(null, visitor);
+        }
+
+        @Override
+        public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+            return -1;
+        }
+
+        @Override
+        public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+            return -1;
+        }
+
+        @Override
+        public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+            List<Vehicle> matches = new ArrayList<>();
+            for (Vehicle v : catalog) {
+                if (query.matches(v) && matches.size() < query.getLimit()) {
+                    matches.add(v);
+                }
+            }
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+// com/rental/client/LoadGenerator.java
+package com.rental.client;
+
+import com.rental.protocol.Response;
+import com.rental.util.Config;
+import com.rental.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator for capacity planning
+ *
+ * Each simulated client holds its own connection and logs in, then runs commands
+ * picked at random from a weighted mix. Two modes:
+ * - CLOSED: every client sends its next command as soon as the previous reply
+ *   arrives (plus optional think time). Measures what the server can sustain.
+ * - OPEN: commands arrive at a fixed rate no matter how fast the server answers.
+ *   Latency is measured from the scheduled arrival time, so time spent waiting
+ *   for a free client counts too (no coordinated omission).
+ *
+ * Settings (environment variables or -D properties):
+ * - LOAD_HOST / LOAD_PORT      server address (default localhost / 5000)
+ * - LOAD_PROTOCOL              TEXT or BINARY (default BINARY)
+ * - LOAD_MODE                  CLOSED or OPEN (default CLOSED)
+ * - LOAD_CLIENTS               simulated clients / connections (default 100)
+ * - LOAD_RATE                  OPEN mode: commands per second (default 1000)
+ * - LOAD_DURATION_SEC          measured run time (default 60)
+ * - LOAD_WARMUP_SEC            run time before measuring starts (default 10)
+ * - LOAD_THINK_MS              CLOSED mode: pause between commands (default 0)
+ * - LOAD_REPORT_SEC            progress line interval (default 5)
+ * - LOAD_MIX                   command weights (default LIST_VEHICLES=90,LOGIN=8,LOGOUT=2)
+ *                              commands: LIST_VEHICLES, LOGIN, REGISTER, LOGOUT, RECONNECT
+ *                              (RECONNECT drops the connection and restores the session with RESUME)
+ * - LOAD_EMAIL / LOAD_PASSWORD account used by LOGIN (default joyce@demo.com / password)
+ *
+ * REGISTER creates real users (loadtest-...@example.com); only use it against a test database.
+ *
+ * Usage: java -cp target/rental-system-1.0.0.jar com.rental.client.LoadGenerator
+ */
+public class LoadGenerator {
+    private static final String[] COMMANDS = { "LIST_VEHICLES", "LOGIN", "REGISTER", "LOGOUT", "RECONNECT" };
+    private static final String[] VEHICLE_TYPES = { "CAR", "BIKE" };
+
+    private final String host;
+    private final int port;
+    private final boolean binary;
+    private final boolean openLoop;
+    private final int clients;
+    private final int rate;
+    private final long durationMs;
+    private final long warmupMs;
+    private final long thinkMs;
+    private final long reportMs;
+    private final String email;
+    private final String password;
+    private final int[] weights;
+    private final int totalWeight;
+
+    // One histogram per command for the whole run, plus one for the current report interval
+    private final Map<String, CommandStats> stats = new LinkedHashMap<>();
+    private volatile LatencyHistogram interval = new LatencyHistogram();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong droppedArrivals = new AtomicLong();
+    private final AtomicLong registerCounter = new AtomicLong();
+    private final long runId = System.currentTimeMillis();
+
+    // OPEN mode: scheduled arrival times (System.nanoTime) waiting for a free client
+    private final LinkedBlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    public LoadGenerator() {
+        this.host = Config.getString("LOAD_HOST", "localhost");
+        this.port = Config.getInt("LOAD_PORT", 5000);
+        this.binary = !"TEXT".equalsIgnoreCase(Config.getString("LOAD_PROTOCOL", "BINARY"));
+        this.openLoop = "OPEN".equalsIgnoreCase(Config.getString("LOAD_MODE", "CLOSED"));
+        this.clients = Math.max(1, Config.getInt("LOAD_CLIENTS", 100));
+        this.rate = Math.max(1, Config.getInt("LOAD_RATE", 1000));
+        this.durationMs = Config.getLong("LOAD_DURATION_SEC", 60) * 1000;
+        this.warmupMs = Config.getLong("LOAD_WARMUP_SEC", 10) * 1000;
+        this.thinkMs = Config.getLong("LOAD_THINK_MS", 0);
+        this.reportMs = Math.max(1, Config.getLong("LOAD_REPORT_SEC", 5)) * 1000;
+        this.email = Config.getString("LOAD_EMAIL", "joyce@demo.com");
+        this.password = Config.getString("LOAD_PASSWORD", "password");
+
+        this.weights = parseMix(Config.getString("LOAD_MIX", "LIST_VEHICLES=90,LOGIN=8,LOGOUT=2"));
+        int sum = 0;
+        for (int weight : weights) {
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("LOAD_MIX must give at least one command a weight above 0");
+        }
+        this.totalWeight = sum;
+
+        for (String command : COMMANDS) {
+            stats.put(command, new CommandStats());
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        try {
+            generator.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start the clients, run warmup + measurement, then print the final report
+     */
+    public void run() throws InterruptedException {
+        System.out.println("===========================================");
+        System.out.println("  Load generator -> " + host + ":" + port + " (" + (binary ? "BINARY" : "TEXT") + ")");
+        System.out.println("  Mode: " + (openLoop ? "OPEN, " + rate + " cmd/s" : "CLOSED, think " + thinkMs + "ms")
+                + ", clients: " + clients);
+        System.out.println("  Mix: " + describeMix());
+        System.out.println("  Warmup " + warmupMs / 1000 + "s, measure " + durationMs / 1000 + "s");
+        System.out.println("===========================================");
+
+        CountDownLatch finished = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            // Small stacks so thousands of client threads are cheap
+            Thread thread = new Thread(null, new SimulatedClient(finished), "load-client-" + i, 256 * 1024);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread arrivalThread = null;
+        if (openLoop) {
+            arrivalThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    generateArrivals();
+                }
+            }, "load-arrivals");
+            arrivalThread.setDaemon(true);
+            arrivalThread.start();
+        }
+
+        Thread.sleep(warmupMs);
+        for (CommandStats commandStats : stats.values()) {
+            commandStats.reset();
+        }
+        interval = new LatencyHistogram();
+        connectFailures.set(0);
+        droppedArrivals.set(0);
+        measuring = true;
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        long lastReport = start;
+        while (System.nanoTime() < end) {
+            long nextReport = lastReport + TimeUnit.MILLISECONDS.toNanos(reportMs);
+            long sleepUntil = Math.min(nextReport, end);
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, sleepUntil - System.nanoTime()));
+            long now = System.nanoTime();
+            LatencyHistogram done = interval;
+            interval = new LatencyHistogram();
+            printInterval(now - start, done, now - lastReport);
+            lastReport = now;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        measuring = false;
+        running = false;
+        if (arrivalThread != null) {
+            arrivalThread.interrupt();
+        }
+        finished.await(5, TimeUnit.SECONDS);
+
+        printSummary(elapsedNanos);
+    }
+
+    /**
+     * OPEN mode: enqueue one arrival every 1/rate seconds
+     * Arrivals are never skipped; if the clients fall behind, the queue grows
+     * and the extra wait shows up in the measured latency.
+     */
+    private void generateArrivals() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        // Bound memory if the server stops answering entirely
+        int maxBacklog = Math.max(100000, rate * 10);
+        while (running) {
+            long now = System.nanoTime();
+            while (next <= now) {
+                if (arrivals.size() < maxBacklog) {
+                    arrivals.add(next);
+                } else if (measuring) {
+                    droppedArrivals.incrementAndGet();
+                }
+                next += intervalNanos;
+            }
+            LockSupport.parkNanos(next - now);
+            if (Thread.interrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void record(String command, long startNanos, boolean ok) {
+        if (!measuring) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        stats.get(command).record(micros, ok);
+        interval.record(micros);
+    }
+
+    private String pickCommand() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < COMMANDS.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return COMMANDS[i];
+            }
+        }
+        return COMMANDS[0];
+    }
+
+    private void printInterval(long sinceStartNanos, LatencyHistogram histogram, long intervalNanos) {
+        double seconds = intervalNanos / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "[%4ds] %9.1f cmd/s  p50 %8s  p99 %8s  p99.9 %8s  max %8s",
+                TimeUnit.NANOSECONDS.toSeconds(sinceStartNanos),
+                histogram.getCount() / seconds,
+                formatMicros(histogram.getPercentile(50)),
+                formatMicros(histogram.getPercentile(99)),
+                formatMicros(histogram.getPercentile(99.9)),
+                formatMicros(histogram.getMax())));
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        LatencyHistogram all = new LatencyHistogram();
+        long errors = 0;
+
+        System.out.println();
+        System.out.println("=== Results (" + String.format(Locale.ROOT, "%.1f", seconds) + "s measured) ===");
+        System.out.println(String.format(Locale.ROOT, "%-14s %10s %8s %10s %9s %9s %9s %9s %9s",
+                "Command", "Count", "Errors", "cmd/s", "p50", "p90", "p99", "p99.9", "max"));
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            CommandStats commandStats = entry.getValue();
+            if (commandStats.histogram.getCount() == 0) {
+                continue;
+            }
+            printRow(entry.getKey(), commandStats.histogram, commandStats.errors.get(), seconds);
+            all.add(commandStats.histogram);
+            errors += commandStats.errors.get();
+        }
+        printRow("TOTAL", all, errors, seconds);
+
+        if (connectFailures.get() > 0) {
+            System.out.println("Connection failures: " + connectFailures.get());
+        }
+        if (droppedArrivals.get() > 0) {
+            System.out.println("Arrivals dropped (backlog full, server far behind): " + droppedArrivals.get());
+        }
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram, long errors, double seconds) {
+        System.out.println(String.format(Locale.ROOT, "%-14s %10d %8d %10.1f %9s %9s %9s %9s %9s",
+                name, histogram.getCount(), errors, histogram.getCount() / seconds,
+                formatMicros(histogram.getPercentile(50)),
+                formatMicros(histogram.getPercentile(90)),
+                formatMicros(histogram.getPercentile(99)),
+                formatMicros(histogram.getPercentile(99.9)),
+                formatMicros(histogram.getMax())));
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1000000) {
+            return String.format(Locale.ROOT, "%.2fms", micros / 1000.0);
+        }
+        return String.format(Locale.ROOT, "%.2fs", micros / 1e6);
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] result = new int[COMMANDS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid LOAD_MIX entry '" + part + "'. Use COMMAND=weight");
+            }
+            int index = -1;
+            for (int i = 0; i < COMMANDS.length; i++) {
+                if (COMMANDS[i].equalsIgnoreCase(pair[0].trim())) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown command in LOAD_MIX: " + pair[0].trim());
+            }
+            try {
+                result[index] = Math.max(0, Integer.parseInt(pair[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in LOAD_MIX: " + pair[1].trim());
+            }
+        }
+        return result;
+    }
+
+    private String describeMix() {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (weights[i] > 0) {
+                parts.add(COMMANDS[i] + "=" + weights[i]);
+            }
+        }
+        return String.join(", ", parts);
+    }
+
+    /**
+     * Per-command totals for the measured part of the run
+     */
+    private static class CommandStats {
+        volatile LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+
+        void record(long micros, boolean ok) {
+            histogram.record(micros);
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        void reset() {
+            histogram = new LatencyHistogram();
+            errors.set(0);
+        }
+    }
+
+    /**
+     * One connection and its session state
+     */
+    private class SimulatedClient implements Runnable {
+        private final CountDownLatch finished;
+        private ServerConnection conn;
+        private boolean loggedIn;
+        // Session token from the last LOGIN, used to RESUME after reconnecting
+        private String token;
+        private int typeIndex = ThreadLocalRandom.current().nextInt(VEHICLE_TYPES.length);
+
+        SimulatedClient(CountDownLatch finished) {
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    long scheduled;
+                    if (openLoop) {
+                        Long arrival = arrivals.poll(100, TimeUnit.MILLISECONDS);
+                        if (arrival == null) {
+                            continue;
+                        }
+                        scheduled = arrival;
+                    } else {
+                        scheduled = System.nanoTime();
+                    }
+                    execute(pickCommand(), scheduled);
+                    if (!openLoop && thinkMs > 0) {
+                        Thread.sleep(thinkMs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                disconnect();
+                finished.countDown();
+            }
+        }
+
+        private void execute(String command, long scheduled) throws InterruptedException {
+            try {
+                if (conn == null) {
+                    connect();
+                }
+                if (!loggedIn && !command.equals("LOGIN") && !command.equals("REGISTER")) {
+                    // LIST_VEHICLES / LOGOUT need a session; logging in first is part of this command's latency
+                    if (!resume() && !login()) {
+                        record(command, scheduled, false);
+                        return;
+                    }
+                }
+
+                boolean ok;
+                switch (command) {
+                    case "LOGIN":
+                        ok = login();
+                        break;
+                    case "REGISTER":
+                        long n = registerCounter.incrementAndGet();
+                        ok = conn.send("REGISTER", "Load Test " + n,
+                                "loadtest-" + runId + "-" + n + "@example.com", "loadtest").isOk();
+                        break;
+                    case "LOGOUT":
+                        ok = conn.send("LOGOUT").isOk();
+                        loggedIn = false;
+                        token = null;
+                        break;
+                    case "RECONNECT":
+                        disconnect();
+                        connect();
+                        ok = resume() || login();
+                        break;
+                    default:
+                        typeIndex = (typeIndex + 1) % VEHICLE_TYPES.length;
+                        ok = conn.send("LIST_VEHICLES", VEHICLE_TYPES[typeIndex]).isOk();
+                        break;
+                }
+                record(command, scheduled, ok);
+            } catch (IOException e) {
+                record(command, scheduled, false);
+                disconnect();
+                if (measuring) {
+                    connectFailures.incrementAndGet();
+                }
+                // Don't spin when the server is down
+                Thread.sleep(100);
+            }
+        }
+
+        private boolean login() throws IOException {
+            Response response = conn.send("LOGIN", email, password);
+            loggedIn = response.isOk();
+            token = loggedIn && response.getFieldCount() > 4 ? response.get(4) : null;
+            return loggedIn;
+        }
+
+        private boolean resume() throws IOException {
+            if (token == null) {
+                return false;
+            }
+            loggedIn = conn.send("RESUME", token).isOk();
+            if (!loggedIn) {
+                token = null;
+            }
+            return loggedIn;
+        }
+
+        private void connect() throws IOException {
+            conn = new ServerConnection(host, port, binary);
+            loggedIn = false;
+        }
+
+        private void disconnect() {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (IOException e) {
+                    // Ignore; the connection is being thrown away
+                }
+                conn = null;
+            }
+            loggedIn = false;
+        }
+    }
+}
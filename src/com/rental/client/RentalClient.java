@@ -1,8 +1,12 @@
 // com/rental/client/RentalClient.java
 package com.rental.client;
 
+import com.rental.protocol.Response;
+import com.rental.util.Config;
+
 import java.io.*;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -13,6 +17,8 @@ import java.util.Scanner;
  * - For LOCAL testing: use "localhost" and port 5000
  * - For RAILWAY deployment: change SERVER_HOST to your Railway URL
  *   Example: "your-service-name.up.railway.app"
+ * - CLIENT_PROTOCOL=TEXT disables the binary protocol (default: BINARY,
+ *   which falls back to text automatically on servers without HELLO support)
  */
 public class RentalClient {
     // ============================================================
@@ -29,22 +35,27 @@ public class RentalClient {
     
     // ============================================================
 
+    /** Well below the server's default idle timeout (5 minutes) */
+    private static final long KEEPALIVE_INTERVAL_MS = 60000;
+
     public static void main(String[] args) {
         System.out.println("===========================================");
         System.out.println("  Car & Bike Rental Management System");
         System.out.println("  Client Application");
         System.out.println("===========================================\n");
 
-        try (Socket socket = new Socket(SERVER_HOST, SERVER_PORT);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        boolean preferBinary = !"TEXT".equalsIgnoreCase(Config.getString("CLIENT_PROTOCOL", "BINARY"));
+
+        try (ServerConnection conn = new ServerConnection(SERVER_HOST, SERVER_PORT, preferBinary);
              Scanner scanner = new Scanner(System.in)) {
 
-            System.out.println("Connected to server at " + SERVER_HOST + ":" + SERVER_PORT);
+            System.out.println("Connected to server at " + SERVER_HOST + ":" + SERVER_PORT +
+                               " (" + (conn.isBinary() ? "binary" : "text") + " protocol)");
             
-            // Read welcome message from server
-            String welcome = in.readLine();
-            System.out.println("Server: " + welcome + "\n");
+            // Welcome message from server
+            System.out.println("Server: " + conn.getWelcome() + "\n");
+            // Keep the connection open while the user is reading or typing
+            conn.startKeepalive(KEEPALIVE_INTERVAL_MS);
 
             boolean loggedIn = false;
             boolean running = true;
@@ -65,11 +76,11 @@ public class RentalClient {
 
                 switch (choice) {
                     case 1: // Register
-                        loggedIn = handleRegister(scanner, out, in);
+                        loggedIn = handleRegister(scanner, conn);
                         break;
                         
                     case 2: // Login
-                        loggedIn = handleLogin(scanner, out, in);
+                        loggedIn = handleLogin(scanner, conn);
                         break;
                         
                     case 3: // List Cars
@@ -77,7 +88,7 @@ public class RentalClient {
                             System.out.println("\n[ERROR] Please login first.\n");
                             break;
                         }
-                        handleListVehicles(out, in, "CAR");
+                        handleListVehicles(conn, "CAR");
                         break;
                         
                     case 4: // List Bikes
@@ -85,7 +96,7 @@ public class RentalClient {
                             System.out.println("\n[ERROR] Please login first.\n");
                             break;
                         }
-                        handleListVehicles(out, in, "BIKE");
+                        handleListVehicles(conn, "BIKE");
                         break;
                         
                     case 5: // Logout
@@ -93,7 +104,39 @@ public class RentalClient {
                             System.out.println("\n[ERROR] You are not logged in.\n");
                             break;
                         }
-                        loggedIn = handleLogout(out, in);
+                        loggedIn = handleLogout(conn);
+                        break;
+
+                    case 6: // Book a vehicle
+                        if (!loggedIn) {
+                            System.out.println("\n[ERROR] Please login first.\n");
+                            break;
+                        }
+                        handleBook(scanner, conn);
+                        break;
+
+                    case 7: // My bookings
+                        if (!loggedIn) {
+                            System.out.println("\n[ERROR] Please login first.\n");
+                            break;
+                        }
+                        handleMyBookings(conn);
+                        break;
+
+                    case 8: // Cancel booking
+                        if (!loggedIn) {
+                            System.out.println("\n[ERROR] Please login first.\n");
+                            break;
+                        }
+                        handleCancel(scanner, conn);
+                        break;
+
+                    case 9: // List all vehicles (one pipelined round trip)
+                        if (!loggedIn) {
+                            System.out.println("\n[ERROR] Please login first.\n");
+                            break;
+                        }
+                        handleListAllVehicles(conn);
                         break;
                         
                     case 0: // Exit
@@ -128,6 +171,10 @@ public class RentalClient {
             System.out.println("  3. List Available Cars");
             System.out.println("  4. List Available Bikes");
             System.out.println("  5. Logout");
+            System.out.println("  6. Book a Vehicle");
+            System.out.println("  7. My Bookings");
+            System.out.println("  8. Cancel a Booking");
+            System.out.println("  9. List All Vehicles");
         }
         
         System.out.println("  0. Exit");
@@ -137,7 +184,7 @@ public class RentalClient {
     /**
      * Handle user registration
      */
-    private static boolean handleRegister(Scanner scanner, PrintWriter out, BufferedReader in) throws IOException {
+    private static boolean handleRegister(Scanner scanner, ServerConnection conn) throws IOException {
         System.out.println("\n──── REGISTER ────");
         
         System.out.print("Enter your name: ");
@@ -156,19 +203,15 @@ public class RentalClient {
         }
 
         // Send REGISTER command to server
-        out.println("REGISTER|" + name + "|" + email + "|" + password);
-        
-        // Read server response
-        String response = in.readLine();
+        Response response = conn.send("REGISTER", name, email, password);
         System.out.println("\nServer response: " + response);
 
-        if (response.startsWith("OK|REGISTER")) {
-            String[] parts = response.split("\\|");
-            System.out.println("\n[SUCCESS] Registration successful! Your User ID is: " + parts[2]);
+        if (response.isOk()) {
+            System.out.println("\n[SUCCESS] Registration successful! Your User ID is: " + response.get(2));
             System.out.println("You can now login with your credentials.\n");
             return false;
         } else {
-            String errorMsg = response.substring(response.indexOf("|") + 1);
+            String errorMsg = ServerConnection.getErrorMessage(response);
             System.out.println("\n[ERROR] " + errorMsg + "\n");
             return false;
         }
@@ -177,7 +220,7 @@ public class RentalClient {
     /**
      * Handle user login
      */
-    private static boolean handleLogin(Scanner scanner, PrintWriter out, BufferedReader in) throws IOException {
+    private static boolean handleLogin(Scanner scanner, ServerConnection conn) throws IOException {
         System.out.println("\n──── LOGIN ────");
         
         System.out.print("Enter your email: ");
@@ -192,21 +235,17 @@ public class RentalClient {
         }
 
         // Send LOGIN command to server
-        out.println("LOGIN|" + email + "|" + password);
-        
-        // Read server response
-        String response = in.readLine();
+        Response response = conn.send("LOGIN", email, password);
 
-        if (response.startsWith("OK|LOGIN")) {
-            String[] parts = response.split("\\|");
-            String userName = parts[2];
-            String userRole = parts[3];
+        if (response.isOk()) {
+            String userName = response.get(2);
+            String userRole = response.get(3);
             
             System.out.println("\n[SUCCESS] Login successful!");
             System.out.println("Welcome, " + userName + " (" + userRole + ")!\n");
             return true;
         } else {
-            String errorMsg = response.substring(response.indexOf("|") + 1);
+            String errorMsg = ServerConnection.getErrorMessage(response);
             System.out.println("\n[ERROR] " + errorMsg + "\n");
             return false;
         }
@@ -215,23 +254,41 @@ public class RentalClient {
     /**
      * Handle listing vehicles
      */
-    private static void handleListVehicles(PrintWriter out, BufferedReader in, String type) throws IOException {
+    private static void handleListVehicles(ServerConnection conn, String type) throws IOException {
         System.out.println("\n──── AVAILABLE " + type + "S ────");
         
         // Send LIST_VEHICLES command to server
-        out.println("LIST_VEHICLES|" + type);
-        
-        // Read server response
-        String response = in.readLine();
+        printVehicles(conn, conn.send("LIST_VEHICLES", type), type);
+    }
 
-        if (!response.startsWith("OK|LIST_VEHICLES")) {
-            String errorMsg = response.substring(response.indexOf("|") + 1);
+    /**
+     * Handle listing cars and bikes together
+     * Both requests are pipelined, so this costs a single round trip
+     */
+    private static void handleListAllVehicles(ServerConnection conn) throws IOException {
+        List<String[]> commands = new ArrayList<>();
+        commands.add(new String[] { "LIST_VEHICLES", "CAR" });
+        commands.add(new String[] { "LIST_VEHICLES", "BIKE" });
+
+        List<Response> responses = conn.sendBatch(commands);
+
+        System.out.println("\n──── AVAILABLE CARS ────");
+        printVehicles(conn, responses.get(0), "CAR");
+        System.out.println("──── AVAILABLE BIKES ────");
+        printVehicles(conn, responses.get(1), "BIKE");
+    }
+
+    /**
+     * Print a LIST_VEHICLES response as a table
+     */
+    private static void printVehicles(ServerConnection conn, Response response, String type) {
+        if (!response.isOk()) {
+            String errorMsg = ServerConnection.getErrorMessage(response);
             System.out.println("[ERROR] " + errorMsg + "\n");
             return;
         }
 
-        String[] parts = response.split("\\|");
-        int count = Integer.parseInt(parts[2]);
+        int count = Integer.parseInt(response.get(2));
 
         if (count == 0) {
             System.out.println("No " + type.toLowerCase() + "s available at the moment.\n");
@@ -244,7 +301,7 @@ public class RentalClient {
         System.out.println("├──────┼─────────────────────────┼─────────────┼──────────────┤");
 
         for (int i = 0; i < count; i++) {
-            String[] vehicleData = parts[3 + i].split(",");
+            String[] vehicleData = conn.getRecord(response, 3 + i);
             String id = vehicleData[0];
             String brand = vehicleData[1];
             String model = vehicleData[2];
@@ -260,14 +317,100 @@ public class RentalClient {
         System.out.println("└──────┴─────────────────────────┴─────────────┴──────────────┘\n");
     }
 
+    /**
+     * Handle booking a vehicle
+     */
+    private static void handleBook(Scanner scanner, ServerConnection conn) throws IOException {
+        System.out.println("\n──── BOOK A VEHICLE ────");
+
+        System.out.print("Enter vehicle ID: ");
+        String vehicleId = scanner.nextLine().trim();
+
+        System.out.print("Enter start date (YYYY-MM-DD): ");
+        String startDate = scanner.nextLine().trim();
+
+        System.out.print("Enter return date (YYYY-MM-DD): ");
+        String endDate = scanner.nextLine().trim();
+
+        if (vehicleId.isEmpty() || startDate.isEmpty() || endDate.isEmpty()) {
+            System.out.println("\n[ERROR] All fields are required.\n");
+            return;
+        }
+
+        Response response = conn.send("BOOK", vehicleId, startDate, endDate);
+
+        if (response.isOk()) {
+            System.out.println("\n[SUCCESS] Booking confirmed! Booking ID: " + response.get(2));
+            System.out.println("Total price: ₹" + response.get(3) + "\n");
+        } else {
+            String errorMsg = ServerConnection.getErrorMessage(response);
+            System.out.println("\n[ERROR] " + errorMsg + "\n");
+        }
+    }
+
+    /**
+     * Handle listing the user's bookings
+     */
+    private static void handleMyBookings(ServerConnection conn) throws IOException {
+        System.out.println("\n──── MY BOOKINGS ────");
+
+        Response response = conn.send("MY_BOOKINGS");
+
+        if (!response.isOk()) {
+            String errorMsg = ServerConnection.getErrorMessage(response);
+            System.out.println("[ERROR] " + errorMsg + "\n");
+            return;
+        }
+
+        int count = Integer.parseInt(response.get(2));
+
+        if (count == 0) {
+            System.out.println("You have no bookings yet.\n");
+            return;
+        }
+
+        System.out.println("┌──────┬─────────┬────────────┬────────────┬──────────────┬───────────┐");
+        System.out.println("│  ID  │ Vehicle │   From     │    To      │  Total(₹)    │  Status   │");
+        System.out.println("├──────┼─────────┼────────────┼────────────┼──────────────┼───────────┤");
+
+        for (int i = 0; i < count; i++) {
+            String[] b = conn.getRecord(response, 3 + i);
+            System.out.printf("│ %-4s │ %-7s │ %-10s │ %-10s │ %12s │ %-9s │%n",
+                b[0], b[1], b[2], b[3], b[4], b[5]);
+        }
+
+        System.out.println("└──────┴─────────┴────────────┴────────────┴──────────────┴───────────┘\n");
+    }
+
+    /**
+     * Handle cancelling a booking
+     */
+    private static void handleCancel(Scanner scanner, ServerConnection conn) throws IOException {
+        System.out.print("\nEnter booking ID to cancel: ");
+        String bookingId = scanner.nextLine().trim();
+
+        if (bookingId.isEmpty()) {
+            System.out.println("\n[ERROR] Booking ID is required.\n");
+            return;
+        }
+
+        Response response = conn.send("CANCEL", bookingId);
+
+        if (response.isOk()) {
+            System.out.println("\n[SUCCESS] Booking " + bookingId + " cancelled.\n");
+        } else {
+            String errorMsg = ServerConnection.getErrorMessage(response);
+            System.out.println("\n[ERROR] " + errorMsg + "\n");
+        }
+    }
+
     /**
      * Handle user logout
      */
-    private static boolean handleLogout(PrintWriter out, BufferedReader in) throws IOException {
-        out.println("LOGOUT");
-        String response = in.readLine();
+    private static boolean handleLogout(ServerConnection conn) throws IOException {
+        Response response = conn.send("LOGOUT");
         
-        if (response.startsWith("OK|LOGOUT")) {
+        if (response.isOk()) {
             System.out.println("\n[SUCCESS] Logged out successfully.\n");
             return false;
         }
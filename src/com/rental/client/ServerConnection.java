@@ -0,0 +1,318 @@
+// com/rental/client/ServerConnection.java
+package com.rental.client;
+
+import com.rental.protocol.BinaryCodec;
+import com.rental.protocol.ProtocolIO;
+import com.rental.protocol.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client side of one connection to RentalServer
+ *
+ * Reads the WELCOME line and, if requested, negotiates the binary protocol with
+ * HELLO|BINARY|1. Servers that don't understand HELLO answer with an error and
+ * the connection simply stays in text mode, so callers never need to care.
+ *
+ * sendBatch() pipelines several commands (each tagged #n) and reads the replies
+ * afterwards, paying one round trip per batch instead of one per command.
+ *
+ * sendStream() runs a streamed command (LIST_VEHICLES|type|STREAM) whose reply
+ * arrives as several chunk messages followed by a final one.
+ *
+ * Servers close connections that stay idle (IDLE_TIMEOUT_MS); startKeepalive()
+ * sends PING while the connection is otherwise unused. The send methods are
+ * synchronized so the keepalive never interleaves with a command.
+ *
+ * After WATCH|type the server pushes EVENT|... messages between replies. They
+ * are set aside while a reply is read and handed out by awaitEvent().
+ */
+public class ServerConnection implements Closeable {
+    /**
+     * Receives the chunk messages of a streamed reply as they arrive
+     */
+    public interface ChunkHandler {
+        void onChunk(Response chunk);
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String welcome;
+    private boolean binary;
+    private long nextTag;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile Thread keepalive;
+    // Pushed messages received while reading replies, oldest first
+    private final ArrayDeque<Response> events = new ArrayDeque<>();
+
+    /** Max commands in flight during sendBatch, so neither side's socket buffer can fill up */
+    private static final int BATCH_WINDOW = 32;
+
+    /**
+     * Connect and perform the greeting / protocol negotiation
+     * @param preferBinary try to switch to binary frames after WELCOME
+     */
+    public ServerConnection(String host, int port, boolean preferBinary) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+
+        this.welcome = ProtocolIO.readLine(in, ProtocolIO.MAX_LINE_LENGTH);
+        if (welcome == null) {
+            throw new EOFException("Server closed the connection before WELCOME");
+        }
+        if (welcome.startsWith("ERROR|")) {
+            // Refused, e.g. ERROR|BUSY|1000 when the server is at its connection limit
+            socket.close();
+            throw new IOException("Server refused the connection: " + welcome.substring("ERROR|".length()));
+        }
+
+        if (preferBinary) {
+            Response hello = send("HELLO", "BINARY", String.valueOf(ProtocolIO.VERSION));
+            binary = hello.isOk();
+        }
+    }
+
+    /**
+     * Send one command and wait for its response
+     * @param fields command name followed by its parameters
+     */
+    public synchronized Response send(String... fields) throws IOException {
+        write(fields);
+        out.flush();
+        return read();
+    }
+
+    /**
+     * Send a streamed command and pass each chunk to handler
+     * Chunks are the OK replies whose command name ends in _CHUNK (e.g. LIST_VEHICLES_CHUNK)
+     * @return the final reply, e.g. OK|LIST_VEHICLES_END|total, or an error
+     */
+    public synchronized Response sendStream(ChunkHandler handler, String... fields) throws IOException {
+        write(fields);
+        out.flush();
+        while (true) {
+            Response response = read();
+            if (!response.isOk() || response.getFieldCount() < 2 || !response.get(1).endsWith("_CHUNK")) {
+                return response;
+            }
+            handler.onChunk(response);
+        }
+    }
+
+    /**
+     * Pipeline several commands and return their responses in the same order
+     * Commands are sent without waiting for replies (at most BATCH_WINDOW outstanding)
+     * @param commands each entry is a command name followed by its parameters
+     * @throws IOException if the connection fails or a reply does not match its request
+     */
+    public synchronized List<Response> sendBatch(List<String[]> commands) throws IOException {
+        List<Response> responses = new ArrayList<>(commands.size());
+        String[] tags = new String[commands.size()];
+        int sent = 0;
+
+        while (responses.size() < commands.size()) {
+            while (sent < commands.size() && sent - responses.size() < BATCH_WINDOW) {
+                tags[sent] = "#" + (++nextTag);
+                String[] command = commands.get(sent);
+                String[] tagged = new String[command.length + 1];
+                tagged[0] = tags[sent];
+                System.arraycopy(command, 0, tagged, 1, command.length);
+                write(tagged);
+                sent++;
+            }
+            out.flush();
+
+            Response response = read();
+            String expected = tags[responses.size()];
+            String tag = response.getTag();
+            if (tag != null && !tag.equals(expected)) {
+                throw new IOException("Out of order reply: expected " + expected + " but got " + tag);
+            }
+            responses.add(response.withoutTag());
+        }
+        return responses;
+    }
+
+    /**
+     * Wait for the next pushed message (EVENT|WATCH|...)
+     * Other commands may be sent in between; events arriving meanwhile are kept.
+     * @param timeoutMillis max wait (0 = wait forever)
+     * @return the event, or null if none arrived in time
+     */
+    public synchronized Response awaitEvent(long timeoutMillis) throws IOException {
+        if (!events.isEmpty()) {
+            return events.poll();
+        }
+        // A timeout in the middle of a message would lose our place in the stream,
+        // so only wait for its first byte with a timeout
+        socket.setSoTimeout((int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+        try {
+            in.mark(1);
+            if (in.read() < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            in.reset();
+        } catch (SocketTimeoutException e) {
+            return null;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        Response message = readMessage();
+        if (!isEvent(message)) {
+            throw new IOException("Unexpected reply while waiting for an event: " + message.toText());
+        }
+        return message;
+    }
+
+    private void write(String[] fields) throws IOException {
+        lastUsed = System.nanoTime();
+        if (binary) {
+            ProtocolIO.writeFrame(out, BinaryCodec.encodeRequest(fields));
+        } else {
+            ProtocolIO.writeLine(out, String.join("|", fields));
+        }
+    }
+
+    /**
+     * Read the next reply, setting aside any events in front of it
+     */
+    private Response read() throws IOException {
+        while (true) {
+            Response message = readMessage();
+            if (!isEvent(message)) {
+                return message;
+            }
+            events.add(message);
+        }
+    }
+
+    private static boolean isEvent(Response message) {
+        return message.getFieldCount() > 0 && message.get(0).equals("EVENT");
+    }
+
+    private Response readMessage() throws IOException {
+        if (binary) {
+            byte[] payload = ProtocolIO.readFrame(in, ProtocolIO.MAX_RESPONSE_SIZE);
+            if (payload == null) {
+                throw new EOFException("Server closed the connection");
+            }
+            return BinaryCodec.decodeResponse(payload);
+        }
+
+        String line = ProtocolIO.readLine(in, ProtocolIO.MAX_RESPONSE_SIZE);
+        if (line == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        return parseText(line);
+    }
+
+    /**
+     * Get the values of a record field (e.g. one vehicle row)
+     * Text responses carry records as comma-separated values
+     */
+    public String[] getRecord(Response response, int index) {
+        return binary ? response.getRecord(index) : response.get(index).split(",");
+    }
+
+    /**
+     * Get the message of an ERROR response (everything after ERROR|)
+     */
+    public static String getErrorMessage(Response response) {
+        StringBuilder message = new StringBuilder();
+        for (int i = 1; i < response.getFieldCount(); i++) {
+            if (i > 1) {
+                message.append('|');
+            }
+            message.append(response.get(i));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Check whether a response is ERROR|BUSY|retryAfterMs: the command was not
+     * executed because of a rate limit or overload and may be sent again later
+     */
+    public static boolean isBusy(Response response) {
+        return !response.isOk() && response.getFieldCount() >= 2 && response.get(1).equals("BUSY");
+    }
+
+    /**
+     * Suggested wait of a BUSY response in milliseconds (1000 if it carries none)
+     */
+    public static long getRetryAfterMillis(Response response) {
+        try {
+            return response.getFieldCount() >= 3 ? Long.parseLong(response.get(2)) : 1000;
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    public String getWelcome() {
+        return welcome;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Send PING whenever the connection has been unused for intervalMillis,
+     * so the server's idle timeout doesn't close it (e.g. a user sitting at a menu)
+     * Runs on a daemon thread until the connection is closed or a ping fails.
+     */
+    public synchronized void startKeepalive(final long intervalMillis) {
+        if (keepalive != null) {
+            return;
+        }
+        final long intervalNanos = intervalMillis * 1000000L;
+        keepalive = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!socket.isClosed()) {
+                        Thread.sleep(intervalMillis);
+                        if (System.nanoTime() - lastUsed >= intervalNanos) {
+                            send("PING");
+                        }
+                    }
+                } catch (InterruptedException | IOException e) {
+                    // Connection closed; the next real command reports the error
+                }
+            }
+        }, "rental-keepalive");
+        keepalive.setDaemon(true);
+        keepalive.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        Thread running = keepalive;
+        if (running != null) {
+            running.interrupt();
+        }
+    }
+
+    private static Response parseText(String line) {
+        String[] parts = line.split("\\|", -1);
+        List<String[]> fields = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            fields.add(new String[] { part });
+        }
+        return Response.of(fields);
+    }
+}
@@ -0,0 +1,168 @@
+// com/rental/dao/AvailabilityWriter.java
+package com.rental.dao;
+
+import com.rental.util.DBUtil;
+import com.rental.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for vehicle availability changes
+ *
+ * submit() only records the latest wanted state of a vehicle; a background thread
+ * writes everything pending with one VehicleDAO.updateVehicleAvailability(Map)
+ * batch every flushMillis, or as soon as maxPending vehicles are waiting.
+ * Flipping the same vehicle several times between flushes costs one row update.
+ *
+ * Changes reach the database (and the vehicle cache / search index) at the next
+ * flush, so callers that need to know the update succeeded should use
+ * VehicleDAO directly. If a flush fails, its changes are kept unless a newer one
+ * was submitted meanwhile, and retried with the next flush. Everything still
+ * pending is written when the JVM exits.
+ */
+public class AvailabilityWriter {
+    private final VehicleDAO vehicleDAO;
+    private final int maxPending;
+    private final ScheduledExecutorService flusher;
+    // Flushes must not overlap, or an older batch could overwrite a newer one
+    private final Object flushLock = new Object();
+
+    // Latest wanted state per vehicle; guarded by "this"
+    private HashMap<Integer, Boolean> pending = new HashMap<>();
+    private boolean flushQueued;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param vehicleDAO DAO the batches are written through (use the caching one so caches stay current)
+     * @param flushMillis interval between flushes
+     * @param maxPending flush early once this many vehicles are waiting
+     */
+    public AvailabilityWriter(VehicleDAO vehicleDAO, long flushMillis, int maxPending) {
+        this.vehicleDAO = vehicleDAO;
+        this.maxPending = Math.max(1, maxPending);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "availability-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(10, flushMillis);
+        flusher.scheduleWithFixedDelay(flushTask, period, period, TimeUnit.MILLISECONDS);
+        DBUtil.addShutdownTask(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Queue a change; replaces any change for the same vehicle that is still pending
+     */
+    public void submit(int vehicleId, boolean available) {
+        boolean flushNow;
+        synchronized (this) {
+            if (pending.put(vehicleId, available) != null) {
+                coalesced.incrementAndGet();
+            }
+            flushNow = pending.size() >= maxPending && !flushQueued;
+            if (flushNow) {
+                flushQueued = true;
+            }
+        }
+        submitted.incrementAndGet();
+        if (flushNow) {
+            flusher.execute(flushTask);
+        }
+    }
+
+    /**
+     * Write everything pending now
+     * @return vehicles updated, or -1 if the batch failed (it is retried later)
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            HashMap<Integer, Boolean> batch;
+            synchronized (this) {
+                flushQueued = false;
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                pending = new HashMap<>();
+            }
+
+            int updated = vehicleDAO.updateVehicleAvailability(batch);
+            if (updated < 0) {
+                failures.incrementAndGet();
+                synchronized (this) {
+                    for (Map.Entry<Integer, Boolean> change : batch.entrySet()) {
+                        // A change submitted during the failed flush is newer; keep it
+                        if (!pending.containsKey(change.getKey())) {
+                            pending.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                Log.warn("[AVAILABILITY] Writing " + batch.size() + " changes failed; will retry");
+                return -1;
+            }
+            batches.incrementAndGet();
+            Log.debug("[AVAILABILITY] Wrote " + batch.size() + " changes (" + updated + " vehicles updated)");
+            return updated;
+        }
+    }
+
+    /**
+     * Stop the background flushes and write what is pending
+     * Called automatically at JVM exit
+     */
+    public void close() {
+        flusher.shutdown();
+        int pendingCount = getPendingCount();
+        if (pendingCount > 0 && flush() < 0) {
+            Log.error("[AVAILABILITY] Lost " + pendingCount + " availability changes at shutdown");
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Changes submitted since startup */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /** Changes that replaced a still-pending change of the same vehicle */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /** Batches written successfully */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+}
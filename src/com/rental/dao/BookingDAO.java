@@ -0,0 +1,46 @@
+// com/rental/dao/BookingDAO.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import java.util.List;
+
+/**
+ * Data Access Object interface for Booking operations
+ */
+public interface BookingDAO {
+    /**
+     * Store a new booking
+     * @param booking Booking with userId, vehicleId, dates, price and status set
+     * @return Booking object with generated ID if successful, null otherwise
+     */
+    Booking createBooking(Booking booking);
+
+    /**
+     * Get booking by ID
+     * @param id booking ID
+     * @return Booking object if found, null otherwise
+     */
+    Booking getBookingById(int id);
+
+    /**
+     * Get all bookings of a user, newest first
+     * @param userId user ID
+     * @return List of bookings (empty if none)
+     */
+    List<Booking> getBookingsByUser(int userId);
+
+    /**
+     * Get the bookings of a vehicle that still block its calendar (status BOOKED)
+     * @param vehicleId vehicle ID
+     * @return List of active bookings (empty if none), or null if they could not be read;
+     *         never a partial list, since BookingService treats it as the whole calendar
+     */
+    List<Booking> getActiveBookingsByVehicle(int vehicleId);
+
+    /**
+     * Mark a booking as CANCELLED
+     * @param bookingId booking ID
+     * @return true if an active booking was cancelled, false otherwise
+     */
+    boolean cancelBooking(int bookingId);
+}
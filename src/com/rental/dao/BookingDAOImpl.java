@@ -0,0 +1,138 @@
+// com/rental/dao/BookingDAOImpl.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import com.rental.util.DBUtil;
+import com.rental.util.Log;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of BookingDAO interface
+ * Handles all database operations related to bookings
+ * Only MY_BOOKINGS (getBookingsByUser) reads from a replica; the other reads
+ * feed booking decisions and stay on the primary with the writes.
+ */
+public class BookingDAOImpl implements BookingDAO {
+
+    @Override
+    public Booking createBooking(Booking booking) {
+        String sql = "INSERT INTO bookings (user_id, vehicle_id, start_date, end_date, total_price, status) " +
+                     "VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            ps.setInt(1, booking.getUserId());
+            ps.setInt(2, booking.getVehicleId());
+            ps.setDate(3, Date.valueOf(booking.getStartDate()));
+            ps.setDate(4, Date.valueOf(booking.getEndDate()));
+            ps.setDouble(5, booking.getTotalPrice());
+            ps.setString(6, booking.getStatus());
+
+            int rowsAffected = ps.executeUpdate();
+
+            if (rowsAffected > 0) {
+                // Get the generated ID
+                ResultSet generatedKeys = ps.getGeneratedKeys();
+                if (generatedKeys.next()) {
+                    booking.setId(generatedKeys.getInt(1));
+                }
+                return booking;
+            }
+        } catch (SQLException e) {
+            Log.error("Error creating booking: " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Booking getBookingById(int id) {
+        String sql = "SELECT * FROM bookings WHERE id = ?";
+        // Primary: CANCEL checks ownership and status with this before writing
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, id);
+            ResultSet rs = ps.executeQuery();
+
+            if (rs.next()) {
+                return mapBooking(rs);
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching booking by ID: " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public List<Booking> getBookingsByUser(int userId) {
+        String sql = "SELECT * FROM bookings WHERE user_id = ? ORDER BY start_date DESC, id DESC";
+        List<Booking> bookings = queryList(sql, userId, "Error fetching user bookings: ", true);
+        return bookings != null ? bookings : new ArrayList<Booking>();
+    }
+
+    @Override
+    public List<Booking> getActiveBookingsByVehicle(int vehicleId) {
+        String sql = "SELECT * FROM bookings WHERE vehicle_id = ? AND status = 'BOOKED'";
+        // Primary: BookingService builds its overlap calendar from this, a stale copy could double-book
+        return queryList(sql, vehicleId, "Error fetching vehicle bookings: ", false);
+    }
+
+    @Override
+    public boolean cancelBooking(int bookingId) {
+        String sql = "UPDATE bookings SET status = 'CANCELLED' WHERE id = ? AND status = 'BOOKED'";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, bookingId);
+            return ps.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            Log.error("Error cancelling booking: " + e.getMessage(), e);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the bookings, or null if the query failed
+     */
+    private List<Booking> queryList(String sql, int param, String errorPrefix, boolean fromReplica) {
+        List<Booking> bookings = new ArrayList<>();
+
+        try (Connection conn = fromReplica ? DBUtil.getReadConnection() : DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, param);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                bookings.add(mapBooking(rs));
+            }
+        } catch (SQLException e) {
+            Log.error(errorPrefix + e.getMessage(), e);
+            return null;
+        }
+
+        return bookings;
+    }
+
+    private Booking mapBooking(ResultSet rs) throws SQLException {
+        return new Booking(
+            rs.getInt("id"),
+            rs.getInt("user_id"),
+            rs.getInt("vehicle_id"),
+            rs.getDate("start_date").toLocalDate(),
+            rs.getDate("end_date").toLocalDate(),
+            rs.getDouble("total_price"),
+            rs.getString("status")
+        );
+    }
+}
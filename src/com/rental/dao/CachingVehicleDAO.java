@@ -0,0 +1,286 @@
+// com/rental/dao/CachingVehicleDAO.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VehicleDAO decorator that keeps the available vehicles per type in memory
+ *
+ * - LIST_VEHICLES reads are served from the cache until the entry is older than the TTL
+ * - updateVehicleAvailability() patches cached entries in place, so availability
+ *   changes made through this DAO are visible immediately (lookups don't: they
+ *   may come from a replica that is behind)
+ * - at most maxEntries types are cached (least recently used is evicted),
+ *   which protects against clients asking for arbitrary type names
+ *
+ * Cached lists are immutable snapshots shared between callers; treat the
+ * returned Vehicle objects as read-only.
+ */
+public class CachingVehicleDAO implements VehicleDAO {
+    private static final Comparator<Vehicle> BY_ID = new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle a, Vehicle b) {
+            return Integer.compare(a.getId(), b.getId());
+        }
+    };
+
+    private final VehicleDAO delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    // Access-ordered map gives us LRU eviction; guarded by "this"
+    private final LinkedHashMap<String, CacheEntry> entries;
+    // Bumped on every write so a load that raced with an update is not cached
+    private long version;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param delegate DAO that talks to the database
+     * @param ttlMillis how long a loaded type stays valid
+     * @param maxEntries maximum number of vehicle types kept in memory
+     */
+    public CachingVehicleDAO(VehicleDAO delegate, long ttlMillis, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingVehicleDAO.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesByType(String type) {
+        String key = type.toUpperCase();
+        long loadVersion;
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && !entry.isExpired()) {
+                hits.incrementAndGet();
+                return entry.vehicles;
+            }
+            loadVersion = version;
+        }
+
+        misses.incrementAndGet();
+        List<Vehicle> fetched = delegate.getAvailableVehiclesByType(key);
+        if (fetched == null) {
+            // Failed read: nothing to cache, the next call asks the delegate again
+            return null;
+        }
+        List<Vehicle> loaded = new ArrayList<>(fetched);
+        Collections.sort(loaded, BY_ID);
+        List<Vehicle> snapshot = Collections.unmodifiableList(loaded);
+
+        synchronized (this) {
+            if (version == loadVersion) {
+                entries.put(key, new CacheEntry(snapshot));
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Vehicle getVehicleById(int id) {
+        return delegate.getVehicleById(id);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        return delegate.getVehiclesByIds(ids);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        return delegate.getVehiclesByRegNumbers(regNumbers);
+    }
+
+    @Override
+    public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+        boolean updated = delegate.updateVehicleAvailability(vehicleId, available);
+        if (updated) {
+            // May come from a replica that has not seen the update yet; then drop everything
+            Vehicle vehicle = delegate.getVehicleById(vehicleId);
+            if (vehicle != null && vehicle.isAvailable() == available) {
+                apply(vehicle);
+            } else {
+                invalidateAll();
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Cached types are dropped rather than patched: vehicles that became available
+     * would have to be read one by one to be added
+     */
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        int updated = delegate.updateVehicleAvailability(changes);
+        if (updated > 0) {
+            invalidateAll();
+        }
+        return updated;
+    }
+
+    /**
+     * Not cached: paging and streaming are meant for fleets too large to hold per type
+     */
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        return delegate.getAvailableVehiclesPage(type, afterId, limit);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        return delegate.getVehiclesPage(afterId, limit);
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return delegate.forEachAvailableVehicle(type, visitor);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return delegate.forEachVehicle(visitor);
+    }
+
+    /**
+     * Not cached here; see IndexedVehicleDAO
+     */
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        return delegate.searchAvailableVehicles(query);
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+        int written = delegate.insertVehicles(vehicles, onDuplicate);
+        if (written > 0) {
+            invalidateAll();
+        }
+        return written;
+    }
+
+    /**
+     * Drop every cached type; the next read of each type goes to the database
+     */
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * One-line summary for logs and admin output
+     */
+    public String getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        double hitRate = total == 0 ? 0.0 : (100.0 * h / total);
+        return String.format("entries=%d hits=%d misses=%d evictions=%d hitRate=%.1f%%",
+                getEntryCount(), h, m, evictions.get(), hitRate);
+    }
+
+    /**
+     * Bring the cached entries in line with the current state of one vehicle
+     * Lists are copied, never modified, because readers hold the old snapshot
+     */
+    private synchronized void apply(Vehicle vehicle) {
+        version++;
+        String vehicleType = vehicle.getType() == null ? null : vehicle.getType().toUpperCase();
+
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CacheEntry> e = it.next();
+            CacheEntry entry = e.getValue();
+            boolean belongs = vehicle.isAvailable() && e.getKey().equals(vehicleType);
+            int index = indexOf(entry.vehicles, vehicle.getId());
+
+            if (index < 0 && !belongs) {
+                continue;
+            }
+
+            List<Vehicle> copy = new ArrayList<>(entry.vehicles);
+            if (index >= 0) {
+                copy.remove(index);
+            }
+            if (belongs) {
+                copy.add(vehicle);
+                Collections.sort(copy, BY_ID);
+            }
+            e.setValue(new CacheEntry(Collections.unmodifiableList(copy), entry.loadedAt));
+        }
+    }
+
+    private static int indexOf(List<Vehicle> vehicles, int id) {
+        int low = 0;
+        int high = vehicles.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = vehicles.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private class CacheEntry {
+        final List<Vehicle> vehicles;
+        final long loadedAt;
+
+        CacheEntry(List<Vehicle> vehicles) {
+            this(vehicles, System.currentTimeMillis());
+        }
+
+        CacheEntry(List<Vehicle> vehicles, long loadedAt) {
+            this.vehicles = vehicles;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - loadedAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+// com/rental/dao/Cluster.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.protocol.Response;
+import com.rental.util.Config;
+import com.rental.util.ConsistentHashRing;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Membership and routing of a shared-nothing cluster (STORAGE_BACKEND=cluster)
+ *
+ * The router is a RentalServer whose DAOs (ClusterVehicleDAO, ClusterUserDAO,
+ * ClusterBookingDAO) keep no data of their own: every call goes to the nodes,
+ * which are ordinary RentalServers with their own storage, over NodeClient
+ * connections and the admin-only NODE command. Clients only talk to the router.
+ *
+ * - Vehicles are partitioned by ID on a ConsistentHashRing of the node addresses.
+ *   The router assigns IDs itself, so it knows the owner of a vehicle before it
+ *   exists; reads of one vehicle go to its owner, lists and searches go to every
+ *   node in parallel and are merged.
+ * - Bookings stay on the node that owned their vehicle when they were made. Their
+ *   IDs carry that node's slot (its position in the node list), see ClusterBookingDAO.
+ * - Users are copied to every node under the same ID, so bookings on any node
+ *   refer to the same user. A node that misses a registration is sent the user
+ *   again on its next login or booking, see repairUser().
+ *
+ * addNode() adds a node and moves the vehicles the grown ring assigns to it.
+ * Moved vehicles are copied first, the ring is switched, and the old copies are
+ * then marked unavailable rather than deleted (bookings on the old node still
+ * refer to them); reads only trust the copy on the current owner. Vehicle writes
+ * and registrations wait while a node is added, reads carry on.
+ *
+ * Every node but the first must start empty: rows already on a node are not
+ * placed by the ring. An existing server is sharded by starting the router with
+ * it as the only node and adding the others.
+ *
+ * There is one router. Membership lives in its memory only: a node added at
+ * runtime must also be appended to CLUSTER_NODES before the router restarts.
+ *
+ * Settings:
+ * - CLUSTER_NODES             node addresses host:port,host:port,... (order matters:
+ *                             it gives each node its slot; append, never reorder)
+ * - CLUSTER_VNODES            points per node on the hash ring (default 64)
+ * - CLUSTER_NODE_CONNECTIONS  connections to each node (default 8)
+ * - CLUSTER_ADMIN_EMAIL / CLUSTER_ADMIN_PASSWORD  admin account the router logs in
+ *                             with on every node (default admin@rental.com / admin123)
+ */
+public class Cluster {
+    /** Slots fit in the low bits of a booking ID */
+    public static final int MAX_NODES = 64;
+    /** Rows per NODE page or write while scanning and rebalancing */
+    static final int PAGE_SIZE = 500;
+
+    /**
+     * One operation on one node, run by fanOut()
+     */
+    public interface NodeCall<T> {
+        T call(NodeClient node) throws IOException;
+    }
+
+    private final int virtualNodes;
+    private final int connectionsPerNode;
+    private final String adminEmail;
+    private final String adminPassword;
+    private volatile Membership membership;
+    private final ExecutorService fanout;
+    // Vehicle writes and registrations hold the read lock, addNode() the write lock
+    private final ReentrantReadWriteLock writes = new ReentrantReadWriteLock();
+    private final Object allocation = new Object();
+    private int nextVehicleId;
+    private final AtomicLong movedVehicles = new AtomicLong();
+    // Registered users that some nodes have not received yet, by user ID
+    private final ConcurrentHashMap<Integer, MissingUser> missingUsers = new ConcurrentHashMap<>();
+
+    /**
+     * Connect to the nodes and start the vehicle ID allocator above the largest ID on any of them
+     * @throws IllegalStateException if CLUSTER_NODES is empty or a node cannot be reached
+     */
+    public static Cluster fromConfig() {
+        List<String> addresses = new ArrayList<>();
+        for (String address : Config.getString("CLUSTER_NODES", "").split(",")) {
+            if (!address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        if (addresses.isEmpty()) {
+            throw new IllegalStateException("STORAGE_BACKEND=cluster needs CLUSTER_NODES=host:port,host:port,...");
+        }
+        Cluster cluster = new Cluster(addresses,
+                Config.getInt("CLUSTER_VNODES", 64),
+                Config.getInt("CLUSTER_NODE_CONNECTIONS", 8),
+                Config.getString("CLUSTER_ADMIN_EMAIL", "admin@rental.com"),
+                Config.getString("CLUSTER_ADMIN_PASSWORD", "admin123"));
+        try {
+            cluster.startAllocator();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start cluster: " + e.getMessage(), e);
+        }
+        Log.info("[CLUSTER] Routing to " + addresses.size() + " nodes " + addresses
+                + ", next vehicle ID " + cluster.nextVehicleId);
+        return cluster;
+    }
+
+    public Cluster(List<String> addresses, int virtualNodes, int connectionsPerNode,
+                   String adminEmail, String adminPassword) {
+        if (addresses.size() > MAX_NODES) {
+            throw new IllegalArgumentException("At most " + MAX_NODES + " nodes");
+        }
+        this.virtualNodes = virtualNodes;
+        this.connectionsPerNode = connectionsPerNode;
+        this.adminEmail = adminEmail;
+        this.adminPassword = adminPassword;
+        List<NodeClient> nodes = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            nodes.add(new NodeClient(address, adminEmail, adminPassword, connectionsPerNode));
+        }
+        this.membership = new Membership(nodes, new ConsistentHashRing(addresses, virtualNodes));
+        this.fanout = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "cluster-fanout-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Nodes in slot order
+     */
+    public List<NodeClient> getNodes() {
+        return membership.nodes;
+    }
+
+    /**
+     * Node in a slot, or null if there is none
+     */
+    public NodeClient getNode(int slot) {
+        List<NodeClient> nodes = membership.nodes;
+        return slot >= 0 && slot < nodes.size() ? nodes.get(slot) : null;
+    }
+
+    /**
+     * Slot of a node, -1 if it is not (or no longer) a member
+     */
+    public int slotOf(NodeClient node) {
+        return membership.nodes.indexOf(node);
+    }
+
+    /**
+     * Node that owns a vehicle
+     */
+    public NodeClient ownerOf(int vehicleId) {
+        return membership.ownerOf(vehicleId);
+    }
+
+    /**
+     * True if the copy of a vehicle read from node is the one to trust
+     * (stale copies stay behind on earlier owners after a rebalance)
+     */
+    public boolean owns(NodeClient node, int vehicleId) {
+        return membership.ownerOf(vehicleId) == node;
+    }
+
+    /**
+     * Run call on every node in parallel
+     */
+    public <T> List<T> fanOut(NodeCall<T> call) throws IOException {
+        return fanOut(membership.nodes, call);
+    }
+
+    /**
+     * Run call on each of nodes in parallel (the last one on the calling thread)
+     * @return results in the order of nodes
+     * @throws IOException the first failure, after every call has finished
+     */
+    public <T> List<T> fanOut(List<NodeClient> nodes, final NodeCall<T> call) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size() - 1; i++) {
+            final NodeClient node = nodes.get(i);
+            futures.add(fanout.submit(new Callable<T>() {
+                @Override
+                public T call() throws IOException {
+                    return call.call(node);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(nodes.size());
+        IOException failure = null;
+        T last = null;
+        if (!nodes.isEmpty()) {
+            try {
+                last = call.call(nodes.get(nodes.size() - 1));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for cluster nodes");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (!nodes.isEmpty()) {
+            results.add(last);
+        }
+        return results;
+    }
+
+    /**
+     * Reserve count consecutive vehicle IDs
+     * @return the first one
+     */
+    public int allocateVehicleIds(int count) {
+        synchronized (allocation) {
+            int first = nextVehicleId;
+            nextVehicleId += count;
+            return first;
+        }
+    }
+
+    /**
+     * Hold off addNode() while vehicles or users are written
+     * Must be paired with endWrite() in a finally block.
+     */
+    public void beginWrite() {
+        writes.readLock().lock();
+    }
+
+    public void endWrite() {
+        writes.readLock().unlock();
+    }
+
+    /**
+     * Remember that a registered user could not be copied to some nodes
+     * They get it from repairUser(). Kept in memory only, like the membership.
+     */
+    void recordMissingUser(User user, List<NodeClient> nodes) {
+        missingUsers.put(user.getId(), new MissingUser(user, nodes));
+        Log.warn("[CLUSTER] User " + user.getId() + " is missing on " + nodes.size()
+                + " nodes; it is sent again on its next login or booking");
+    }
+
+    /**
+     * Send a user again to the nodes its registration did not reach
+     * @param needed node that must have the user, or null if any outcome will do
+     * @return false if needed still lacks the user
+     */
+    boolean repairUser(int userId, NodeClient needed) {
+        MissingUser missing = missingUsers.get(userId);
+        if (missing == null) {
+            return true;
+        }
+        synchronized (missing) {
+            Iterator<NodeClient> it = missing.nodes.iterator();
+            while (it.hasNext()) {
+                NodeClient node = it.next();
+                try {
+                    copyUser(missing.user, node);
+                    it.remove();
+                } catch (IOException e) {
+                    Log.warn("[CLUSTER] User " + userId + " still missing on " + node.getAddress()
+                            + ": " + e.getMessage());
+                }
+            }
+            if (missing.nodes.isEmpty()) {
+                missingUsers.remove(userId, missing);
+                Log.info("[CLUSTER] User " + userId + " is now on every node");
+            }
+            return needed == null || !missing.nodes.contains(needed);
+        }
+    }
+
+    /** Vehicles copied to new nodes since startup */
+    public long getMovedVehicleCount() {
+        return movedVehicles.get();
+    }
+
+    /** Calls to nodes that failed since startup */
+    public long getNodeFailureCount() {
+        long failures = 0;
+        for (NodeClient node : membership.nodes) {
+            failures += node.getFailureCount();
+        }
+        return failures;
+    }
+
+    /**
+     * Add an empty node and move its share of the vehicles to it
+     * Users are copied to it first. If anything fails the ring is left unchanged;
+     * start the node again with empty storage before retrying.
+     * @param address "host:port" of a running RentalServer with no vehicles
+     * @return vehicles moved to the new node
+     * @throws IOException if a node cannot be reached or refuses a write
+     */
+    public int addNode(String address) throws IOException {
+        writes.writeLock().lock();
+        try {
+            Membership current = membership;
+            if (current.ring.getNodes().contains(address)) {
+                throw new IOException("Node " + address + " is already a member");
+            }
+            if (current.nodes.size() >= MAX_NODES) {
+                throw new IOException("The cluster already has " + MAX_NODES + " nodes");
+            }
+            NodeClient added = new NodeClient(address, adminEmail, adminPassword, connectionsPerNode);
+            try {
+                Response info = added.callOk("NODE", "INFO");
+                if (Integer.parseInt(info.get(2)) > 0) {
+                    throw new IOException("Node " + address + " already has vehicles; start it with empty storage");
+                }
+                int users = copyUsers(current.nodes.get(0), added);
+                ConsistentHashRing grown = current.ring.withNode(address);
+                List<List<Integer>> moved = new ArrayList<>(current.nodes.size());
+                int total = 0;
+                for (NodeClient node : current.nodes) {
+                    List<Integer> ids = copyVehicles(node, current.ring, grown, added);
+                    moved.add(ids);
+                    total += ids.size();
+                }
+
+                List<NodeClient> nodes = new ArrayList<>(current.nodes);
+                nodes.add(added);
+                membership = new Membership(nodes, grown);
+                movedVehicles.addAndGet(total);
+
+                // The new owner answers from here on; hide the old copies from listings
+                for (int i = 0; i < current.nodes.size(); i++) {
+                    try {
+                        markUnavailable(current.nodes.get(i), moved.get(i));
+                    } catch (IOException e) {
+                        Log.warn("[CLUSTER] Could not mark moved vehicles on " + current.nodes.get(i).getAddress()
+                                + " (they are ignored anyway): " + e.getMessage());
+                    }
+                }
+                Log.info("[CLUSTER] Added node " + address + " in slot " + (nodes.size() - 1) + ": "
+                        + users + " users copied, " + total + " vehicles moved");
+                return total;
+            } catch (IOException | RuntimeException e) {
+                if (membership.nodes.indexOf(added) < 0) {
+                    added.close();
+                }
+                throw e;
+            }
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+
+    private void startAllocator() throws IOException {
+        List<Response> infos = fanOut(new NodeCall<Response>() {
+            @Override
+            public Response call(NodeClient node) throws IOException {
+                return node.callOk("NODE", "INFO");
+            }
+        });
+        int max = 0;
+        for (Response info : infos) {
+            max = Math.max(max, Integer.parseInt(info.get(3)));
+        }
+        synchronized (allocation) {
+            nextVehicleId = max + 1;
+        }
+    }
+
+    private static int copyUsers(NodeClient from, NodeClient to) throws IOException {
+        int copied = 0;
+        int afterId = 0;
+        while (true) {
+            Response page = from.callOk("NODE", "USER_PAGE", String.valueOf(afterId), String.valueOf(PAGE_SIZE));
+            List<User> users = toUsers(page);
+            for (User user : users) {
+                Response added = to.call("NODE", "ADD_USER", String.valueOf(user.getId()), user.getName(),
+                        user.getEmail(), user.getPassword(), user.getRole());
+                // Refused: the node made the same account itself (its admin)
+                if (added.isOk()) {
+                    copied++;
+                }
+                afterId = user.getId();
+            }
+            if (users.size() < PAGE_SIZE) {
+                return copied;
+            }
+        }
+    }
+
+    private static void copyUser(User user, NodeClient node) throws IOException {
+        Response added = node.call("NODE", "ADD_USER", String.valueOf(user.getId()), user.getName(),
+                user.getEmail(), user.getPassword(), user.getRole());
+        if (added.isOk()) {
+            return;
+        }
+        // Refused: an earlier attempt may have added it and lost the reply
+        List<User> found = toUsers(node.callOk("NODE", "LOGIN", user.getEmail(), user.getPassword()));
+        if (found.isEmpty() || found.get(0).getId() != user.getId()) {
+            throw new IOException("Node " + node.getAddress() + " refused user " + user.getId()
+                    + " (email or ID taken by another user)");
+        }
+    }
+
+    /**
+     * Copy the vehicles node owns under oldRing that grown assigns to added
+     * @return IDs of the copied vehicles
+     */
+    private static List<Integer> copyVehicles(NodeClient node, ConsistentHashRing oldRing,
+                                              ConsistentHashRing grown, NodeClient added) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        int afterId = 0;
+        while (true) {
+            Response page = node.callOk("NODE", "VEHICLE_PAGE", String.valueOf(afterId), String.valueOf(PAGE_SIZE));
+            List<Vehicle> vehicles = toVehicles(page);
+            List<Vehicle> moving = new ArrayList<>();
+            for (Vehicle vehicle : vehicles) {
+                if (oldRing.nodeFor(vehicle.getId()).equals(node.getAddress())
+                        && grown.nodeFor(vehicle.getId()).equals(added.getAddress())) {
+                    moving.add(vehicle);
+                }
+                afterId = vehicle.getId();
+            }
+            if (!moving.isEmpty()) {
+                added.callOk(putVehiclesCommand(moving, DuplicatePolicy.FAIL));
+                for (Vehicle vehicle : moving) {
+                    ids.add(vehicle.getId());
+                }
+            }
+            if (vehicles.size() < PAGE_SIZE) {
+                return ids;
+            }
+        }
+    }
+
+    private static void markUnavailable(NodeClient node, List<Integer> ids) throws IOException {
+        for (int from = 0; from < ids.size(); from += PAGE_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + PAGE_SIZE));
+            String[] command = new String[2 + 2 * chunk.size()];
+            command[0] = "NODE";
+            command[1] = "SET_AVAILABILITY";
+            int i = 2;
+            for (Integer id : chunk) {
+                command[i++] = String.valueOf(id);
+                command[i++] = "false";
+            }
+            node.callOk(command);
+        }
+    }
+
+    /**
+     * NODE|PUT_VEHICLES|policy|id|type|brand|model|regNumber|price|available|...
+     */
+    static String[] putVehiclesCommand(List<Vehicle> vehicles, DuplicatePolicy policy) {
+        String[] command = new String[3 + 7 * vehicles.size()];
+        command[0] = "NODE";
+        command[1] = "PUT_VEHICLES";
+        command[2] = policy.name();
+        int i = 3;
+        for (Vehicle v : vehicles) {
+            command[i++] = String.valueOf(v.getId());
+            command[i++] = v.getType().toUpperCase();
+            command[i++] = v.getBrand();
+            command[i++] = v.getModel();
+            command[i++] = v.getRegNumber();
+            command[i++] = String.valueOf(v.getPricePerDay());
+            command[i++] = String.valueOf(v.isAvailable());
+        }
+        return command;
+    }
+
+    // Replies are OK|NODE|count|record|record|...
+
+    static List<Vehicle> toVehicles(Response response) {
+        int count = Integer.parseInt(response.get(2));
+        List<Vehicle> vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] r = response.getRecord(3 + i);
+            vehicles.add(new Vehicle(Integer.parseInt(r[0]), r[1], r[2], r[3], r[4],
+                    Double.parseDouble(r[5]), Boolean.parseBoolean(r[6])));
+        }
+        return vehicles;
+    }
+
+    static List<User> toUsers(Response response) {
+        int count = Integer.parseInt(response.get(2));
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] r = response.getRecord(3 + i);
+            users.add(new User(Integer.parseInt(r[0]), r[1], r[2], r[3], r[4]));
+        }
+        return users;
+    }
+
+    static List<Booking> toBookings(Response response) {
+        int count = Integer.parseInt(response.get(2));
+        List<Booking> bookings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] r = response.getRecord(3 + i);
+            bookings.add(new Booking(Integer.parseInt(r[0]), Integer.parseInt(r[1]), Integer.parseInt(r[2]),
+                    LocalDate.parse(r[3]), LocalDate.parse(r[4]), Double.parseDouble(r[5]), r[6]));
+        }
+        return bookings;
+    }
+
+    /**
+     * A registered user and the nodes it has not reached yet
+     */
+    private static final class MissingUser {
+        final User user;
+        final List<NodeClient> nodes;
+
+        MissingUser(User user, List<NodeClient> nodes) {
+            this.user = user;
+            this.nodes = new ArrayList<>(nodes);
+        }
+    }
+
+    /**
+     * Nodes and ring, replaced together when a node is added
+     */
+    private static final class Membership {
+        final List<NodeClient> nodes;
+        final ConsistentHashRing ring;
+
+        Membership(List<NodeClient> nodes, ConsistentHashRing ring) {
+            this.nodes = Collections.unmodifiableList(nodes);
+            this.ring = ring;
+        }
+
+        NodeClient ownerOf(int vehicleId) {
+            String address = ring.nodeFor(vehicleId);
+            for (NodeClient node : nodes) {
+                if (node.getAddress().equals(address)) {
+                    return node;
+                }
+            }
+            throw new IllegalStateException("Ring node " + address + " has no client");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+// com/rental/dao/ClusterBookingDAO.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * BookingDAO of a cluster router
+ *
+ * A booking is stored on the node that owns its vehicle when it is made and
+ * stays there when the vehicle moves. The ID clients see is the node's own
+ * booking ID * Cluster.MAX_NODES + the node's slot, so a lookup by ID goes
+ * straight to the right node; lookups by user or vehicle ask every node.
+ */
+public class ClusterBookingDAO implements BookingDAO {
+    private static final Comparator<Booking> NEWEST_FIRST = new Comparator<Booking>() {
+        @Override
+        public int compare(Booking a, Booking b) {
+            int byStart = b.getStartDate().compareTo(a.getStartDate());
+            return byStart != 0 ? byStart : Integer.compare(b.getId(), a.getId());
+        }
+    };
+
+    private final Cluster cluster;
+
+    public ClusterBookingDAO(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public Booking createBooking(Booking booking) {
+        NodeClient owner = cluster.ownerOf(booking.getVehicleId());
+        int slot = cluster.slotOf(owner);
+        if (!cluster.repairUser(booking.getUserId(), owner)) {
+            Log.error("Error creating booking: user " + booking.getUserId() + " is not on " + owner.getAddress() + " yet");
+            return null;
+        }
+        try {
+            // Not retried: a lost reply must not store the booking twice
+            int nodeId = Integer.parseInt(owner.callOnce("NODE", "ADD_BOOKING",
+                    String.valueOf(booking.getUserId()), String.valueOf(booking.getVehicleId()),
+                    String.valueOf(booking.getStartDate()), String.valueOf(booking.getEndDate()),
+                    String.valueOf(booking.getTotalPrice()), booking.getStatus()).get(2));
+            if (nodeId > (Integer.MAX_VALUE - slot) / Cluster.MAX_NODES) {
+                Log.error("Booking ID " + nodeId + " on " + owner.getAddress() + " is too large for a cluster booking ID");
+                return null;
+            }
+            booking.setId(nodeId * Cluster.MAX_NODES + slot);
+            return booking;
+        } catch (IOException | NumberFormatException e) {
+            Log.error("Error creating booking: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public Booking getBookingById(int id) {
+        NodeClient node = cluster.getNode(id % Cluster.MAX_NODES);
+        if (id <= 0 || node == null) {
+            return null;
+        }
+        try {
+            List<Booking> found = Cluster.toBookings(node.callOk("NODE", "BOOKING", String.valueOf(id / Cluster.MAX_NODES)));
+            if (found.isEmpty()) {
+                return null;
+            }
+            Booking booking = found.get(0);
+            booking.setId(id);
+            return booking;
+        } catch (IOException e) {
+            Log.error("Error fetching booking: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<Booking> getBookingsByUser(int userId) {
+        List<Booking> bookings = collect("USER_BOOKINGS", userId);
+        if (bookings == null) {
+            return new ArrayList<>();
+        }
+        Collections.sort(bookings, NEWEST_FIRST);
+        return bookings;
+    }
+
+    @Override
+    public List<Booking> getActiveBookingsByVehicle(int vehicleId) {
+        // Earlier owners of the vehicle may hold some of them, so one unreachable
+        // node makes the calendar incomplete: that is a failure, not a shorter list
+        return collect("VEHICLE_BOOKINGS", vehicleId);
+    }
+
+    @Override
+    public boolean cancelBooking(int bookingId) {
+        NodeClient node = cluster.getNode(bookingId % Cluster.MAX_NODES);
+        if (bookingId <= 0 || node == null) {
+            return false;
+        }
+        try {
+            return node.callOk("NODE", "CANCEL_BOOKING", String.valueOf(bookingId / Cluster.MAX_NODES)).get(2).equals("1");
+        } catch (IOException e) {
+            Log.error("Error cancelling booking: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Ask every node and turn node IDs into cluster IDs
+     * @return the bookings of all nodes, or null if any node failed
+     */
+    private List<Booking> collect(final String operation, final int key) {
+        List<Booking> bookings = new ArrayList<>();
+        try {
+            List<NodeClient> nodes = cluster.getNodes();
+            List<List<Booking>> results = cluster.fanOut(nodes, new Cluster.NodeCall<List<Booking>>() {
+                @Override
+                public List<Booking> call(NodeClient node) throws IOException {
+                    return Cluster.toBookings(node.callOk("NODE", operation, String.valueOf(key)));
+                }
+            });
+            for (int slot = 0; slot < results.size(); slot++) {
+                for (Booking booking : results.get(slot)) {
+                    booking.setId(booking.getId() * Cluster.MAX_NODES + slot);
+                    bookings.add(booking);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Error fetching bookings from the cluster: " + e.getMessage(), e);
+            return null;
+        }
+        return bookings;
+    }
+}
@@ -0,0 +1,101 @@
+// com/rental/dao/ClusterUserDAO.java
+package com.rental.dao;
+
+import com.rental.model.User;
+import com.rental.protocol.Response;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * UserDAO of a cluster router: every node holds every user under the same ID
+ *
+ * Logins are answered by the first node that can be reached. A registration is
+ * made on the first node, which picks the ID, and then copied to the others.
+ * Nodes the copy does not reach get the user again on its next login or
+ * booking (Cluster.repairUser()); until then bookings there fail.
+ */
+public class ClusterUserDAO implements UserDAO {
+    private final Cluster cluster;
+
+    public ClusterUserDAO(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public User login(String email, String password) {
+        List<User> found = findByCredentials(email, password);
+        if (found == null || found.isEmpty()) {
+            return null; // login failed
+        }
+        cluster.repairUser(found.get(0).getId(), null);
+        return found.get(0);
+    }
+
+    @Override
+    public List<User> findByCredentials(String email, String password) {
+        for (NodeClient node : cluster.getNodes()) {
+            try {
+                // A node whose database fails answers ERROR, so it is skipped like an unreachable one
+                return Cluster.toUsers(node.callOk("NODE", "LOGIN", email, password));
+            } catch (IOException e) {
+                Log.warn("Login on " + node.getAddress() + " failed, trying the next node: " + e.getMessage());
+            }
+        }
+        Log.error("Error during login: no cluster node could check the credentials");
+        return null;
+    }
+
+    @Override
+    public User register(final User user) {
+        cluster.beginWrite();
+        try {
+            List<NodeClient> nodes = cluster.getNodes();
+            Response created = nodes.get(0).call("NODE", "ADD_USER", String.valueOf(Math.max(0, user.getId())),
+                    user.getName(), user.getEmail(), user.getPassword(), user.getRole());
+            if (!created.isOk()) {
+                return null; // email taken
+            }
+            user.setId(Integer.parseInt(created.get(2)));
+            // The user exists from here on: a node the copy misses is repaired later, not failed
+            final List<NodeClient> missed = Collections.synchronizedList(new ArrayList<NodeClient>());
+            cluster.fanOut(nodes.subList(1, nodes.size()), new Cluster.NodeCall<Void>() {
+                @Override
+                public Void call(NodeClient node) {
+                    try {
+                        node.callOk("NODE", "ADD_USER", String.valueOf(user.getId()), user.getName(),
+                                user.getEmail(), user.getPassword(), user.getRole());
+                    } catch (IOException e) {
+                        Log.warn("Could not copy user " + user.getId() + " to " + node.getAddress() + ": " + e.getMessage());
+                        missed.add(node);
+                    }
+                    return null;
+                }
+            });
+            if (!missed.isEmpty()) {
+                cluster.recordMissingUser(user, missed);
+            }
+            return user;
+        } catch (IOException e) {
+            // Node 0 could not be reached, so the user was not created
+            Log.error("Error during registration of " + user.getEmail() + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            cluster.endWrite();
+        }
+    }
+
+    @Override
+    public List<User> getUsersPage(int afterId, int limit) {
+        try {
+            return Cluster.toUsers(cluster.getNodes().get(0).callOk("NODE", "USER_PAGE",
+                    String.valueOf(afterId), String.valueOf(limit)));
+        } catch (IOException e) {
+            Log.error("Error fetching user page: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+// com/rental/dao/ClusterVehicleDAO.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+import com.rental.protocol.Response;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VehicleDAO of a cluster router: vehicles are spread over the nodes by ID (see Cluster)
+ *
+ * - Reads of given IDs go to their owners only.
+ * - Lists, pages and searches ask every node in parallel for the same page or
+ *   search and merge the answers (by ID, or by price for searches). Each node
+ *   returns at most limit rows, so a merged page costs nodes * limit rows; a node
+ *   whose page lost rows to stale copies is asked for the rest, so a page cut
+ *   never skips rows that node owns.
+ * - forEach scans merge the nodes' ID-ordered pages as they go, so memory stays
+ *   at one page per node.
+ * - Availability updates and inserts are grouped by owner and sent in parallel.
+ *
+ * Rows from a node that no longer owns the vehicle (left behind by a rebalance)
+ * are dropped everywhere. Writes that span several nodes are not atomic: if one
+ * node fails the others keep their part and -1 is returned.
+ *
+ * reg_number is unique per node only (each node checks its own rows), so inserts
+ * look the batch's reg_numbers up on every node first and apply the duplicate
+ * policy here: an existing reg_number keeps its ID and owner. Inserts through
+ * this router are serialized; two routers importing the same reg_number at the
+ * same time can still place it on two nodes.
+ */
+public class ClusterVehicleDAO implements VehicleDAO {
+    private static final Comparator<Vehicle> BY_ID = new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle a, Vehicle b) {
+            return Integer.compare(a.getId(), b.getId());
+        }
+    };
+    // Same order as a single server's search: price, then ID
+    private static final Comparator<Vehicle> BY_PRICE = new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle a, Vehicle b) {
+            int byPrice = Double.compare(a.getPricePerDay(), b.getPricePerDay());
+            return byPrice != 0 ? byPrice : Integer.compare(a.getId(), b.getId());
+        }
+    };
+
+    private final Cluster cluster;
+    // Held from the reg_number lookup until the rows are written
+    private final Object insertLock = new Object();
+
+    public ClusterVehicleDAO(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesByType(final String type) {
+        final List<Vehicle> all = new ArrayList<>();
+        int visited = forEachAvailableVehicle(type, new VehicleVisitor() {
+            @Override
+            public boolean visit(Vehicle vehicle) {
+                all.add(vehicle);
+                return true;
+            }
+        });
+        return visited < 0 ? null : all;
+    }
+
+    @Override
+    public Vehicle getVehicleById(int id) {
+        List<Vehicle> found = getVehiclesByIds(Collections.singletonList(id));
+        return found == null || found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        final Map<NodeClient, List<Integer>> byOwner = new LinkedHashMap<>();
+        for (Integer id : ids) {
+            NodeClient owner = cluster.ownerOf(id);
+            List<Integer> owned = byOwner.get(owner);
+            if (owned == null) {
+                owned = new ArrayList<>();
+                byOwner.put(owner, owned);
+            }
+            owned.add(id);
+        }
+        try {
+            List<List<Vehicle>> results = cluster.fanOut(new ArrayList<>(byOwner.keySet()), new Cluster.NodeCall<List<Vehicle>>() {
+                @Override
+                public List<Vehicle> call(NodeClient node) throws IOException {
+                    List<Integer> owned = byOwner.get(node);
+                    String[] command = new String[2 + owned.size()];
+                    command[0] = "NODE";
+                    command[1] = "VEHICLES";
+                    for (int i = 0; i < owned.size(); i++) {
+                        command[2 + i] = String.valueOf(owned.get(i));
+                    }
+                    return Cluster.toVehicles(node.callOk(command));
+                }
+            });
+            List<Vehicle> found = new ArrayList<>(ids.size());
+            for (List<Vehicle> result : results) {
+                found.addAll(result);
+            }
+            return found;
+        } catch (IOException e) {
+            Log.error("Error fetching vehicles from the cluster: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        try {
+            return lookUpRegNumbers(regNumbers);
+        } catch (IOException e) {
+            Log.error("Error fetching vehicles by reg_number from the cluster: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Ask every node, since a reg_number may sit on any of them; keeps owned rows only
+     */
+    private List<Vehicle> lookUpRegNumbers(Collection<String> regNumbers) throws IOException {
+        final List<String> command = new ArrayList<>(2 + regNumbers.size());
+        command.add("NODE");
+        command.add("VEHICLES_BY_REG");
+        command.addAll(regNumbers);
+        List<NodeClient> nodes = cluster.getNodes();
+        List<List<Vehicle>> results = cluster.fanOut(nodes, new Cluster.NodeCall<List<Vehicle>>() {
+            @Override
+            public List<Vehicle> call(NodeClient node) throws IOException {
+                return Cluster.toVehicles(node.callOk(command.toArray(new String[0])));
+            }
+        });
+        List<Vehicle> found = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            for (Vehicle vehicle : results.get(i)) {
+                if (cluster.owns(nodes.get(i), vehicle.getId())) {
+                    found.add(vehicle);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+        return updateVehicleAvailability(Collections.singletonMap(vehicleId, available)) > 0;
+    }
+
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        cluster.beginWrite();
+        try {
+            final Map<NodeClient, List<String>> byOwner = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+                NodeClient owner = cluster.ownerOf(change.getKey());
+                List<String> fields = byOwner.get(owner);
+                if (fields == null) {
+                    fields = new ArrayList<>();
+                    fields.add("NODE");
+                    fields.add("SET_AVAILABILITY");
+                    byOwner.put(owner, fields);
+                }
+                fields.add(String.valueOf(change.getKey()));
+                fields.add(String.valueOf(change.getValue()));
+            }
+            List<Integer> counts = cluster.fanOut(new ArrayList<>(byOwner.keySet()), new Cluster.NodeCall<Integer>() {
+                @Override
+                public Integer call(NodeClient node) throws IOException {
+                    List<String> fields = byOwner.get(node);
+                    return Integer.parseInt(node.callOk(fields.toArray(new String[0])).get(2));
+                }
+            });
+            int updated = 0;
+            for (Integer count : counts) {
+                updated += count;
+            }
+            return updated;
+        } catch (IOException e) {
+            Log.error("Error updating availability of " + changes.size() + " vehicles in the cluster: " + e.getMessage(), e);
+            return -1;
+        } finally {
+            cluster.endWrite();
+        }
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        return mergeIdPage(type.toUpperCase(), afterId, limit);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        return mergeIdPage(null, afterId, limit);
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return scan(type.toUpperCase(), visitor);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return scan(null, visitor);
+    }
+
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        String[] command = {
+                "NODE", "SEARCH",
+                query.getType() == null ? "" : query.getType(),
+                query.getBrand() == null ? "" : query.getBrand(),
+                query.getModelPrefix() == null ? "" : query.getModelPrefix(),
+                String.valueOf(query.getMinPrice()),
+                Double.isInfinite(query.getMaxPrice()) ? "" : String.valueOf(query.getMaxPrice()),
+                String.valueOf(query.getLimit()),
+                query.isDescending() ? "DESC" : "ASC" };
+        List<Vehicle> found = mergeSearch(command, query.isDescending() ? Collections.reverseOrder(BY_PRICE) : BY_PRICE,
+                query.getLimit());
+        return found != null ? found : new ArrayList<Vehicle>();
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, final DuplicatePolicy onDuplicate) {
+        if (vehicles.isEmpty()) {
+            return 0;
+        }
+        cluster.beginWrite();
+        try {
+            synchronized (insertLock) {
+                return insertResolved(vehicles, onDuplicate);
+            }
+        } catch (IOException e) {
+            Log.error("Error inserting " + vehicles.size() + " vehicles into the cluster: " + e.getMessage(), e);
+            return -1;
+        } finally {
+            cluster.endWrite();
+        }
+    }
+
+    /**
+     * Apply the duplicate policy against every node, then send each row to its owner
+     */
+    private int insertResolved(List<Vehicle> vehicles, final DuplicatePolicy onDuplicate) throws IOException {
+        List<String> regNumbers = new ArrayList<>(vehicles.size());
+        for (Vehicle v : vehicles) {
+            regNumbers.add(v.getRegNumber());
+        }
+        Map<String, Integer> idByReg = new HashMap<>();
+        for (Vehicle existing : lookUpRegNumbers(regNumbers)) {
+            idByReg.put(existing.getRegNumber(), existing.getId());
+        }
+        if (onDuplicate == DuplicatePolicy.FAIL && !idByReg.isEmpty()) {
+            Log.warn("Rejected " + vehicles.size() + " vehicles: reg_number " + idByReg.keySet().iterator().next()
+                    + " already exists in the cluster");
+            return -1;
+        }
+        int skipped = 0;
+        int fresh = 0;
+        for (Vehicle v : vehicles) {
+            if (!idByReg.containsKey(v.getRegNumber())) {
+                fresh++;
+            }
+        }
+        // IDs are chosen here so each row can go straight to its owner; a
+        // reg_number repeated within the batch reuses the ID given to its first row
+        int nextId = fresh > 0 ? cluster.allocateVehicleIds(fresh) : 0;
+        final Map<NodeClient, List<Vehicle>> byOwner = new LinkedHashMap<>();
+        for (Vehicle v : vehicles) {
+            Integer id = idByReg.get(v.getRegNumber());
+            if (id == null) {
+                id = nextId++;
+                idByReg.put(v.getRegNumber(), id);
+            } else if (onDuplicate == DuplicatePolicy.SKIP) {
+                skipped++;
+                continue;
+            }
+            Vehicle row = new Vehicle(id, v.getType(), v.getBrand(), v.getModel(),
+                    v.getRegNumber(), v.getPricePerDay(), v.isAvailable());
+            NodeClient owner = cluster.ownerOf(row.getId());
+            List<Vehicle> owned = byOwner.get(owner);
+            if (owned == null) {
+                owned = new ArrayList<>();
+                byOwner.put(owner, owned);
+            }
+            owned.add(row);
+        }
+        if (skipped > 0) {
+            Log.info("Skipped " + skipped + " vehicles whose reg_number already exists in the cluster");
+        }
+        List<Integer> counts = cluster.fanOut(new ArrayList<>(byOwner.keySet()), new Cluster.NodeCall<Integer>() {
+            @Override
+            public Integer call(NodeClient node) throws IOException {
+                Response written = node.callOk(Cluster.putVehiclesCommand(byOwner.get(node), onDuplicate));
+                return Integer.parseInt(written.get(2));
+            }
+        });
+        int written = 0;
+        for (Integer count : counts) {
+            written += count;
+        }
+        return written;
+    }
+
+    /**
+     * One page in ID order: each node contributes its first limit owned rows after
+     * afterId, so the first limit of the merge are exact even when stale copies
+     * (dropped by the owns() filter) thin a node's page
+     * @param type available vehicles of this type, or null for every vehicle
+     * @return the page, or null if a node could not be asked
+     */
+    private List<Vehicle> mergeIdPage(final String type, final int afterId, final int limit) {
+        try {
+            List<List<Vehicle>> pages = cluster.fanOut(cluster.getNodes(), new Cluster.NodeCall<List<Vehicle>>() {
+                @Override
+                public List<Vehicle> call(NodeClient node) throws IOException {
+                    return ownedPage(node, type, afterId, limit);
+                }
+            });
+            List<Vehicle> merged = new ArrayList<>();
+            for (List<Vehicle> page : pages) {
+                merged.addAll(page);
+            }
+            Collections.sort(merged, BY_ID);
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        } catch (IOException e) {
+            Log.error("Error fetching vehicles from the cluster: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Up to limit vehicles node owns after afterId, asking again past any stale rows
+     */
+    private List<Vehicle> ownedPage(NodeClient node, String type, int afterId, int limit) throws IOException {
+        List<Vehicle> owned = new ArrayList<>();
+        while (true) {
+            String after = String.valueOf(afterId);
+            String size = String.valueOf(limit);
+            List<Vehicle> page = Cluster.toVehicles(type == null
+                    ? node.callOk("NODE", "VEHICLE_PAGE", after, size)
+                    : node.callOk("NODE", "AVAILABLE_PAGE", type, after, size));
+            for (Vehicle vehicle : page) {
+                if (cluster.owns(node, vehicle.getId())) {
+                    owned.add(vehicle);
+                    if (owned.size() == limit) {
+                        return owned;
+                    }
+                }
+                afterId = vehicle.getId();
+            }
+            if (page.size() < limit) {
+                return owned;
+            }
+        }
+    }
+
+    /**
+     * Send the same search to every node and keep the first limit owned rows in order
+     * @return the page, or null if a node could not be asked
+     */
+    private List<Vehicle> mergeSearch(final String[] command, Comparator<Vehicle> order, int limit) {
+        try {
+            List<NodeClient> nodes = cluster.getNodes();
+            List<List<Vehicle>> pages = cluster.fanOut(nodes, new Cluster.NodeCall<List<Vehicle>>() {
+                @Override
+                public List<Vehicle> call(NodeClient node) throws IOException {
+                    return Cluster.toVehicles(node.callOk(command));
+                }
+            });
+            List<Vehicle> merged = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                for (Vehicle vehicle : pages.get(i)) {
+                    if (cluster.owns(nodes.get(i), vehicle.getId())) {
+                        merged.add(vehicle);
+                    }
+                }
+            }
+            Collections.sort(merged, order);
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        } catch (IOException e) {
+            Log.error("Error fetching vehicles from the cluster: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Visit vehicles of all nodes in ID order, one page per node in memory
+     * @param type available vehicles of this type, or null for every vehicle
+     */
+    private int scan(String type, VehicleVisitor visitor) {
+        List<NodeClient> nodes = cluster.getNodes();
+        List<Cursor> cursors = new ArrayList<>(nodes.size());
+        for (NodeClient node : nodes) {
+            cursors.add(new Cursor(node, type));
+        }
+        int visited = 0;
+        try {
+            while (true) {
+                Cursor lowest = null;
+                for (Cursor cursor : cursors) {
+                    Vehicle head = cursor.peek();
+                    if (head != null && (lowest == null || head.getId() < lowest.peek().getId())) {
+                        lowest = cursor;
+                    }
+                }
+                if (lowest == null) {
+                    return visited;
+                }
+                Vehicle vehicle = lowest.next();
+                if (!cluster.owns(lowest.node, vehicle.getId())) {
+                    continue;
+                }
+                visited++;
+                if (!visitor.visit(vehicle)) {
+                    return visited;
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Error streaming vehicles from the cluster: " + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Position in one node's ID-ordered vehicles, fetched a page at a time
+     */
+    private static final class Cursor {
+        final NodeClient node;
+        final String type;
+        List<Vehicle> page = new ArrayList<>();
+        int position;
+        int afterId;
+        boolean exhausted;
+
+        Cursor(NodeClient node, String type) {
+            this.node = node;
+            this.type = type;
+        }
+
+        Vehicle peek() throws IOException {
+            if (position == page.size() && !exhausted) {
+                String after = String.valueOf(afterId);
+                String limit = String.valueOf(Cluster.PAGE_SIZE);
+                Response response = type == null
+                        ? node.callOk("NODE", "VEHICLE_PAGE", after, limit)
+                        : node.callOk("NODE", "AVAILABLE_PAGE", type, after, limit);
+                page = Cluster.toVehicles(response);
+                position = 0;
+                exhausted = page.size() < Cluster.PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            }
+            return position < page.size() ? page.get(position) : null;
+        }
+
+        Vehicle next() throws IOException {
+            Vehicle head = peek();
+            position++;
+            return head;
+        }
+    }
+}
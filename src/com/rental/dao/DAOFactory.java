@@ -0,0 +1,254 @@
+// com/rental/dao/DAOFactory.java
+package com.rental.dao;
+
+import com.rental.util.Config;
+import com.rental.util.Log;
+import com.rental.util.Metrics;
+
+/**
+ * Provides the DAO instances shared by all client connections
+ * DAOs are stateless or thread-safe, so one instance each is enough.
+ * Database-backed calls are timed through Metrics.timed (below the vehicle cache,
+ * so cache hits don't count as queries).
+ *
+ * Settings:
+ * - STORAGE_BACKEND            "postgres" (default, via DBUtil), "local" for the
+ *                              embedded LocalStore, which needs no database, or
+ *                              "cluster" to route to other servers (see Cluster)
+ * - VEHICLE_CACHE_ENABLED      cache available vehicles per type (default true)
+ * - VEHICLE_CACHE_TTL_MS       max age of a cached type (default 30000)
+ * - VEHICLE_CACHE_MAX_ENTRIES  max number of cached types (default 16)
+ * - VEHICLE_INDEX_ENABLED      serve SEARCH_VEHICLES from in-memory indexes (default true;
+ *                              false for a cluster router, whose nodes search their own)
+ * - VEHICLE_INDEX_REFRESH_MS   how often the indexed catalog is reloaded (default 60000)
+ * - AVAILABILITY_FLUSH_MS      how often queued availability changes are written (default 200)
+ * - AVAILABILITY_MAX_PENDING   write early once this many vehicles are queued (default 5000)
+ * - WATCH_MAX_PENDING          changed vehicles buffered per WATCH subscription before
+ *                              the subscriber is told to resync (default 1000)
+ */
+public class DAOFactory {
+    private static final String BACKEND = Config.getString("STORAGE_BACKEND", "postgres");
+    private static final LocalStore LOCAL_STORE = openLocalStore();
+    private static final Cluster CLUSTER = openCluster();
+    private static final UserDAO USER_DAO = Metrics.timed(UserDAO.class,
+            LOCAL_STORE != null ? new LocalUserDAO(LOCAL_STORE)
+                    : CLUSTER != null ? new ClusterUserDAO(CLUSTER) : new UserDAOImpl());
+    private static VehicleEvents vehicleEvents;
+    private static final VehicleDAO VEHICLE_DAO = createVehicleDAO();
+    private static final BookingDAO BOOKING_DAO = Metrics.timed(BookingDAO.class,
+            LOCAL_STORE != null ? new LocalBookingDAO(LOCAL_STORE)
+                    : CLUSTER != null ? new ClusterBookingDAO(CLUSTER) : new BookingDAOImpl());
+    private static AvailabilityWriter availabilityWriter;
+
+    private DAOFactory() {}
+
+    public static UserDAO getUserDAO() {
+        return USER_DAO;
+    }
+
+    public static VehicleDAO getVehicleDAO() {
+        return VEHICLE_DAO;
+    }
+
+    public static BookingDAO getBookingDAO() {
+        return BOOKING_DAO;
+    }
+
+    /**
+     * Availability changes written through getVehicleDAO(), for WATCH subscribers
+     */
+    public static VehicleEvents getVehicleEvents() {
+        return vehicleEvents;
+    }
+
+    /**
+     * @return the cluster this server routes to if STORAGE_BACKEND=cluster, otherwise null
+     */
+    public static Cluster getCluster() {
+        return CLUSTER;
+    }
+
+    /**
+     * Shared write-behind queue for availability changes, started on first use
+     * Writes through getVehicleDAO() so the vehicle cache and search index follow.
+     */
+    public static synchronized AvailabilityWriter getAvailabilityWriter() {
+        if (availabilityWriter == null) {
+            availabilityWriter = createAvailabilityWriter();
+        }
+        return availabilityWriter;
+    }
+
+    /**
+     * @return the embedded store if STORAGE_BACKEND=local, otherwise null
+     */
+    private static LocalStore openLocalStore() {
+        if (!BACKEND.equalsIgnoreCase("local")) {
+            if (!BACKEND.equalsIgnoreCase("postgres") && !BACKEND.equalsIgnoreCase("cluster")) {
+                Log.warn("Unknown STORAGE_BACKEND '" + BACKEND + "', using postgres");
+            }
+            return null;
+        }
+        final LocalStore store = LocalStore.getInstance();
+        Metrics.registerGauge("rental_local_store_log_bytes", "Bytes in the local store log since the last snapshot", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return store.getLogBytes();
+            }
+        });
+        Metrics.registerGauge("rental_local_store_snapshots", "Local store snapshots written since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return store.getSnapshotCount();
+            }
+        });
+        return store;
+    }
+
+    /**
+     * @return the cluster if STORAGE_BACKEND=cluster, otherwise null
+     */
+    private static Cluster openCluster() {
+        if (!BACKEND.equalsIgnoreCase("cluster")) {
+            return null;
+        }
+        final Cluster cluster = Cluster.fromConfig();
+        Metrics.registerGauge("rental_cluster_nodes", "Nodes the cluster router routes to", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cluster.getNodes().size();
+            }
+        });
+        Metrics.registerGauge("rental_cluster_node_failures", "Calls to cluster nodes that failed since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cluster.getNodeFailureCount();
+            }
+        });
+        Metrics.registerGauge("rental_cluster_moved_vehicles", "Vehicles moved to added cluster nodes since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cluster.getMovedVehicleCount();
+            }
+        });
+        return cluster;
+    }
+
+    private static VehicleDAO createVehicleDAO() {
+        VehicleDAO dao = createCachedDAO();
+        // Events look vehicles up through the cache and index, not the database
+        vehicleEvents = createVehicleEvents(dao);
+        return new PublishingVehicleDAO(dao, vehicleEvents);
+    }
+
+    private static VehicleEvents createVehicleEvents(VehicleDAO lookup) {
+        final VehicleEvents events = new VehicleEvents(lookup, Config.getInt("WATCH_MAX_PENDING", 1000));
+        Metrics.registerGauge("rental_watch_subscriptions", "Active WATCH subscriptions", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return events.getSubscriptionCount();
+            }
+        });
+        Metrics.registerGauge("rental_watch_events_published", "Availability changes queued for WATCH subscribers since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return events.getPublishedCount();
+            }
+        });
+        Metrics.registerGauge("rental_watch_resyncs", "WATCH subscribers told to resync since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return events.getResyncCount();
+            }
+        });
+        return events;
+    }
+
+    private static VehicleDAO createCachedDAO() {
+        VehicleDAO dao = Metrics.timed(VehicleDAO.class,
+                LOCAL_STORE != null ? new LocalVehicleDAO(LOCAL_STORE)
+                        : CLUSTER != null ? new ClusterVehicleDAO(CLUSTER) : new VehicleDAOImpl());
+        if (Config.getBoolean("VEHICLE_INDEX_ENABLED", CLUSTER == null)) {
+            dao = createIndexedDAO(dao);
+        }
+        if (!Config.getBoolean("VEHICLE_CACHE_ENABLED", true)) {
+            return dao;
+        }
+        final CachingVehicleDAO cache = new CachingVehicleDAO(dao,
+                Config.getLong("VEHICLE_CACHE_TTL_MS", 30000),
+                Config.getInt("VEHICLE_CACHE_MAX_ENTRIES", 16));
+        Metrics.registerGauge("rental_vehicle_cache_hits", "Vehicle cache hits since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getHitCount();
+            }
+        });
+        Metrics.registerGauge("rental_vehicle_cache_misses", "Vehicle cache misses since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getMissCount();
+            }
+        });
+        Metrics.registerGauge("rental_vehicle_cache_evictions", "Vehicle cache evictions since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getEvictionCount();
+            }
+        });
+        Metrics.registerGauge("rental_vehicle_cache_entries", "Vehicle types currently cached", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getEntryCount();
+            }
+        });
+        return cache;
+    }
+
+    private static VehicleDAO createIndexedDAO(VehicleDAO dao) {
+        final IndexedVehicleDAO indexed = new IndexedVehicleDAO(dao, Config.getLong("VEHICLE_INDEX_REFRESH_MS", 60000));
+        Metrics.registerGauge("rental_vehicle_index_size", "Vehicles in the search index", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return indexed.getIndexedCount();
+            }
+        });
+        Metrics.registerGauge("rental_vehicle_index_rebuilds", "Search index reloads since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return indexed.getRebuildCount();
+            }
+        });
+        return indexed;
+    }
+
+    private static AvailabilityWriter createAvailabilityWriter() {
+        final AvailabilityWriter writer = new AvailabilityWriter(VEHICLE_DAO,
+                Config.getLong("AVAILABILITY_FLUSH_MS", 200),
+                Config.getInt("AVAILABILITY_MAX_PENDING", 5000));
+        Metrics.registerGauge("rental_availability_pending", "Availability changes waiting to be written", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return writer.getPendingCount();
+            }
+        });
+        Metrics.registerGauge("rental_availability_coalesced", "Availability changes merged into a pending one since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return writer.getCoalescedCount();
+            }
+        });
+        Metrics.registerGauge("rental_availability_batches", "Availability batches written since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return writer.getBatchCount();
+            }
+        });
+        Metrics.registerGauge("rental_availability_failures", "Availability batches that failed since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return writer.getFailureCount();
+            }
+        });
+        return writer;
+    }
+}
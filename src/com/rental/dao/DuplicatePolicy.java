@@ -0,0 +1,14 @@
+// com/rental/dao/DuplicatePolicy.java
+package com.rental.dao;
+
+/**
+ * What a bulk vehicle insert does with a reg_number that already exists
+ */
+public enum DuplicatePolicy {
+    /** Keep the existing vehicle and drop the new row */
+    SKIP,
+    /** Overwrite type, brand, model and price of the existing vehicle; its availability is kept */
+    UPDATE,
+    /** Reject the whole batch */
+    FAIL
+}
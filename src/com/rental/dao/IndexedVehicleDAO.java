@@ -0,0 +1,495 @@
+// com/rental/dao/IndexedVehicleDAO.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+import com.rental.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * VehicleDAO decorator that answers searchAvailableVehicles() from in-memory indexes
+ *
+ * The whole catalog (available or not) is loaded on the first search and then
+ * reloaded in the background every refreshMillis. Per snapshot:
+ * - every vehicle in one array sorted by (price, id), so a price range is two
+ *   binary searches and results come out already sorted
+ * - hash indexes type -> positions and brand -> positions
+ * - a sorted model -> positions map for prefix lookups
+ * Positions are kept in ascending order, so any posting list is also price-sorted.
+ *
+ * updateVehicleAvailability() flips the vehicle in the current snapshot right away;
+ * a bulk insert, or a vehicle that getVehicleById() finds different from the
+ * snapshot, triggers a reload. Lookups may come from a lagging replica, so they
+ * only ever trigger a reload (which reads the primary), never patch the snapshot.
+ * If the catalog cannot be loaded, searches go to the database.
+ *
+ * Other methods pass straight through to the delegate.
+ */
+public class IndexedVehicleDAO implements VehicleDAO {
+    private static final Comparator<Vehicle> BY_PRICE = new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle a, Vehicle b) {
+            int byPrice = Double.compare(a.getPricePerDay(), b.getPricePerDay());
+            return byPrice != 0 ? byPrice : Integer.compare(a.getId(), b.getId());
+        }
+    };
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final VehicleDAO delegate;
+    private final ScheduledExecutorService refresher;
+
+    // Replaced as a whole on reload; availability is patched in place
+    private volatile Index index;
+    // Availability changes made while a reload was running, re-applied to its result; guarded by "this"
+    private Map<Integer, Boolean> changedDuringLoad;
+    private boolean loading;
+    // At most one queued background reload
+    private volatile boolean reloadQueued;
+
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * @param delegate DAO that talks to the database
+     * @param refreshMillis how often the catalog is reloaded once it has been loaded
+     */
+    public IndexedVehicleDAO(VehicleDAO delegate, long refreshMillis) {
+        this.delegate = delegate;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "vehicle-index-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, refreshMillis);
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // Only keep reloading once something actually searched
+                if (index != null) {
+                    reload(false);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        Index current = index;
+        if (current == null) {
+            current = reload(true);
+            if (current == null) {
+                return delegate.searchAvailableVehicles(query);
+            }
+        }
+        return current.search(query);
+    }
+
+    @Override
+    public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+        boolean updated = delegate.updateVehicleAvailability(vehicleId, available);
+        if (updated) {
+            setAvailable(vehicleId, available);
+        }
+        return updated;
+    }
+
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        int updated = delegate.updateVehicleAvailability(changes);
+        if (updated > 0) {
+            for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+                setAvailable(change.getKey(), change.getValue());
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public Vehicle getVehicleById(int id) {
+        Vehicle vehicle = delegate.getVehicleById(id);
+        if (vehicle != null) {
+            Index current = index;
+            Vehicle indexed = current == null ? null : current.get(id);
+            if (current != null && (indexed == null || !sameIndexedFields(indexed, vehicle)
+                    || indexed.isAvailable() != vehicle.isAvailable())) {
+                requestReload();
+            }
+        }
+        return vehicle;
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        return delegate.getVehiclesByRegNumbers(regNumbers);
+    }
+
+    /**
+     * Served from the index once it is loaded; only IDs it doesn't know go to the delegate
+     */
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        Index current = index;
+        if (current == null) {
+            return delegate.getVehiclesByIds(ids);
+        }
+        List<Vehicle> found = new ArrayList<>(ids.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            Vehicle vehicle = current.get(id);
+            if (vehicle != null) {
+                found.add(vehicle);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Vehicle> loaded = delegate.getVehiclesByIds(missing);
+            if (loaded == null) {
+                return null;
+            }
+            found.addAll(loaded);
+        }
+        return found;
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesByType(String type) {
+        return delegate.getAvailableVehiclesByType(type);
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        return delegate.getAvailableVehiclesPage(type, afterId, limit);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        return delegate.getVehiclesPage(afterId, limit);
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return delegate.forEachAvailableVehicle(type, visitor);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return delegate.forEachVehicle(visitor);
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+        int written = delegate.insertVehicles(vehicles, onDuplicate);
+        if (written > 0 && index != null) {
+            requestReload();
+        }
+        return written;
+    }
+
+    /**
+     * Vehicles in the current snapshot (0 before the first search)
+     */
+    public int getIndexedCount() {
+        Index current = index;
+        return current == null ? 0 : current.size();
+    }
+
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+
+    /**
+     * Load the catalog and publish a new snapshot
+     * @param onlyIfMissing skip loading if another thread published a snapshot meanwhile
+     * @return the new snapshot, or null if loading failed (the old one stays in use)
+     */
+    private Index reload(boolean onlyIfMissing) {
+        synchronized (this) {
+            if (loading || (onlyIfMissing && index != null)) {
+                // Another thread is loading or just loaded; use whatever is there
+                return index;
+            }
+            loading = true;
+            changedDuringLoad = new HashMap<>();
+        }
+
+        final List<Vehicle> vehicles = new ArrayList<>();
+        int count = delegate.forEachVehicle(new VehicleVisitor() {
+            @Override
+            public boolean visit(Vehicle vehicle) {
+                vehicles.add(vehicle);
+                return true;
+            }
+        });
+
+        synchronized (this) {
+            loading = false;
+            Map<Integer, Boolean> changes = changedDuringLoad;
+            changedDuringLoad = null;
+            if (count < 0) {
+                Log.warn("[INDEX] Could not load vehicle catalog; searches use the database");
+                return index;
+            }
+            Index built = new Index(vehicles);
+            // The scan may have read a row before an update that has already been applied
+            for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+                built.setAvailable(change.getKey(), change.getValue());
+            }
+            index = built;
+            rebuilds.incrementAndGet();
+            Log.debug("[INDEX] Indexed " + built.size() + " vehicles");
+            return built;
+        }
+    }
+
+    private void requestReload() {
+        if (reloadQueued) {
+            return;
+        }
+        reloadQueued = true;
+        refresher.execute(new Runnable() {
+            @Override
+            public void run() {
+                reloadQueued = false;
+                reload(false);
+            }
+        });
+    }
+
+    private synchronized void setAvailable(int vehicleId, boolean available) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.put(vehicleId, available);
+        }
+        Index current = index;
+        if (current != null && !current.setAvailable(vehicleId, available)) {
+            // Not in the snapshot yet (added after the last load)
+            requestReload();
+        }
+    }
+
+    private static boolean sameIndexedFields(Vehicle a, Vehicle b) {
+        return Double.compare(a.getPricePerDay(), b.getPricePerDay()) == 0
+                && equalsIgnoreCase(a.getType(), b.getType())
+                && equalsIgnoreCase(a.getBrand(), b.getBrand())
+                && equalsIgnoreCase(a.getModel(), b.getModel());
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b) {
+        return a == null ? b == null : a.equalsIgnoreCase(b);
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.toUpperCase();
+    }
+
+    /**
+     * One immutable snapshot of the catalog and its indexes
+     * Only the vehicle objects in byPrice are replaced when availability changes
+     */
+    private static final class Index {
+        final AtomicReferenceArray<Vehicle> byPrice;
+        final double[] prices;
+        final Map<Integer, Integer> positionById;
+        final Map<String, int[]> byType;
+        final Map<String, int[]> byBrand;
+        final TreeMap<String, int[]> byModel;
+
+        Index(List<Vehicle> vehicles) {
+            Vehicle[] sorted = vehicles.toArray(new Vehicle[0]);
+            Arrays.sort(sorted, BY_PRICE);
+            byPrice = new AtomicReferenceArray<>(sorted);
+            prices = new double[sorted.length];
+            positionById = new HashMap<>(sorted.length * 2);
+
+            Map<String, List<Integer>> types = new HashMap<>();
+            Map<String, List<Integer>> brands = new HashMap<>();
+            Map<String, List<Integer>> models = new TreeMap<>();
+            for (int i = 0; i < sorted.length; i++) {
+                Vehicle v = sorted[i];
+                prices[i] = v.getPricePerDay();
+                positionById.put(v.getId(), i);
+                post(types, key(v.getType()), i);
+                post(brands, key(v.getBrand()), i);
+                post(models, key(v.getModel()), i);
+            }
+            byType = toArrays(types, new HashMap<String, int[]>());
+            byBrand = toArrays(brands, new HashMap<String, int[]>());
+            byModel = toArrays(models, new TreeMap<String, int[]>());
+        }
+
+        int size() {
+            return prices.length;
+        }
+
+        Vehicle get(int id) {
+            Integer position = positionById.get(id);
+            return position == null ? null : byPrice.get(position);
+        }
+
+        /**
+         * @return false if the vehicle is not in this snapshot
+         */
+        boolean setAvailable(int id, boolean available) {
+            Integer position = positionById.get(id);
+            if (position == null) {
+                return false;
+            }
+            Vehicle old = byPrice.get(position);
+            if (old.isAvailable() != available) {
+                // Copy: the old object may already have been handed to a caller
+                byPrice.set(position, new Vehicle(old.getId(), old.getType(), old.getBrand(), old.getModel(),
+                        old.getRegNumber(), old.getPricePerDay(), available));
+            }
+            return true;
+        }
+
+        List<Vehicle> search(VehicleQuery query) {
+            int from = lowerBound(query.getMinPrice());
+            int to = upperBound(query.getMaxPrice());
+            int limit = query.getLimit();
+            List<Vehicle> result = new ArrayList<>(Math.min(limit, 64));
+            if (from >= to || limit <= 0) {
+                return result;
+            }
+
+            // Walk the most selective index; the other filters are checked per vehicle
+            int[] positions = null;
+            if (query.getBrand() != null) {
+                positions = postings(byBrand, key(query.getBrand()));
+            } else if (query.getModelPrefix() != null) {
+                positions = modelPrefixPostings(key(query.getModelPrefix()));
+            } else if (query.getType() != null) {
+                positions = postings(byType, key(query.getType()));
+            }
+
+            if (positions == null) {
+                if (query.isDescending()) {
+                    for (int i = to - 1; i >= from && result.size() < limit; i--) {
+                        collect(byPrice.get(i), query, result);
+                    }
+                } else {
+                    for (int i = from; i < to && result.size() < limit; i++) {
+                        collect(byPrice.get(i), query, result);
+                    }
+                }
+                return result;
+            }
+
+            // Narrow the posting list to the price range
+            int start = ceilingIndex(positions, from);
+            int end = ceilingIndex(positions, to);
+            if (query.isDescending()) {
+                for (int i = end - 1; i >= start && result.size() < limit; i--) {
+                    collect(byPrice.get(positions[i]), query, result);
+                }
+            } else {
+                for (int i = start; i < end && result.size() < limit; i++) {
+                    collect(byPrice.get(positions[i]), query, result);
+                }
+            }
+            return result;
+        }
+
+        private static void collect(Vehicle vehicle, VehicleQuery query, List<Vehicle> result) {
+            if (vehicle.isAvailable() && query.matches(vehicle)) {
+                result.add(vehicle);
+            }
+        }
+
+        private int[] modelPrefixPostings(String prefix) {
+            Collection<int[]> matches = byModel.subMap(prefix, prefix + Character.MAX_VALUE).values();
+            if (matches.size() == 1) {
+                return matches.iterator().next();
+            }
+            int total = 0;
+            for (int[] list : matches) {
+                total += list.length;
+            }
+            int[] merged = new int[total];
+            int offset = 0;
+            for (int[] list : matches) {
+                System.arraycopy(list, 0, merged, offset, list.length);
+                offset += list.length;
+            }
+            Arrays.sort(merged);
+            return merged;
+        }
+
+        /** First position with price >= min */
+        private int lowerBound(double min) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] < min) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** First position with price > max */
+        private int upperBound(double max) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] <= max) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** First index in sorted positions whose value is >= position */
+        private static int ceilingIndex(int[] positions, int position) {
+            int found = Arrays.binarySearch(positions, position);
+            return found >= 0 ? found : -found - 1;
+        }
+
+        private static int[] postings(Map<String, int[]> index, String key) {
+            int[] positions = index.get(key);
+            return positions == null ? NO_POSITIONS : positions;
+        }
+
+        private static void post(Map<String, List<Integer>> index, String key, int position) {
+            List<Integer> positions = index.get(key);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                index.put(key, positions);
+            }
+            positions.add(position);
+        }
+
+        private static <M extends Map<String, int[]>> M toArrays(Map<String, List<Integer>> lists, M target) {
+            for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+                List<Integer> positions = entry.getValue();
+                int[] array = new int[positions.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = positions.get(i);
+                }
+                target.put(entry.getKey(), array);
+            }
+            return target;
+        }
+    }
+}
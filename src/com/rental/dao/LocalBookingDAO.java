@@ -0,0 +1,55 @@
+// com/rental/dao/LocalBookingDAO.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * BookingDAO over the embedded LocalStore (STORAGE_BACKEND=local)
+ * Returned bookings are copies, so callers may change them freely.
+ */
+public class LocalBookingDAO implements BookingDAO {
+    private final LocalStore store;
+
+    public LocalBookingDAO(LocalStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Booking createBooking(Booking booking) {
+        try {
+            return store.addBooking(booking);
+        } catch (IOException e) {
+            Log.error("Error creating booking: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public Booking getBookingById(int id) {
+        return store.getBooking(id);
+    }
+
+    @Override
+    public List<Booking> getBookingsByUser(int userId) {
+        return store.getBookingsByUser(userId);
+    }
+
+    @Override
+    public List<Booking> getActiveBookingsByVehicle(int vehicleId) {
+        return store.getBookingsByVehicle(vehicleId, "BOOKED");
+    }
+
+    @Override
+    public boolean cancelBooking(int bookingId) {
+        try {
+            return store.updateBookingStatus(bookingId, "BOOKED", "CANCELLED");
+        } catch (IOException e) {
+            Log.error("Error cancelling booking: " + e.getMessage(), e);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,973 @@
+// com/rental/dao/LocalStore.java
+package com.rental.dao;
+
+import com.rental.model.Booking;
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.util.Config;
+import com.rental.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Embedded storage for vehicles, users and bookings (STORAGE_BACKEND=local)
+ *
+ * For servers without a database, e.g. at edge depots. All data is held in
+ * memory, so reads take a read lock and a map lookup. Every change is first
+ * appended to a write-ahead log, a memory-mapped file (store.log), and only
+ * then applied in memory; the record is decoded by the same code that replays
+ * it at startup, so a restart rebuilds exactly what was served. From time to
+ * time, and whenever the log is full, the whole state is written to a
+ * compacted snapshot (store.snapshot, replaced atomically) and the log starts
+ * over under a new generation number.
+ *
+ * Crash recovery: the snapshot is loaded and the log records of its generation
+ * replayed. Each record carries a CRC over the generation and its bytes, so a
+ * record torn by a crash, or left over from an older generation, ends the replay.
+ *
+ * Settings:
+ * - LOCAL_STORAGE_DIR          directory of the files (default "data"); one server per directory
+ * - LOCAL_STORAGE_LOG_MB       size of the mapped log (default 64)
+ * - LOCAL_STORAGE_SYNC_MS      0 = msync after every write, so an acknowledged write
+ *                              survives power loss (default); otherwise msync this often.
+ *                              A crash of the JVM alone never loses written records.
+ * - LOCAL_STORAGE_SNAPSHOT_MS  how often a non-empty log is compacted (default 60000)
+ * - LOCAL_ADMIN_EMAIL / LOCAL_ADMIN_PASSWORD  admin account created in a new store
+ *                              (default admin@rental.com / admin123, as supabase_setup.sql)
+ */
+public class LocalStore {
+    private static final int LOG_MAGIC = 0x524C4F47;      // "RLOG"
+    private static final int SNAPSHOT_MAGIC = 0x52534E50; // "RSNP"
+    private static final int FORMAT_VERSION = 1;
+    // magic, version, generation
+    private static final int LOG_HEADER_SIZE = 16;
+    // length, crc
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte VEHICLES = 1;
+    private static final byte AVAILABILITY = 2;
+    private static final byte USER = 3;
+    private static final byte BOOKING = 4;
+
+    private static final Comparator<Vehicle> BY_PRICE = new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle a, Vehicle b) {
+            int byPrice = Double.compare(a.getPricePerDay(), b.getPricePerDay());
+            return byPrice != 0 ? byPrice : Integer.compare(a.getId(), b.getId());
+        }
+    };
+
+    private static LocalStore instance;
+
+    // In-memory state: written under lock's write lock by apply(), read under its read lock.
+    // Vehicle objects are replaced, never changed, so they can be handed out directly.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Vehicle> vehicles = new TreeMap<>();
+    private final Map<String, TreeMap<Integer, Vehicle>> availableByType = new HashMap<>();
+    private final Map<String, Integer> vehicleIdByReg = new HashMap<>();
+    private final TreeMap<Integer, User> users = new TreeMap<>();
+    private final Map<String, User> usersByEmail = new HashMap<>();
+    private final TreeMap<Integer, Booking> bookings = new TreeMap<>();
+    private final Map<Integer, List<Integer>> bookingIdsByUser = new HashMap<>();
+    private final Map<Integer, List<Integer>> bookingIdsByVehicle = new HashMap<>();
+    private int nextVehicleId = 1;
+    private int nextUserId = 1;
+    private int nextBookingId = 1;
+
+    // Log and snapshot; guarded by "this", which also serializes writers
+    private final Path logPath;
+    private final Path snapshotPath;
+    private final FileChannel logChannel;
+    // Held while the process runs, so a second server cannot open the same files
+    private final FileLock fileLock;
+    private final MappedByteBuffer log;
+    private final long syncMillis;
+    private long generation;
+    private boolean unsynced;
+    private long snapshotCount;
+
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * Open (or create) the store in a directory and recover its state
+     * @throws IOException if the files cannot be read or written
+     * @throws IllegalStateException if another process uses the directory or the files are damaged
+     */
+    public LocalStore(Path dir, int logMegabytes, long syncMillis, long snapshotMillis) throws IOException {
+        Files.createDirectories(dir);
+        this.logPath = dir.resolve("store.log");
+        this.snapshotPath = dir.resolve("store.snapshot");
+        this.syncMillis = syncMillis;
+
+        boolean created = !Files.exists(snapshotPath) && !Files.exists(logPath);
+        this.logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fileLock = logChannel.tryLock();
+        if (fileLock == null) {
+            logChannel.close();
+            throw new IllegalStateException("Local store " + dir.toAbsolutePath() + " is in use by another process");
+        }
+        this.generation = Files.exists(snapshotPath) ? loadSnapshot() : 0;
+
+        // Never shrink an existing log, it may hold records beyond the new size
+        long capacity = Math.max((long) Math.max(1, logMegabytes) << 20, logChannel.size());
+        preallocate(capacity);
+        this.log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        recoverLog();
+
+        if (created) {
+            createAdmin();
+        }
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "local-store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (syncMillis > 0) {
+            maintenance.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    sync();
+                }
+            }, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+        long interval = Math.max(1000, snapshotMillis);
+        maintenance.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compactIfNeeded();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        Log.info("[LOCAL STORE] Opened " + dir.toAbsolutePath() + ": " + vehicles.size() + " vehicles, "
+                + users.size() + " users, " + bookings.size() + " bookings (generation " + generation + ")");
+    }
+
+    /**
+     * Shared store configured from the environment, opened on first use
+     * @throws IllegalStateException if it cannot be opened
+     */
+    public static synchronized LocalStore getInstance() {
+        if (instance == null) {
+            try {
+                instance = new LocalStore(Paths.get(Config.getString("LOCAL_STORAGE_DIR", "data")),
+                        Config.getInt("LOCAL_STORAGE_LOG_MB", 64),
+                        Config.getLong("LOCAL_STORAGE_SYNC_MS", 0),
+                        Config.getLong("LOCAL_STORAGE_SNAPSHOT_MS", 60000));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open local store: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------------------- reads
+
+    public Vehicle getVehicle(int id) {
+        lock.readLock().lock();
+        try {
+            return vehicles.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Vehicle getVehicleByRegNumber(String regNumber) {
+        lock.readLock().lock();
+        try {
+            Integer id = vehicleIdByReg.get(regNumber);
+            return id == null ? null : vehicles.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Available vehicles of a type with an ID above afterId, ordered by ID
+     */
+    public List<Vehicle> getAvailableVehicles(String type, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, Vehicle> available = availableByType.get(type.toUpperCase());
+            if (available == null) {
+                return new ArrayList<>();
+            }
+            NavigableMap<Integer, Vehicle> tail = available.tailMap(afterId, false);
+            List<Vehicle> result = new ArrayList<>(Math.min(limit, tail.size()));
+            for (Vehicle vehicle : tail.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(vehicle);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * All vehicles with an ID above afterId, ordered by ID
+     */
+    public List<Vehicle> getVehicles(int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, Vehicle> tail = vehicles.tailMap(afterId, false);
+            List<Vehicle> result = new ArrayList<>(Math.min(limit, tail.size()));
+            for (Vehicle vehicle : tail.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(vehicle);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pass vehicles to visitor in ID order, a chunk at a time so a slow visitor
+     * (e.g. a streamed reply) does not hold the lock
+     * @param type only available vehicles of this type, or null for every vehicle
+     */
+    public int forEachVehicle(String type, VehicleVisitor visitor, int chunkSize) {
+        int visited = 0;
+        int afterId = 0;
+        while (true) {
+            List<Vehicle> chunk;
+            if (type != null) {
+                chunk = getAvailableVehicles(type, afterId, chunkSize);
+            } else {
+                chunk = getVehicles(afterId, chunkSize);
+            }
+            for (Vehicle vehicle : chunk) {
+                visited++;
+                if (!visitor.visit(vehicle)) {
+                    return visited;
+                }
+            }
+            if (chunk.size() < chunkSize) {
+                return visited;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        List<Vehicle> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (query.getType() != null) {
+                TreeMap<Integer, Vehicle> available = availableByType.get(query.getType().toUpperCase());
+                if (available != null) {
+                    addMatches(available, query, matches);
+                }
+            } else {
+                for (TreeMap<Integer, Vehicle> available : availableByType.values()) {
+                    addMatches(available, query, matches);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(matches, query.isDescending() ? Collections.reverseOrder(BY_PRICE) : BY_PRICE);
+        return matches.size() > query.getLimit() ? new ArrayList<>(matches.subList(0, query.getLimit())) : matches;
+    }
+
+    private static void addMatches(TreeMap<Integer, Vehicle> available, VehicleQuery query, List<Vehicle> matches) {
+        for (Vehicle vehicle : available.values()) {
+            if (query.matches(vehicle)) {
+                matches.add(vehicle);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the user with this email, or null
+     */
+    public User getUserByEmail(String email) {
+        lock.readLock().lock();
+        try {
+            User user = usersByEmail.get(email);
+            return user == null ? null : copy(user);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies of the users with an ID above afterId, ordered by ID
+     */
+    public List<User> getUsers(int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, User> tail = users.tailMap(afterId, false);
+            List<User> result = new ArrayList<>(Math.min(limit, tail.size()));
+            for (User user : tail.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(copy(user));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the booking, or null
+     */
+    public Booking getBooking(int id) {
+        lock.readLock().lock();
+        try {
+            Booking booking = bookings.get(id);
+            return booking == null ? null : copy(booking);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bookings of a user, newest start date first, as copies
+     */
+    public List<Booking> getBookingsByUser(int userId) {
+        List<Booking> result = collectBookings(bookingIdsByUser, userId, null);
+        Collections.sort(result, new Comparator<Booking>() {
+            @Override
+            public int compare(Booking a, Booking b) {
+                int byStart = b.getStartDate().compareTo(a.getStartDate());
+                return byStart != 0 ? byStart : Integer.compare(b.getId(), a.getId());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Bookings of a vehicle with the given status, as copies
+     */
+    public List<Booking> getBookingsByVehicle(int vehicleId, String status) {
+        return collectBookings(bookingIdsByVehicle, vehicleId, status);
+    }
+
+    private List<Booking> collectBookings(Map<Integer, List<Integer>> index, int key, String status) {
+        List<Booking> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Integer> ids = index.get(key);
+            if (ids != null) {
+                for (Integer id : ids) {
+                    Booking booking = bookings.get(id);
+                    if (status == null || status.equals(booking.getStatus())) {
+                        result.add(copy(booking));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // --------------------------------------------------------------- writes
+
+    /**
+     * Insert vehicles (all or nothing); a vehicle with an ID above 0 keeps it, and
+     * an ID that is already taken counts as a duplicate like its reg_number would
+     * @return vehicles inserted (plus updated for UPDATE), or -1 for a duplicate with FAIL
+     */
+    public synchronized int insertVehicles(List<Vehicle> batch, DuplicatePolicy onDuplicate) throws IOException {
+        List<Vehicle> rows = new ArrayList<>(batch.size());
+        // reg_number -> ID for this batch, so repeats inside it behave like repeats in the store
+        Map<String, Integer> batchIds = new HashMap<>();
+        Map<Integer, Vehicle> batchRows = new HashMap<>();
+        int nextId;
+        lock.readLock().lock();
+        try {
+            nextId = nextVehicleId;
+            for (Vehicle v : batch) {
+                Integer existingId = batchIds.get(v.getRegNumber());
+                if (existingId == null) {
+                    existingId = vehicleIdByReg.get(v.getRegNumber());
+                }
+                if (existingId == null && v.getId() > 0
+                        && (vehicles.containsKey(v.getId()) || batchRows.containsKey(v.getId()))) {
+                    existingId = v.getId();
+                }
+                if (existingId == null) {
+                    int id = v.getId() > 0 ? v.getId() : nextId++;
+                    nextId = Math.max(nextId, id + 1);
+                    Vehicle row = new Vehicle(id, v.getType().toUpperCase(), v.getBrand(), v.getModel(),
+                            v.getRegNumber(), v.getPricePerDay(), v.isAvailable());
+                    batchIds.put(row.getRegNumber(), row.getId());
+                    batchRows.put(row.getId(), row);
+                    rows.add(row);
+                } else if (onDuplicate == DuplicatePolicy.FAIL) {
+                    Log.warn("[LOCAL STORE] Duplicate reg_number " + v.getRegNumber() + ", batch rejected");
+                    return -1;
+                } else if (onDuplicate == DuplicatePolicy.UPDATE) {
+                    Vehicle old = batchRows.containsKey(existingId) ? batchRows.get(existingId) : vehicles.get(existingId);
+                    Vehicle row = new Vehicle(existingId, v.getType().toUpperCase(), v.getBrand(), v.getModel(),
+                            v.getRegNumber(), v.getPricePerDay(), old.isAvailable());
+                    batchIds.put(row.getRegNumber(), row.getId());
+                    batchRows.put(row.getId(), row);
+                    rows.add(row);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * rows.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VEHICLES);
+        out.writeInt(rows.size());
+        for (Vehicle row : rows) {
+            writeVehicle(out, row);
+        }
+        write(bytes.toByteArray());
+        return rows.size();
+    }
+
+    /**
+     * Set the availability of existing vehicles
+     * @return vehicles found and updated
+     */
+    public synchronized int updateAvailability(Map<Integer, Boolean> changes) throws IOException {
+        Map<Integer, Boolean> known = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+                if (vehicles.containsKey(change.getKey())) {
+                    known.put(change.getKey(), change.getValue());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (known.isEmpty()) {
+            return 0;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 5 * known.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(AVAILABILITY);
+        out.writeInt(known.size());
+        for (Map.Entry<Integer, Boolean> change : known.entrySet()) {
+            out.writeInt(change.getKey());
+            out.writeBoolean(change.getValue());
+        }
+        write(bytes.toByteArray());
+        return known.size();
+    }
+
+    /**
+     * Add a user and set its ID (a user with an ID above 0 keeps it)
+     * @return the user, or null if the email or the given ID is taken
+     */
+    public synchronized User addUser(User user) throws IOException {
+        int id;
+        lock.readLock().lock();
+        try {
+            if (usersByEmail.containsKey(user.getEmail())) {
+                return null;
+            }
+            if (user.getId() > 0 && users.containsKey(user.getId())) {
+                return null;
+            }
+            id = user.getId() > 0 ? user.getId() : nextUserId;
+        } finally {
+            lock.readLock().unlock();
+        }
+        User row = new User(id, user.getName(), user.getEmail(), user.getPassword(), user.getRole());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(USER);
+        writeUser(out, row);
+        write(bytes.toByteArray());
+        user.setId(id);
+        return user;
+    }
+
+    /**
+     * Add a booking and set its ID
+     */
+    public synchronized Booking addBooking(Booking booking) throws IOException {
+        int id;
+        lock.readLock().lock();
+        try {
+            id = nextBookingId;
+        } finally {
+            lock.readLock().unlock();
+        }
+        storeBooking(new Booking(id, booking.getUserId(), booking.getVehicleId(), booking.getStartDate(),
+                booking.getEndDate(), booking.getTotalPrice(), booking.getStatus()));
+        booking.setId(id);
+        return booking;
+    }
+
+    /**
+     * Change the status of a booking if it currently has expectedStatus
+     * @return true if it was changed
+     */
+    public synchronized boolean updateBookingStatus(int id, String expectedStatus, String status) throws IOException {
+        Booking current;
+        lock.readLock().lock();
+        try {
+            current = bookings.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (current == null || !expectedStatus.equals(current.getStatus())) {
+            return false;
+        }
+        storeBooking(new Booking(id, current.getUserId(), current.getVehicleId(), current.getStartDate(),
+                current.getEndDate(), current.getTotalPrice(), status));
+        return true;
+    }
+
+    private void storeBooking(Booking row) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BOOKING);
+        writeBooking(out, row);
+        write(bytes.toByteArray());
+    }
+
+    /** Snapshots written since startup */
+    public synchronized long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /** Bytes of the log in use since the last snapshot */
+    public synchronized int getLogBytes() {
+        return log.position();
+    }
+
+    /**
+     * Write a snapshot now and flush; the store stays usable
+     */
+    public synchronized void checkpoint() throws IOException {
+        compact();
+    }
+
+    private void createAdmin() throws IOException {
+        User admin = new User(0, "Admin", Config.getString("LOCAL_ADMIN_EMAIL", "admin@rental.com"),
+                Config.getString("LOCAL_ADMIN_PASSWORD", "admin123"), "ADMIN");
+        addUser(admin);
+        Log.info("[LOCAL STORE] New store, created admin account " + admin.getEmail());
+    }
+
+    // ------------------------------------------------------------------ log
+
+    /**
+     * Log a record, then apply it (decoding the logged bytes, as replay will)
+     */
+    private void write(byte[] record) throws IOException {
+        append(record);
+        applyRecord(record);
+    }
+
+    private void append(byte[] record) throws IOException {
+        // Leave room for the end marker after the record
+        int needed = RECORD_HEADER_SIZE + record.length + 4;
+        if (log.position() + needed > log.capacity()) {
+            compact();
+            if (LOG_HEADER_SIZE + needed > log.capacity()) {
+                throw new IOException("Record of " + record.length + " bytes is larger than the log (LOCAL_STORAGE_LOG_MB)");
+            }
+        }
+        log.putInt(record.length);
+        log.putInt(checksum(generation, record, 0, record.length));
+        log.put(record);
+        log.putInt(log.position(), 0);
+        if (syncMillis <= 0) {
+            log.force();
+        } else {
+            unsynced = true;
+        }
+    }
+
+    private synchronized void sync() {
+        if (unsynced) {
+            log.force();
+            unsynced = false;
+        }
+    }
+
+    private synchronized void compactIfNeeded() {
+        if (log.position() > LOG_HEADER_SIZE) {
+            try {
+                compact();
+            } catch (IOException e) {
+                Log.error("[LOCAL STORE] Snapshot failed, keeping the log: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the whole state as a snapshot of the next generation, then start the log over
+     * Writers are blocked (caller holds the monitor); readers are not.
+     */
+    private void compact() throws IOException {
+        long next = generation + 1;
+        writeSnapshot(next);
+        // A crash from here on finds a log of an older generation and ignores it
+        log.putInt(0, LOG_MAGIC);
+        log.putInt(4, FORMAT_VERSION);
+        log.putLong(8, next);
+        log.putInt(LOG_HEADER_SIZE, 0);
+        log.position(LOG_HEADER_SIZE);
+        log.force();
+        unsynced = false;
+        generation = next;
+        snapshotCount++;
+    }
+
+    /**
+     * Replay the records of the current generation and position the log after them
+     */
+    private void recoverLog() throws IOException {
+        int magic = log.getInt(0);
+        long logGeneration = log.getLong(8);
+        if (magic != LOG_MAGIC || logGeneration < generation) {
+            if (magic == LOG_MAGIC) {
+                Log.info("[LOCAL STORE] Log predates the snapshot (crash during compaction), ignoring it");
+            }
+            log.putInt(0, LOG_MAGIC);
+            log.putInt(4, FORMAT_VERSION);
+            log.putLong(8, generation);
+            log.putInt(LOG_HEADER_SIZE, 0);
+            log.position(LOG_HEADER_SIZE);
+            log.force();
+            return;
+        }
+        if (log.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported local store log version " + log.getInt(4));
+        }
+        if (logGeneration > generation) {
+            throw new IllegalStateException("Local store log (generation " + logGeneration
+                    + ") is newer than the snapshot (generation " + generation + "); store.snapshot is missing or old");
+        }
+
+        int position = LOG_HEADER_SIZE;
+        int replayed = 0;
+        while (position + RECORD_HEADER_SIZE <= log.capacity()) {
+            int length = log.getInt(position);
+            if (length <= 0 || length > log.capacity() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer view = log.duplicate();
+            view.position(position + RECORD_HEADER_SIZE);
+            view.get(record);
+            if (log.getInt(position + 4) != checksum(generation, record, 0, length)) {
+                Log.warn("[LOCAL STORE] Dropping incomplete record at offset " + position + " (interrupted write)");
+                break;
+            }
+            applyRecord(record);
+            replayed++;
+            position += RECORD_HEADER_SIZE + length;
+        }
+        log.position(position);
+        if (position + 4 <= log.capacity()) {
+            log.putInt(position, 0);
+        }
+        log.force();
+        if (replayed > 0) {
+            Log.info("[LOCAL STORE] Replayed " + replayed + " log records");
+        }
+    }
+
+    private void preallocate(long capacity) throws IOException {
+        // Real blocks instead of a sparse file: a full disk then fails here, not as
+        // a SIGBUS on a later write through the mapping
+        long size = logChannel.size();
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        while (size < capacity) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), capacity - size));
+            size += logChannel.write(zeros, size);
+        }
+        logChannel.force(true);
+    }
+
+    private static int checksum(long generation, byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (generation >>> shift));
+        }
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    // ------------------------------------------------------------- snapshot
+
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path temp = snapshotPath.resolveSibling("store.snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(nextVehicleId);
+            out.writeInt(nextUserId);
+            out.writeInt(nextBookingId);
+            out.writeInt(vehicles.size());
+            for (Vehicle vehicle : vehicles.values()) {
+                writeVehicle(out, vehicle);
+            }
+            out.writeInt(users.size());
+            for (User user : users.values()) {
+                writeUser(out, user);
+            }
+            out.writeInt(bookings.size());
+            for (Booking booking : bookings.values()) {
+                writeBooking(out, booking);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel dir = FileChannel.open(snapshotPath.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename is still atomic
+        }
+    }
+
+    /**
+     * @return generation of the snapshot
+     */
+    private long loadSnapshot() throws IOException {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshotPath), 1 << 16)) {
+            CheckedInputStream checked = new CheckedInputStream(file, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IllegalStateException(snapshotPath + " is not a local store snapshot of this version");
+            }
+            long snapshotGeneration = in.readLong();
+            int nextVehicle = in.readInt();
+            int nextUser = in.readInt();
+            int nextBooking = in.readInt();
+            int vehicleCount = in.readInt();
+            for (int i = 0; i < vehicleCount; i++) {
+                applyVehicle(readVehicle(in));
+            }
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                applyUser(readUser(in));
+            }
+            int bookingCount = in.readInt();
+            for (int i = 0; i < bookingCount; i++) {
+                applyBooking(readBooking(in));
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(file).readInt() != expected) {
+                throw new IllegalStateException(snapshotPath + " is damaged (checksum mismatch)");
+            }
+            nextVehicleId = Math.max(nextVehicleId, nextVehicle);
+            nextUserId = Math.max(nextUserId, nextUser);
+            nextBookingId = Math.max(nextBookingId, nextBooking);
+            return snapshotGeneration;
+        }
+    }
+
+    // ---------------------------------------------------------------- apply
+
+    private void applyRecord(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        lock.writeLock().lock();
+        try {
+            switch (type) {
+                case VEHICLES: {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        applyVehicle(readVehicle(in));
+                    }
+                    break;
+                }
+                case AVAILABILITY: {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        int id = in.readInt();
+                        boolean available = in.readBoolean();
+                        Vehicle old = vehicles.get(id);
+                        if (old != null && old.isAvailable() != available) {
+                            applyVehicle(new Vehicle(id, old.getType(), old.getBrand(), old.getModel(),
+                                    old.getRegNumber(), old.getPricePerDay(), available));
+                        }
+                    }
+                    break;
+                }
+                case USER:
+                    applyUser(readUser(in));
+                    break;
+                case BOOKING:
+                    applyBooking(readBooking(in));
+                    break;
+                default:
+                    throw new IOException("Unknown local store record type " + type);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyVehicle(Vehicle vehicle) {
+        Vehicle old = vehicles.put(vehicle.getId(), vehicle);
+        if (old != null) {
+            if (old.isAvailable()) {
+                availableByType.get(old.getType()).remove(old.getId());
+            }
+            vehicleIdByReg.remove(old.getRegNumber());
+        }
+        if (vehicle.isAvailable()) {
+            TreeMap<Integer, Vehicle> available = availableByType.get(vehicle.getType());
+            if (available == null) {
+                available = new TreeMap<>();
+                availableByType.put(vehicle.getType(), available);
+            }
+            available.put(vehicle.getId(), vehicle);
+        }
+        vehicleIdByReg.put(vehicle.getRegNumber(), vehicle.getId());
+        nextVehicleId = Math.max(nextVehicleId, vehicle.getId() + 1);
+    }
+
+    private void applyUser(User user) {
+        User old = users.put(user.getId(), user);
+        if (old != null) {
+            usersByEmail.remove(old.getEmail());
+        }
+        usersByEmail.put(user.getEmail(), user);
+        nextUserId = Math.max(nextUserId, user.getId() + 1);
+    }
+
+    private void applyBooking(Booking booking) {
+        Booking old = bookings.put(booking.getId(), booking);
+        if (old == null) {
+            indexBooking(bookingIdsByUser, booking.getUserId(), booking.getId());
+            indexBooking(bookingIdsByVehicle, booking.getVehicleId(), booking.getId());
+        }
+        nextBookingId = Math.max(nextBookingId, booking.getId() + 1);
+    }
+
+    private static void indexBooking(Map<Integer, List<Integer>> index, int key, int bookingId) {
+        List<Integer> ids = index.get(key);
+        if (ids == null) {
+            ids = new ArrayList<>(2);
+            index.put(key, ids);
+        }
+        ids.add(bookingId);
+    }
+
+    // ------------------------------------------------------------- encoding
+
+    private static void writeVehicle(DataOutput out, Vehicle vehicle) throws IOException {
+        out.writeInt(vehicle.getId());
+        writeString(out, vehicle.getType());
+        writeString(out, vehicle.getBrand());
+        writeString(out, vehicle.getModel());
+        writeString(out, vehicle.getRegNumber());
+        out.writeDouble(vehicle.getPricePerDay());
+        out.writeBoolean(vehicle.isAvailable());
+    }
+
+    private static Vehicle readVehicle(DataInput in) throws IOException {
+        return new Vehicle(in.readInt(), readString(in), readString(in), readString(in), readString(in),
+                in.readDouble(), in.readBoolean());
+    }
+
+    private static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeInt(user.getId());
+        writeString(out, user.getName());
+        writeString(out, user.getEmail());
+        writeString(out, user.getPassword());
+        writeString(out, user.getRole());
+    }
+
+    private static User readUser(DataInput in) throws IOException {
+        return new User(in.readInt(), readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeBooking(DataOutput out, Booking booking) throws IOException {
+        out.writeInt(booking.getId());
+        out.writeInt(booking.getUserId());
+        out.writeInt(booking.getVehicleId());
+        out.writeLong(booking.getStartDate().toEpochDay());
+        out.writeLong(booking.getEndDate().toEpochDay());
+        out.writeDouble(booking.getTotalPrice());
+        writeString(out, booking.getStatus());
+    }
+
+    private static Booking readBooking(DataInput in) throws IOException {
+        return new Booking(in.readInt(), in.readInt(), in.readInt(), LocalDate.ofEpochDay(in.readLong()),
+                LocalDate.ofEpochDay(in.readLong()), in.readDouble(), readString(in));
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getPassword(), user.getRole());
+    }
+
+    private static Booking copy(Booking booking) {
+        return new Booking(booking.getId(), booking.getUserId(), booking.getVehicleId(), booking.getStartDate(),
+                booking.getEndDate(), booking.getTotalPrice(), booking.getStatus());
+    }
+}
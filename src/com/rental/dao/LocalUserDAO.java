@@ -0,0 +1,51 @@
+// com/rental/dao/LocalUserDAO.java
+package com.rental.dao;
+
+import com.rental.model.User;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * UserDAO over the embedded LocalStore (STORAGE_BACKEND=local)
+ */
+public class LocalUserDAO implements UserDAO {
+    private final LocalStore store;
+
+    public LocalUserDAO(LocalStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public User login(String email, String password) {
+        User user = store.getUserByEmail(email);
+        if (user != null && user.getPassword() != null && user.getPassword().equals(password)) {
+            return user;
+        }
+        return null; // login failed
+    }
+
+    @Override
+    public List<User> findByCredentials(String email, String password) {
+        User user = login(email, password);
+        return user == null ? new ArrayList<User>() : new ArrayList<>(Collections.singletonList(user));
+    }
+
+    @Override
+    public User register(User user) {
+        try {
+            return store.addUser(user); // null if the email is taken
+        } catch (IOException e) {
+            Log.error("Error during registration: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public List<User> getUsersPage(int afterId, int limit) {
+        return store.getUsers(afterId, limit);
+    }
+}
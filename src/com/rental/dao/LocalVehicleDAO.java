@@ -0,0 +1,117 @@
+// com/rental/dao/LocalVehicleDAO.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VehicleDAO over the embedded LocalStore (STORAGE_BACKEND=local)
+ * Reads come from memory; writes are durable in the store's log before they return.
+ */
+public class LocalVehicleDAO implements VehicleDAO {
+    /** Vehicles copied out of the store per lock hold when visiting */
+    private static final int VISIT_CHUNK_SIZE = 500;
+
+    private final LocalStore store;
+
+    public LocalVehicleDAO(LocalStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesByType(String type) {
+        return store.getAvailableVehicles(type, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Vehicle getVehicleById(int id) {
+        return store.getVehicle(id);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        List<Vehicle> found = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Vehicle vehicle = store.getVehicle(id);
+            if (vehicle != null) {
+                found.add(vehicle);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+        return updateVehicleAvailability(Collections.singletonMap(vehicleId, available)) > 0;
+    }
+
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        try {
+            return store.updateAvailability(changes);
+        } catch (IOException e) {
+            Log.error("Error updating availability of " + changes.size() + " vehicles: " + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        List<Vehicle> found = new ArrayList<>(regNumbers.size());
+        for (String regNumber : regNumbers) {
+            Vehicle vehicle = store.getVehicleByRegNumber(regNumber);
+            if (vehicle != null) {
+                found.add(vehicle);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        return store.getAvailableVehicles(type, afterId, limit);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        return store.getVehicles(afterId, limit);
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return store.forEachVehicle(type, visitor, VISIT_CHUNK_SIZE);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return store.forEachVehicle(null, visitor, VISIT_CHUNK_SIZE);
+    }
+
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        return store.searchAvailableVehicles(query);
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+        if (vehicles.isEmpty()) {
+            return 0;
+        }
+        try {
+            return store.insertVehicles(vehicles, onDuplicate);
+        } catch (IOException e) {
+            Log.error("Error inserting " + vehicles.size() + " vehicles: " + e.getMessage(), e);
+            return -1;
+        }
+    }
+}
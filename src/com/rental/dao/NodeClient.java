@@ -0,0 +1,177 @@
+// com/rental/dao/NodeClient.java
+package com.rental.dao;
+
+import com.rental.client.ServerConnection;
+import com.rental.protocol.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connections from a cluster router to one node (another RentalServer)
+ *
+ * Keeps up to poolSize binary connections, each logged in with the cluster admin
+ * account and kept alive with PING. A call borrows a connection for one command;
+ * callers beyond poolSize wait. A connection that fails is dropped, and a call
+ * that failed on a reused connection (e.g. the node restarted) is retried once
+ * on a new one. The command may have run before the old connection broke, so
+ * commands that must not run twice (ADD_BOOKING) are sent with callOnce().
+ */
+public class NodeClient implements Closeable {
+    private static final long KEEPALIVE_MILLIS = 60000;
+
+    private final String address;
+    private final String host;
+    private final int port;
+    private final String email;
+    private final String password;
+    private final Semaphore permits;
+    private final BlockingQueue<ServerConnection> idle;
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param address "host:port" of the node
+     * @param poolSize max connections (and concurrent calls) to the node
+     */
+    public NodeClient(String address, String email, String password, int poolSize) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Node address must be host:port, got " + address);
+        }
+        this.address = address;
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+        this.email = email;
+        this.password = password;
+        this.permits = new Semaphore(Math.max(1, poolSize));
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    /**
+     * Send one command to the node
+     * @return the reply; an ERROR reply is returned, not thrown
+     * @throws IOException if the node cannot be reached
+     */
+    public Response call(String... fields) throws IOException {
+        return execute(true, fields);
+    }
+
+    /**
+     * Like call(), but never sent a second time
+     */
+    public Response callOnce(String... fields) throws IOException {
+        return execute(false, fields);
+    }
+
+    /**
+     * Like call(), but an ERROR reply is thrown too
+     */
+    public Response callOk(String... fields) throws IOException {
+        Response response = call(fields);
+        if (!response.isOk()) {
+            throw new IOException("Node " + address + " refused " + fields[0] + "|" + fields[1] + ": "
+                    + ServerConnection.getErrorMessage(response));
+        }
+        return response;
+    }
+
+    private Response execute(boolean retry, String[] fields) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + address);
+        }
+        try {
+            ServerConnection connection = idle.poll();
+            boolean reused = connection != null;
+            if (connection == null) {
+                connection = open();
+            }
+            try {
+                Response response = connection.send(fields);
+                release(connection);
+                return response;
+            } catch (IOException e) {
+                connection.close();
+                if (!reused || !retry) {
+                    throw e;
+                }
+            }
+            // The pooled connection was stale; one attempt on a fresh one
+            connection = open();
+            try {
+                Response response = connection.send(fields);
+                release(connection);
+                return response;
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw new IOException("Node " + address + ": " + e.getMessage(), e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /** Calls that failed to reach the node since startup */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ServerConnection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private ServerConnection open() throws IOException {
+        ServerConnection connection = new ServerConnection(host, port, true);
+        try {
+            if (!connection.isBinary()) {
+                throw new IOException("node does not speak the binary protocol");
+            }
+            Response login = connection.send("LOGIN", email, password);
+            if (!login.isOk()) {
+                throw new IOException("cluster admin login failed: " + ServerConnection.getErrorMessage(login));
+            }
+            if (!"ADMIN".equalsIgnoreCase(login.get(3))) {
+                throw new IOException("cluster account " + email + " is not an admin");
+            }
+        } catch (IOException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        connection.startKeepalive(KEEPALIVE_MILLIS);
+        return connection;
+    }
+
+    private void release(ServerConnection connection) {
+        if (closed || !idle.offer(connection)) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(ServerConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+    }
+}
@@ -0,0 +1,101 @@
+// com/rental/dao/PublishingVehicleDAO.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VehicleDAO decorator that announces availability writes on VehicleEvents
+ *
+ * Sits outermost, so every writer is seen: SET_AVAILABILITY (written in batches
+ * by the AvailabilityWriter), IMPORT_VEHICLES and the VehicleImporter CLI, and
+ * on a cluster node NODE|SET_AVAILABILITY and NODE|PUT_VEHICLES. Bookings don't
+ * change availability. Only writes that succeeded are published; a batch that
+ * fails writes nothing and publishes nothing. Reads pass through.
+ */
+public class PublishingVehicleDAO implements VehicleDAO {
+    private final VehicleDAO delegate;
+    private final VehicleEvents events;
+
+    public PublishingVehicleDAO(VehicleDAO delegate, VehicleEvents events) {
+        this.delegate = delegate;
+        this.events = events;
+    }
+
+    @Override
+    public boolean updateVehicleAvailability(int vehicleId, boolean available) {
+        boolean updated = delegate.updateVehicleAvailability(vehicleId, available);
+        if (updated) {
+            events.publish(Collections.singletonMap(vehicleId, available));
+        }
+        return updated;
+    }
+
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        int updated = delegate.updateVehicleAvailability(changes);
+        if (updated > 0) {
+            // Unknown IDs make the dispatcher resync watchers, which costs them one re-list
+            events.publish(changes);
+        }
+        return updated;
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+        int written = delegate.insertVehicles(vehicles, onDuplicate);
+        if (written > 0) {
+            events.publishResync();
+        }
+        return written;
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesByType(String type) {
+        return delegate.getAvailableVehiclesByType(type);
+    }
+
+    @Override
+    public Vehicle getVehicleById(int id) {
+        return delegate.getVehicleById(id);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        return delegate.getVehiclesByRegNumbers(regNumbers);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        return delegate.getVehiclesByIds(ids);
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        return delegate.getAvailableVehiclesPage(type, afterId, limit);
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        return delegate.getVehiclesPage(afterId, limit);
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return delegate.forEachAvailableVehicle(type, visitor);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return delegate.forEachVehicle(visitor);
+    }
+
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        return delegate.searchAvailableVehicles(query);
+    }
+}
@@ -2,6 +2,7 @@
 package com.rental.dao;
 
 import com.rental.model.User;
+import java.util.List;
 
 /**
  * Data Access Object interface for User operations
@@ -14,11 +15,30 @@ public interface UserDAO {
      * @return User object if login successful, null otherwise
      */
     User login(String email, String password);
+
+    /**
+     * login() that tells a wrong password from a failed lookup, for callers
+     * that can try elsewhere (a cluster router asking the next node)
+     * @return the matching user as a list of at most one, empty if the
+     *         credentials don't match, or null if the lookup failed
+     */
+    List<User> findByCredentials(String email, String password);
     
     /**
      * Register a new user
+     * A user with an ID above 0 is stored under that ID (cluster nodes keep the
+     * same IDs everywhere); with ID 0 the database picks one.
      * @param user User object containing registration details
      * @return User object with generated ID if successful, null otherwise
      */
     User register(User user);
+
+    /**
+     * Get one page of all users, ordered by ID (keyset pagination)
+     * @param afterId only users with a larger ID are returned (0 for the first page)
+     * @param limit max number of users
+     * @return up to limit users, or null if the query failed (a short page means
+     *         the end, so a failure must not look like one)
+     */
+    List<User> getUsersPage(int afterId, int limit);
 }
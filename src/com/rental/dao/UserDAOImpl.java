@@ -3,20 +3,31 @@ package com.rental.dao;
 
 import com.rental.model.User;
 import com.rental.util.DBUtil;
+import com.rental.util.Log;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of UserDAO interface
  * Handles all database operations related to users
+ * login reads from a replica when one is configured, register writes to the primary
  */
 public class UserDAOImpl implements UserDAO {
     
     @Override
     public User login(String email, String password) {
+        List<User> found = findByCredentials(email, password);
+        return found == null || found.isEmpty() ? null : found.get(0); // null: login failed
+    }
+
+    @Override
+    public List<User> findByCredentials(String email, String password) {
+        List<User> found = new ArrayList<>(1);
         String sql = "SELECT * FROM users WHERE email = ? AND password = ?";
         
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, email);
@@ -30,19 +41,22 @@ public class UserDAOImpl implements UserDAO {
                 user.setEmail(rs.getString("email"));
                 user.setPassword(rs.getString("password"));
                 user.setRole(rs.getString("role"));
-                return user;
+                found.add(user);
             }
         } catch (SQLException e) {
-            System.err.println("Error during login: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error during login: " + e.getMessage(), e);
+            return null;
         }
         
-        return null; // login failed
+        return found;
     }
 
     @Override
     public User register(User user) {
-        String sql = "INSERT INTO users (name, email, password, role) VALUES (?, ?, ?, ?)";
+        boolean withId = user.getId() > 0;
+        String sql = withId
+                ? "INSERT INTO users (name, email, password, role, id) VALUES (?, ?, ?, ?, ?)"
+                : "INSERT INTO users (name, email, password, role) VALUES (?, ?, ?, ?)";
         
         try (Connection conn = DBUtil.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -51,10 +65,17 @@ public class UserDAOImpl implements UserDAO {
             ps.setString(2, user.getEmail());
             ps.setString(3, user.getPassword());
             ps.setString(4, user.getRole());
+            if (withId) {
+                ps.setInt(5, user.getId());
+            }
             
             int rowsAffected = ps.executeUpdate();
 
             if (rowsAffected > 0) {
+                if (withId) {
+                    VehicleDAOImpl.advanceIdSequence(conn, "users");
+                    return user;
+                }
                 // Get the generated ID
                 ResultSet generatedKeys = ps.getGeneratedKeys();
                 if (generatedKeys.next()) {
@@ -63,10 +84,38 @@ public class UserDAOImpl implements UserDAO {
                 return user;
             }
         } catch (SQLException e) {
-            System.err.println("Error during registration: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error during registration: " + e.getMessage(), e);
         }
         
         return null; // registration failed
     }
+
+    @Override
+    public List<User> getUsersPage(int afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        String sql = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                User user = new User();
+                user.setId(rs.getInt("id"));
+                user.setName(rs.getString("name"));
+                user.setEmail(rs.getString("email"));
+                user.setPassword(rs.getString("password"));
+                user.setRole(rs.getString("role"));
+                users.add(user);
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching user page: " + e.getMessage(), e);
+            return null;
+        }
+
+        return users;
+    }
 }
@@ -2,7 +2,9 @@
 package com.rental.dao;
 
 import com.rental.model.Vehicle;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object interface for Vehicle operations
@@ -11,7 +13,8 @@ public interface VehicleDAO {
     /**
      * Get all available vehicles of a specific type
      * @param type "CAR" or "BIKE"
-     * @return List of available vehicles
+     * @return List of available vehicles, or null if they could not be read
+     *         (never a partial or empty stand-in, so callers don't cache a failure)
      */
     List<Vehicle> getAvailableVehiclesByType(String type);
     
@@ -21,6 +24,22 @@ public interface VehicleDAO {
      * @return Vehicle object if found, null otherwise
      */
     Vehicle getVehicleById(int id);
+
+    /**
+     * Get several vehicles by ID in one round trip
+     * @param ids vehicle IDs
+     * @return the vehicles found, in no particular order (unknown IDs are left out),
+     *         or null if the lookup failed
+     */
+    List<Vehicle> getVehiclesByIds(Collection<Integer> ids);
+
+    /**
+     * Get the vehicles with these reg_numbers (read from the primary)
+     * Lets a cluster router find duplicates before it places new rows.
+     * @param regNumbers reg_numbers to look for
+     * @return the vehicles found, in no particular order, or null if the lookup failed
+     */
+    List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers);
     
     /**
      * Update vehicle availability status
@@ -29,4 +48,65 @@ public interface VehicleDAO {
      * @return true if update successful, false otherwise
      */
     boolean updateVehicleAvailability(int vehicleId, boolean available);
+
+    /**
+     * Update the availability of many vehicles in one JDBC batch and transaction
+     * For write-behind updates use AvailabilityWriter, which merges repeated
+     * changes and calls this once per interval.
+     * @param changes vehicle ID -> new availability status
+     * @return number of vehicles updated (unknown IDs don't count), or -1 if the
+     *         batch failed; nothing is written then
+     */
+    int updateVehicleAvailability(Map<Integer, Boolean> changes);
+
+    /**
+     * Get one page of available vehicles of a type, ordered by ID (keyset pagination)
+     * @param type "CAR" or "BIKE"
+     * @param afterId only vehicles with a larger ID are returned (0 for the first page)
+     * @param limit max number of vehicles
+     * @return up to limit vehicles, or null if they could not be read (a short
+     *         page means the end of the type, so a failure must not look like one)
+     */
+    List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit);
+
+    /**
+     * Get one page of all vehicles, available or not, ordered by ID (keyset pagination)
+     * @param afterId only vehicles with a larger ID are returned (0 for the first page)
+     * @param limit max number of vehicles
+     * @return up to limit vehicles, or null if they could not be read
+     */
+    List<Vehicle> getVehiclesPage(int afterId, int limit);
+
+    /**
+     * Pass available vehicles of a type to visitor one at a time, ordered by ID,
+     * without loading them all into memory
+     * @param type "CAR" or "BIKE"
+     * @return number of vehicles visited, or -1 if the query failed
+     */
+    int forEachAvailableVehicle(String type, VehicleVisitor visitor);
+
+    /**
+     * Pass every vehicle, available or not, to visitor one at a time, ordered by ID
+     * Used to build in-memory indexes over the whole catalog, so it reads the
+     * primary even when lookups may be answered by a lagging replica
+     * @return number of vehicles visited, or -1 if the query failed
+     */
+    int forEachVehicle(VehicleVisitor visitor);
+
+    /**
+     * Find available vehicles matching query, sorted by price per day (then ID)
+     * @return up to query.getLimit() vehicles
+     */
+    List<Vehicle> searchAvailableVehicles(VehicleQuery query);
+
+    /**
+     * Insert many vehicles with a single statement (all or nothing)
+     * IDs of the given objects are not filled in. A vehicle with an ID above 0 is
+     * stored under that ID (cluster nodes receive IDs chosen by the router); with
+     * ID 0 the database picks one.
+     * @param onDuplicate what to do with a reg_number that already exists
+     * @return rows inserted (plus rows updated for UPDATE), or -1 if the statement
+     *         failed, e.g. a duplicate with FAIL; nothing is written then
+     */
+    int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate);
 }
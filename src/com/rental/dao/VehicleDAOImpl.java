@@ -3,43 +3,43 @@ package com.rental.dao;
 
 import com.rental.model.Vehicle;
 import com.rental.util.DBUtil;
+import com.rental.util.Log;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Implementation of VehicleDAO interface
  * Handles all database operations related to vehicles
+ * Lookups and scans read through DBUtil.getReadConnection() and may be served
+ * by a read replica; updates, inserts and forEachVehicle() (which seeds
+ * long-lived indexes) go to the primary.
  */
 public class VehicleDAOImpl implements VehicleDAO {
-    
+    /** Rows fetched per round trip when streaming */
+    private static final int STREAM_FETCH_SIZE = 500;
+
     @Override
     public List<Vehicle> getAvailableVehiclesByType(String type) {
         List<Vehicle> vehicleList = new ArrayList<>();
         String sql = "SELECT * FROM vehicles WHERE type = ? AND available = TRUE";
         
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, type.toUpperCase());
             ResultSet rs = ps.executeQuery();
 
             while (rs.next()) {
-                Vehicle vehicle = new Vehicle(
-                    rs.getInt("id"),
-                    rs.getString("type"),
-                    rs.getString("brand"),
-                    rs.getString("model"),
-                    rs.getString("reg_number"),
-                    rs.getDouble("price_per_day"),
-                    rs.getBoolean("available")
-                );
-                vehicleList.add(vehicle);
+                vehicleList.add(mapVehicle(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching vehicles: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error fetching vehicles: " + e.getMessage(), e);
+            return null;
         }
         
         return vehicleList;
@@ -49,31 +49,74 @@ public class VehicleDAOImpl implements VehicleDAO {
     public Vehicle getVehicleById(int id) {
         String sql = "SELECT * FROM vehicles WHERE id = ?";
         
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, id);
             ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                return new Vehicle(
-                    rs.getInt("id"),
-                    rs.getString("type"),
-                    rs.getString("brand"),
-                    rs.getString("model"),
-                    rs.getString("reg_number"),
-                    rs.getDouble("price_per_day"),
-                    rs.getBoolean("available")
-                );
+                return mapVehicle(rs);
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching vehicle by ID: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error fetching vehicle by ID: " + e.getMessage(), e);
         }
         
         return null;
     }
 
+    @Override
+    public List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        List<Vehicle> vehicleList = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return vehicleList;
+        }
+        // One array parameter, so the statement text (and its cached plan) never changes
+        String sql = "SELECT * FROM vehicles WHERE id = ANY(?)";
+
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                vehicleList.add(mapVehicle(rs));
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching " + ids.size() + " vehicles by ID: " + e.getMessage(), e);
+            return null;
+        }
+
+        return vehicleList;
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesByRegNumbers(Collection<String> regNumbers) {
+        List<Vehicle> vehicleList = new ArrayList<>(regNumbers.size());
+        if (regNumbers.isEmpty()) {
+            return vehicleList;
+        }
+        String sql = "SELECT * FROM vehicles WHERE reg_number = ANY(?)";
+
+        // Primary: the caller is about to insert and must not miss a fresh row
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setArray(1, conn.createArrayOf("varchar", regNumbers.toArray()));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                vehicleList.add(mapVehicle(rs));
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching " + regNumbers.size() + " vehicles by reg_number: " + e.getMessage(), e);
+            return null;
+        }
+
+        return vehicleList;
+    }
+
     @Override
     public boolean updateVehicleAvailability(int vehicleId, boolean available) {
         String sql = "UPDATE vehicles SET available = ? WHERE id = ?";
@@ -88,10 +131,267 @@ public class VehicleDAOImpl implements VehicleDAO {
             return rowsAffected > 0;
             
         } catch (SQLException e) {
-            System.err.println("Error updating vehicle availability: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error updating vehicle availability: " + e.getMessage(), e);
         }
         
         return false;
     }
+
+    @Override
+    public int updateVehicleAvailability(Map<Integer, Boolean> changes) {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        String sql = "UPDATE vehicles SET available = ? WHERE id = ?";
+
+        try (Connection conn = DBUtil.getConnection()) {
+            // One transaction; the pool rolls back if we fail before commit
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                // Lock rows in ID order so two concurrent batches can't deadlock
+                for (Map.Entry<Integer, Boolean> change : new TreeMap<>(changes).entrySet()) {
+                    ps.setBoolean(1, change.getValue());
+                    ps.setInt(2, change.getKey());
+                    ps.addBatch();
+                }
+                int updated = 0;
+                for (int count : ps.executeBatch()) {
+                    // SUCCESS_NO_INFO when the driver rewrites the batch
+                    updated += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+                }
+                conn.commit();
+                return updated;
+            }
+        } catch (SQLException e) {
+            Log.error("Error updating availability of " + changes.size() + " vehicles: " + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public List<Vehicle> getAvailableVehiclesPage(String type, int afterId, int limit) {
+        List<Vehicle> vehicleList = new ArrayList<>();
+        // Keyset pagination: seek past the last ID instead of OFFSET, so every page costs the same
+        String sql = "SELECT * FROM vehicles WHERE type = ? AND available = TRUE AND id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, type.toUpperCase());
+            ps.setInt(2, afterId);
+            ps.setInt(3, limit);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                vehicleList.add(mapVehicle(rs));
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching vehicle page: " + e.getMessage(), e);
+            return null;
+        }
+
+        return vehicleList;
+    }
+
+    @Override
+    public List<Vehicle> getVehiclesPage(int afterId, int limit) {
+        List<Vehicle> vehicleList = new ArrayList<>();
+        String sql = "SELECT * FROM vehicles WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                vehicleList.add(mapVehicle(rs));
+            }
+        } catch (SQLException e) {
+            Log.error("Error fetching vehicle page: " + e.getMessage(), e);
+            return null;
+        }
+
+        return vehicleList;
+    }
+
+    @Override
+    public int forEachAvailableVehicle(String type, VehicleVisitor visitor) {
+        return scan("SELECT * FROM vehicles WHERE type = ? AND available = TRUE ORDER BY id",
+                type.toUpperCase(), visitor, false);
+    }
+
+    @Override
+    public int forEachVehicle(VehicleVisitor visitor) {
+        return scan("SELECT * FROM vehicles ORDER BY id", null, visitor, true);
+    }
+
+    @Override
+    public List<Vehicle> searchAvailableVehicles(VehicleQuery query) {
+        List<Vehicle> vehicleList = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM vehicles WHERE available = TRUE");
+
+        if (query.getType() != null) {
+            sql.append(" AND type = ?");
+            params.add(query.getType().toUpperCase());
+        }
+        if (query.getBrand() != null) {
+            sql.append(" AND UPPER(brand) = ?");
+            params.add(query.getBrand().toUpperCase());
+        }
+        if (query.getModelPrefix() != null) {
+            sql.append(" AND UPPER(model) LIKE ? ESCAPE '!'");
+            params.add(escapeLike(query.getModelPrefix().toUpperCase()) + "%");
+        }
+        if (query.getMinPrice() > 0) {
+            sql.append(" AND price_per_day >= ?");
+            params.add(query.getMinPrice());
+        }
+        if (!Double.isInfinite(query.getMaxPrice())) {
+            sql.append(" AND price_per_day <= ?");
+            params.add(query.getMaxPrice());
+        }
+        sql.append(query.isDescending() ? " ORDER BY price_per_day DESC, id DESC" : " ORDER BY price_per_day, id");
+        sql.append(" LIMIT ?");
+        params.add(query.getLimit());
+
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                vehicleList.add(mapVehicle(rs));
+            }
+        } catch (SQLException e) {
+            Log.error("Error searching vehicles: " + e.getMessage(), e);
+        }
+
+        return vehicleList;
+    }
+
+    @Override
+    public int insertVehicles(List<Vehicle> vehicles, DuplicatePolicy onDuplicate) {
+        if (vehicles.isEmpty()) {
+            return 0;
+        }
+        // One multi-row INSERT per batch: a single round trip, and the update count
+        // tells exactly how many rows were written (skipped duplicates count 0)
+        boolean withIds = false;
+        for (Vehicle v : vehicles) {
+            withIds |= v.getId() > 0;
+        }
+        StringBuilder sql = new StringBuilder(withIds
+                ? "INSERT INTO vehicles (id, type, brand, model, reg_number, price_per_day, available) VALUES "
+                : "INSERT INTO vehicles (type, brand, model, reg_number, price_per_day, available) VALUES ");
+        for (int i = 0; i < vehicles.size(); i++) {
+            sql.append(i == 0 ? "(" : ", (");
+            if (withIds) {
+                sql.append(vehicles.get(i).getId() > 0 ? "?, " : "DEFAULT, ");
+            }
+            sql.append("?, ?, ?, ?, ?, ?)");
+        }
+        if (onDuplicate == DuplicatePolicy.SKIP) {
+            // reg_number is the only unique column we insert, so no conflict target is needed
+            sql.append(" ON CONFLICT DO NOTHING");
+        } else if (onDuplicate == DuplicatePolicy.UPDATE) {
+            sql.append(" ON CONFLICT (reg_number) DO UPDATE SET type = EXCLUDED.type, brand = EXCLUDED.brand,")
+               .append(" model = EXCLUDED.model, price_per_day = EXCLUDED.price_per_day");
+        }
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+
+            int index = 1;
+            for (Vehicle v : vehicles) {
+                if (withIds && v.getId() > 0) {
+                    ps.setInt(index++, v.getId());
+                }
+                ps.setString(index++, v.getType().toUpperCase());
+                ps.setString(index++, v.getBrand());
+                ps.setString(index++, v.getModel());
+                ps.setString(index++, v.getRegNumber());
+                ps.setDouble(index++, v.getPricePerDay());
+                ps.setBoolean(index++, v.isAvailable());
+            }
+            int written = ps.executeUpdate();
+            if (withIds) {
+                advanceIdSequence(conn, "vehicles");
+            }
+            return written;
+        } catch (SQLException e) {
+            Log.error("Error inserting " + vehicles.size() + " vehicles: " + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Move a SERIAL sequence past the largest ID after rows were inserted with explicit IDs,
+     * so later inserts without one don't collide. The rows are already written, so a
+     * failure (e.g. a database without pg_get_serial_sequence) is only logged.
+     */
+    static void advanceIdSequence(Connection conn, String table) {
+        String sql = "SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), (SELECT MAX(id) FROM " + table + "))";
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        } catch (SQLException e) {
+            Log.warn("Could not advance the " + table + " ID sequence: " + e.getMessage());
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Run a query with a fetch size and pass each row to visitor
+     * @param type bound to the single parameter, or null if the query has none
+     * @param primary read the primary rather than a replica
+     */
+    private int scan(String sql, String type, VehicleVisitor visitor, boolean primary) {
+        int visited = 0;
+
+        try (Connection conn = primary ? DBUtil.getConnection() : DBUtil.getReadConnection()) {
+            // PostgreSQL only honours the fetch size (uses a cursor) inside a transaction;
+            // the pool rolls back and restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                if (type != null) {
+                    ps.setString(1, type);
+                }
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next()) {
+                    visited++;
+                    if (!visitor.visit(mapVehicle(rs))) {
+                        break;
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            Log.error("Error streaming vehicles: " + e.getMessage(), e);
+            return -1;
+        }
+
+        return visited;
+    }
+
+    private Vehicle mapVehicle(ResultSet rs) throws SQLException {
+        return new Vehicle(
+            rs.getInt("id"),
+            rs.getString("type"),
+            rs.getString("brand"),
+            rs.getString("model"),
+            rs.getString("reg_number"),
+            rs.getDouble("price_per_day"),
+            rs.getBoolean("available")
+        );
+    }
 }
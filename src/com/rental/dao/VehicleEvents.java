@@ -0,0 +1,315 @@
+// com/rental/dao/VehicleEvents.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+import com.rental.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process publish/subscribe for vehicle availability changes (WATCH)
+ *
+ * PublishingVehicleDAO hands every successful availability write to publish(),
+ * which returns at once. A single dispatcher thread looks the vehicles up in one
+ * batch (getVehiclesByIds; nothing is looked up while nobody watches) and adds
+ * each change to the subscriptions of its type. If the lookup fails or misses a
+ * vehicle, every subscriber is told to resync rather than silently losing the change.
+ *
+ * A subscription buffers changes per vehicle, so a vehicle that changes several
+ * times before its subscriber catches up is sent once, in its latest state. The
+ * buffer holds at most maxPending vehicles: a subscriber that falls further
+ * behind loses its buffered changes and is told to resync (list the type again)
+ * instead, so a slow client costs bounded memory and never slows the publisher.
+ * Bulk catalog changes (imports) resync every subscriber the same way.
+ *
+ * getVersion() counts the writes published, whether anybody watches or not, so
+ * caches of encoded listings can tell that the catalog changed under them.
+ */
+public class VehicleEvents {
+    private final VehicleDAO lookup;
+    private final int maxPending;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+
+    // Bumped synchronously by publish()/publishResync(), before any dispatching
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    /**
+     * Told when a subscription that had nothing to deliver has events
+     * Called on the publishing thread; must not block (wake up a writer instead).
+     */
+    public interface Listener {
+        void eventsPending(Subscription subscription);
+    }
+
+    /**
+     * @param lookup DAO used to resolve the type and details of changed vehicles
+     * @param maxPending vehicles buffered per subscription before it is resynced
+     */
+    public VehicleEvents(VehicleDAO lookup, int maxPending) {
+        this.lookup = lookup;
+        this.maxPending = Math.max(1, maxPending);
+        this.dispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "vehicle-events");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Watch the availability of one vehicle type
+     * @param type e.g. "CAR" (case-insensitive)
+     */
+    public Subscription subscribe(String type, Listener listener) {
+        Subscription subscription = new Subscription(type.toUpperCase(), listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Availability of these vehicles was written
+     * @param changes vehicle ID -> new availability
+     */
+    public void publish(Map<Integer, Boolean> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        version.incrementAndGet();
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        final Map<Integer, Boolean> copy = new HashMap<>(changes);
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(copy);
+            }
+        });
+    }
+
+    /**
+     * The catalog changed in a way not described by availability deltas
+     * (e.g. a bulk import): every subscriber should list its type again
+     */
+    public void publishResync() {
+        version.incrementAndGet();
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Subscription subscription : subscriptions) {
+                    subscription.resync();
+                }
+            }
+        });
+    }
+
+    /**
+     * Catalog writes published so far; the same value twice means nothing was
+     * written through this server's VehicleDAO in between
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /** Active subscriptions */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /** Changes handed to subscriptions since startup (one per subscriber and vehicle) */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /** Subscriptions that overflowed (or were told to resync) since startup */
+    public long getResyncCount() {
+        return resyncs.get();
+    }
+
+    private void dispatch(Map<Integer, Boolean> changes) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        List<Vehicle> vehicles = lookup.getVehiclesByIds(changes.keySet());
+        if (vehicles == null || vehicles.size() < changes.size()) {
+            // Changes we can't describe would leave watchers with a stale list
+            Log.warn("[EVENTS] Could not look up " + (vehicles == null ? changes.size() : changes.size() - vehicles.size())
+                    + " changed vehicles; watchers resync");
+            publishResync();
+            return;
+        }
+        for (Vehicle vehicle : vehicles) {
+            Boolean available = changes.get(vehicle.getId());
+            String type = vehicle.getType() == null ? "" : vehicle.getType().toUpperCase();
+            for (Subscription subscription : subscriptions) {
+                if (subscription.type.equals(type)) {
+                    subscription.offer(vehicle, available);
+                }
+            }
+        }
+    }
+
+    /**
+     * One subscriber's interest in one type, with its bounded change buffer
+     */
+    public final class Subscription {
+        private final String type;
+        private final Listener listener;
+        // Latest change per vehicle, oldest first; guarded by "this"
+        private final LinkedHashMap<Integer, Change> pending = new LinkedHashMap<>();
+        private boolean resyncNeeded;
+        // Listener was told and poll() has not yet come back empty
+        private boolean signalled;
+        private boolean cancelled;
+        private long sequence;
+
+        private Subscription(String type, Listener listener) {
+            this.type = type;
+            this.listener = listener;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Take the next batch of changes, at most maxChanges vehicles
+         * @return the batch, or null if there is nothing to deliver (the listener
+         *         is called again when something arrives)
+         */
+        public synchronized Batch poll(int maxChanges) {
+            if (resyncNeeded) {
+                resyncNeeded = false;
+                return new Batch(++sequence, true, new ArrayList<Change>(0));
+            }
+            if (pending.isEmpty()) {
+                signalled = false;
+                return null;
+            }
+            List<Change> changes = new ArrayList<>(Math.min(maxChanges, pending.size()));
+            Iterator<Change> it = pending.values().iterator();
+            while (it.hasNext() && changes.size() < maxChanges) {
+                changes.add(it.next());
+                it.remove();
+            }
+            return new Batch(++sequence, false, changes);
+        }
+
+        /**
+         * Stop receiving changes and drop what is buffered
+         */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void offer(Vehicle vehicle, boolean available) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (!resyncNeeded) {
+                    // Re-insert so the vehicle moves to the end with its latest state
+                    pending.remove(vehicle.getId());
+                    if (pending.size() >= maxPending) {
+                        pending.clear();
+                        resyncNeeded = true;
+                        resyncs.incrementAndGet();
+                    } else {
+                        pending.put(vehicle.getId(), new Change(vehicle, available));
+                        published.incrementAndGet();
+                    }
+                }
+                if (signalled) {
+                    return;
+                }
+                signalled = true;
+            }
+            listener.eventsPending(this);
+        }
+
+        private void resync() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                pending.clear();
+                resyncNeeded = true;
+                resyncs.incrementAndGet();
+                if (signalled) {
+                    return;
+                }
+                signalled = true;
+            }
+            listener.eventsPending(this);
+        }
+    }
+
+    /**
+     * Changes delivered together, or a request to resync
+     */
+    public static final class Batch {
+        private final long sequence;
+        private final boolean resync;
+        private final List<Change> changes;
+
+        private Batch(long sequence, boolean resync, List<Change> changes) {
+            this.sequence = sequence;
+            this.resync = resync;
+            this.changes = changes;
+        }
+
+        /** Increases by one per batch of a subscription, so clients can spot gaps */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** The subscriber missed changes and must list the type again */
+        public boolean isResync() {
+            return resync;
+        }
+
+        public int size() {
+            return changes.size();
+        }
+
+        public Vehicle getVehicle(int index) {
+            return changes.get(index).vehicle;
+        }
+
+        public boolean isAvailable(int index) {
+            return changes.get(index).available;
+        }
+    }
+
+    private static final class Change {
+        final Vehicle vehicle;
+        final boolean available;
+
+        Change(Vehicle vehicle, boolean available) {
+            this.vehicle = vehicle;
+            this.available = available;
+        }
+    }
+}
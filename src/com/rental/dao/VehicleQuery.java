@@ -0,0 +1,98 @@
+// com/rental/dao/VehicleQuery.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+
+/**
+ * Search criteria for VehicleDAO.searchAvailableVehicles
+ * Every filter is optional; results are always sorted by price per day
+ * (ties by ID) and only available vehicles are returned.
+ */
+public class VehicleQuery {
+    private String type;
+    private String brand;
+    private String modelPrefix;
+    private double minPrice = 0;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private boolean descending;
+    private int limit = 100;
+
+    public String getType() {
+        return type;
+    }
+
+    /** "CAR" or "BIKE"; null for any type */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    /** Exact brand, case-insensitive; null for any brand */
+    public void setBrand(String brand) {
+        this.brand = brand;
+    }
+
+    public String getModelPrefix() {
+        return modelPrefix;
+    }
+
+    /** Start of the model name, case-insensitive; null for any model */
+    public void setModelPrefix(String modelPrefix) {
+        this.modelPrefix = modelPrefix;
+    }
+
+    public double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public double getMaxPrice() {
+        return maxPrice;
+    }
+
+    /** Inclusive upper bound; POSITIVE_INFINITY for none */
+    public void setMaxPrice(double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /** Most expensive first instead of cheapest first */
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * True if the vehicle passes every filter except availability
+     */
+    public boolean matches(Vehicle vehicle) {
+        if (type != null && !type.equalsIgnoreCase(vehicle.getType())) {
+            return false;
+        }
+        if (brand != null && !brand.equalsIgnoreCase(vehicle.getBrand())) {
+            return false;
+        }
+        if (modelPrefix != null && (vehicle.getModel() == null
+                || !vehicle.getModel().regionMatches(true, 0, modelPrefix, 0, modelPrefix.length()))) {
+            return false;
+        }
+        double price = vehicle.getPricePerDay();
+        return price >= minPrice && price <= maxPrice;
+    }
+}
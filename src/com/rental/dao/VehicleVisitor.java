@@ -0,0 +1,15 @@
+// com/rental/dao/VehicleVisitor.java
+package com.rental.dao;
+
+import com.rental.model.Vehicle;
+
+/**
+ * Callback for VehicleDAO.forEachAvailableVehicle
+ */
+public interface VehicleVisitor {
+    /**
+     * @param vehicle next vehicle
+     * @return false to stop reading (e.g. the client went away)
+     */
+    boolean visit(Vehicle vehicle);
+}
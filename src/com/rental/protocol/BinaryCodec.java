@@ -0,0 +1,198 @@
+// com/rental/protocol/BinaryCodec.java
+package com.rental.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Payload encoding for the binary protocol
+ *
+ * Every frame on the wire is: 4-byte big-endian payload length, then the payload.
+ * A payload is a list of fields, each a list of UTF-8 values:
+ *
+ *   payload := varint fieldCount, field*
+ *   field   := varint valueCount, value*
+ *   value   := varint byteLength, bytes
+ *
+ * Requests use one value per field (COMMAND, param1, ...); responses use records
+ * for table rows. Varints are unsigned LEB128, so small counts cost one byte.
+ */
+public class BinaryCodec {
+    /** Size of the frame length prefix in bytes */
+    public static final int FRAME_HEADER_SIZE = 4;
+
+    private BinaryCodec() {}
+
+    /**
+     * Encode request fields (command and parameters) into a payload
+     */
+    public static byte[] encodeRequest(String... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarInt(out, fields.length);
+        for (String field : fields) {
+            writeVarInt(out, 1);
+            writeString(out, field);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a request payload into flat fields
+     * Only the first value of each field is used
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static String[] decodeRequest(byte[] payload) {
+        return decodeRequest(payload, 0, payload.length);
+    }
+
+    /**
+     * Same as decodeRequest(payload) for a payload that is part of a larger buffer
+     * Fields are decoded straight into the result; extra values are skipped, not decoded
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static String[] decodeRequest(byte[] buffer, int offset, int length) {
+        ByteBuffer in = ByteBuffer.wrap(buffer, offset, length);
+        try {
+            String[] fields = new String[readCount(in)];
+            for (int i = 0; i < fields.length; i++) {
+                int valueCount = readCount(in);
+                fields[i] = "";
+                for (int j = 0; j < valueCount; j++) {
+                    int valueLength = readCount(in);
+                    if (j == 0) {
+                        fields[i] = new String(buffer, in.position(), valueLength, StandardCharsets.UTF_8);
+                    }
+                    in.position(in.position() + valueLength);
+                }
+            }
+            return fields;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed binary payload", e);
+        }
+    }
+
+    /**
+     * Encode a response into a payload
+     */
+    public static byte[] encodeResponse(Response response) {
+        List<String[]> fields = response.getFields();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + fields.size() * 32);
+        writeVarInt(out, fields.size());
+        for (String[] values : fields) {
+            writeVarInt(out, values.length);
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode a response straight into a frame (length prefix + payload)
+     * A reusable response is encoded once and its frame returned from then on;
+     * a tagged copy of one only encodes the tag and copies the rest.
+     */
+    public static byte[] encodeFrame(Response response) {
+        byte[] encoded = response.getEncodedFrame();
+        if (encoded != null) {
+            return encoded;
+        }
+        Response untagged = response.getUntagged();
+        if (untagged != null) {
+            byte[] base = encodeFrame(untagged);
+            ByteBuffer rest = ByteBuffer.wrap(base, FRAME_HEADER_SIZE, base.length - FRAME_HEADER_SIZE);
+            int fieldCount = readCount(rest);
+            ByteArrayOutputStream head = new ByteArrayOutputStream(32);
+            writeVarInt(head, fieldCount + 1);
+            writeVarInt(head, 1);
+            writeString(head, response.get(0));
+            int payloadLength = head.size() + rest.remaining();
+            ByteBuffer tagged = ByteBuffer.allocate(FRAME_HEADER_SIZE + payloadLength);
+            tagged.putInt(payloadLength);
+            tagged.put(head.toByteArray());
+            tagged.put(rest);
+            return tagged.array();
+        }
+        encoded = frame(encodeResponse(response));
+        response.setEncodedFrame(encoded);
+        return encoded;
+    }
+
+    /**
+     * Decode a response payload
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static Response decodeResponse(byte[] payload) {
+        return Response.of(decode(payload));
+    }
+
+    /**
+     * Wrap a payload in a frame (length prefix + payload)
+     */
+    public static byte[] frame(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    private static List<String[]> decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        try {
+            int fieldCount = readCount(in);
+            List<String[]> fields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                String[] values = new String[readCount(in)];
+                for (int j = 0; j < values.length; j++) {
+                    int length = readCount(in);
+                    values[j] = new String(payload, in.position(), length, StandardCharsets.UTF_8);
+                    in.position(in.position() + length);
+                }
+                fields.add(values);
+            }
+            return fields;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed binary payload", e);
+        }
+    }
+
+    /**
+     * Read a varint that is used as a count or length; it can never exceed what is left
+     */
+    private static int readCount(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IllegalArgumentException("Varint too long");
+            }
+        }
+        if (value < 0 || value > in.remaining()) {
+            throw new IllegalArgumentException("Count exceeds payload: " + value);
+        }
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,173 @@
+// com/rental/protocol/ProtocolIO.java
+package com.rental.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking stream helpers shared by the server and the client
+ *
+ * Text lines and binary frames are read from the same InputStream, so a
+ * connection can switch from text to binary after HELLO without losing
+ * bytes to a reader's read-ahead buffer (which BufferedReader would do).
+ */
+public class ProtocolIO {
+    /** Protocol version spoken by this code base */
+    public static final int VERSION = 1;
+    /** Longest text command accepted */
+    public static final int MAX_LINE_LENGTH = 64 * 1024;
+    /** Largest binary request frame a server accepts */
+    public static final int MAX_REQUEST_SIZE = 1024 * 1024;
+    /** Largest binary response frame a client accepts */
+    public static final int MAX_RESPONSE_SIZE = 64 * 1024 * 1024;
+
+    private ProtocolIO() {}
+
+    /**
+     * Read one '\n' terminated line (a trailing '\r' is dropped)
+     * @return the line, or null at end of stream
+     * @throws IOException if the line is longer than maxLength
+     */
+    public static String readLine(InputStream in, int maxLength) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return decodeLine(line.toByteArray());
+            }
+            line.write(b);
+            if (line.size() > maxLength) {
+                throw new IOException("Line too long");
+            }
+        }
+        return line.size() > 0 ? decodeLine(line.toByteArray()) : null;
+    }
+
+    /**
+     * Split the bytes of a text line (without its line break) into '|' separated fields
+     *
+     * Gives the same fields as new String(...).split("\\|") - trailing empty fields
+     * are dropped, an empty line is one empty field - but decodes each field
+     * straight from the bytes, without the intermediate line String and list.
+     * '|' is ASCII, so it can never be part of a multi-byte UTF-8 character.
+     */
+    public static String[] splitLine(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return new String[] { "" };
+        }
+        int end = offset + length;
+        // Trailing separators only produce empty fields, which split() drops
+        while (end > offset && bytes[end - 1] == '|') {
+            end--;
+        }
+        int count = end > offset ? 1 : 0;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '|') {
+                count++;
+            }
+        }
+        String[] fields = new String[count];
+        int fieldStart = offset;
+        int field = 0;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '|') {
+                fields[field++] = new String(bytes, fieldStart, i - fieldStart, StandardCharsets.UTF_8);
+                fieldStart = i + 1;
+            }
+        }
+        if (count > 0) {
+            fields[field] = new String(bytes, fieldStart, end - fieldStart, StandardCharsets.UTF_8);
+        }
+        return fields;
+    }
+
+    /**
+     * Split a text line that is already a String, with the same rules as
+     * splitLine(byte[], int, int) and without a regex or intermediate list
+     */
+    public static String[] splitLine(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == '|') {
+            end--;
+        }
+        if (end == 0) {
+            return line.isEmpty() ? new String[] { "" } : new String[0];
+        }
+        int count = 1;
+        for (int i = 0; i < end; i++) {
+            if (line.charAt(i) == '|') {
+                count++;
+            }
+        }
+        String[] fields = new String[count];
+        int fieldStart = 0;
+        int field = 0;
+        for (int i = 0; i < end; i++) {
+            if (line.charAt(i) == '|') {
+                fields[field++] = line.substring(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        fields[field] = line.substring(fieldStart, end);
+        return fields;
+    }
+
+    /**
+     * Write a text line terminated by '\n' (caller flushes)
+     */
+    public static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    /**
+     * Write a response as a text line or a binary frame (caller flushes)
+     * Reusable responses are written from their kept bytes, without encoding.
+     */
+    public static void writeResponse(OutputStream out, Response response, boolean binary) throws IOException {
+        out.write(binary ? BinaryCodec.encodeFrame(response) : response.toLineBytes());
+    }
+
+    /**
+     * Read one length-prefixed frame
+     * @return payload, or null at a clean end of stream
+     */
+    public static byte[] readFrame(InputStream in, int maxSize) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        int length = (first << 24) | (in.read() << 16) | (in.read() << 8) | in.read();
+        if (length < 0 || length > maxSize) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] payload = new byte[length];
+        try {
+            data.readFully(payload);
+        } catch (EOFException e) {
+            throw new IOException("Connection closed in the middle of a frame", e);
+        }
+        return payload;
+    }
+
+    /**
+     * Write a length-prefixed frame (caller flushes)
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        out.write(BinaryCodec.frame(payload));
+    }
+
+    private static String decodeLine(byte[] bytes) {
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
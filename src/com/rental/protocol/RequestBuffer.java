@@ -0,0 +1,108 @@
+// com/rental/protocol/RequestBuffer.java
+package com.rental.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reusable read buffer for the requests of one blocking connection
+ *
+ * ProtocolIO.readLine()/readFrame() allocate a new buffer (and a String) per
+ * request; a connection that reads many requests keeps one of these instead.
+ * A line or frame is read into the same array, which only grows, and split into
+ * fields straight from it. The fields are still returned as a new String[]:
+ * handlers keep and pass them on, and the NIO engine queues parsed requests
+ * for worker threads while its read buffer is refilled, so views into a reused
+ * buffer would not outlive the next read. Not thread-safe: one reader per connection.
+ */
+public class RequestBuffer {
+    private static final int INITIAL_SIZE = 256;
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int length;
+
+    /**
+     * Read one '\n' terminated line (a trailing '\r' is dropped)
+     * @return false at end of stream
+     * @throws IOException if the line is longer than maxLength
+     */
+    public boolean readLine(InputStream in, int maxLength) throws IOException {
+        length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                if (length > 0 && bytes[length - 1] == '\r') {
+                    length--;
+                }
+                return true;
+            }
+            if (length == maxLength) {
+                throw new IOException("Line too long");
+            }
+            if (length == bytes.length) {
+                grow(Math.min(maxLength, bytes.length * 2));
+            }
+            bytes[length++] = (byte) b;
+        }
+        if (length == 0) {
+            return false;
+        }
+        if (bytes[length - 1] == '\r') {
+            length--;
+        }
+        return true;
+    }
+
+    /**
+     * Read one length-prefixed frame
+     * @return false at a clean end of stream
+     */
+    public boolean readFrame(InputStream in, int maxSize) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return false;
+        }
+        int frameLength = (first << 24) | (in.read() << 16) | (in.read() << 8) | in.read();
+        if (frameLength < 0 || frameLength > maxSize) {
+            throw new IOException("Invalid frame length: " + frameLength);
+        }
+        if (frameLength > bytes.length) {
+            grow(frameLength);
+        }
+        int read = 0;
+        while (read < frameLength) {
+            int n = in.read(bytes, read, frameLength - read);
+            if (n < 0) {
+                throw new IOException("Connection closed in the middle of a frame");
+            }
+            read += n;
+        }
+        length = frameLength;
+        return true;
+    }
+
+    /**
+     * Fields of the line last read (see ProtocolIO.splitLine)
+     */
+    public String[] lineFields() {
+        return ProtocolIO.splitLine(bytes, 0, length);
+    }
+
+    /**
+     * Fields of the frame last read
+     * @return the fields, or null if the payload is malformed
+     */
+    public String[] frameFields() {
+        try {
+            return BinaryCodec.decodeRequest(bytes, 0, length);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void grow(int size) {
+        byte[] bigger = new byte[size];
+        System.arraycopy(bytes, 0, bigger, 0, length);
+        bytes = bigger;
+    }
+}
@@ -0,0 +1,268 @@
+// com/rental/protocol/Response.java
+package com.rental.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Structured server response
+ *
+ * A response is a list of fields; each field holds one value or, for table rows
+ * such as vehicles, several values (a record). The same response can be written
+ * in either wire format:
+ * - text:   fields joined by '|', record values joined by ','  (OK|LIST_VEHICLES|1|1,Toyota,...)
+ * - binary: see BinaryCodec, where values are length-prefixed and may contain any character
+ *
+ * A response that is sent many times unchanged (a cached LIST_VEHICLES reply)
+ * can be made reusable(): its encoded bytes are then kept after first use and
+ * written as they are, and the response can no longer be changed.
+ */
+public class Response {
+    private final List<String[]> fields = new ArrayList<>();
+    private boolean reusable;
+    // Encodings of a reusable response, filled on first use; racing threads compute the same bytes
+    private volatile byte[] line;
+    private volatile byte[] frame;
+    // Reusable response this one is a tagged copy of, so its bytes can be reused too
+    private Response untagged;
+
+    /**
+     * Start a success response: OK|command
+     */
+    public static Response ok(String command) {
+        return new Response().add("OK").add(command);
+    }
+
+    /**
+     * Build an error response: ERROR|message
+     */
+    public static Response error(String message) {
+        return new Response().add("ERROR").add(message);
+    }
+
+    /**
+     * Start an unsolicited message: EVENT|kind (e.g. the changes pushed to WATCH subscribers)
+     * Sent between replies, never in place of one; clients tell it apart by the first field.
+     */
+    public static Response event(String kind) {
+        return new Response().add("EVENT").add(kind);
+    }
+
+    /**
+     * Build a response from already decoded fields (used by clients and codecs)
+     */
+    public static Response of(List<String[]> fields) {
+        Response response = new Response();
+        response.fields.addAll(fields);
+        return response;
+    }
+
+    public Response add(String value) {
+        checkMutable();
+        fields.add(new String[] { value });
+        return this;
+    }
+
+    public Response add(int value) {
+        return add(String.valueOf(value));
+    }
+
+    public Response add(double value) {
+        return add(String.valueOf(value));
+    }
+
+    /**
+     * Add a record field (one row of a table)
+     */
+    public Response addRecord(String... values) {
+        checkMutable();
+        fields.add(values);
+        return this;
+    }
+
+    /**
+     * Copy of this response with a pipelining tag (e.g. "#17") as first field
+     */
+    public Response withTag(String tag) {
+        Response tagged = new Response().add(tag);
+        tagged.fields.addAll(fields);
+        if (reusable) {
+            tagged.untagged = this;
+        }
+        return tagged;
+    }
+
+    /**
+     * Keep the encoded bytes of this response after first use, for a response
+     * that is sent many times; it must not be changed afterwards
+     * @return this response
+     */
+    public Response reusable() {
+        reusable = true;
+        return this;
+    }
+
+    /**
+     * Pipelining tag of this response, or null if it is untagged
+     */
+    public String getTag() {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        String first = fields.get(0)[0];
+        return first.startsWith("#") ? first : null;
+    }
+
+    /**
+     * This response without its pipelining tag (itself if untagged)
+     */
+    public Response withoutTag() {
+        if (getTag() == null) {
+            return this;
+        }
+        Response untagged = new Response();
+        untagged.fields.addAll(fields.subList(1, fields.size()));
+        return untagged;
+    }
+
+    public boolean isOk() {
+        return !fields.isEmpty() && "OK".equals(fields.get(0)[0]);
+    }
+
+    public int getFieldCount() {
+        return fields.size();
+    }
+
+    /**
+     * Get the first (usually only) value of a field
+     */
+    public String get(int index) {
+        return fields.get(index)[0];
+    }
+
+    /**
+     * Get all values of a record field
+     */
+    public String[] getRecord(int index) {
+        return fields.get(index);
+    }
+
+    List<String[]> getFields() {
+        return fields;
+    }
+
+    /**
+     * The text encoding plus the '\n' line terminator, as UTF-8
+     * Kept by a reusable response, so the array must not be modified.
+     */
+    public byte[] toLineBytes() {
+        byte[] encoded = line;
+        if (encoded != null) {
+            return encoded;
+        }
+        if (untagged != null) {
+            // "#tag|" in front of the untagged line, which is only copied
+            byte[] tag = (get(0) + "|").getBytes(StandardCharsets.UTF_8);
+            byte[] rest = untagged.toLineBytes();
+            encoded = new byte[tag.length + rest.length];
+            System.arraycopy(tag, 0, encoded, 0, tag.length);
+            System.arraycopy(rest, 0, encoded, tag.length, rest.length);
+            return encoded;
+        }
+        encoded = (buildText() + "\n").getBytes(StandardCharsets.UTF_8);
+        if (reusable) {
+            line = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Binary frame of a reusable response, if it was encoded already (see BinaryCodec.encodeFrame)
+     */
+    byte[] getEncodedFrame() {
+        return frame;
+    }
+
+    void setEncodedFrame(byte[] encoded) {
+        if (reusable) {
+            frame = encoded;
+        }
+    }
+
+    /**
+     * Reusable response this one is a tagged copy of, or null
+     */
+    Response getUntagged() {
+        return untagged;
+    }
+
+    private void checkMutable() {
+        if (reusable) {
+            throw new IllegalStateException("Reusable responses cannot be changed");
+        }
+    }
+
+    /**
+     * Encode in the pipe-delimited text format (without line terminator)
+     */
+    public String toText() {
+        byte[] encoded = line;
+        if (encoded != null) {
+            return new String(encoded, 0, encoded.length - 1, StandardCharsets.UTF_8);
+        }
+        return buildText();
+    }
+
+    /**
+     * Start of the text encoding, for logs: at most maxChars characters, and when
+     * cut, the field count, so a large reply is never encoded whole for a log line
+     */
+    public String toSummary(int maxChars) {
+        byte[] encoded = line;
+        if (encoded != null && encoded.length - 1 <= maxChars) {
+            return toText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                text.append('|');
+            }
+            String[] values = fields.get(i);
+            for (int j = 0; j < values.length; j++) {
+                if (j > 0) {
+                    text.append(',');
+                }
+                String value = String.valueOf(values[j]);
+                text.append(value, 0, Math.min(value.length(), Math.max(0, maxChars + 1 - text.length())));
+            }
+            if (text.length() > maxChars) {
+                text.setLength(maxChars);
+                return text.append("... (").append(fields.size()).append(" fields)").toString();
+            }
+        }
+        return text.toString();
+    }
+
+    private String buildText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                text.append('|');
+            }
+            String[] values = fields.get(i);
+            for (int j = 0; j < values.length; j++) {
+                if (j > 0) {
+                    text.append(',');
+                }
+                text.append(values[j]);
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
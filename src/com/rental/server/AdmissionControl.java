@@ -0,0 +1,230 @@
+// com/rental/server/AdmissionControl.java
+package com.rental.server;
+
+import com.rental.protocol.Response;
+import com.rental.util.Config;
+import com.rental.util.ConnectionPool;
+import com.rental.util.DBUtil;
+import com.rental.util.Metrics;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the server takes on more work, shared by every engine
+ *
+ * - connections: at most MAX_CONNECTIONS are open; a client above the cap gets
+ *   ERROR|BUSY|retryAfterMs instead of WELCOME and is disconnected
+ * - rate limit: every client has a token bucket of RATE_LIMIT_PER_SECOND commands
+ *   (bursts up to RATE_LIMIT_BURST). Clients are identified by user once logged in
+ *   and by IP address before, so opening more connections doesn't buy more commands.
+ * - load shedding: while more than SHED_DB_WAITING threads wait for a database
+ *   connection (or the NIO worker queue holds SHED_WORKER_QUEUE commands) new
+ *   commands are answered with ERROR|BUSY|retryAfterMs at once, instead of queueing
+ *   behind work that is already late
+ *
+ * A rejected command costs no database or worker time, so latency of the commands
+ * that are admitted stays bounded. Clients should wait retryAfterMs and try again.
+ */
+public final class AdmissionControl {
+    /** Error message of every rejection; the next field is the suggested wait in ms */
+    public static final String BUSY = "BUSY";
+    /** Buckets of clients idle this long are dropped (they would be full anyway) */
+    private static final long BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final AdmissionControl INSTANCE = new AdmissionControl(
+            Config.getInt("MAX_CONNECTIONS", 10000),
+            Config.getInt("RATE_LIMIT_PER_SECOND", 0),
+            Config.getInt("RATE_LIMIT_BURST", 0),
+            Config.getInt("SHED_DB_WAITING", 50),
+            Config.getLong("BUSY_RETRY_AFTER_MS", 1000));
+
+    private final int maxConnections;
+    private final double ratePerSecond;
+    private final double burst;
+    private final int shedDbWaiting;
+    private final long retryAfterMillis;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private volatile long lastSweep = System.nanoTime();
+
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong throttledCommands = new AtomicLong();
+    private final AtomicLong shedCommands = new AtomicLong();
+
+    /**
+     * @param maxConnections open connections allowed (0 = unlimited)
+     * @param ratePerSecond commands per second per client (0 = no rate limit)
+     * @param burst bucket size; 0 means twice the rate
+     * @param shedDbWaiting shed commands while more threads wait for a DB connection (0 = never)
+     * @param retryAfterMillis wait suggested to clients rejected for overload
+     */
+    AdmissionControl(int maxConnections, int ratePerSecond, int burst, int shedDbWaiting, long retryAfterMillis) {
+        this.maxConnections = maxConnections;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst > 0 ? burst : Math.max(1, 2 * ratePerSecond);
+        this.shedDbWaiting = shedDbWaiting;
+        this.retryAfterMillis = Math.max(1, retryAfterMillis);
+        registerGauges();
+    }
+
+    public static AdmissionControl getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reserve a connection slot
+     * @return false if MAX_CONNECTIONS are already open; the caller must send
+     *         busyGreeting() and close the socket without calling releaseConnection()
+     */
+    public boolean tryOpenConnection() {
+        while (true) {
+            int open = openConnections.get();
+            if (maxConnections > 0 && open >= maxConnections) {
+                rejectedConnections.incrementAndGet();
+                return false;
+            }
+            if (openConnections.compareAndSet(open, open + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back the slot of a connection admitted by tryOpenConnection()
+     */
+    public void releaseConnection() {
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * Line sent instead of WELCOME when the connection cap is reached
+     */
+    public String busyGreeting() {
+        return busy(retryAfterMillis).toText();
+    }
+
+    /**
+     * Check one command before it is executed
+     * @param clientKey identifies the client for rate limiting (see ClientHandler)
+     * @return null to run the command, or the BUSY error to send instead
+     */
+    public Response admitCommand(String clientKey) {
+        if (ratePerSecond > 0) {
+            long waitMillis = bucketFor(clientKey).take();
+            if (waitMillis > 0) {
+                throttledCommands.incrementAndGet();
+                return busy(waitMillis);
+            }
+        }
+        if (shedDbWaiting > 0) {
+            ConnectionPool pool = DBUtil.getPoolIfCreated();
+            if (pool != null && pool.getWaitingCount() >= shedDbWaiting) {
+                shedCommands.incrementAndGet();
+                return busy(retryAfterMillis);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * BUSY reply for a command the worker pool has no room for (NIO engine)
+     */
+    Response shedCommand() {
+        shedCommands.incrementAndGet();
+        return busy(retryAfterMillis);
+    }
+
+    /**
+     * ERROR|BUSY|retryAfterMs
+     */
+    static Response busy(long retryAfterMillis) {
+        return Response.error(BUSY).add(String.valueOf(retryAfterMillis));
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private TokenBucket bucketFor(String clientKey) {
+        long now = System.nanoTime();
+        if (now - lastSweep > BUCKET_IDLE_NANOS) {
+            lastSweep = now;
+            sweep(now);
+        }
+        TokenBucket bucket = buckets.get(clientKey);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(burst, now);
+            bucket = buckets.putIfAbsent(clientKey, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    private void sweep(long now) {
+        Iterator<TokenBucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isIdleSince(now - BUCKET_IDLE_NANOS)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void registerGauges() {
+        Metrics.registerGauge("rental_connections_rejected", "Connections refused because MAX_CONNECTIONS was reached", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return rejectedConnections.get();
+            }
+        });
+        Metrics.registerGauge("rental_commands_throttled", "Commands rejected by the per-client rate limit", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return throttledCommands.get();
+            }
+        });
+        Metrics.registerGauge("rental_commands_shed", "Commands rejected because the server was overloaded", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return shedCommands.get();
+            }
+        });
+    }
+
+    /**
+     * Tokens refill continuously at ratePerSecond up to burst; one command costs one token
+     */
+    private final class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, else milliseconds until one is available
+         */
+        synchronized long take() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerSecond / 1e9);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / ratePerSecond));
+        }
+
+        synchronized boolean isIdleSince(long time) {
+            return lastRefill - time < 0;
+        }
+    }
+}
@@ -1,121 +1,758 @@
 // com/rental/server/ClientHandler.java
 package com.rental.server;
 
+import com.rental.dao.AvailabilityWriter;
+import com.rental.dao.Cluster;
+import com.rental.dao.DAOFactory;
+import com.rental.dao.DuplicatePolicy;
+import com.rental.dao.NodeClient;
 import com.rental.dao.UserDAO;
-import com.rental.dao.UserDAOImpl;
 import com.rental.dao.VehicleDAO;
-import com.rental.dao.VehicleDAOImpl;
+import com.rental.dao.VehicleEvents;
+import com.rental.dao.VehicleQuery;
+import com.rental.dao.VehicleVisitor;
+import com.rental.model.Booking;
 import com.rental.model.User;
 import com.rental.model.Vehicle;
+import com.rental.protocol.BinaryCodec;
+import com.rental.protocol.ProtocolIO;
+import com.rental.protocol.RequestBuffer;
+import com.rental.protocol.Response;
+import com.rental.service.BookingException;
+import com.rental.service.BookingService;
+import com.rental.service.PricingEngine;
+import com.rental.service.SessionStore;
+import com.rental.service.VehicleImporter;
+import com.rental.util.Config;
+import com.rental.util.DBUtil;
+import com.rental.util.Log;
+import com.rental.util.Metrics;
 
 import java.io.*;
 import java.net.Socket;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles communication with a single client
- * Runs in a separate thread for each connected client
+ * Holds the per-connection session (logged-in user) and executes commands.
+ * With the blocking engines it runs in its own thread via run();
+ * the NIO engine only calls processLine()/processFrame() from its worker pool.
+ *
+ * Connections start in the pipe-delimited text protocol. A client may send
+ * HELLO|BINARY|1 to switch to length-prefixed binary frames (see BinaryCodec)
+ * for the rest of the connection.
+ *
+ * LIST_VEHICLES|type|STREAM is the one command with more than one reply message;
+ * engines check isStreaming() and run it through processStream() with a sink that
+ * writes each message as soon as it is produced.
+ *
+ * WATCH|type subscribes the connection to availability changes of a type. The
+ * changes are pushed as EVENT|WATCH|... messages between replies: the engine is
+ * told through setEventListener() that events are waiting and fetches them with
+ * pollEvent() whenever it can write.
  */
 public class ClientHandler implements Runnable {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int MAX_CHUNK_SIZE = 5000;
+    /** WATCH subscriptions one connection may hold */
+    private static final int MAX_WATCHES = 16;
+    /** Changed vehicles per EVENT message; more changes go out as several messages */
+    private static final int EVENT_BATCH_SIZE = 500;
+    /** Characters of a request or reply written to the log; the rest is summarized */
+    private static final int MAX_LOGGED_CHARS = 200;
+    /** Runs the WATCH pushes of the blocking engines, see EventPusher */
+    private static final ExecutorService PUSH_EXECUTOR = createPushExecutor();
+    private static final String SEARCH_USAGE = "Use: SEARCH_VEHICLES|type=CAR|brand=Toyota|model=Inn|minPrice=1000|maxPrice=2500|sort=PRICE_DESC|limit=20 (all optional)";
+
+    /**
+     * Destination for the messages of a streamed command, in order
+     */
+    interface ResponseSink {
+        void send(Response message) throws IOException;
+    }
+
     private Socket socket;
     private UserDAO userDAO;
     private VehicleDAO vehicleDAO;
-    private User currentUser;
+    private BookingService bookingService;
+    private final PricingEngine pricing;
+    private final ListVehiclesCache listings;
+    private SessionStore sessionStore;
+    // Read by concurrently running read-only commands on NIO worker threads
+    private volatile User currentUser;
+    // Set after LOGIN / RESUME; lets a reconnecting client skip the users-table query
+    private volatile SessionStore.Session session;
     private String clientAddress;
+    // Rate-limit key of a client that has not logged in (IP without port)
+    private final String clientHostKey;
+    private final AdmissionControl admission;
+    private volatile boolean binaryMode;
+    // Blocking engines: a command is executing or its reply is being written
+    private volatile boolean executing;
+    // Keeps this client's reads on the primary right after it writes (DB_READ_URLS)
+    private final DBUtil.ReadSession readSession = new DBUtil.ReadSession();
+    // WATCH subscriptions; guarded by the list itself
+    private final List<VehicleEvents.Subscription> watches = new ArrayList<>();
+    // Subscription pollEvent() looks at first, so busy types don't starve the others
+    private int nextWatch;
+    // Set once the connection is gone, so a late WATCH can't leak a subscription
+    private boolean watchesClosed;
+    // Engine callback telling it that pollEvent() has something
+    private volatile Runnable eventListener;
+    // Blocking engines: writes events while run() waits for the next command
+    private EventPusher pusher;
+    // NODE command of a cluster node, created on first use
+    private NodeCommands nodeCommands;
+    private final VehicleEvents.Listener watchListener = new VehicleEvents.Listener() {
+        @Override
+        public void eventsPending(VehicleEvents.Subscription subscription) {
+            Runnable listener = eventListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    };
 
     public ClientHandler(Socket socket) {
+        this(socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
         this.socket = socket;
-        this.userDAO = new UserDAOImpl();
-        this.vehicleDAO = new VehicleDAOImpl();
+    }
+
+    /**
+     * Create a handler that is not bound to a blocking socket
+     * Used by the NIO engine, which owns the channel and does its own I/O
+     * @param clientAddress "host:port" of the client, used in log lines
+     */
+    ClientHandler(String clientAddress) {
+        this(clientAddress, DAOFactory.getUserDAO(), DAOFactory.getVehicleDAO(), BookingService.getInstance(),
+                ListVehiclesCache.getInstance());
+    }
+
+    /**
+     * Create a handler with explicit dependencies (benchmarks use in-memory DAOs)
+     * LIST_VEHICLES replies are not cached, since nothing reports writes to vehicleDAO.
+     */
+    ClientHandler(String clientAddress, UserDAO userDAO, VehicleDAO vehicleDAO, BookingService bookingService) {
+        this(clientAddress, userDAO, vehicleDAO, bookingService, new ListVehiclesCache(vehicleDAO, null, 0, 0));
+    }
+
+    ClientHandler(String clientAddress, UserDAO userDAO, VehicleDAO vehicleDAO, BookingService bookingService,
+                  ListVehiclesCache listings) {
+        this.listings = listings;
+        this.userDAO = userDAO;
+        this.vehicleDAO = vehicleDAO;
+        this.bookingService = bookingService;
+        this.sessionStore = SessionStore.getInstance();
         this.currentUser = null;
-        this.clientAddress = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        this.clientAddress = clientAddress;
+        int portSeparator = clientAddress.lastIndexOf(':');
+        this.clientHostKey = "ip:" + (portSeparator > 0 ? clientAddress.substring(0, portSeparator) : clientAddress);
+        this.admission = AdmissionControl.getInstance();
+        this.pricing = PricingEngine.getInstance();
     }
 
     @Override
     public void run() {
-        System.out.println("[" + clientAddress + "] Client handler started");
+        Log.info("[" + clientAddress + "] Client handler started");
+        Metrics.connectionOpened();
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+        final ConnectionTimeouts.Watch watch = ConnectionTimeouts.watch(new ConnectionTimeouts.Connection() {
+            @Override
+            public boolean isBusy() {
+                return executing;
+            }
+
+            @Override
+            public void timedOut(String reason) {
+                Log.warn("[" + clientAddress + "] " + reason);
+                try {
+                    // Unblocks the read in run(), which then cleans up as usual
+                    socket.close();
+                } catch (IOException e) {
+                    Log.error("[" + clientAddress + "] Error closing socket", e);
+                }
+            }
+        });
+
+        // Raw streams (no BufferedReader) so we can switch to binary frames after HELLO.
+        // Reads are reported to the timeout watch below the buffer, as they arrive.
+        // Lines and frames are read into one reusable buffer and split from there.
+        RequestBuffer request = new RequestBuffer();
+        try (InputStream in = new BufferedInputStream(watchReads(socket.getInputStream(), watch));
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
 
             // Send welcome message
-            out.println("WELCOME");
+            ProtocolIO.writeLine(out, "WELCOME");
+            out.flush();
+
+            // Streamed replies are flushed per message so the client can consume them as they come.
+            // Writes hold the stream's lock because WATCH events are written from another thread.
+            ResponseSink sink = new ResponseSink() {
+                @Override
+                public void send(Response message) throws IOException {
+                    synchronized (out) {
+                        ProtocolIO.writeResponse(out, message, binaryMode);
+                        out.flush();
+                    }
+                }
+            };
+            pusher = new EventPusher(sink);
+            eventListener = new Runnable() {
+                @Override
+                public void run() {
+                    pusher.wake();
+                }
+            };
 
-            String line;
             // Process commands from client
-            while ((line = in.readLine()) != null) {
-                System.out.println("[" + clientAddress + "] Received: " + line);
-                String response = handleCommand(line);
-                out.println(response);
-                System.out.println("[" + clientAddress + "] Sent: " + response);
+            while (true) {
+                if (binaryMode) {
+                    if (!request.readFrame(in, ProtocolIO.MAX_REQUEST_SIZE)) {
+                        break;
+                    }
+                    commandReceived(watch, in);
+                    String[] parts = request.frameFields();
+                    // Held from execution to reply, so no event slips in while HELLO switches framing
+                    synchronized (out) {
+                        if (parts != null && isStreaming(parts)) {
+                            processStream(parts, sink);
+                        } else {
+                            ProtocolIO.writeResponse(out, processFields(parts), true);
+                        }
+                    }
+                } else {
+                    if (!request.readLine(in, ProtocolIO.MAX_LINE_LENGTH)) {
+                        break;
+                    }
+                    commandReceived(watch, in);
+                    String[] parts = request.lineFields();
+                    synchronized (out) {
+                        if (isStreaming(parts)) {
+                            processStream(parts, sink);
+                        } else {
+                            ProtocolIO.writeResponse(out, processText(parts), false);
+                        }
+                    }
+                }
+                // Pipelined commands already buffered: answer them all, then flush once
+                if (in.available() == 0) {
+                    synchronized (out) {
+                        out.flush();
+                    }
+                }
+                executing = false;
             }
 
         } catch (IOException e) {
-            System.err.println("[" + clientAddress + "] Error: " + e.getMessage());
+            if (!socket.isClosed()) {
+                Log.warn("[" + clientAddress + "] Error: " + e.getMessage());
+            }
         } finally {
+            if (watch != null) {
+                watch.stop();
+            }
+            connectionClosed();
+            if (pusher != null) {
+                pusher.stop();
+            }
+            Metrics.connectionClosed();
             try {
                 socket.close();
-                System.out.println("[" + clientAddress + "] Connection closed");
+                Log.info("[" + clientAddress + "] Connection closed");
             } catch (IOException e) {
-                e.printStackTrace();
+                Log.error("[" + clientAddress + "] Error closing socket", e);
             }
         }
     }
 
     /**
-     * Parse and handle client commands
-     * Protocol: COMMAND|param1|param2|...
+     * Blocking engines: a command was read and is about to run
      */
-    private String handleCommand(String line) {
-        String[] parts = line.split("\\|");
-        
-        if (parts.length == 0) {
-            return "ERROR|Empty command";
+    private void commandReceived(ConnectionTimeouts.Watch watch, InputStream in) throws IOException {
+        executing = true;
+        if (watch != null) {
+            watch.commandReceived(in.available() > 0);
         }
+    }
+
+    /**
+     * Report every successful read of the socket to the timeout watch
+     */
+    private static InputStream watchReads(InputStream raw, final ConnectionTimeouts.Watch watch) {
+        if (watch == null) {
+            return raw;
+        }
+        return new FilterInputStream(raw) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    watch.bytesReceived();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    watch.bytesReceived();
+                }
+                return n;
+            }
+        };
+    }
 
-        String cmd = parts[0].toUpperCase();
+    /**
+     * Execute one text protocol line and return the response line
+     * Shared by every server engine so logging and semantics stay identical
+     */
+    String processLine(String line) {
+        return processText(ProtocolIO.splitLine(line)).toText();
+    }
 
-        switch (cmd) {
-            case "LOGIN":
-                if (parts.length < 3) return "ERROR|Invalid LOGIN format. Use: LOGIN|email|password";
+    /**
+     * Execute a text protocol line the engine already split (see ProtocolIO.splitLine);
+     * the line is only rebuilt when it is logged
+     * @return the reply; engines write it with toLineBytes(), which may be cached bytes
+     */
+    Response processText(String[] parts) {
+        boolean logged = shouldLog(parts);
+        if (logged) {
+            Log.info("[" + clientAddress + "] Received: " + summarize(parts));
+        }
+        Response response = handleTagged(parts);
+        if (logged) {
+            Log.info("[" + clientAddress + "] Sent: " + response.toSummary(MAX_LOGGED_CHARS));
+        }
+        return response;
+    }
+
+    /**
+     * Execute one binary request frame and return the response payload
+     * Malformed payloads get an error response instead of closing the connection
+     */
+    byte[] processFrame(byte[] payload) {
+        return BinaryCodec.encodeResponse(processFields(decodeFrame(payload)));
+    }
+
+    /**
+     * Decode a binary request payload
+     * @return the fields, or null if the payload is malformed
+     */
+    private static String[] decodeFrame(byte[] payload) {
+        try {
+            return BinaryCodec.decodeRequest(payload);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Execute an already decoded binary request
+     * @param parts request fields, or null if the frame could not be decoded
+     */
+    Response processFields(String[] parts) {
+        Response response;
+        boolean logged;
+        if (parts == null) {
+            logged = true;
+            response = Response.error("Malformed binary request");
+        } else {
+            logged = shouldLog(parts);
+            if (logged) {
+                Log.info("[" + clientAddress + "] Received (binary): " + summarize(parts));
+            }
+            response = handleTagged(parts);
+        }
+        if (logged) {
+            Log.info("[" + clientAddress + "] Sent (binary): " + response.toSummary(MAX_LOGGED_CHARS));
+        }
+        return response;
+    }
+
+    /**
+     * Execute a streamed request (see isStreaming), passing every reply message to sink
+     * Messages carry the request's #tag, if any. Only the final message is logged.
+     * @throws IOException if the sink fails; the rest of the stream is not produced
+     */
+    void processStream(String[] parts, ResponseSink sink) throws IOException {
+        boolean logged = shouldLog(parts);
+        if (logged) {
+            Log.info("[" + clientAddress + "] Received: " + summarize(parts));
+        }
+        String tag = isTag(parts[0]) ? parts[0] : null;
+        String[] command = tag == null ? parts : Arrays.copyOfRange(parts, 1, parts.length);
+
+        Response last = admission.admitCommand(getRateLimitKey());
+        if (last == null) {
+            long start = System.nanoTime();
+            touchSession();
+            DBUtil.ReadSession previous = DBUtil.bindReadSession(readSession);
+            try {
+                last = streamVehicles(command, tag, sink);
+            } finally {
+                DBUtil.bindReadSession(previous);
+            }
+            Metrics.recordCommand("LIST_VEHICLES", start, last.isOk());
+        }
+
+        if (tag != null) {
+            last = last.withTag(tag);
+        }
+        if (logged) {
+            Log.info("[" + clientAddress + "] Sent (streamed): " + last.toSummary(MAX_LOGGED_CHARS));
+        }
+        sink.send(last);
+    }
+
+    /**
+     * Check whether a request is LIST_VEHICLES|type|STREAM[|chunkSize], which the
+     * engine must run with processStream() instead of processLine()/processFields()
+     * @param parts request fields, optionally starting with a #tag
+     */
+    static boolean isStreaming(String[] parts) {
+        int index = (parts.length > 0 && isTag(parts[0])) ? 1 : 0;
+        return parts.length > index + 2
+                && parts[index].equalsIgnoreCase("LIST_VEHICLES")
+                && parts[index + 2].trim().equalsIgnoreCase("STREAM");
+    }
+
+    /**
+     * A request as logged: the fields joined by '|', cut at MAX_LOGGED_CHARS
+     * (e.g. an IMPORT_VEHICLES with thousands of rows) with the field count added
+     */
+    private static String summarize(String[] parts) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                text.append('|');
+            }
+            // Never copy more of a long field than can be shown
+            text.append(parts[i], 0, Math.min(parts[i].length(), MAX_LOGGED_CHARS + 1 - text.length()));
+            if (text.length() > MAX_LOGGED_CHARS) {
+                text.setLength(MAX_LOGGED_CHARS);
+                return text.append("... (").append(parts.length).append(" fields)").toString();
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Request/response logging is sampled per command (LOG_SAMPLE_RATE, LOG_SAMPLE_<COMMAND>)
+     * so busy commands like LIST_VEHICLES don't format and print every payload
+     */
+    private static boolean shouldLog(String[] parts) {
+        if (!Log.isEnabled(Log.Level.INFO)) {
+            return false;
+        }
+        int index = (parts.length > 0 && isTag(parts[0])) ? 1 : 0;
+        if (parts.length <= index) {
+            return Log.sample("");
+        }
+        Command command = Command.lookup(parts[index]);
+        return Log.sample(command != null ? command.name() : parts[index].toUpperCase());
+    }
+
+    /**
+     * Check whether a command only reads shared state and does not change the session,
+     * so a pipelining engine may run it concurrently with other such commands
+     * of the same connection
+     * @param parts request fields, optionally starting with a #tag
+     */
+    static boolean isConcurrentSafe(String[] parts) {
+        int index = (parts.length > 0 && isTag(parts[0])) ? 1 : 0;
+        if (parts.length <= index) {
+            return false;
+        }
+        Command command = Command.lookup(parts[index]);
+        if (command == Command.LIST_VEHICLES) {
+            // A stream writes straight to the connection, so it must not overlap other replies
+            return !isStreaming(parts);
+        }
+        return command != null && command.concurrentSafe;
+    }
+
+    /**
+     * Pipelining support: a request may start with a "#tag" field (e.g. #17|LIST_VEHICLES|CAR);
+     * the response then starts with the same field (#17|OK|LIST_VEHICLES|...)
+     * so clients can match replies to requests. The handlers index the command
+     * from 0, so a tagged request costs one copy of the field references.
+     */
+    private Response handleTagged(String[] parts) {
+        if (parts.length > 0 && isTag(parts[0])) {
+            String[] command = new String[parts.length - 1];
+            System.arraycopy(parts, 1, command, 0, command.length);
+            return handleCommand(command).withTag(parts[0]);
+        }
+        return handleCommand(parts);
+    }
+
+    /**
+     * Virtual threads where the JVM has them; otherwise a shared pool whose
+     * threads are reused across connections and die after a minute unused
+     */
+    private static ExecutorService createPushExecutor() {
+        if (VirtualThreadEngine.isSupported()) {
+            return VirtualThreadEngine.createVirtualExecutor();
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "watch-push-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static boolean isTag(String field) {
+        return field.length() > 1 && field.charAt(0) == '#';
+    }
+
+    /**
+     * True once the client has negotiated binary framing with HELLO
+     * The engine must switch framing after writing the HELLO reply
+     */
+    boolean isBinaryMode() {
+        return binaryMode;
+    }
+
+    String getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * Handle client commands, recording latency and errors per command in Metrics
+     * Commands turned away by AdmissionControl are answered with ERROR|BUSY|retryAfterMs
+     * and not recorded, so they don't skew the latency of the commands that ran.
+     */
+    private Response handleCommand(String[] parts) {
+        Response busy = admission.admitCommand(getRateLimitKey());
+        if (busy != null) {
+            return busy;
+        }
+        long start = System.nanoTime();
+        touchSession();
+        Command command = parts.length > 0 ? Command.lookup(parts[0]) : null;
+        Response response;
+        DBUtil.ReadSession previous = DBUtil.bindReadSession(readSession);
+        try {
+            response = executeCommand(command, parts);
+        } finally {
+            DBUtil.bindReadSession(previous);
+        }
+        Metrics.recordCommand(command != null ? command.name() : "UNKNOWN", start, response.isOk());
+        return response;
+    }
+
+    /**
+     * Clients are rate limited per user once logged in, per IP address before
+     */
+    private String getRateLimitKey() {
+        User user = currentUser;
+        return user != null ? "user:" + user.getId() : clientHostKey;
+    }
+
+    private void touchSession() {
+        SessionStore.Session active = session;
+        if (active != null) {
+            sessionStore.touch(active);
+        }
+    }
+
+    /**
+     * Execute one command
+     * Protocol: COMMAND|param1|param2|...  (parts already split by the wire format)
+     * @param command parts[0] looked up in the dispatch table, null if unknown
+     */
+    private Response executeCommand(Command command, String[] parts) {
+        if (parts.length == 0 || parts[0].isEmpty()) {
+            return Response.error("Empty command");
+        }
+        if (command == null) {
+            return Response.error("Unknown command: " + parts[0].toUpperCase());
+        }
+        if (command.access != Command.Access.ANYONE) {
+            User user = currentUser;
+            if (user == null) {
+                return Response.error("Not logged in");
+            }
+            if (command.access == Command.Access.ADMIN && !"ADMIN".equalsIgnoreCase(user.getRole())) {
+                return Response.error(command.name() + " is only available to admins");
+            }
+        }
+
+        switch (command) {
+            case HELLO:
+                if (parts.length < 3) return Response.error("Invalid HELLO format. Use: HELLO|TEXT|1 or HELLO|BINARY|1");
+                return handleHello(parts[1], parts[2]);
+
+            case LOGIN:
+                if (parts.length < 3) return Response.error("Invalid LOGIN format. Use: LOGIN|email|password");
                 return handleLogin(parts[1], parts[2]);
+
+            case RESUME:
+                if (parts.length < 2) return Response.error("Invalid RESUME format. Use: RESUME|token");
+                return handleResume(parts[1]);
                 
-            case "REGISTER":
-                if (parts.length < 4) return "ERROR|Invalid REGISTER format. Use: REGISTER|name|email|password";
+            case REGISTER:
+                if (parts.length < 4) return Response.error("Invalid REGISTER format. Use: REGISTER|name|email|password");
                 return handleRegister(parts[1], parts[2], parts[3]);
                 
-            case "LIST_VEHICLES":
-                if (currentUser == null) return "ERROR|Not logged in";
-                if (parts.length < 2) return "ERROR|Type required. Use: LIST_VEHICLES|CAR or LIST_VEHICLES|BIKE";
+            case LIST_VEHICLES:
+                if (parts.length < 2) return Response.error("Type required. Use: LIST_VEHICLES|CAR or LIST_VEHICLES|BIKE");
+                if (parts.length > 2 && parts[2].trim().equalsIgnoreCase("IF_NONE_MATCH")) {
+                    return handleListVehiclesIfNoneMatch(parts[1], parts.length > 3 ? parts[3] : null);
+                }
+                if (parts.length > 2) return handleListVehiclesPage(parts[1], parts[2], parts.length > 3 ? parts[3] : null);
                 return handleListVehicles(parts[1]);
+
+            case SEARCH_VEHICLES:
+                return handleSearchVehicles(parts);
                 
-            case "LOGOUT":
+            case BOOK:
+                if (parts.length < 4) return Response.error("Invalid BOOK format. Use: BOOK|vehicleId|startDate|endDate (dates as YYYY-MM-DD)");
+                return handleBook(parts[1], parts[2], parts[3]);
+
+            case QUOTE:
+                if (parts.length < 4) return Response.error("Invalid QUOTE format. Use: QUOTE|type|startDate|endDate (dates as YYYY-MM-DD)");
+                return handleQuote(parts[1], parts[2], parts[3]);
+
+            case CANCEL:
+                if (parts.length < 2) return Response.error("Invalid CANCEL format. Use: CANCEL|bookingId");
+                return handleCancel(parts[1]);
+
+            case MY_BOOKINGS:
+                return handleMyBookings();
+
+            case WATCH:
+                if (parts.length < 2 || parts[1].trim().isEmpty()) return Response.error("Type required. Use: WATCH|CAR or WATCH|BIKE");
+                return handleWatch(parts[1]);
+
+            case UNWATCH:
+                return handleUnwatch(parts.length > 1 ? parts[1] : null);
+
+            case LOGOUT:
                 return handleLogout();
+
+            case PING:
+                // Keepalive: any command resets the idle timeout, this one is free
+                return Response.ok("PONG");
+
+            case STATS:
+                return handleStats();
+
+            case IMPORT_VEHICLES:
+                if (parts.length < 3) return Response.error("Invalid IMPORT_VEHICLES format. Use: IMPORT_VEHICLES|SKIP or UPDATE or FAIL|type,brand,model,regNumber,price[,available]|...");
+                return handleImportVehicles(parts);
+
+            case SET_AVAILABILITY:
+                if (parts.length < 3) return Response.error("Invalid SET_AVAILABILITY format. Use: SET_AVAILABILITY|true or false|vehicleId|vehicleId|...");
+                return handleSetAvailability(parts);
+
+            case NODE:
+                if (nodeCommands == null) {
+                    nodeCommands = new NodeCommands(userDAO, vehicleDAO, DAOFactory.getBookingDAO());
+                }
+                return nodeCommands.execute(parts);
+
+            case CLUSTER:
+                if (parts.length < 2) return Response.error("Invalid CLUSTER format. Use: CLUSTER|STATUS or CLUSTER|ADD|host:port");
+                return handleCluster(parts);
                 
             default:
-                return "ERROR|Unknown command: " + cmd;
+                throw new IllegalStateException("No handler for " + command);
+        }
+    }
+
+    /**
+     * Handle HELLO command (protocol negotiation)
+     * The reply is always sent in the current framing; BINARY takes effect afterwards
+     */
+    private Response handleHello(String mode, String versionStr) {
+        int version;
+        try {
+            version = Integer.parseInt(versionStr.trim());
+        } catch (NumberFormatException e) {
+            return Response.error("Invalid protocol version: " + versionStr);
         }
+        if (version != ProtocolIO.VERSION) {
+            return Response.error("Unsupported protocol version: " + version + " (server speaks " + ProtocolIO.VERSION + ")");
+        }
+
+        String requested = mode.trim().toUpperCase();
+        if (requested.equals("BINARY")) {
+            binaryMode = true;
+        } else if (requested.equals("TEXT")) {
+            if (binaryMode) {
+                return Response.error("Cannot switch back to TEXT");
+            }
+        } else {
+            return Response.error("Unknown protocol mode: " + mode);
+        }
+        return Response.ok("HELLO").add(requested).add(ProtocolIO.VERSION);
     }
 
     /**
      * Handle LOGIN command
      */
-    private String handleLogin(String email, String password) {
+    private Response handleLogin(String email, String password) {
         User user = userDAO.login(email, password);
         
         if (user == null) {
-            return "ERROR|Login failed. Invalid email or password.";
+            return Response.error("Login failed. Invalid email or password.");
         } else {
+            endSession();
             this.currentUser = user;
-            System.out.println("[" + clientAddress + "] User logged in: " + user.getName() + " (" + user.getRole() + ")");
-            return "OK|LOGIN|" + user.getName() + "|" + user.getRole();
+            this.session = sessionStore.create(user);
+            Log.info("[" + clientAddress + "] User logged in: " + user.getName() + " (" + user.getRole() + ")");
+            return Response.ok("LOGIN").add(user.getName()).add(user.getRole()).add(session.getToken());
+        }
+    }
+
+    /**
+     * Handle RESUME command: restore the session of an earlier LOGIN after a reconnect
+     * Served from memory; the users table is not queried
+     */
+    private Response handleResume(String token) {
+        SessionStore.Session resumed = sessionStore.resume(token.trim());
+        if (resumed == null) {
+            return Response.error("Session expired or invalid. Please log in again.");
+        }
+        if (resumed != session) {
+            endSession();
+        }
+        this.session = resumed;
+        this.currentUser = resumed.getUser();
+        Log.info("[" + clientAddress + "] Session resumed: " + currentUser.getName());
+        return Response.ok("RESUME").add(currentUser.getName()).add(currentUser.getRole());
+    }
+
+    private void endSession() {
+        SessionStore.Session active = session;
+        if (active != null) {
+            sessionStore.invalidate(active);
+            session = null;
         }
     }
 
     /**
      * Handle REGISTER command
      */
-    private String handleRegister(String name, String email, String password) {
+    private Response handleRegister(String name, String email, String password) {
         User user = new User();
         user.setName(name);
         user.setEmail(email);
@@ -125,48 +762,651 @@ public class ClientHandler implements Runnable {
         User createdUser = userDAO.register(user);
         
         if (createdUser == null) {
-            return "ERROR|Registration failed. Email may already be in use.";
+            return Response.error("Registration failed. Email may already be in use.");
         }
         
-        System.out.println("[" + clientAddress + "] New user registered: " + name + " (ID: " + createdUser.getId() + ")");
-        return "OK|REGISTER|" + createdUser.getId();
+        Log.info("[" + clientAddress + "] New user registered: " + name + " (ID: " + createdUser.getId() + ")");
+        return Response.ok("REGISTER").add(createdUser.getId());
     }
 
     /**
      * Handle LIST_VEHICLES command
      * Returns available vehicles of specified type (CAR or BIKE)
      */
-    private String handleListVehicles(String type) {
-        List<Vehicle> vehicles = vehicleDAO.getAvailableVehiclesByType(type);
-        
-        if (vehicles.isEmpty()) {
-            return "OK|LIST_VEHICLES|0";
+    private Response handleListVehicles(String type) {
+        // Format: OK|LIST_VEHICLES|count|id,brand,model,regNum,price|id,brand,model,regNum,price|...
+        // The reply is shared and sent from its cached bytes while the type is unchanged
+        ListVehiclesCache.Listing listing = listings.get(type);
+        if (listing == null) {
+            return Response.error("Could not load vehicles");
         }
+        return listing.full;
+    }
 
-        // Format: OK|LIST_VEHICLES|count|id,brand,model,regNum,price|id,brand,model,regNum,price|...
-        StringBuilder response = new StringBuilder();
-        response.append("OK|LIST_VEHICLES|").append(vehicles.size());
-        
+    /**
+     * Handle LIST_VEHICLES|type|IF_NONE_MATCH[|version]
+     * OK|NOT_MODIFIED|version if the client's version is current, otherwise the whole
+     * listing with the version as last field: OK|LIST_VEHICLES|count|...|version
+     */
+    private Response handleListVehiclesIfNoneMatch(String type, String version) {
+        ListVehiclesCache.Listing listing = listings.get(type);
+        if (listing == null) {
+            return Response.error("Could not load vehicles");
+        }
+        if (version != null && listing.version.equals(version.trim())) {
+            return listing.notModified;
+        }
+        return listing.versioned;
+    }
+
+    /**
+     * Handle LIST_VEHICLES|type|cursor[|limit] (keyset pagination)
+     * Format: OK|LIST_VEHICLES|count|records...|nextCursor
+     * cursor is 0 for the first page, then the nextCursor of the previous page;
+     * nextCursor is END on the last page
+     */
+    private Response handleListVehiclesPage(String type, String cursorStr, String limitStr) {
+        int afterId;
+        int limit;
+        try {
+            afterId = Integer.parseInt(cursorStr.trim());
+            limit = limitStr == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitStr.trim());
+        } catch (NumberFormatException e) {
+            return Response.error("Invalid LIST_VEHICLES format. Use: LIST_VEHICLES|type|cursor|limit or LIST_VEHICLES|type|STREAM");
+        }
+        if (afterId < 0 || limit < 1) {
+            return Response.error("Cursor must be 0 or more and limit at least 1");
+        }
+        limit = Math.min(limit, MAX_PAGE_SIZE);
+
+        // One extra row tells us whether another page exists
+        List<Vehicle> vehicles = vehicleDAO.getAvailableVehiclesPage(type, afterId, limit + 1);
+        if (vehicles == null) {
+            // Not an empty page: that would tell the client the list has ended
+            return Response.error("Could not load vehicles");
+        }
+        boolean more = vehicles.size() > limit;
+        int count = more ? limit : vehicles.size();
+
+        Response response = Response.ok("LIST_VEHICLES").add(count);
+        for (int i = 0; i < count; i++) {
+            addVehicleRecord(response, vehicles.get(i));
+        }
+        return response.add(more ? String.valueOf(vehicles.get(count - 1).getId()) : "END");
+    }
+
+    /**
+     * Run LIST_VEHICLES|type|STREAM[|chunkSize]: send the vehicles in chunks of
+     * OK|LIST_VEHICLES_CHUNK|count|records... while reading them from the database,
+     * so memory stays bounded by the chunk size however large the fleet is
+     * @param command request fields without the tag
+     * @param tag pipelining tag for the chunks, or null
+     * @return the final message: OK|LIST_VEHICLES_END|total, or an error
+     */
+    private Response streamVehicles(String[] command, final String tag, final ResponseSink sink) throws IOException {
+        if (currentUser == null) {
+            return Response.error("Not logged in");
+        }
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        if (command.length > 3) {
+            try {
+                chunkSize = Integer.parseInt(command[3].trim());
+            } catch (NumberFormatException e) {
+                return Response.error("Invalid LIST_VEHICLES format. Use: LIST_VEHICLES|type|STREAM|chunkSize");
+            }
+            if (chunkSize < 1) {
+                return Response.error("Chunk size must be at least 1");
+            }
+        }
+        final int limit = Math.min(chunkSize, MAX_CHUNK_SIZE);
+
+        final List<Vehicle> chunk = new ArrayList<>(limit);
+        final IOException[] sendFailure = new IOException[1];
+        int total = vehicleDAO.forEachAvailableVehicle(command[1], new VehicleVisitor() {
+            @Override
+            public boolean visit(Vehicle vehicle) {
+                chunk.add(vehicle);
+                if (chunk.size() < limit) {
+                    return true;
+                }
+                try {
+                    sendChunk(chunk, tag, sink);
+                    return true;
+                } catch (IOException e) {
+                    sendFailure[0] = e;
+                    return false;
+                }
+            }
+        });
+        if (sendFailure[0] != null) {
+            throw sendFailure[0];
+        }
+        if (total < 0) {
+            return Response.error("Could not load vehicles");
+        }
+        if (!chunk.isEmpty()) {
+            sendChunk(chunk, tag, sink);
+        }
+        return Response.ok("LIST_VEHICLES_END").add(total);
+    }
+
+    private static void sendChunk(List<Vehicle> chunk, String tag, ResponseSink sink) throws IOException {
+        Response response = Response.ok("LIST_VEHICLES_CHUNK").add(chunk.size());
+        for (Vehicle v : chunk) {
+            addVehicleRecord(response, v);
+        }
+        chunk.clear();
+        sink.send(tag == null ? response : response.withTag(tag));
+    }
+
+    /**
+     * Handle SEARCH_VEHICLES|filter=value|... (filters in any order, all optional)
+     * Format: OK|SEARCH_VEHICLES|count|id,brand,model,regNum,price|...  (cheapest first,
+     * or most expensive first with sort=PRICE_DESC)
+     */
+    private Response handleSearchVehicles(String[] parts) {
+        VehicleQuery query = new VehicleQuery();
+        query.setLimit(DEFAULT_PAGE_SIZE);
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq <= 0) {
+                return Response.error("Invalid search filter: " + parts[i] + ". " + SEARCH_USAGE);
+            }
+            String name = parts[i].substring(0, eq).trim().toUpperCase();
+            String value = parts[i].substring(eq + 1).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            try {
+                switch (name) {
+                    case "TYPE":
+                        query.setType(value.toUpperCase());
+                        break;
+                    case "BRAND":
+                        query.setBrand(value);
+                        break;
+                    case "MODEL":
+                        query.setModelPrefix(value);
+                        break;
+                    case "MINPRICE":
+                        query.setMinPrice(Double.parseDouble(value));
+                        break;
+                    case "MAXPRICE":
+                        query.setMaxPrice(Double.parseDouble(value));
+                        break;
+                    case "LIMIT":
+                        query.setLimit(Integer.parseInt(value));
+                        break;
+                    case "SORT":
+                        if (value.equalsIgnoreCase("PRICE")) {
+                            query.setDescending(false);
+                        } else if (value.equalsIgnoreCase("PRICE_DESC")) {
+                            query.setDescending(true);
+                        } else {
+                            return Response.error("Unknown sort: " + value + ". Use PRICE or PRICE_DESC");
+                        }
+                        break;
+                    default:
+                        return Response.error("Unknown search filter: " + name + ". " + SEARCH_USAGE);
+                }
+            } catch (NumberFormatException e) {
+                return Response.error("Invalid number for " + name + ": " + value);
+            }
+        }
+        if (query.getLimit() < 1) {
+            return Response.error("Limit must be at least 1");
+        }
+        if (Double.isNaN(query.getMinPrice()) || Double.isNaN(query.getMaxPrice())) {
+            return Response.error("Invalid price range");
+        }
+        query.setLimit(Math.min(query.getLimit(), MAX_PAGE_SIZE));
+
+        List<Vehicle> vehicles = vehicleDAO.searchAvailableVehicles(query);
+        Response response = Response.ok("SEARCH_VEHICLES").add(vehicles.size());
         for (Vehicle v : vehicles) {
-            response.append("|")
-                    .append(v.getId()).append(",")
-                    .append(v.getBrand()).append(",")
-                    .append(v.getModel()).append(",")
-                    .append(v.getRegNumber()).append(",")
-                    .append(v.getPricePerDay());
+            addVehicleRecord(response, v);
         }
-        
-        return response.toString();
+        return response;
+    }
+
+    /**
+     * Vehicle record used by every LIST_VEHICLES form: id,brand,model,regNum,price
+     */
+    private static void addVehicleRecord(Response response, Vehicle v) {
+        response.addRecord(
+                String.valueOf(v.getId()),
+                v.getBrand(),
+                v.getModel(),
+                v.getRegNumber(),
+                String.valueOf(v.getPricePerDay()));
+    }
+
+    /**
+     * Handle BOOK command
+     * Dates are YYYY-MM-DD; the vehicle is returned on endDate
+     */
+    private Response handleBook(String vehicleIdStr, String startStr, String endStr) {
+        int vehicleId;
+        LocalDate startDate;
+        LocalDate endDate;
+        try {
+            vehicleId = Integer.parseInt(vehicleIdStr.trim());
+            startDate = LocalDate.parse(startStr.trim());
+            endDate = LocalDate.parse(endStr.trim());
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return Response.error("Invalid BOOK format. Use: BOOK|vehicleId|startDate|endDate (dates as YYYY-MM-DD)");
+        }
+
+        try {
+            Booking booking = bookingService.book(currentUser, vehicleId, startDate, endDate);
+            Log.info("[" + clientAddress + "] Booking created: " + booking.getId() +
+                               " (vehicle " + vehicleId + ", " + startDate + " to " + endDate + ")");
+            return Response.ok("BOOK").add(booking.getId()).add(booking.getTotalPrice());
+        } catch (BookingException e) {
+            return Response.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Handle QUOTE command: price every available vehicle of a type for a date range
+     * Format: OK|QUOTE|count|days|id,brand,model,pricePerDay,total|...
+     * Totals include weekend/seasonal multipliers and long-rental discounts (see PricingEngine)
+     */
+    private Response handleQuote(String type, String startStr, String endStr) {
+        LocalDate startDate;
+        LocalDate endDate;
+        try {
+            startDate = LocalDate.parse(startStr.trim());
+            endDate = LocalDate.parse(endStr.trim());
+        } catch (DateTimeParseException e) {
+            return Response.error("Invalid QUOTE format. Use: QUOTE|type|startDate|endDate (dates as YYYY-MM-DD)");
+        }
+        try {
+            BookingService.validateDates(startDate, endDate);
+        } catch (BookingException e) {
+            return Response.error(e.getMessage());
+        }
+
+        String key = type.trim().toUpperCase();
+        List<Vehicle> vehicles = vehicleDAO.getAvailableVehiclesByType(key);
+        if (vehicles == null) {
+            return Response.error("Could not load vehicles");
+        }
+        PricingEngine.Quote quote = pricing.quoteAll(key, vehicles, startDate, endDate);
+
+        Response response = Response.ok("QUOTE").add(quote.size()).add(quote.getDays());
+        for (int i = 0; i < quote.size(); i++) {
+            Vehicle v = quote.getVehicle(i);
+            response.addRecord(String.valueOf(v.getId()), v.getBrand(), v.getModel(),
+                    String.valueOf(v.getPricePerDay()), String.valueOf(quote.getTotal(i)));
+        }
+        return response;
+    }
+
+    /**
+     * Handle CANCEL command
+     */
+    private Response handleCancel(String bookingIdStr) {
+        int bookingId;
+        try {
+            bookingId = Integer.parseInt(bookingIdStr.trim());
+        } catch (NumberFormatException e) {
+            return Response.error("Invalid CANCEL format. Use: CANCEL|bookingId");
+        }
+
+        try {
+            bookingService.cancel(currentUser, bookingId);
+            Log.info("[" + clientAddress + "] Booking cancelled: " + bookingId);
+            return Response.ok("CANCEL").add(bookingId);
+        } catch (BookingException e) {
+            return Response.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Handle MY_BOOKINGS command
+     * Format: OK|MY_BOOKINGS|count|id,vehicleId,startDate,endDate,totalPrice,status|...
+     */
+    private Response handleMyBookings() {
+        List<Booking> bookings = bookingService.getBookingsForUser(currentUser.getId());
+
+        Response response = Response.ok("MY_BOOKINGS").add(bookings.size());
+
+        for (Booking b : bookings) {
+            response.addRecord(
+                    String.valueOf(b.getId()),
+                    String.valueOf(b.getVehicleId()),
+                    String.valueOf(b.getStartDate()),
+                    String.valueOf(b.getEndDate()),
+                    String.valueOf(b.getTotalPrice()),
+                    b.getStatus());
+        }
+
+        return response;
+    }
+
+    /**
+     * Handle STATS command (admin only)
+     * Format: OK|STATS|count|kind,name,values...|...  (see Metrics.snapshot for the record layouts)
+     */
+    private Response handleStats() {
+        List<String[]> records = Metrics.snapshot();
+        Response response = Response.ok("STATS").add(records.size());
+        for (String[] record : records) {
+            response.addRecord(record);
+        }
+        return response;
+    }
+
+    /**
+     * Handle IMPORT_VEHICLES command (admin only): one CSV row per field
+     * Format: OK|IMPORT_VEHICLES|rowsRead|written|skipped|rejected|millis|error...
+     * Large imports are sent as several commands, or run with the VehicleImporter CLI
+     */
+    private Response handleImportVehicles(String[] parts) {
+        DuplicatePolicy policy = VehicleImporter.parsePolicy(parts[1]);
+        if (policy == null) {
+            return Response.error("Unknown duplicate policy: " + parts[1] + ". Use SKIP, UPDATE or FAIL");
+        }
+        StringBuilder csv = new StringBuilder();
+        for (int i = 2; i < parts.length; i++) {
+            csv.append(parts[i]).append('\n');
+        }
+
+        VehicleImporter.Result result;
+        try {
+            result = new VehicleImporter(vehicleDAO, Config.getInt("IMPORT_BATCH_SIZE", 1000), policy)
+                    .importCsv(new StringReader(csv.toString()), null);
+        } catch (IOException e) {
+            return Response.error("Import failed: " + e.getMessage());
+        }
+        Log.info("[" + clientAddress + "] Vehicle import by " + currentUser.getName() + ": " + result);
+
+        if (result.isStopped()) {
+            return Response.error("Import stopped at row " + result.getStoppedAtLine() + " (rejected by the database, e.g. duplicate reg_number); "
+                    + result.getWritten() + " vehicles written before that");
+        }
+        Response response = Response.ok("IMPORT_VEHICLES")
+                .add(String.valueOf(result.getRowsRead()))
+                .add(String.valueOf(result.getWritten()))
+                .add(String.valueOf(result.getSkipped()))
+                .add(String.valueOf(result.getRejected()))
+                .add(String.valueOf(result.getElapsedMillis()));
+        for (String error : result.getErrors()) {
+            response.add(error);
+        }
+        return response;
+    }
+
+    /**
+     * Handle SET_AVAILABILITY command (admin only), e.g. for vehicles returned at the end of the day
+     * Changes are queued in the shared AvailabilityWriter and written in batches,
+     * so they show up in LIST_VEHICLES/SEARCH_VEHICLES after the next flush.
+     * Format: OK|SET_AVAILABILITY|queuedCount
+     */
+    private Response handleSetAvailability(String[] parts) {
+        String value = parts[1].trim().toLowerCase();
+        if (!value.equals("true") && !value.equals("false")) {
+            return Response.error("Availability must be true or false");
+        }
+        boolean available = value.equals("true");
+
+        int[] vehicleIds = new int[parts.length - 2];
+        for (int i = 2; i < parts.length; i++) {
+            try {
+                vehicleIds[i - 2] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                return Response.error("Invalid vehicle ID: " + parts[i]);
+            }
+        }
+
+        AvailabilityWriter writer = DAOFactory.getAvailabilityWriter();
+        for (int vehicleId : vehicleIds) {
+            writer.submit(vehicleId, available);
+        }
+        Log.info("[" + clientAddress + "] " + currentUser.getName() + " queued availability=" + available
+                + " for " + vehicleIds.length + " vehicles");
+        return Response.ok("SET_AVAILABILITY").add(vehicleIds.length);
+    }
+
+    /**
+     * Handle CLUSTER command (admin only) on a cluster router (STORAGE_BACKEND=cluster)
+     * CLUSTER|STATUS  -> OK|CLUSTER|count|slot,address,vehicles,failedCalls|...
+     *                    (vehicles counts stale copies too; DOWN if the node did not answer)
+     * CLUSTER|ADD|host:port -> OK|CLUSTER|slot|movedVehicles, after the new node has
+     *                    received its users and its share of the vehicles
+     */
+    private Response handleCluster(String[] parts) {
+        final Cluster cluster = DAOFactory.getCluster();
+        if (cluster == null) {
+            return Response.error("This server is not a cluster router (STORAGE_BACKEND=cluster)");
+        }
+        String action = parts[1].trim().toUpperCase();
+        if (action.equals("STATUS")) {
+            List<NodeClient> nodes = cluster.getNodes();
+            Response response = Response.ok("CLUSTER").add(nodes.size());
+            for (int slot = 0; slot < nodes.size(); slot++) {
+                NodeClient node = nodes.get(slot);
+                String vehicles;
+                try {
+                    vehicles = node.callOk("NODE", "INFO").get(2);
+                } catch (IOException e) {
+                    vehicles = "DOWN";
+                }
+                response.addRecord(String.valueOf(slot), node.getAddress(), vehicles,
+                        String.valueOf(node.getFailureCount()));
+            }
+            return response;
+        }
+        if (action.equals("ADD")) {
+            if (parts.length < 3 || parts[2].trim().isEmpty()) {
+                return Response.error("Node address required. Use: CLUSTER|ADD|host:port");
+            }
+            String address = parts[2].trim();
+            try {
+                int moved = cluster.addNode(address);
+                Log.info("[" + clientAddress + "] " + currentUser.getName() + " added cluster node " + address);
+                int slot = 0;
+                while (!cluster.getNodes().get(slot).getAddress().equals(address)) {
+                    slot++;
+                }
+                return Response.ok("CLUSTER").add(slot).add(moved);
+            } catch (IOException | IllegalArgumentException e) {
+                return Response.error("Could not add node " + address + ": " + e.getMessage());
+            }
+        }
+        return Response.error("Unknown CLUSTER action: " + parts[1] + ". Use STATUS or ADD");
+    }
+
+    /**
+     * Handle WATCH|type: push availability changes of a type to this connection
+     * Watching a type twice is harmless. Format: OK|WATCH|type
+     * Changes then arrive as EVENT|WATCH|type|seq|count|ADD,id,brand,model,regNum,price|REMOVE,id|...
+     * (see pollEvent)
+     */
+    private Response handleWatch(String type) {
+        String watched = type.trim().toUpperCase();
+        synchronized (watches) {
+            if (watchesClosed) {
+                return Response.error("Connection is closing");
+            }
+            for (VehicleEvents.Subscription subscription : watches) {
+                if (subscription.getType().equals(watched)) {
+                    return Response.ok("WATCH").add(watched);
+                }
+            }
+            if (watches.size() >= MAX_WATCHES) {
+                return Response.error("Too many watched types (max " + MAX_WATCHES + ")");
+            }
+            watches.add(DAOFactory.getVehicleEvents().subscribe(watched, watchListener));
+        }
+        Log.info("[" + clientAddress + "] Watching " + watched);
+        return Response.ok("WATCH").add(watched);
+    }
+
+    /**
+     * Handle UNWATCH[|type]: stop watching one type, or every type
+     * Events already sent may still be in flight. Format: OK|UNWATCH|stoppedCount
+     */
+    private Response handleUnwatch(String type) {
+        return Response.ok("UNWATCH").add(cancelWatches(type == null ? null : type.trim().toUpperCase()));
+    }
+
+    /**
+     * @param type type to stop watching, or null for all
+     * @return number of subscriptions cancelled
+     */
+    private int cancelWatches(String type) {
+        int cancelled = 0;
+        synchronized (watches) {
+            for (int i = watches.size() - 1; i >= 0; i--) {
+                VehicleEvents.Subscription subscription = watches.get(i);
+                if (type == null || subscription.getType().equals(type)) {
+                    subscription.cancel();
+                    watches.remove(i);
+                    cancelled++;
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Set the callback that tells the engine pollEvent() has something to send
+     * Runs on the event dispatcher thread, so it must only wake the engine up.
+     * Once called, it is not called again until pollEvent() has returned null.
+     */
+    void setEventListener(Runnable listener) {
+        this.eventListener = listener;
+    }
+
+    /**
+     * Next pushed message for this connection, taking turns between watched types
+     * Engines call this until it returns null, writing each message in the current framing.
+     * @return EVENT|WATCH|type|seq|count|records... or EVENT|WATCH|type|seq|RESYNC
+     *         (changes were dropped; list the type again), or null if nothing is waiting
+     */
+    Response pollEvent() {
+        synchronized (watches) {
+            int count = watches.size();
+            for (int i = 0; i < count; i++) {
+                int index = (nextWatch + i) % count;
+                VehicleEvents.Subscription subscription = watches.get(index);
+                VehicleEvents.Batch batch = subscription.poll(EVENT_BATCH_SIZE);
+                if (batch != null) {
+                    nextWatch = (index + 1) % count;
+                    return formatEvent(subscription.getType(), batch);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static Response formatEvent(String type, VehicleEvents.Batch batch) {
+        Response event = Response.event("WATCH").add(type).add(String.valueOf(batch.getSequence()));
+        if (batch.isResync()) {
+            return event.add("RESYNC");
+        }
+        event.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Vehicle v = batch.getVehicle(i);
+            if (batch.isAvailable(i)) {
+                event.addRecord("ADD", String.valueOf(v.getId()), v.getBrand(), v.getModel(),
+                        v.getRegNumber(), String.valueOf(v.getPricePerDay()));
+            } else {
+                event.addRecord("REMOVE", String.valueOf(v.getId()));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * The engine closed the connection: drop its subscriptions
+     */
+    void connectionClosed() {
+        synchronized (watches) {
+            watchesClosed = true;
+        }
+        cancelWatches(null);
+        eventListener = null;
     }
 
     /**
      * Handle LOGOUT command
+     * Watched types are dropped with the login.
      */
-    private String handleLogout() {
+    private Response handleLogout() {
         if (currentUser != null) {
-            System.out.println("[" + clientAddress + "] User logged out: " + currentUser.getName());
+            Log.info("[" + clientAddress + "] User logged out: " + currentUser.getName());
             currentUser = null;
+            endSession();
+        }
+        cancelWatches(null);
+        return Response.ok("LOGOUT");
+    }
+
+    /**
+     * Blocking engines: writes WATCH events off the connection's thread, because
+     * it spends its idle time blocked reading the next command
+     * Each wakeup runs one drain task on PUSH_EXECUTOR until no events are left,
+     * so a connection only holds a thread while it has events to write.
+     */
+    private final class EventPusher implements Runnable {
+        private final ResponseSink sink;
+        // Events arrived since the running task last looked
+        private boolean pending;
+        // A drain task is queued or running
+        private boolean scheduled;
+        private boolean stopped;
+
+        EventPusher(ResponseSink sink) {
+            this.sink = sink;
+        }
+
+        synchronized void wake() {
+            if (stopped) {
+                return;
+            }
+            pending = true;
+            if (!scheduled) {
+                scheduled = true;
+                PUSH_EXECUTOR.execute(this);
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (takePending()) {
+                    Response event;
+                    while ((event = pollEvent()) != null) {
+                        // A slow client blocks this write; meanwhile its changes coalesce
+                        sink.send(event);
+                    }
+                }
+            } catch (IOException e) {
+                // Connection is closing; run() reports the error
+                synchronized (this) {
+                    stopped = true;
+                    scheduled = false;
+                }
+            }
+        }
+
+        /**
+         * @return true to drain again, false once the task ends (nothing pending or stopped)
+         */
+        private synchronized boolean takePending() {
+            if (!pending || stopped) {
+                scheduled = false;
+                return false;
+            }
+            pending = false;
+            return true;
         }
-        return "OK|LOGOUT";
     }
 }
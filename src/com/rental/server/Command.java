@@ -0,0 +1,95 @@
+// com/rental/server/Command.java
+package com.rental.server;
+
+/**
+ * Dispatch table of the client commands
+ *
+ * Each command carries the checks ClientHandler makes before running it, so
+ * they are declared once here instead of in every branch. Command names are
+ * matched case-insensitively against the received field without upper-casing
+ * it: lookup() only compares characters against a table built at class load,
+ * so resolving a command allocates nothing.
+ */
+enum Command {
+    HELLO(Access.ANYONE, false),
+    LOGIN(Access.ANYONE, false),
+    RESUME(Access.ANYONE, false),
+    REGISTER(Access.ANYONE, false),
+    LIST_VEHICLES(Access.USER, true),
+    SEARCH_VEHICLES(Access.USER, true),
+    BOOK(Access.USER, false),
+    QUOTE(Access.USER, true),
+    CANCEL(Access.USER, false),
+    MY_BOOKINGS(Access.USER, true),
+    WATCH(Access.USER, false),
+    UNWATCH(Access.ANYONE, false),
+    LOGOUT(Access.ANYONE, false),
+    PING(Access.ANYONE, true),
+    STATS(Access.ADMIN, false),
+    IMPORT_VEHICLES(Access.ADMIN, false),
+    SET_AVAILABILITY(Access.ADMIN, false),
+    NODE(Access.ADMIN, false),
+    CLUSTER(Access.ADMIN, false);
+
+    /**
+     * Who may run a command
+     */
+    enum Access {
+        ANYONE,
+        /** Any logged-in user */
+        USER,
+        /** Logged-in users with the ADMIN role */
+        ADMIN
+    }
+
+    // BY_LENGTH[n] holds the commands whose name has n characters
+    private static final Command[][] BY_LENGTH;
+
+    static {
+        int longest = 0;
+        for (Command command : values()) {
+            longest = Math.max(longest, command.name().length());
+        }
+        int[] counts = new int[longest + 1];
+        for (Command command : values()) {
+            counts[command.name().length()]++;
+        }
+        BY_LENGTH = new Command[longest + 1][];
+        for (int length = 0; length <= longest; length++) {
+            BY_LENGTH[length] = new Command[counts[length]];
+            counts[length] = 0;
+        }
+        for (Command command : values()) {
+            int length = command.name().length();
+            BY_LENGTH[length][counts[length]++] = command;
+        }
+    }
+
+    final Access access;
+    /**
+     * Only reads shared state and leaves the session alone, so a pipelining
+     * engine may run it alongside other such commands of the same connection
+     */
+    final boolean concurrentSafe;
+
+    Command(Access access, boolean concurrentSafe) {
+        this.access = access;
+        this.concurrentSafe = concurrentSafe;
+    }
+
+    /**
+     * Find a command by name, ignoring case
+     * @return the command, or null if there is none of that name
+     */
+    static Command lookup(String name) {
+        if (name.length() >= BY_LENGTH.length) {
+            return null;
+        }
+        for (Command command : BY_LENGTH[name.length()]) {
+            if (command.name().regionMatches(true, 0, name, 0, name.length())) {
+                return command;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+// com/rental/server/ConnectionTimeouts.java
+package com.rental.server;
+
+import com.rental.util.Config;
+import com.rental.util.Metrics;
+import com.rental.util.TimingWheel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Idle and read timeouts for client connections, shared by every engine
+ *
+ * - IDLE_TIMEOUT_MS: a connection that has sent no command for this long, and is not
+ *   executing or still receiving a reply, is closed. Clients that want to stay
+ *   connected while idle send PING (answered with OK|PONG).
+ * - READ_TIMEOUT_MS: once the first bytes of a command have arrived, the rest of it
+ *   must follow within this time (slow or half-open senders can't hold a connection).
+ *
+ * All connections share one TimingWheel. Each keeps a single timer armed for its
+ * nearest possible deadline; traffic only updates two timestamps, and when the timer
+ * fires it either closes the connection or re-arms itself for the new deadline.
+ * A connection costs one wheel entry, no thread and no SO_TIMEOUT.
+ */
+final class ConnectionTimeouts {
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Config.getLong("IDLE_TIMEOUT_MS", 300000));
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Config.getLong("READ_TIMEOUT_MS", 30000));
+    /** Wheel precision; timeouts fire up to one tick late */
+    private static final long TICK_MILLIS = 100;
+    /** One turn covers 51.2 s; longer timeouts wait extra rounds */
+    private static final int WHEEL_SIZE = 512;
+
+    private static final AtomicLong timedOut = new AtomicLong();
+    private static TimingWheel wheel;
+
+    /**
+     * What a watched connection must provide
+     */
+    interface Connection {
+        /** True while a command is executing or its reply is still being sent */
+        boolean isBusy();
+
+        /** Close the connection; called on the wheel thread, so it must not block */
+        void timedOut(String reason);
+    }
+
+    private ConnectionTimeouts() {}
+
+    /**
+     * Start watching a connection
+     * @return the watch to report traffic to, or null if both timeouts are disabled
+     */
+    static Watch watch(Connection connection) {
+        if (IDLE_TIMEOUT_NANOS <= 0 && READ_TIMEOUT_NANOS <= 0) {
+            return null;
+        }
+        Watch watch = new Watch(connection);
+        watch.arm(System.nanoTime());
+        return watch;
+    }
+
+    private static synchronized TimingWheel getWheel() {
+        if (wheel == null) {
+            wheel = new TimingWheel("connection-timeouts", TICK_MILLIS, WHEEL_SIZE);
+            final TimingWheel created = wheel;
+            Metrics.registerGauge("rental_connection_timers", "Connection timeout timers scheduled", new Metrics.Gauge() {
+                @Override
+                public double value() {
+                    return created.getPendingCount();
+                }
+            });
+            Metrics.registerGauge("rental_connections_timed_out", "Connections closed by idle or read timeout since startup", new Metrics.Gauge() {
+                @Override
+                public double value() {
+                    return timedOut.get();
+                }
+            });
+        }
+        return wheel;
+    }
+
+    /**
+     * Timestamps of one connection plus its armed timer
+     * Traffic methods may be called from any thread; they never touch the wheel.
+     */
+    static final class Watch implements Runnable {
+        private final Connection connection;
+        private volatile long lastCommand;
+        // When the first bytes of the command being received arrived; 0 if none is partial
+        private volatile long partialSince;
+        private volatile TimingWheel.Timeout timer;
+        private volatile boolean stopped;
+
+        private Watch(Connection connection) {
+            this.connection = connection;
+            this.lastCommand = System.nanoTime();
+        }
+
+        /**
+         * A complete command was received
+         * @param morePending bytes of the next command are already buffered
+         */
+        void commandReceived(boolean morePending) {
+            long now = System.nanoTime();
+            lastCommand = now;
+            partialSince = morePending ? now : 0;
+        }
+
+        /**
+         * Bytes arrived that don't complete a command yet
+         */
+        void bytesReceived() {
+            if (partialSince == 0) {
+                partialSince = System.nanoTime();
+            }
+        }
+
+        /**
+         * The connection closed; drop its timer
+         */
+        void stop() {
+            stopped = true;
+            TimingWheel.Timeout armed = timer;
+            if (armed != null) {
+                armed.cancel();
+            }
+        }
+
+        /**
+         * Wheel thread: the nearest deadline may have passed
+         */
+        @Override
+        public void run() {
+            if (stopped) {
+                return;
+            }
+            long now = System.nanoTime();
+            long partial = partialSince;
+            boolean readExpired = READ_TIMEOUT_NANOS > 0 && partial != 0 && now - partial >= READ_TIMEOUT_NANOS;
+            boolean idleExpired = IDLE_TIMEOUT_NANOS > 0 && partial == 0 && now - lastCommand >= IDLE_TIMEOUT_NANOS;
+            if (readExpired || idleExpired) {
+                if (connection.isBusy()) {
+                    // Long-running command or slow reader; the next command isn't read meanwhile
+                    lastCommand = now;
+                    if (partial != 0) {
+                        partialSince = now;
+                    }
+                } else {
+                    expire(readExpired
+                            ? "Timed out waiting for the rest of a command"
+                            : "No command for " + TimeUnit.NANOSECONDS.toMillis(IDLE_TIMEOUT_NANOS) + " ms, closing");
+                    return;
+                }
+            }
+            arm(now);
+        }
+
+        private void expire(String reason) {
+            stopped = true;
+            timedOut.incrementAndGet();
+            connection.timedOut(reason);
+        }
+
+        /**
+         * Schedule the next check at the earliest moment a timeout could expire
+         * Bytes may start arriving at any time, so with a read timeout the check
+         * never sleeps longer than READ_TIMEOUT.
+         */
+        private void arm(long now) {
+            long delay = Long.MAX_VALUE;
+            if (IDLE_TIMEOUT_NANOS > 0) {
+                delay = lastCommand + IDLE_TIMEOUT_NANOS - now;
+            }
+            if (READ_TIMEOUT_NANOS > 0) {
+                long partial = partialSince;
+                delay = Math.min(delay, partial != 0 ? partial + READ_TIMEOUT_NANOS - now : READ_TIMEOUT_NANOS);
+            }
+            timer = getWheel().schedule(this, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay)));
+            if (stopped) {
+                timer.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+// com/rental/server/ListVehiclesCache.java
+package com.rental.server;
+
+import com.rental.dao.DAOFactory;
+import com.rental.dao.VehicleDAO;
+import com.rental.dao.VehicleEvents;
+import com.rental.model.Vehicle;
+import com.rental.protocol.Response;
+import com.rental.util.Config;
+import com.rental.util.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ready-to-send LIST_VEHICLES|type replies, per type
+ *
+ * Listing a whole type is the most frequent command, and its reply only changes
+ * when availability is written. A cached type keeps its replies as reusable
+ * Responses, so after the first send the engines write the same bytes again
+ * without building or encoding anything (see Response.reusable()).
+ *
+ * An entry is rebuilt once VehicleEvents.getVersion() has moved (an availability
+ * write or import went through this server) or after ttlMillis, which bounds how
+ * long writes made elsewhere (another server on the same database) go unseen.
+ * Without a VehicleEvents nothing is cached, and at most maxEntries types are
+ * (least recently used is evicted), so junk type names can't grow the map or
+ * keep the real types out. Failed loads are not cached.
+ *
+ * Each listing has a content version, a hash of its type and vehicles. It only
+ * depends on the list, so it is the same on every server and after a restart.
+ * LIST_VEHICLES|type|IF_NONE_MATCH|version is answered with OK|NOT_MODIFIED|version
+ * while the client's version is still current.
+ */
+final class ListVehiclesCache {
+    private static final ListVehiclesCache INSTANCE = createShared();
+
+    private final VehicleDAO vehicleDAO;
+    private final VehicleEvents events;
+    private final long ttlMillis;
+    private final int maxEntries;
+    // Access-ordered map gives us LRU eviction; guarded by "this"
+    private final LinkedHashMap<String, Listing> listings;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param events source of the catalog write version; null disables caching
+     * @param ttlMillis max age of a cached listing (0 = no caching)
+     * @param maxEntries vehicle types kept at most
+     */
+    ListVehiclesCache(VehicleDAO vehicleDAO, VehicleEvents events, long ttlMillis, int maxEntries) {
+        this.vehicleDAO = vehicleDAO;
+        this.events = events;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > ListVehiclesCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Cache of the server's own VehicleDAO
+     */
+    static ListVehiclesCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replies of one type, from the cache while nothing was written
+     * @return the listing, or null if the vehicles could not be read (not cached)
+     */
+    Listing get(String type) {
+        String key = type.toUpperCase();
+        long written = events != null ? events.getVersion() : 0;
+        Listing listing;
+        synchronized (this) {
+            listing = listings.get(key);
+        }
+        if (listing != null && listing.writeVersion == written
+                && System.currentTimeMillis() - listing.loadedAt <= ttlMillis) {
+            hits.incrementAndGet();
+            return listing;
+        }
+        misses.incrementAndGet();
+        // Tagged with the version read before loading: a write during the load makes it stale at once
+        List<Vehicle> vehicles = vehicleDAO.getAvailableVehiclesByType(key);
+        if (vehicles == null) {
+            return null;
+        }
+        listing = new Listing(key, vehicles, written);
+        if (events != null && ttlMillis > 0 && maxEntries > 0) {
+            synchronized (this) {
+                listings.put(key, listing);
+            }
+        }
+        return listing;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    synchronized int getEntryCount() {
+        return listings.size();
+    }
+
+    private static ListVehiclesCache createShared() {
+        final ListVehiclesCache cache = new ListVehiclesCache(DAOFactory.getVehicleDAO(), DAOFactory.getVehicleEvents(),
+                Config.getLong("LIST_CACHE_TTL_MS", 30000), Config.getInt("LIST_CACHE_MAX_ENTRIES", 16));
+        Metrics.registerGauge("rental_list_cache_hits", "LIST_VEHICLES replies sent from the encoded cache since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getHitCount();
+            }
+        });
+        Metrics.registerGauge("rental_list_cache_misses", "LIST_VEHICLES replies built from the DAO since startup", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return cache.getMissCount();
+            }
+        });
+        return cache;
+    }
+
+    /**
+     * The replies of one type at one point in time; immutable and shared by all connections
+     */
+    static final class Listing {
+        /** Content version sent to clients (hex) */
+        final String version;
+        /** OK|LIST_VEHICLES|count|id,brand,model,regNum,price|... */
+        final Response full;
+        /** The same with the version as last field, for IF_NONE_MATCH requests */
+        final Response versioned;
+        /** OK|NOT_MODIFIED|version */
+        final Response notModified;
+        final long writeVersion;
+        final long loadedAt = System.currentTimeMillis();
+
+        Listing(String type, List<Vehicle> vehicles, long writeVersion) {
+            this.writeVersion = writeVersion;
+            String[][] records = new String[vehicles.size()][];
+            long hash = hash(0xcbf29ce484222325L, type);
+            for (int i = 0; i < records.length; i++) {
+                Vehicle v = vehicles.get(i);
+                records[i] = new String[] {
+                        String.valueOf(v.getId()),
+                        v.getBrand(),
+                        v.getModel(),
+                        v.getRegNumber(),
+                        String.valueOf(v.getPricePerDay()) };
+                for (String value : records[i]) {
+                    hash = hash(hash, value);
+                }
+            }
+            this.version = Long.toHexString(hash);
+
+            Response plain = Response.ok("LIST_VEHICLES").add(records.length);
+            Response withVersion = Response.ok("LIST_VEHICLES").add(records.length);
+            for (String[] record : records) {
+                plain.addRecord(record);
+                withVersion.addRecord(record);
+            }
+            this.full = plain.reusable();
+            this.versioned = withVersion.add(version).reusable();
+            this.notModified = Response.ok("NOT_MODIFIED").add(version).reusable();
+        }
+
+        /**
+         * 64-bit FNV-1a over the characters of a value, then a separator so
+         * ("ab", "c") and ("a", "bc") differ
+         */
+        private static long hash(long h, String value) {
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    h ^= value.charAt(i);
+                    h *= 0x100000001b3L;
+                }
+            }
+            h ^= 0x1f;
+            h *= 0x100000001b3L;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// com/rental/server/MetricsHttpServer.java
+package com.rental.server;
+
+import com.rental.util.Config;
+import com.rental.util.Log;
+import com.rental.util.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Optional HTTP endpoint serving Metrics.toPrometheus() at /metrics
+ *
+ * Uses the JDK's built-in HTTP server on its own thread, separate from
+ * the client port. Off unless METRICS_HTTP_PORT is set. Binds to 127.0.0.1 by
+ * default because the endpoint has no authentication; set METRICS_HTTP_BIND=0.0.0.0
+ * to expose it to a scraper on another host.
+ */
+public class MetricsHttpServer {
+
+    private MetricsHttpServer() {}
+
+    /**
+     * Start the endpoint if METRICS_HTTP_PORT is configured
+     * Failure to bind is logged and does not stop the server
+     */
+    public static void startIfConfigured() {
+        int port = Config.getInt("METRICS_HTTP_PORT", 0);
+        if (port <= 0) {
+            return;
+        }
+        String bind = Config.getString("METRICS_HTTP_BIND", "127.0.0.1");
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+            server.createContext("/metrics", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+            });
+            // Default executor: requests are handled on the server's own dispatcher thread
+            server.start();
+            Log.info("[METRICS] Serving http://" + bind + ":" + port + "/metrics");
+        } catch (IOException e) {
+            Log.error("[METRICS] Could not start metrics endpoint on " + bind + ":" + port + ": " + e.getMessage());
+        }
+    }
+}
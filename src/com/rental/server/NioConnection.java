@@ -0,0 +1,630 @@
+// com/rental/server/NioConnection.java
+package com.rental.server;
+
+import com.rental.protocol.BinaryCodec;
+import com.rental.protocol.ProtocolIO;
+import com.rental.protocol.Response;
+import com.rental.util.Log;
+import com.rental.util.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * State of one client connection in the NIO engine
+ *
+ * Threading:
+ * - reads, decoding, writes and interest changes happen on the selector thread
+ * - commands run on workers; responses are written strictly in request order
+ * - pending / running / completed / writeQueue are guarded by this object
+ *
+ * Pipelining: clients may send many commands without waiting. Read-only commands
+ * (ClientHandler.isConcurrentSafe) run in parallel with each other, up to
+ * MAX_PARALLEL per connection; any other command waits for everything before it
+ * to finish and blocks everything after it, so session changes such as LOGIN
+ * are seen in order.
+ *
+ * Framing starts as text lines. When a HELLO line is seen, decoding pauses until
+ * the worker has executed it, because bytes after it may already be binary frames.
+ *
+ * A streamed command (ClientHandler.isStreaming) runs exclusively, so when it starts
+ * every earlier reply is already in the write queue; its worker appends each message
+ * to the queue directly and waits while more than STREAM_HIGH_WATER bytes are unsent.
+ *
+ * WATCH events (ClientHandler.pollEvent) are appended to the write queue between
+ * whole messages on the selector thread, but only while less than EVENT_HIGH_WATER
+ * bytes are unsent. A client that reads slower than its events arrive therefore
+ * leaves them in its subscription, where they coalesce or turn into a resync.
+ *
+ * Idle and read timeouts (ConnectionTimeouts) are reported from decodeInbound() and
+ * enforced by closing the connection on the selector thread.
+ */
+final class NioConnection {
+    /** Stop reading from a client that has this many unprocessed commands */
+    private static final int MAX_PENDING = 64;
+    /** Max read-only commands of one connection executing at the same time */
+    private static final int MAX_PARALLEL = 8;
+    /** A streaming worker pauses while this many bytes are queued for the client */
+    private static final int STREAM_HIGH_WATER = 256 * 1024;
+    /** WATCH events are only queued while fewer bytes than this are unsent */
+    private static final int EVENT_HIGH_WATER = 64 * 1024;
+
+    private final NioServerEngine engine;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ClientHandler handler;
+
+    // Bytes received but not yet decoded (kept in write mode between reads)
+    private ByteBuffer inbound = ByteBuffer.allocate(8192);
+    // Size a partially received frame needs; the buffer grows after compact()
+    private int requiredCapacity;
+    private boolean binaryMode;
+    private boolean awaitingHello;
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    // Finished responses waiting for earlier ones, keyed by request sequence number
+    private final HashMap<Long, byte[]> completed = new HashMap<>();
+    private long nextSequence;
+    private long nextToWrite;
+    private int running;
+    private boolean runningExclusive;
+    private boolean inputClosed;
+    private boolean readPaused;
+    private boolean closed;
+    // Events are waiting for the write queue to drain below EVENT_HIGH_WATER
+    private boolean eventsDeferred;
+    private ConnectionTimeouts.Watch watch;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable pushEventsTask = new Runnable() {
+        @Override
+        public void run() {
+            pushEvents();
+        }
+    };
+
+    private final Runnable resumeAfterHelloTask = new Runnable() {
+        @Override
+        public void run() {
+            resumeAfterHello();
+        }
+    };
+
+    NioConnection(NioServerEngine engine, SocketChannel channel, SelectionKey key, ClientHandler handler) {
+        this.engine = engine;
+        this.channel = channel;
+        this.key = key;
+        this.handler = handler;
+    }
+
+    /**
+     * Called once after registration: greet the client like the blocking engines do
+     */
+    void start() {
+        Log.info("[" + handler.getClientAddress() + "] Client handler started");
+        Metrics.connectionOpened();
+        watch = ConnectionTimeouts.watch(new ConnectionTimeouts.Connection() {
+            @Override
+            public boolean isBusy() {
+                synchronized (NioConnection.this) {
+                    return running > 0 || !pending.isEmpty() || !writeQueue.isEmpty();
+                }
+            }
+
+            @Override
+            public void timedOut(final String reason) {
+                engine.runOnSelector(new Runnable() {
+                    @Override
+                    public void run() {
+                        close(reason);
+                    }
+                });
+            }
+        });
+        handler.setEventListener(new Runnable() {
+            @Override
+            public void run() {
+                engine.runOnSelector(pushEventsTask);
+            }
+        });
+        queueBytes(("WELCOME\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Selector thread: read available bytes and decode complete commands
+     */
+    void onReadable() throws IOException {
+        if (!inbound.hasRemaining()) {
+            ensureInboundCapacity(inbound.capacity() * 2);
+        }
+        int n = channel.read(inbound);
+        if (n < 0) {
+            // Client closed its side; finish outstanding commands, then close
+            stopReading();
+            inputClosed = true;
+            closeIfDone();
+            return;
+        }
+        decodeInbound();
+    }
+
+    /**
+     * Selector thread: write as much queued output as the socket accepts
+     */
+    void onWritable() throws IOException {
+        boolean pushDeferred;
+        synchronized (this) {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer buffer = writeQueue.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    // Socket send buffer is full, wait for the next OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    notifyAll();
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            // Wake a streaming worker waiting for the queue to drain
+            notifyAll();
+            pushDeferred = eventsDeferred;
+
+            if (readPaused && !awaitingHello && pending.size() < MAX_PENDING / 2) {
+                readPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+        if (pushDeferred) {
+            pushEvents();
+        }
+        closeIfDone();
+    }
+
+    /**
+     * Close the channel (idempotent)
+     * @param reason logged as an error if not null
+     */
+    void close(String reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            completed.clear();
+            writeQueue.clear();
+            notifyAll();
+        }
+        handler.connectionClosed();
+        Metrics.connectionClosed();
+        engine.getAdmission().releaseConnection();
+        if (watch != null) {
+            watch.stop();
+        }
+        if (reason != null) {
+            Log.warn("[" + handler.getClientAddress() + "] " + reason);
+        }
+        key.cancel();
+        try {
+            channel.close();
+            Log.info("[" + handler.getClientAddress() + "] Connection closed");
+        } catch (IOException e) {
+            Log.error("[" + handler.getClientAddress() + "] Error closing channel", e);
+        }
+    }
+
+    /**
+     * Split the inbound buffer into lines or frames, depending on the negotiated mode
+     */
+    private void decodeInbound() {
+        inbound.flip();
+        int decoded = 0;
+        try {
+            while (!awaitingHello && !inputClosed) {
+                Pending command = binaryMode ? decodeFrame() : decodeLine();
+                if (command == null) {
+                    break;
+                }
+                decoded++;
+                submit(command);
+            }
+        } finally {
+            inbound.compact();
+        }
+        if (watch != null) {
+            // Whatever is left in the buffer is the start of a command still arriving
+            if (decoded > 0) {
+                watch.commandReceived(inbound.position() > 0);
+            } else if (inbound.position() > 0) {
+                watch.bytesReceived();
+            }
+        }
+        if (requiredCapacity > 0) {
+            ensureInboundCapacity(requiredCapacity);
+            requiredCapacity = 0;
+        }
+
+        synchronized (this) {
+            if (!inputClosed && (awaitingHello || pending.size() >= MAX_PENDING)) {
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private Pending decodeLine() {
+        int start = inbound.position();
+        for (int i = start; i < inbound.limit(); i++) {
+            if (inbound.get(i) == '\n') {
+                int length = i - start;
+                if (length > 0 && inbound.get(i - 1) == '\r') {
+                    length--;
+                }
+                // Fields are decoded straight from the buffer, no copy of the line
+                String[] parts = ProtocolIO.splitLine(inbound.array(), inbound.arrayOffset() + start, length);
+                inbound.position(i + 1);
+                boolean hello = isHello(parts);
+                if (hello) {
+                    // Framing may change after this command; decode nothing more until it ran
+                    awaitingHello = true;
+                }
+                return new Pending(parts, ClientHandler.isConcurrentSafe(parts), hello, false);
+            }
+        }
+        if (inbound.remaining() > ProtocolIO.MAX_LINE_LENGTH) {
+            rejectInput(Response.error("Command too long"));
+        }
+        return null;
+    }
+
+    private Pending decodeFrame() {
+        if (inbound.remaining() < BinaryCodec.FRAME_HEADER_SIZE) {
+            return null;
+        }
+        int length = inbound.getInt(inbound.position());
+        if (length < 0 || length > ProtocolIO.MAX_REQUEST_SIZE) {
+            rejectInput(Response.error("Frame too large"));
+            return null;
+        }
+        if (inbound.remaining() < BinaryCodec.FRAME_HEADER_SIZE + length) {
+            requiredCapacity = BinaryCodec.FRAME_HEADER_SIZE + length;
+            return null;
+        }
+        int payloadStart = inbound.position() + BinaryCodec.FRAME_HEADER_SIZE;
+        inbound.position(payloadStart + length);
+
+        String[] fields;
+        try {
+            fields = BinaryCodec.decodeRequest(inbound.array(), inbound.arrayOffset() + payloadStart, length);
+        } catch (IllegalArgumentException e) {
+            fields = null; // answered with an error, in order
+        }
+        boolean concurrent = fields != null && ClientHandler.isConcurrentSafe(fields);
+        return new Pending(fields, concurrent, false, true);
+    }
+
+    /**
+     * Protocol violation: answer once, then stop reading and close after the reply
+     */
+    private void rejectInput(Response error) {
+        inbound.position(inbound.limit());
+        stopReading();
+        inputClosed = true;
+        synchronized (this) {
+            // Goes after the responses of everything decoded before the violation
+            completed.put(nextSequence++, encode(error, binaryMode));
+            drainCompleted();
+        }
+        engine.runOnSelector(flushTask);
+    }
+
+    private void stopReading() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Enlarge the inbound buffer; only called while it is in write mode
+     */
+    private void ensureInboundCapacity(int capacity) {
+        if (inbound.capacity() >= capacity) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        inbound.flip();
+        bigger.put(inbound);
+        inbound = bigger;
+    }
+
+    private void submit(Pending command) {
+        synchronized (this) {
+            command.sequence = nextSequence++;
+            pending.add(command);
+            dispatch();
+        }
+    }
+
+    /**
+     * Start every pending command that may run now (caller holds the lock)
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && !closed && !runningExclusive) {
+            Pending next = pending.peek();
+            if (next.concurrent ? running >= MAX_PARALLEL : running > 0) {
+                return;
+            }
+            pending.poll();
+            running++;
+            if (!next.concurrent) {
+                runningExclusive = true;
+            }
+            if (engine.isSaturated()) {
+                // Workers are far behind: fail fast but keep the response in order
+                finish(next, encode(busyReply(next), next.binary));
+                continue;
+            }
+            try {
+                engine.execute(next);
+            } catch (RejectedExecutionException e) {
+                finish(next, encode(busyReply(next), next.binary));
+            }
+        }
+    }
+
+    /**
+     * ERROR|BUSY reply for a command that is not executed, tagged like the request
+     */
+    private Response busyReply(Pending command) {
+        Response busy = engine.getAdmission().shedCommand();
+        String[] fields = command.fields;
+        if (fields != null && fields.length > 1 && fields[0].startsWith("#")) {
+            return busy.withTag(fields[0]);
+        }
+        return busy;
+    }
+
+    /**
+     * Record a finished command, release its slot and move in-order responses
+     * to the write queue (caller holds the lock)
+     */
+    private void finish(Pending command, byte[] response) {
+        running--;
+        if (!command.concurrent) {
+            runningExclusive = false;
+        }
+        completed.put(command.sequence, response);
+        drainCompleted();
+
+        if (command.hello) {
+            engine.runOnSelector(resumeAfterHelloTask);
+        }
+        engine.runOnSelector(flushTask);
+    }
+
+    /**
+     * Move responses that are next in request order to the write queue (caller holds the lock)
+     */
+    private void drainCompleted() {
+        byte[] ready;
+        while ((ready = completed.remove(nextToWrite)) != null) {
+            writeQueue.add(ByteBuffer.wrap(ready));
+            nextToWrite++;
+        }
+    }
+
+    /**
+     * Worker thread: execute one command, then start whatever it was blocking
+     */
+    private void process(Pending command) {
+        byte[] response = execute(command);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            finish(command, response);
+            dispatch();
+        }
+    }
+
+    private byte[] execute(Pending command) {
+        try {
+            if (command.streaming) {
+                handler.processStream(command.fields, streamSink(command.binary));
+                // Everything was queued by the sink; nothing left to write in order
+                return new byte[0];
+            }
+            if (command.binary) {
+                return encode(handler.processFields(command.fields), true);
+            }
+            return encode(handler.processText(command.fields), false);
+        } catch (IOException e) {
+            // Stream stopped because the connection closed
+            return new byte[0];
+        } catch (RuntimeException | LinkageError e) {
+            // Keep the connection usable (e.g. DB driver missing)
+            Log.error("[" + handler.getClientAddress() + "] Error: " + e, e);
+            return encode(Response.error("Internal server error"), command.binary);
+        }
+    }
+
+    /**
+     * Sink for a streamed command; only valid while that command runs exclusively
+     */
+    private ClientHandler.ResponseSink streamSink(final boolean binary) {
+        return new ClientHandler.ResponseSink() {
+            @Override
+            public void send(Response message) throws IOException {
+                queueStreamed(encode(message, binary));
+            }
+        };
+    }
+
+    /**
+     * Worker thread: queue one streamed message, then wait until the client has
+     * caught up enough so a slow reader cannot make the stream pile up in memory
+     */
+    private void queueStreamed(byte[] bytes) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            writeQueue.add(ByteBuffer.wrap(bytes));
+        }
+        engine.runOnSelector(flushTask);
+        synchronized (this) {
+            while (!closed && queuedBytes() > STREAM_HIGH_WATER) {
+                try {
+                    wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while streaming");
+                }
+            }
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+        }
+    }
+
+    private long queuedBytes() {
+        long total = 0;
+        for (ByteBuffer buffer : writeQueue) {
+            total += buffer.remaining();
+        }
+        return total;
+    }
+
+    private static boolean isHello(String[] parts) {
+        int index = (parts.length > 1 && parts[0].startsWith("#")) ? 1 : 0;
+        // A line of only separators ("|") has no fields at all
+        return parts.length > index && parts[index].equalsIgnoreCase("HELLO");
+    }
+
+    /**
+     * Selector thread: the HELLO command has run, pick up the (possibly new) framing
+     */
+    private void resumeAfterHello() {
+        if (closed || !awaitingHello) {
+            return;
+        }
+        awaitingHello = false;
+        binaryMode = handler.isBinaryMode();
+        // Events that arrived meanwhile were held back until the framing was known
+        pushEvents();
+        if (!inputClosed) {
+            readPaused = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            decodeInbound();
+        }
+    }
+
+    /**
+     * Selector thread: move waiting WATCH events to the write queue, as long as
+     * the client keeps up (see EVENT_HIGH_WATER)
+     */
+    private void pushEvents() {
+        boolean queued = false;
+        synchronized (this) {
+            if (closed || awaitingHello) {
+                // resumeAfterHello() pushes once the framing is known
+                return;
+            }
+            eventsDeferred = false;
+            while (true) {
+                if (queuedBytes() >= EVENT_HIGH_WATER) {
+                    // onWritable() comes back once the queue is empty
+                    eventsDeferred = true;
+                    break;
+                }
+                Response event = handler.pollEvent();
+                if (event == null) {
+                    break;
+                }
+                writeQueue.add(ByteBuffer.wrap(encode(event, binaryMode)));
+                queued = true;
+            }
+        }
+        if (queued) {
+            engine.runOnSelector(flushTask);
+        }
+    }
+
+    /**
+     * Wire bytes of a reply; reusable (cached) replies come back as they are, so never modify them
+     */
+    private static byte[] encode(Response response, boolean binary) {
+        return binary ? BinaryCodec.encodeFrame(response) : response.toLineBytes();
+    }
+
+    private void queueBytes(byte[] bytes) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            writeQueue.add(ByteBuffer.wrap(bytes));
+        }
+        engine.runOnSelector(flushTask);
+    }
+
+    private void flush() {
+        if (closed || !key.isValid()) {
+            return;
+        }
+        try {
+            onWritable();
+        } catch (IOException e) {
+            close("Error: " + e.getMessage());
+        }
+    }
+
+    private void closeIfDone() {
+        boolean done;
+        synchronized (this) {
+            done = inputClosed && running == 0 && pending.isEmpty() && writeQueue.isEmpty();
+        }
+        if (done) {
+            close(null);
+        }
+    }
+
+    /**
+     * A decoded command: the fields of a text line or binary frame,
+     * plus its place in the response order
+     */
+    private final class Pending implements Runnable {
+        final String[] fields;
+        final boolean binary;
+        final boolean concurrent;
+        final boolean hello;
+        final boolean streaming;
+        long sequence;
+
+        Pending(String[] fields, boolean concurrent, boolean hello, boolean binary) {
+            this.fields = fields;
+            this.binary = binary;
+            this.concurrent = concurrent;
+            this.hello = hello;
+            this.streaming = fields != null && ClientHandler.isStreaming(fields);
+        }
+
+        @Override
+        public void run() {
+            process(this);
+        }
+    }
+}
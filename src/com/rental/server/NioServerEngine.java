@@ -0,0 +1,206 @@
+// com/rental/server/NioServerEngine.java
+package com.rental.server;
+
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking engine: one selector thread owns every socket and a bounded
+ * worker pool executes commands
+ *
+ * Idle connections only cost a SelectionKey and a small read buffer, so the
+ * number of open clients is no longer tied to the number of threads.
+ * Commands from one connection are still executed one at a time and in order,
+ * so ClientHandler keeps exactly the same semantics as in the blocking engines.
+ *
+ * Admission: connections above MAX_CONNECTIONS get ERROR|BUSY|retryAfterMs and are
+ * closed at accept; once shedQueueSize commands wait for a worker, further commands
+ * are answered with the same error without being queued (see AdmissionControl).
+ */
+public class NioServerEngine implements ServerEngine {
+    private final ThreadPoolExecutor workers;
+    private final int shedQueueSize;
+    private final AdmissionControl admission = AdmissionControl.getInstance();
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+
+    /**
+     * @param workerThreads number of threads executing commands (DB calls block)
+     * @param workerQueueSize max commands waiting for a worker
+     * @param shedQueueSize commands waiting for a worker before new ones get a busy error
+     *                      (0 = only when the queue is full)
+     */
+    public NioServerEngine(int workerThreads, int workerQueueSize, int shedQueueSize) {
+        this.shedQueueSize = shedQueueSize > 0 ? Math.min(shedQueueSize, workerQueueSize) : workerQueueSize;
+        this.workers = new ThreadPoolExecutor(
+                workerThreads, workerThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(workerQueueSize),
+                new WorkerThreadFactory());
+    }
+
+    @Override
+    public String getName() {
+        return "NIO (" + workers.getCorePoolSize() + " workers)";
+    }
+
+    @Override
+    public void serve(int port) throws IOException {
+        try (Selector sel = Selector.open();
+             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            this.selector = sel;
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(sel, SelectionKey.OP_ACCEPT);
+
+            Log.info("[SERVER] Successfully bound to port " + port);
+            Log.info("[SERVER] Waiting for client connections...");
+
+            while (true) {
+                sel.select();
+                runSelectorTasks();
+
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptAll(serverChannel);
+                    } else {
+                        handleIo(key);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Submit a command task to the worker pool
+     * @throws java.util.concurrent.RejectedExecutionException if the pool queue is full
+     */
+    void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * True if new commands should be shed instead of queued for a worker
+     */
+    boolean isSaturated() {
+        return workers.getQueue().size() >= shedQueueSize;
+    }
+
+    AdmissionControl getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Run a task on the selector thread (channel writes and interest changes)
+     * Safe to call from any thread
+     */
+    void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void acceptAll(ServerSocketChannel serverChannel) {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                String clientAddress = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+                if (!admission.tryOpenConnection()) {
+                    refuse(channel, clientAddress);
+                    continue;
+                }
+                Log.info("[SERVER] New client connected: " + clientAddress);
+
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(this, channel, key, new ClientHandler(clientAddress));
+                key.attach(connection);
+                connection.start();
+            }
+        } catch (IOException e) {
+            Log.error("[SERVER] Error accepting connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send the busy greeting and close; a fresh socket's send buffer takes one line
+     */
+    private void refuse(SocketChannel channel, String clientAddress) {
+        Log.warn("[SERVER] Connection limit reached, refusing " + clientAddress);
+        try {
+            channel.write(ByteBuffer.wrap((admission.busyGreeting() + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // Client is being turned away anyway
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.error("[SERVER] Error closing refused connection: " + e.getMessage());
+        }
+    }
+
+    private void handleIo(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException e) {
+            connection.close("Error: " + e.getMessage());
+        } catch (CancelledKeyException e) {
+            connection.close(null);
+        }
+    }
+
+    /**
+     * Names worker threads so they are recognisable in thread dumps
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "rental-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
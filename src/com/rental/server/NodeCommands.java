@@ -0,0 +1,276 @@
+// com/rental/server/NodeCommands.java
+package com.rental.server;
+
+import com.rental.dao.BookingDAO;
+import com.rental.dao.DuplicatePolicy;
+import com.rental.dao.UserDAO;
+import com.rental.dao.VehicleDAO;
+import com.rental.dao.VehicleQuery;
+import com.rental.dao.VehicleVisitor;
+import com.rental.model.Booking;
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.protocol.Response;
+import com.rental.service.VehicleImporter;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The NODE|op|... command: storage access for a cluster router (admin only)
+ *
+ * A server that is a node of a cluster (see Cluster) is an ordinary RentalServer;
+ * the router reaches its DAOs through these operations instead of the client
+ * commands, because it needs complete rows (type, availability, passwords for
+ * LOGIN, booking owners) and has to write rows under IDs it chose itself.
+ * Availability writes are synchronous, not queued in the AvailabilityWriter.
+ *
+ * Replies are OK|NODE|count|records... (or a single value), with records as:
+ * - vehicle  id,type,brand,model,regNumber,price,available
+ * - user     id,name,email,password,role
+ * - booking  id,userId,vehicleId,startDate,endDate,totalPrice,status
+ */
+final class NodeCommands {
+    /** Fields per vehicle in PUT_VEHICLES */
+    static final int VEHICLE_FIELDS = 7;
+    private static final String USAGE = "Use: NODE|INFO, VEHICLES, VEHICLES_BY_REG, VEHICLE_PAGE, AVAILABLE_PAGE, SEARCH, PUT_VEHICLES, "
+            + "SET_AVAILABILITY, LOGIN, ADD_USER, USER_PAGE, ADD_BOOKING, BOOKING, USER_BOOKINGS, VEHICLE_BOOKINGS "
+            + "or CANCEL_BOOKING|...";
+
+    private final UserDAO userDAO;
+    private final VehicleDAO vehicleDAO;
+    private final BookingDAO bookingDAO;
+
+    NodeCommands(UserDAO userDAO, VehicleDAO vehicleDAO, BookingDAO bookingDAO) {
+        this.userDAO = userDAO;
+        this.vehicleDAO = vehicleDAO;
+        this.bookingDAO = bookingDAO;
+    }
+
+    /**
+     * @param parts the whole command, starting with NODE
+     */
+    Response execute(String[] parts) {
+        if (parts.length < 2) {
+            return Response.error("Operation required. " + USAGE);
+        }
+        try {
+            switch (parts[1].toUpperCase()) {
+                case "INFO":
+                    return info();
+                case "VEHICLES":
+                    return vehicles(parts);
+                case "VEHICLES_BY_REG":
+                    return vehicleList(vehicleDAO.getVehiclesByRegNumbers(Arrays.asList(parts).subList(2, parts.length)));
+                case "VEHICLE_PAGE":
+                    return vehicleList(vehicleDAO.getVehiclesPage(intAt(parts, 2), intAt(parts, 3)));
+                case "AVAILABLE_PAGE":
+                    return vehicleList(vehicleDAO.getAvailableVehiclesPage(at(parts, 2), intAt(parts, 3), intAt(parts, 4)));
+                case "SEARCH":
+                    return search(parts);
+                case "PUT_VEHICLES":
+                    return putVehicles(parts);
+                case "SET_AVAILABILITY":
+                    return setAvailability(parts);
+                case "LOGIN":
+                    return login(at(parts, 2), at(parts, 3));
+                case "ADD_USER":
+                    return addUser(parts);
+                case "USER_PAGE":
+                    return userList(userDAO.getUsersPage(intAt(parts, 2), intAt(parts, 3)));
+                case "ADD_BOOKING":
+                    return addBooking(parts);
+                case "BOOKING":
+                    Booking booking = bookingDAO.getBookingById(intAt(parts, 2));
+                    List<Booking> found = new ArrayList<>(1);
+                    if (booking != null) {
+                        found.add(booking);
+                    }
+                    return bookingList(found);
+                case "USER_BOOKINGS":
+                    return bookingList(bookingDAO.getBookingsByUser(intAt(parts, 2)));
+                case "VEHICLE_BOOKINGS":
+                    List<Booking> active = bookingDAO.getActiveBookingsByVehicle(intAt(parts, 2));
+                    if (active == null) {
+                        return Response.error("Bookings could not be read");
+                    }
+                    return bookingList(active);
+                case "CANCEL_BOOKING":
+                    return Response.ok("NODE").add(bookingDAO.cancelBooking(intAt(parts, 2)) ? 1 : 0);
+                default:
+                    return Response.error("Unknown NODE operation: " + parts[1] + ". " + USAGE);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            return Response.error("Invalid NODE|" + parts[1] + " format: " + e.getMessage());
+        }
+    }
+
+    /**
+     * OK|NODE|vehicleCount|maxVehicleId - the router starts its ID allocator above the largest ID
+     */
+    private Response info() {
+        final int[] max = new int[1];
+        int count = vehicleDAO.forEachVehicle(new VehicleVisitor() {
+            @Override
+            public boolean visit(Vehicle vehicle) {
+                max[0] = Math.max(max[0], vehicle.getId());
+                return true;
+            }
+        });
+        if (count < 0) {
+            return Response.error("Could not read vehicles");
+        }
+        return Response.ok("NODE").add(count).add(max[0]);
+    }
+
+    private Response vehicles(String[] parts) {
+        List<Integer> ids = new ArrayList<>(parts.length - 2);
+        for (int i = 2; i < parts.length; i++) {
+            ids.add(intAt(parts, i));
+        }
+        return vehicleList(vehicleDAO.getVehiclesByIds(ids));
+    }
+
+    /**
+     * SEARCH|type|brand|modelPrefix|minPrice|maxPrice|limit|DESC or ASC (empty = no filter)
+     */
+    private Response search(String[] parts) {
+        VehicleQuery query = new VehicleQuery();
+        query.setType(emptyToNull(at(parts, 2)));
+        query.setBrand(emptyToNull(at(parts, 3)));
+        query.setModelPrefix(emptyToNull(at(parts, 4)));
+        if (!at(parts, 5).isEmpty()) {
+            query.setMinPrice(Double.parseDouble(at(parts, 5)));
+        }
+        if (!at(parts, 6).isEmpty()) {
+            query.setMaxPrice(Double.parseDouble(at(parts, 6)));
+        }
+        query.setLimit(intAt(parts, 7));
+        query.setDescending(at(parts, 8).equalsIgnoreCase("DESC"));
+        return vehicleList(vehicleDAO.searchAvailableVehicles(query));
+    }
+
+    /**
+     * PUT_VEHICLES|policy|then VEHICLE_FIELDS fields per vehicle, IDs included,
+     * at most VehicleImporter.MAX_BATCH_SIZE vehicles (one INSERT)
+     */
+    private Response putVehicles(String[] parts) {
+        DuplicatePolicy policy = VehicleImporter.parsePolicy(at(parts, 2));
+        if (policy == null) {
+            throw new IllegalArgumentException("unknown duplicate policy " + parts[2]);
+        }
+        if ((parts.length - 3) % VEHICLE_FIELDS != 0) {
+            throw new IllegalArgumentException(VEHICLE_FIELDS + " fields per vehicle");
+        }
+        if ((parts.length - 3) / VEHICLE_FIELDS > VehicleImporter.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("at most " + VehicleImporter.MAX_BATCH_SIZE + " vehicles per call");
+        }
+        List<Vehicle> vehicles = new ArrayList<>((parts.length - 3) / VEHICLE_FIELDS);
+        for (int i = 3; i < parts.length; i += VEHICLE_FIELDS) {
+            vehicles.add(new Vehicle(intAt(parts, i), parts[i + 1], parts[i + 2], parts[i + 3], parts[i + 4],
+                    Double.parseDouble(parts[i + 5]), Boolean.parseBoolean(parts[i + 6])));
+        }
+        int written = vehicleDAO.insertVehicles(vehicles, policy);
+        if (written < 0) {
+            return Response.error("Vehicles rejected by the database");
+        }
+        return Response.ok("NODE").add(written);
+    }
+
+    /**
+     * SET_AVAILABILITY|id|true or false|id|true or false|...
+     */
+    private Response setAvailability(String[] parts) {
+        Map<Integer, Boolean> changes = new LinkedHashMap<>();
+        for (int i = 2; i + 1 < parts.length; i += 2) {
+            changes.put(intAt(parts, i), Boolean.parseBoolean(parts[i + 1]));
+        }
+        int updated = vehicleDAO.updateVehicleAvailability(changes);
+        if (updated < 0) {
+            return Response.error("Availability could not be written");
+        }
+        return Response.ok("NODE").add(updated);
+    }
+
+    private Response login(String email, String password) {
+        return userList(userDAO.findByCredentials(email, password));
+    }
+
+    /**
+     * ADD_USER|id|name|email|password|role (id 0 lets the node choose)
+     */
+    private Response addUser(String[] parts) {
+        User user = new User(intAt(parts, 2), at(parts, 3), at(parts, 4), at(parts, 5), at(parts, 6));
+        User created = userDAO.register(user);
+        if (created == null) {
+            return Response.error("User not added. Email or ID may already be in use.");
+        }
+        return Response.ok("NODE").add(created.getId());
+    }
+
+    /**
+     * ADD_BOOKING|userId|vehicleId|startDate|endDate|totalPrice|status
+     */
+    private Response addBooking(String[] parts) {
+        Booking booking = new Booking(0, intAt(parts, 2), intAt(parts, 3), LocalDate.parse(at(parts, 4)),
+                LocalDate.parse(at(parts, 5)), Double.parseDouble(at(parts, 6)), at(parts, 7));
+        Booking created = bookingDAO.createBooking(booking);
+        if (created == null) {
+            return Response.error("Booking could not be saved");
+        }
+        return Response.ok("NODE").add(created.getId());
+    }
+
+    private static Response vehicleList(List<Vehicle> vehicles) {
+        if (vehicles == null) {
+            return Response.error("Vehicles could not be read");
+        }
+        Response response = Response.ok("NODE").add(vehicles.size());
+        for (Vehicle v : vehicles) {
+            response.addRecord(String.valueOf(v.getId()), v.getType(), v.getBrand(), v.getModel(),
+                    v.getRegNumber(), String.valueOf(v.getPricePerDay()), String.valueOf(v.isAvailable()));
+        }
+        return response;
+    }
+
+    private static Response userList(List<User> users) {
+        if (users == null) {
+            return Response.error("Users could not be read");
+        }
+        Response response = Response.ok("NODE").add(users.size());
+        for (User u : users) {
+            response.addRecord(String.valueOf(u.getId()), u.getName(), u.getEmail(), u.getPassword(), u.getRole());
+        }
+        return response;
+    }
+
+    private static Response bookingList(List<Booking> bookings) {
+        Response response = Response.ok("NODE").add(bookings.size());
+        for (Booking b : bookings) {
+            response.addRecord(String.valueOf(b.getId()), String.valueOf(b.getUserId()),
+                    String.valueOf(b.getVehicleId()), String.valueOf(b.getStartDate()),
+                    String.valueOf(b.getEndDate()), String.valueOf(b.getTotalPrice()), b.getStatus());
+        }
+        return response;
+    }
+
+    private static String at(String[] parts, int index) {
+        if (index >= parts.length) {
+            throw new IllegalArgumentException("missing field " + index);
+        }
+        return parts[index].trim();
+    }
+
+    private static int intAt(String[] parts, int index) {
+        return Integer.parseInt(at(parts, index));
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
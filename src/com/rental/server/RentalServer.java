@@ -1,17 +1,25 @@
 // com/rental/server/RentalServer.java
 package com.rental.server;
 
+import com.rental.service.PricingEngine;
+import com.rental.service.SessionStore;
+import com.rental.util.Config;
+import com.rental.util.Log;
+import com.rental.util.Metrics;
+
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 
 /**
  * Multi-threaded TCP server for Car and Bike Rental System
  * Supports deployment on Railway by reading PORT from environment variable
  * For local development, defaults to port 5000
+ *
+ * The connection engine is chosen with SERVER_ENGINE (NIO, VIRTUAL or THREAD);
+ * see ServerEngine for details.
  */
 public class RentalServer {
     private static final int DEFAULT_PORT = 5000;
+    private static final String DEFAULT_ENGINE = "NIO";
 
     public static void main(String[] args) {
         // Railway provides PORT via environment variable
@@ -21,31 +29,79 @@ public class RentalServer {
                    ? Integer.parseInt(portEnv) 
                    : DEFAULT_PORT;
 
-        System.out.println("===========================================");
-        System.out.println("  Car & Bike Rental Management System");
-        System.out.println("  Server starting on port " + port);
-        System.out.println("  Environment: " + (portEnv != null ? "Production (Railway)" : "Local Development"));
-        System.out.println("===========================================");
-
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("[SERVER] Successfully bound to port " + port);
-            System.out.println("[SERVER] Waiting for client connections...\n");
-
-            // Continuously accept client connections
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("[SERVER] New client connected: " + 
-                                   clientSocket.getInetAddress().getHostAddress() + 
-                                   ":" + clientSocket.getPort());
-
-                // Create a new thread to handle this client
-                ClientHandler handler = new ClientHandler(clientSocket);
-                Thread clientThread = new Thread(handler);
-                clientThread.start();
+        ServerEngine engine = createEngine(Config.getString("SERVER_ENGINE", DEFAULT_ENGINE));
+
+        Log.info("===========================================");
+        Log.info("  Car & Bike Rental Management System");
+        Log.info("  Server starting on port " + port);
+        Log.info("  Environment: " + (portEnv != null ? "Production (Railway)" : "Local Development"));
+        Log.info("  Engine: " + engine.getName());
+        Log.info("===========================================");
+
+        Metrics.registerGauge("rental_log_dropped", "Log lines dropped because the log buffer was full", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return Log.getDroppedCount();
+            }
+        });
+        Metrics.registerGauge("rental_sessions", "Login sessions held for RESUME", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return SessionStore.getInstance().size();
             }
+        });
+        Metrics.registerGauge("rental_quote_memo_hits", "QUOTE results reused from the memo", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return PricingEngine.getInstance().getMemoHits();
+            }
+        });
+        Metrics.registerGauge("rental_quote_memo_misses", "QUOTE results computed", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return PricingEngine.getInstance().getMemoMisses();
+            }
+        });
+        MetricsHttpServer.startIfConfigured();
+
+        try {
+            engine.serve(port);
         } catch (IOException e) {
-            System.err.println("[SERVER] Error starting server: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("[SERVER] Error starting server: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Build the connection engine selected by name
+     * Unknown names and VIRTUAL on an old JVM fall back to NIO with a warning
+     */
+    static ServerEngine createEngine(String name) {
+        switch (name.toUpperCase()) {
+            case "THREAD":
+                return new ThreadPerConnectionEngine();
+
+            case "VIRTUAL":
+                if (VirtualThreadEngine.isSupported()) {
+                    return new VirtualThreadEngine();
+                }
+                Log.warn("[SERVER] Virtual threads need Java 21+, falling back to NIO engine");
+                return createNioEngine();
+
+            case "NIO":
+                return createNioEngine();
+
+            default:
+                Log.warn("[SERVER] Unknown SERVER_ENGINE '" + name + "', using NIO");
+                return createNioEngine();
+        }
+    }
+
+    private static ServerEngine createNioEngine() {
+        // Commands block on JDBC, so size the pool above the core count
+        int defaultWorkers = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+        int workers = Config.getInt("SERVER_WORKERS", defaultWorkers);
+        int queueSize = Config.getInt("SERVER_WORKER_QUEUE", 10000);
+        int shedQueueSize = Config.getInt("SHED_WORKER_QUEUE", 1000);
+        return new NioServerEngine(workers, queueSize, shedQueueSize);
+    }
 }
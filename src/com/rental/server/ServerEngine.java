@@ -0,0 +1,26 @@
+// com/rental/server/ServerEngine.java
+package com.rental.server;
+
+import java.io.IOException;
+
+/**
+ * Strategy for accepting client connections and driving ClientHandler
+ * Selected at startup with the SERVER_ENGINE environment variable:
+ * - NIO     : single selector thread + bounded worker pool (default)
+ * - VIRTUAL : one virtual thread per connection (Java 21+)
+ * - THREAD  : one platform thread per connection (original behaviour)
+ */
+public interface ServerEngine {
+
+    /**
+     * Bind to the given port and serve clients until the process stops
+     * @param port TCP port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    void serve(int port) throws IOException;
+
+    /**
+     * Short name used in startup logs
+     */
+    String getName();
+}
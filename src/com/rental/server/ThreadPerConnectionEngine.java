@@ -0,0 +1,91 @@
+// com/rental/server/ThreadPerConnectionEngine.java
+package com.rental.server;
+
+import com.rental.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * Blocking engine: accepts sockets and runs each ClientHandler on its own thread
+ * The executor decides what kind of thread that is (platform or virtual).
+ * Above MAX_CONNECTIONS (see AdmissionControl) no thread is started; the client
+ * gets ERROR|BUSY|retryAfterMs and is disconnected.
+ */
+public class ThreadPerConnectionEngine implements ServerEngine {
+    private final String name;
+    private final Executor executor;
+
+    /**
+     * Classic engine that starts a new platform thread for every connection
+     */
+    public ThreadPerConnectionEngine() {
+        this("THREAD", new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                new Thread(task).start();
+            }
+        });
+    }
+
+    protected ThreadPerConnectionEngine(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            Log.info("[SERVER] Successfully bound to port " + port);
+            Log.info("[SERVER] Waiting for client connections...");
+
+            // Continuously accept client connections
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                Log.info("[SERVER] New client connected: " +
+                                   clientSocket.getInetAddress().getHostAddress() +
+                                   ":" + clientSocket.getPort());
+
+                final AdmissionControl admission = AdmissionControl.getInstance();
+                if (!admission.tryOpenConnection()) {
+                    refuse(clientSocket, admission.busyGreeting());
+                    continue;
+                }
+                final ClientHandler handler = new ClientHandler(clientSocket);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            handler.run();
+                        } finally {
+                            admission.releaseConnection();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Send the busy greeting and close; a fresh socket's send buffer takes one line without blocking
+     */
+    private static void refuse(Socket clientSocket, String greeting) {
+        Log.warn("[SERVER] Connection limit reached, refusing " + clientSocket.getInetAddress().getHostAddress());
+        try (Socket socket = clientSocket) {
+            OutputStream out = socket.getOutputStream();
+            out.write((greeting + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // Client is being turned away anyway
+        }
+    }
+}
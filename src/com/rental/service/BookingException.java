@@ -0,0 +1,14 @@
+// com/rental/service/BookingException.java
+package com.rental.service;
+
+/**
+ * Thrown when a booking request cannot be fulfilled
+ * The message is safe to send back to the client
+ */
+public class BookingException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public BookingException(String message) {
+        super(message);
+    }
+}
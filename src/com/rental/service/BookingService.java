@@ -0,0 +1,240 @@
+// com/rental/service/BookingService.java
+package com.rental.service;
+
+import com.rental.dao.BookingDAO;
+import com.rental.dao.DAOFactory;
+import com.rental.dao.VehicleDAO;
+import com.rental.model.Booking;
+import com.rental.model.User;
+import com.rental.model.Vehicle;
+import com.rental.util.IntervalTree;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Booking rules and conflict detection
+ *
+ * Each vehicle has an in-memory calendar (an IntervalTree of its active bookings),
+ * loaded lazily from the bookings table the first time the vehicle is booked or
+ * cancelled. Overlap checks are O(log n) and only lock that one vehicle, so
+ * bookings for different vehicles never wait on each other. The database stays
+ * the durable store: the calendar slot is reserved first, the row is inserted,
+ * and the slot is released again if the insert fails.
+ *
+ * Dates are half-open: a booking from 10th to 12th covers the nights of the
+ * 10th and 11th, and the vehicle can be picked up again on the 12th.
+ */
+public class BookingService {
+    /** Longest rental accepted in a single booking */
+    public static final int MAX_RENTAL_DAYS = 365;
+
+    private static final BookingService INSTANCE =
+            new BookingService(DAOFactory.getBookingDAO(), DAOFactory.getVehicleDAO());
+
+    private final BookingDAO bookingDAO;
+    private final VehicleDAO vehicleDAO;
+    private final PricingEngine pricing;
+    private final ConcurrentHashMap<Integer, VehicleSchedule> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong slotSequence = new AtomicLong();
+
+    public BookingService(BookingDAO bookingDAO, VehicleDAO vehicleDAO) {
+        this(bookingDAO, vehicleDAO, PricingEngine.getInstance());
+    }
+
+    public BookingService(BookingDAO bookingDAO, VehicleDAO vehicleDAO, PricingEngine pricing) {
+        this.bookingDAO = bookingDAO;
+        this.vehicleDAO = vehicleDAO;
+        this.pricing = pricing;
+    }
+
+    /**
+     * Shared instance used by the server
+     */
+    public static BookingService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Book a vehicle for [startDate, endDate)
+     * @return stored booking with ID and total price
+     * @throws BookingException if the dates are invalid, the vehicle is unknown or already booked,
+     *         or its bookings could not be read
+     */
+    public Booking book(User user, int vehicleId, LocalDate startDate, LocalDate endDate) throws BookingException {
+        validateDates(startDate, endDate);
+
+        Vehicle vehicle = vehicleDAO.getVehicleById(vehicleId);
+        if (vehicle == null) {
+            throw new BookingException("Vehicle not found: " + vehicleId);
+        }
+
+        long start = startDate.toEpochDay();
+        long end = endDate.toEpochDay();
+        VehicleSchedule schedule = scheduleFor(vehicleId);
+
+        // Reserve the slot in memory first so concurrent requests see it immediately
+        Reservation hold = new Reservation(slotSequence.incrementAndGet(), start, end);
+        synchronized (schedule) {
+            schedule.ensureLoaded();
+            if (schedule.calendar.findOverlap(start, end) != null) {
+                throw new BookingException("Vehicle is already booked for some of those dates");
+            }
+            schedule.calendar.insert(start, end, hold.slot, hold);
+        }
+
+        Booking booking = new Booking(0, user.getId(), vehicleId, startDate, endDate,
+                pricing.quote(vehicle.getPricePerDay(), startDate, endDate), "BOOKED");
+        Booking created = bookingDAO.createBooking(booking);
+
+        synchronized (schedule) {
+            if (created == null) {
+                schedule.calendar.remove(start, hold.slot);
+                throw new BookingException("Booking could not be saved. Please try again.");
+            }
+            schedule.byBookingId.put(created.getId(), hold);
+        }
+        return created;
+    }
+
+    /**
+     * Cancel an active booking owned by the user (admins may cancel any booking)
+     * @return the cancelled booking
+     * @throws BookingException if the booking does not exist, is not active or belongs to someone else
+     */
+    public Booking cancel(User user, int bookingId) throws BookingException {
+        Booking booking = bookingDAO.getBookingById(bookingId);
+        if (booking == null) {
+            throw new BookingException("Booking not found: " + bookingId);
+        }
+        if (booking.getUserId() != user.getId() && !"ADMIN".equalsIgnoreCase(user.getRole())) {
+            throw new BookingException("You can only cancel your own bookings");
+        }
+        if (!"BOOKED".equals(booking.getStatus())) {
+            throw new BookingException("Booking is already " + booking.getStatus());
+        }
+        if (!bookingDAO.cancelBooking(bookingId)) {
+            throw new BookingException("Booking could not be cancelled. Please try again.");
+        }
+
+        VehicleSchedule schedule = scheduleFor(booking.getVehicleId());
+        synchronized (schedule) {
+            // If the calendar was never loaded it will read the new status from the DB
+            if (schedule.loaded) {
+                Reservation reservation = schedule.byBookingId.remove(bookingId);
+                if (reservation != null) {
+                    schedule.calendar.remove(reservation.start, reservation.slot);
+                }
+            }
+        }
+
+        booking.setStatus("CANCELLED");
+        return booking;
+    }
+
+    /**
+     * Get all bookings made by a user, newest first
+     */
+    public List<Booking> getBookingsForUser(int userId) {
+        return bookingDAO.getBookingsByUser(userId);
+    }
+
+    /**
+     * Check whether a vehicle has no active booking overlapping [startDate, endDate)
+     * @throws BookingException if the vehicle's bookings could not be read
+     */
+    public boolean isFree(int vehicleId, LocalDate startDate, LocalDate endDate) throws BookingException {
+        VehicleSchedule schedule = scheduleFor(vehicleId);
+        synchronized (schedule) {
+            schedule.ensureLoaded();
+            return schedule.calendar.findOverlap(startDate.toEpochDay(), endDate.toEpochDay()) == null;
+        }
+    }
+
+    /**
+     * Check a requested rental period (also used for QUOTE)
+     * @throws BookingException if the range is empty, starts in the past or is too long
+     */
+    public static void validateDates(LocalDate startDate, LocalDate endDate) throws BookingException {
+        if (!endDate.isAfter(startDate)) {
+            throw new BookingException("End date must be after start date");
+        }
+        if (startDate.isBefore(LocalDate.now())) {
+            throw new BookingException("Start date is in the past");
+        }
+        if (ChronoUnit.DAYS.between(startDate, endDate) > MAX_RENTAL_DAYS) {
+            throw new BookingException("Bookings are limited to " + MAX_RENTAL_DAYS + " days");
+        }
+    }
+
+    private VehicleSchedule scheduleFor(int vehicleId) {
+        VehicleSchedule schedule = schedules.get(vehicleId);
+        if (schedule == null) {
+            VehicleSchedule created = new VehicleSchedule(vehicleId);
+            schedule = schedules.putIfAbsent(vehicleId, created);
+            if (schedule == null) {
+                schedule = created;
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Calendar of one vehicle; all access is synchronized on the instance
+     */
+    private class VehicleSchedule {
+        final int vehicleId;
+        final IntervalTree<Reservation> calendar = new IntervalTree<>();
+        final Map<Integer, Reservation> byBookingId = new HashMap<>();
+        boolean loaded;
+
+        VehicleSchedule(int vehicleId) {
+            this.vehicleId = vehicleId;
+        }
+
+        /**
+         * @throws BookingException if the bookings could not be read; the next call tries again
+         */
+        void ensureLoaded() throws BookingException {
+            if (loaded) {
+                return;
+            }
+            List<Booking> active = bookingDAO.getActiveBookingsByVehicle(vehicleId);
+            if (active == null) {
+                // An empty calendar would let every request through until restart
+                throw new BookingException("Bookings of vehicle " + vehicleId + " could not be read. Please try again.");
+            }
+            for (Booking booking : active) {
+                long start = booking.getStartDate().toEpochDay();
+                long end = booking.getEndDate().toEpochDay();
+                if (end <= start) {
+                    continue; // bad row, cannot block anything
+                }
+                Reservation reservation = new Reservation(slotSequence.incrementAndGet(), start, end);
+                calendar.insert(start, end, reservation.slot, reservation);
+                byBookingId.put(booking.getId(), reservation);
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * One occupied range in a vehicle calendar
+     */
+    private static class Reservation {
+        final long slot;
+        final long start;
+        final long end;
+
+        Reservation(long slot, long start, long end) {
+            this.slot = slot;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+// com/rental/service/PricingEngine.java
+package com.rental.service;
+
+import com.rental.model.Vehicle;
+import com.rental.util.Config;
+import com.rental.util.Log;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rental prices for a date range
+ *
+ * The total for one vehicle is pricePerDay x (sum of the day factors of every
+ * rented day) x (1 - long-rental discount). A day's factor is the weekend
+ * multiplier (Saturday, Sunday) times the multiplier of the season it falls in.
+ * With the default settings every factor is 1 and there is no discount, so the
+ * total is days x pricePerDay.
+ *
+ * Day factors are precomputed for a window around today, together with their
+ * running sums, so the factor of any range inside the window is one subtraction.
+ * Because that factor is the same for every vehicle, quoting a list of vehicles
+ * is one multiply (and rounding) per vehicle into a primitive array of totals.
+ * Quotes are also memoized per (type, start, end) for as long as the vehicle
+ * list they were computed from (the vehicle cache's snapshot) stays current.
+ *
+ * Settings:
+ * - PRICE_WEEKEND_MULTIPLIER     factor for Saturdays and Sundays (default 1.0)
+ * - PRICE_SEASONS                MM-DD:MM-DD:factor,... inclusive, may wrap the new year;
+ *                                the first season containing a day applies
+ *                                (e.g. 12-20:01-05:1.5,06-01:08-31:1.2)
+ * - PRICE_LONG_RENTAL_DISCOUNTS  minDays:percent,... the largest reached threshold
+ *                                applies (e.g. 7:10,30:25)
+ * - PRICE_QUOTE_CACHE_SIZE       memoized quotes kept (default 256, 0 = off)
+ */
+public class PricingEngine {
+    /** Days before today covered by the rate table */
+    private static final int TABLE_DAYS_BEFORE = 7;
+    /** Days after today covered by the rate table (bookings may be made well ahead) */
+    private static final int TABLE_DAYS_AFTER = 3 * 365;
+
+    private static final PricingEngine INSTANCE = new PricingEngine(
+            Config.getDouble("PRICE_WEEKEND_MULTIPLIER", 1.0),
+            Config.getString("PRICE_SEASONS", ""),
+            Config.getString("PRICE_LONG_RENTAL_DISCOUNTS", ""),
+            Config.getInt("PRICE_QUOTE_CACHE_SIZE", 256));
+
+    private final double weekendMultiplier;
+    private final List<Season> seasons;
+    // Ascending by minDays
+    private final int[] discountMinDays;
+    private final double[] discountFactors;
+
+    private volatile RateTable table;
+    private final Map<String, Quote> memo;
+    private final AtomicLong memoHits = new AtomicLong();
+    private final AtomicLong memoMisses = new AtomicLong();
+
+    /**
+     * @param weekendMultiplier factor for Saturdays and Sundays
+     * @param seasons rule string as in PRICE_SEASONS (invalid entries are logged and ignored)
+     * @param discounts rule string as in PRICE_LONG_RENTAL_DISCOUNTS
+     * @param memoSize quotes memoized (0 = no memo)
+     */
+    public PricingEngine(double weekendMultiplier, String seasons, String discounts, final int memoSize) {
+        this.weekendMultiplier = weekendMultiplier > 0 ? weekendMultiplier : 1.0;
+        this.seasons = parseSeasons(seasons);
+
+        List<int[]> parsed = parseDiscounts(discounts);
+        this.discountMinDays = new int[parsed.size()];
+        this.discountFactors = new double[parsed.size()];
+        for (int i = 0; i < parsed.size(); i++) {
+            discountMinDays[i] = parsed.get(i)[0];
+            discountFactors[i] = 1 - parsed.get(i)[1] / 100.0;
+        }
+
+        this.memo = memoSize <= 0 ? null : new LinkedHashMap<String, Quote>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Quote> eldest) {
+                return size() > memoSize;
+            }
+        };
+        this.table = new RateTable(LocalDate.now().toEpochDay() - TABLE_DAYS_BEFORE);
+    }
+
+    /**
+     * Shared instance configured from the environment
+     */
+    public static PricingEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Total price of renting one vehicle for [startDate, endDate), rounded to cents
+     */
+    public double quote(double pricePerDay, LocalDate startDate, LocalDate endDate) {
+        long start = startDate.toEpochDay();
+        long end = endDate.toEpochDay();
+        return roundToCents(pricePerDay * rangeFactor(start, end));
+    }
+
+    /**
+     * Quote every vehicle of a list for [startDate, endDate)
+     * @param memoKey identifies the list (e.g. the vehicle type), or null to skip the memo;
+     *                a memoized quote is reused only while the same list instance is passed
+     */
+    public Quote quoteAll(String memoKey, List<Vehicle> vehicles, LocalDate startDate, LocalDate endDate) {
+        long start = startDate.toEpochDay();
+        long end = endDate.toEpochDay();
+        String key = memo == null || memoKey == null ? null : memoKey + "|" + start + "|" + end;
+        if (key != null) {
+            Quote cached;
+            synchronized (memo) {
+                cached = memo.get(key);
+            }
+            if (cached != null && cached.vehicles == vehicles) {
+                memoHits.incrementAndGet();
+                return cached;
+            }
+            memoMisses.incrementAndGet();
+        }
+
+        double factor = rangeFactor(start, end);
+        double[] totals = new double[vehicles.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = roundToCents(vehicles.get(i).getPricePerDay() * factor);
+        }
+        Quote quote = new Quote(vehicles, totals, (int) (end - start));
+
+        if (key != null) {
+            synchronized (memo) {
+                memo.put(key, quote);
+            }
+        }
+        return quote;
+    }
+
+    public long getMemoHits() {
+        return memoHits.get();
+    }
+
+    public long getMemoMisses() {
+        return memoMisses.get();
+    }
+
+    /**
+     * Multiplier of pricePerDay for [start, end): summed day factors times the discount
+     */
+    private double rangeFactor(long start, long end) {
+        if (end <= start) {
+            return 0;
+        }
+        RateTable current = table;
+        if (!current.covers(start, end)) {
+            long today = LocalDate.now().toEpochDay();
+            if (current.firstDay < today - TABLE_DAYS_BEFORE) {
+                // Server has been up long enough for the window to move
+                current = new RateTable(today - TABLE_DAYS_BEFORE);
+                table = current;
+            }
+        }
+        double daySum;
+        if (current.covers(start, end)) {
+            daySum = current.sum(start, end);
+        } else {
+            daySum = 0;
+            for (long day = start; day < end; day++) {
+                daySum += dayFactor(day);
+            }
+        }
+        return daySum * discountFactor(end - start);
+    }
+
+    private double dayFactor(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        double factor = 1.0;
+        DayOfWeek dayOfWeek = date.getDayOfWeek();
+        if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
+            factor *= weekendMultiplier;
+        }
+        MonthDay monthDay = MonthDay.from(date);
+        for (Season season : seasons) {
+            if (season.contains(monthDay)) {
+                factor *= season.multiplier;
+                break;
+            }
+        }
+        return factor;
+    }
+
+    private double discountFactor(long days) {
+        for (int i = discountMinDays.length - 1; i >= 0; i--) {
+            if (days >= discountMinDays[i]) {
+                return discountFactors[i];
+            }
+        }
+        return 1.0;
+    }
+
+    private static double roundToCents(double amount) {
+        return Math.round(amount * 100) / 100.0;
+    }
+
+    private static List<Season> parseSeasons(String rules) {
+        List<Season> result = new ArrayList<>();
+        for (String rule : rules.split(",")) {
+            if (rule.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.trim().split(":");
+            try {
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("expected MM-DD:MM-DD:factor");
+                }
+                double multiplier = Double.parseDouble(parts[2].trim());
+                if (!(multiplier > 0)) {
+                    throw new IllegalArgumentException("factor must be positive");
+                }
+                result.add(new Season(MonthDay.parse("--" + parts[0].trim()), MonthDay.parse("--" + parts[1].trim()), multiplier));
+            } catch (RuntimeException e) {
+                Log.warn("[PRICING] Ignoring season '" + rule.trim() + "': " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return {minDays, percent} pairs sorted by minDays
+     */
+    private static List<int[]> parseDiscounts(String rules) {
+        List<int[]> result = new ArrayList<>();
+        for (String rule : rules.split(",")) {
+            if (rule.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.trim().split(":");
+            try {
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("expected minDays:percent");
+                }
+                int minDays = Integer.parseInt(parts[0].trim());
+                int percent = Integer.parseInt(parts[1].trim());
+                if (minDays < 1 || percent < 0 || percent >= 100) {
+                    throw new IllegalArgumentException("minDays must be at least 1 and percent 0-99");
+                }
+                result.add(new int[] { minDays, percent });
+            } catch (RuntimeException e) {
+                Log.warn("[PRICING] Ignoring discount '" + rule.trim() + "': " + e.getMessage());
+            }
+        }
+        Collections.sort(result, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Result of quoteAll: totals[i] is the price of vehicles.get(i)
+     */
+    public static final class Quote {
+        private final List<Vehicle> vehicles;
+        private final double[] totals;
+        private final int days;
+
+        private Quote(List<Vehicle> vehicles, double[] totals, int days) {
+            this.vehicles = vehicles;
+            this.totals = totals;
+            this.days = days;
+        }
+
+        public int size() {
+            return totals.length;
+        }
+
+        public Vehicle getVehicle(int index) {
+            return vehicles.get(index);
+        }
+
+        public double getTotal(int index) {
+            return totals[index];
+        }
+
+        public int getDays() {
+            return days;
+        }
+    }
+
+    /**
+     * One seasonal multiplier over an inclusive MonthDay range, possibly wrapping the new year
+     */
+    private static final class Season {
+        final MonthDay from;
+        final MonthDay to;
+        final double multiplier;
+
+        Season(MonthDay from, MonthDay to, double multiplier) {
+            this.from = from;
+            this.to = to;
+            this.multiplier = multiplier;
+        }
+
+        boolean contains(MonthDay day) {
+            if (!from.isAfter(to)) {
+                return !day.isBefore(from) && !day.isAfter(to);
+            }
+            return !day.isBefore(from) || !day.isAfter(to);
+        }
+    }
+
+    /**
+     * Day factors of a fixed window with running sums: prefix[i] is the sum of
+     * the factors of the first i days, so any range inside costs one subtraction
+     */
+    private final class RateTable {
+        final long firstDay;
+        final double[] prefix;
+
+        RateTable(long firstDay) {
+            this.firstDay = firstDay;
+            int length = TABLE_DAYS_BEFORE + TABLE_DAYS_AFTER;
+            this.prefix = new double[length + 1];
+            for (int i = 0; i < length; i++) {
+                prefix[i + 1] = prefix[i] + dayFactor(firstDay + i);
+            }
+        }
+
+        boolean covers(long start, long end) {
+            return start >= firstDay && end - firstDay < prefix.length;
+        }
+
+        double sum(long start, long end) {
+            return prefix[(int) (end - firstDay)] - prefix[(int) (start - firstDay)];
+        }
+    }
+}
@@ -0,0 +1,170 @@
+// com/rental/service/SessionStore.java
+package com.rental.service;
+
+import com.rental.model.User;
+import com.rental.util.Config;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory login sessions, so a client that reconnects can send RESUME|token
+ * instead of logging in again (no users-table query)
+ *
+ * Sessions expire SESSION_TTL_MS after the last command that used them (sliding
+ * expiry). A background thread removes expired sessions every few seconds, and at
+ * most SESSION_MAX_ENTRIES are kept: beyond that the oldest sessions are dropped
+ * and those users simply log in again. Sessions do not survive a server restart.
+ *
+ * Settings:
+ * - SESSION_TTL_MS          idle time before a session expires (default 1800000 = 30 min)
+ * - SESSION_MAX_ENTRIES     max sessions kept in memory (default 100000)
+ */
+public class SessionStore {
+    private static final int TOKEN_BYTES = 24;
+    private static final SessionStore INSTANCE = new SessionStore(
+            Config.getLong("SESSION_TTL_MS", 1800000),
+            Config.getInt("SESSION_MAX_ENTRIES", 100000));
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    // Tokens in creation order, for dropping the oldest when full; may hold already-removed tokens
+    private final ConcurrentLinkedQueue<String> creationOrder = new ConcurrentLinkedQueue<>();
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    public SessionStore(long ttlMillis, int maxEntries) {
+        this.ttlMillis = Math.max(1000, ttlMillis);
+        this.maxEntries = Math.max(1, maxEntries);
+
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                removeExpired();
+            }
+        }, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Shared instance used by the server
+     */
+    public static SessionStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start a session for a user who just logged in
+     * @return the new session; its token is safe to send in protocol fields
+     */
+    public Session create(User user) {
+        while (sessions.size() >= maxEntries) {
+            String oldest = creationOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            sessions.remove(oldest);
+        }
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        Session session = new Session(encoder.encodeToString(bytes), user, System.currentTimeMillis() + ttlMillis);
+        sessions.put(session.token, session);
+        creationOrder.add(session.token);
+        return session;
+    }
+
+    /**
+     * Look up a session by token and extend its expiry
+     * @return the session, or null if the token is unknown or expired
+     */
+    public Session resume(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.isExpired(System.currentTimeMillis())) {
+            sessions.remove(token, session);
+            return null;
+        }
+        touch(session);
+        return session;
+    }
+
+    /**
+     * Extend a session's expiry; called for each command on a logged-in connection
+     */
+    public void touch(Session session) {
+        session.expiresAt = System.currentTimeMillis() + ttlMillis;
+    }
+
+    /**
+     * End a session (LOGOUT)
+     */
+    public void invalidate(Session session) {
+        sessions.remove(session.token, session);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+        // Forget tokens that are no longer stored so the queue stays as small as the map
+        Iterator<String> tokens = creationOrder.iterator();
+        while (tokens.hasNext()) {
+            if (!sessions.containsKey(tokens.next())) {
+                tokens.remove();
+            }
+        }
+    }
+
+    /**
+     * A logged-in user and the token that identifies the session
+     */
+    public static final class Session {
+        private final String token;
+        private final User user;
+        private volatile long expiresAt;
+
+        Session(String token, User user, long expiresAt) {
+            this.token = token;
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
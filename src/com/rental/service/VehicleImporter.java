@@ -0,0 +1,374 @@
+// com/rental/service/VehicleImporter.java
+package com.rental.service;
+
+import com.rental.dao.DAOFactory;
+import com.rental.dao.DuplicatePolicy;
+import com.rental.dao.VehicleDAO;
+import com.rental.model.Vehicle;
+import com.rental.util.Config;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Bulk import of vehicles from CSV
+ *
+ * Rows are read one at a time and written in batches (one multi-row INSERT per
+ * batch, see VehicleDAO.insertVehicles), so a file of any size needs memory for
+ * one batch only. Columns:
+ *
+ *   type,brand,model,reg_number,price_per_day[,available]
+ *
+ * type is CAR or BIKE, available defaults to true. A first line starting with
+ * "type" is treated as a header. Fields may be quoted ("Mercedes, Benz").
+ * Invalid rows are counted and reported, not imported; a batch the database
+ * rejects (e.g. a duplicate with FAIL) stops the import.
+ *
+ * Used by the admin IMPORT_VEHICLES command and from the command line:
+ *
+ *   java -cp ... com.rental.service.VehicleImporter vehicles.csv [SKIP|UPDATE|FAIL]
+ *
+ * Settings:
+ * - IMPORT_BATCH_SIZE      rows per INSERT (default 1000, max 4681)
+ * - IMPORT_ON_DUPLICATE    SKIP, UPDATE or FAIL for existing reg_numbers (default SKIP)
+ */
+public class VehicleImporter {
+    /**
+     * PostgreSQL allows 32767 parameters per statement; a row takes 7 when it
+     * carries its ID (cluster nodes, see NODE|PUT_VEHICLES), 6 otherwise
+     */
+    public static final int MAX_BATCH_SIZE = 32767 / 7;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    /**
+     * Called after every batch, e.g. to print progress
+     */
+    public interface ProgressListener {
+        void onProgress(Result progress);
+    }
+
+    private final VehicleDAO vehicleDAO;
+    private final int batchSize;
+    private final DuplicatePolicy onDuplicate;
+
+    /**
+     * @param batchSize rows per INSERT, capped at MAX_BATCH_SIZE
+     */
+    public VehicleImporter(VehicleDAO vehicleDAO, int batchSize, DuplicatePolicy onDuplicate) {
+        this.vehicleDAO = vehicleDAO;
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.onDuplicate = onDuplicate;
+    }
+
+    /**
+     * Importer with the configured batch size (IMPORT_BATCH_SIZE)
+     */
+    public static VehicleImporter create(DuplicatePolicy onDuplicate) {
+        return new VehicleImporter(DAOFactory.getVehicleDAO(), Config.getInt("IMPORT_BATCH_SIZE", 1000), onDuplicate);
+    }
+
+    /**
+     * Parse a policy name (case-insensitive)
+     * @return the policy, or null if the name is unknown
+     */
+    public static DuplicatePolicy parsePolicy(String name) {
+        try {
+            return DuplicatePolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Import every row of in
+     * @param listener notified after each batch, may be null
+     * @return totals; check isStopped() to see whether the whole input was processed
+     * @throws IOException if reading the input fails (batches written so far stay)
+     */
+    public Result importCsv(Reader in, ProgressListener listener) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        Result result = new Result();
+        List<Vehicle> batch = new ArrayList<>(batchSize);
+        // UPDATE can't touch the same row twice in one statement: flush before a repeated reg_number
+        Set<String> batchRegNumbers = new HashSet<>();
+        int batchFirstLine = 1;
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || (lineNumber == 1 && isHeader(line))) {
+                continue;
+            }
+            result.rowsRead++;
+
+            Vehicle vehicle;
+            try {
+                vehicle = parseRow(line);
+            } catch (IllegalArgumentException e) {
+                result.reject(lineNumber, e.getMessage());
+                continue;
+            }
+
+            String regKey = vehicle.getRegNumber().toUpperCase(Locale.ROOT);
+            if (onDuplicate == DuplicatePolicy.UPDATE && batchRegNumbers.contains(regKey)) {
+                if (!flush(batch, batchFirstLine, result, listener)) {
+                    return result;
+                }
+                batchRegNumbers.clear();
+            }
+            if (batch.isEmpty()) {
+                batchFirstLine = lineNumber;
+            }
+            batch.add(vehicle);
+            batchRegNumbers.add(regKey);
+
+            if (batch.size() >= batchSize) {
+                if (!flush(batch, batchFirstLine, result, listener)) {
+                    return result;
+                }
+                batchRegNumbers.clear();
+            }
+        }
+        flush(batch, batchFirstLine, result, listener);
+        return result;
+    }
+
+    /**
+     * Write one batch
+     * @return false if the database rejected it and the import must stop
+     */
+    private boolean flush(List<Vehicle> batch, int firstLine, Result result, ProgressListener listener) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        int written = vehicleDAO.insertVehicles(batch, onDuplicate);
+        if (written < 0) {
+            result.stoppedAtLine = firstLine;
+            result.errors.add("line " + firstLine + ": batch of " + batch.size() + " rows rejected by the database"
+                    + (onDuplicate == DuplicatePolicy.FAIL ? " (duplicate reg_number?)" : ""));
+            batch.clear();
+            return false;
+        }
+        result.written += written;
+        // SKIP drops existing reg_numbers silently; UPDATE counts them as written
+        result.skipped += batch.size() - Math.min(written, batch.size());
+        batch.clear();
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+        return true;
+    }
+
+    private static boolean isHeader(String line) {
+        return line.trim().toLowerCase(Locale.ROOT).startsWith("type");
+    }
+
+    /**
+     * Parse type,brand,model,reg_number,price_per_day[,available]
+     * @throws IllegalArgumentException with a message for the import report
+     */
+    static Vehicle parseRow(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() < 5 || fields.size() > 6) {
+            throw new IllegalArgumentException("expected 5 or 6 columns, got " + fields.size());
+        }
+        String type = fields.get(0).toUpperCase(Locale.ROOT);
+        if (!type.equals("CAR") && !type.equals("BIKE")) {
+            throw new IllegalArgumentException("type must be CAR or BIKE");
+        }
+        String brand = required(fields.get(1), "brand");
+        String model = required(fields.get(2), "model");
+        String regNumber = required(fields.get(3), "reg_number");
+
+        double price;
+        try {
+            price = Double.parseDouble(fields.get(4));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("price_per_day is not a number");
+        }
+        if (!(price > 0) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("price_per_day must be positive");
+        }
+
+        boolean available = true;
+        if (fields.size() == 6 && !fields.get(5).isEmpty()) {
+            String value = fields.get(5).toLowerCase(Locale.ROOT);
+            if (value.equals("true") || value.equals("1") || value.equals("yes")) {
+                available = true;
+            } else if (value.equals("false") || value.equals("0") || value.equals("no")) {
+                available = false;
+            } else {
+                throw new IllegalArgumentException("available must be true or false");
+            }
+        }
+        return new Vehicle(0, type, brand, model, regNumber, price, available);
+    }
+
+    private static String required(String value, String column) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(column + " is empty");
+        }
+        if (value.length() > 50) {
+            throw new IllegalArgumentException(column + " is longer than 50 characters");
+        }
+        return value;
+    }
+
+    /**
+     * Split one CSV line; fields may be quoted, "" inside quotes is a quote
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Counters of one import; also passed to the ProgressListener while running
+     */
+    public static final class Result {
+        private final long started = System.nanoTime();
+        private long rowsRead;
+        private long written;
+        private long skipped;
+        private long rejected;
+        private int stoppedAtLine;
+        private final List<String> errors = new ArrayList<>();
+
+        private void reject(int line, String reason) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + line + ": " + reason);
+            }
+        }
+
+        /** Non-empty data rows read so far */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /** Rows inserted, plus rows updated with UPDATE */
+        public long getWritten() {
+            return written;
+        }
+
+        /** Rows dropped because the reg_number already existed (SKIP) */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /** Rows that failed validation */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /** True if a batch was rejected by the database and the rest was not imported */
+        public boolean isStopped() {
+            return stoppedAtLine > 0;
+        }
+
+        /** First line of the rejected batch, or 0 */
+        public int getStoppedAtLine() {
+            return stoppedAtLine;
+        }
+
+        /** First few validation errors and the batch failure, if any */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getElapsedMillis() {
+            return (System.nanoTime() - started) / 1000000;
+        }
+
+        public long getRowsPerSecond() {
+            long millis = Math.max(1, getElapsedMillis());
+            return rowsRead * 1000 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d written, %d skipped, %d rejected in %d ms (%d rows/s)",
+                    rowsRead, written, skipped, rejected, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Command-line import straight into the configured storage (DB_URL, or the
+     * local store with STORAGE_BACKEND=local while no server is using it)
+     * Usage: VehicleImporter <file.csv | -> [SKIP|UPDATE|FAIL]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: VehicleImporter <file.csv | -> [SKIP|UPDATE|FAIL]");
+            System.exit(2);
+        }
+        String policyName = args.length > 1 ? args[1] : Config.getString("IMPORT_ON_DUPLICATE", "SKIP");
+        DuplicatePolicy policy = parsePolicy(policyName);
+        if (policy == null) {
+            System.err.println("Unknown duplicate policy: " + policyName + " (use SKIP, UPDATE or FAIL)");
+            System.exit(2);
+        }
+
+        final long[] lastReport = { System.nanoTime() };
+        ProgressListener progress = new ProgressListener() {
+            @Override
+            public void onProgress(Result result) {
+                long now = System.nanoTime();
+                if (now - lastReport[0] >= 1000000000L) {
+                    lastReport[0] = now;
+                    System.out.println("[IMPORT] " + result);
+                }
+            }
+        };
+
+        VehicleImporter importer = create(policy);
+        Result result;
+        try (InputStream in = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            result = importer.importCsv(reader, progress);
+        }
+
+        System.out.println("[IMPORT] Done: " + result);
+        for (String error : result.getErrors()) {
+            System.out.println("[IMPORT]   " + error);
+        }
+        System.exit(result.isStopped() ? 1 : 0);
+    }
+}
@@ -0,0 +1,88 @@
+// com/rental/util/Config.java
+package com.rental.util;
+
+/**
+ * Small helper for reading optional tuning settings
+ * Values come from environment variables (same as DB_URL / PORT),
+ * with a JVM system property of the same name as an override for local runs
+ */
+public class Config {
+
+    private Config() {}
+
+    /**
+     * Get a string setting
+     * @param name variable name, e.g. "SERVER_ENGINE"
+     * @param defaultValue value used when the variable is not set or empty
+     * @return configured value or defaultValue
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            value = System.getenv(name);
+        }
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Get an integer setting
+     * Falls back to defaultValue (with a warning) if the value is not a number
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[CONFIG] Invalid number for " + name + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a long setting
+     * Falls back to defaultValue (with a warning) if the value is not a number
+     */
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[CONFIG] Invalid number for " + name + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a decimal setting
+     * Falls back to defaultValue (with a warning) if the value is not a number
+     */
+    public static double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[CONFIG] Invalid number for " + name + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a boolean setting ("true"/"false", "1"/"0", "yes"/"no")
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+}
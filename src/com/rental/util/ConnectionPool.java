@@ -0,0 +1,397 @@
+// com/rental/util/ConnectionPool.java
+package com.rental.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal JDBC connection pool used by DBUtil
+ *
+ * Borrowed connections are handed out as proxies: calling close() (as the DAOs
+ * do in try-with-resources) returns the physical connection to the pool instead
+ * of closing it. Settings come from environment variables:
+ * - DB_POOL_MIN_SIZE            connections kept open when idle (default 2)
+ * - DB_POOL_MAX_SIZE            hard limit on open connections (default 10)
+ * - DB_POOL_TIMEOUT_MS          max wait for a free connection (default 5000)
+ * - DB_POOL_IDLE_TIMEOUT_MS     close idle connections above the minimum after this (default 600000)
+ * - DB_POOL_VALIDATE_AFTER_MS   validate on borrow if idle longer than this (default 1000)
+ * - DB_POOL_LEAK_THRESHOLD_MS   warn if a connection is held longer than this, 0 = off (default 30000)
+ * - DB_POOL_LEAK_STACK_TRACES   also log where it was borrowed; costs a stack trace
+ *                               per borrow, so only for hunting a leak (default false)
+ * - DB_POOL_STATEMENT_CACHE     prepared statements cached per connection, 0 = off (default 32)
+ *
+ * prepareStatement(sql) on a borrowed connection goes through a per-connection
+ * StatementCache, so repeated queries reuse the same prepared statement.
+ */
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String name;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long timeoutMs;
+    private final long idleTimeoutMs;
+    private final long validateAfterMs;
+    private final long leakThresholdMs;
+    private final boolean leakStackTraces;
+    private final int statementCacheSize;
+
+    // Most recently returned connection first, so hot connections stay warm
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Create a pool and open the minimum number of connections in the background
+     * @param name label used in log lines, e.g. "primary"
+     */
+    public ConnectionPool(String name, String url, String user, String password) {
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+
+        this.maxSize = Math.max(1, Config.getInt("DB_POOL_MAX_SIZE", 10));
+        this.minSize = Math.min(maxSize, Math.max(0, Config.getInt("DB_POOL_MIN_SIZE", 2)));
+        this.timeoutMs = Config.getLong("DB_POOL_TIMEOUT_MS", 5000);
+        this.idleTimeoutMs = Config.getLong("DB_POOL_IDLE_TIMEOUT_MS", 600000);
+        this.validateAfterMs = Config.getLong("DB_POOL_VALIDATE_AFTER_MS", 1000);
+        this.leakThresholdMs = Config.getLong("DB_POOL_LEAK_THRESHOLD_MS", 30000);
+        this.leakStackTraces = leakThresholdMs > 0 && Config.getBoolean("DB_POOL_LEAK_STACK_TRACES", false);
+        this.statementCacheSize = Math.max(0, Config.getInt("DB_POOL_STATEMENT_CACHE", 32));
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "db-pool-" + ConnectionPool.this.name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        housekeeper.execute(new Runnable() {
+            @Override
+            public void run() {
+                fillToMinimum();
+            }
+        });
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                houseKeep();
+            }
+        }, 5, 5, TimeUnit.SECONDS);
+
+        Log.info("[DB POOL:" + name + "] Started (min=" + minSize + ", max=" + maxSize
+                + ", timeout=" + timeoutMs + "ms, statement cache=" + statementCacheSize + ")");
+    }
+
+    /**
+     * Borrow a connection; close() on the returned object gives it back
+     * @return pooled connection proxy
+     * @throws SQLTimeoutException if no connection becomes free within DB_POOL_TIMEOUT_MS
+     * @throws SQLException if a new physical connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool '" + name + "' is shut down");
+        }
+
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + timeoutMs
+                        + "ms waiting for a database connection (pool '" + name + "', max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = leakStackTraces ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.newProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close all idle connections and refuse new borrows
+     * Connections still in use are closed when they are returned
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        Log.info("[DB POOL:" + name + "] Shut down");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Connections currently borrowed */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /** Connections open and waiting in the pool */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** Physical connections open */
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /** Threads currently waiting for a connection */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** prepareStatement calls answered from a statement cache */
+    public long getStatementCacheHits() {
+        return statementHits.get();
+    }
+
+    /** prepareStatement calls that had to prepare a new statement */
+    public long getStatementCacheMisses() {
+        return statementMisses.get();
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - pooled.lastUsed;
+            if (idleFor < validateAfterMs || isValid(pooled)) {
+                return pooled;
+            }
+            Log.warn("[DB POOL:" + name + "] Discarding dead connection (idle " + idleFor + "ms)");
+            destroy(pooled);
+        }
+        return create();
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(raw);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        if (pooled.statements != null) {
+            pooled.statements.closeAll();
+        }
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            // Already broken, nothing else to do
+        }
+    }
+
+    /**
+     * Called when the borrower closes its proxy
+     */
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            if (closed || pooled.broken
+                    || (pooled.statements != null && pooled.statements.isConnectionBroken())) {
+                destroy(pooled);
+                return;
+            }
+            try {
+                // Never hand an open transaction to the next borrower
+                if (!pooled.raw.getAutoCommit()) {
+                    pooled.raw.rollback();
+                    pooled.raw.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                destroy(pooled);
+                return;
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.addFirst(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < minSize) {
+            try {
+                PooledConnection pooled = create();
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addLast(pooled);
+            } catch (SQLException e) {
+                Log.error("[DB POOL:" + name + "] Could not open connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+
+        // Evict connections idle too long, oldest (tail) first, keeping minSize open
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeoutMs && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        fillToMinimum();
+
+        if (leakThresholdMs > 0) {
+            for (PooledConnection pooled : borrowed) {
+                long heldFor = now - pooled.borrowedAt;
+                if (heldFor > leakThresholdMs && !pooled.leakReported) {
+                    pooled.leakReported = true;
+                    String message = "[DB POOL:" + name + "] Possible connection leak: held for " + heldFor + "ms";
+                    if (pooled.borrowSite != null) {
+                        Log.error(message, pooled.borrowSite);
+                    } else {
+                        Log.warn(message + " (DB_POOL_LEAK_STACK_TRACES=true logs where it was borrowed)");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A physical connection plus pool bookkeeping
+     */
+    private class PooledConnection {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long lastUsed;
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = statementCacheSize > 0
+                    ? new StatementCache(raw, statementCacheSize, statementHits, statementMisses)
+                    : null;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Each borrow gets its own proxy so a stale reference cannot use the
+         * connection after it has been returned
+         */
+        Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new BorrowHandler(this));
+        }
+    }
+
+    /**
+     * Intercepts close()/isClosed(), sends prepareStatement(sql) and
+     * prepareStatement(sql, autoGeneratedKeys) through the statement cache,
+     * and forwards everything else to the raw connection
+     */
+    private class BorrowHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        BorrowHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.equals("close")) {
+                if (!returned) {
+                    returned = true;
+                    release(pooled);
+                }
+                return null;
+            }
+            if (methodName.equals("isClosed")) {
+                return returned || pooled.raw.isClosed();
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (methodName.equals("prepareStatement") && pooled.statements != null) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1) {
+                    return pooled.statements.prepare((String) args[0], -1);
+                }
+                if (types.length == 2 && types[1] == int.class) {
+                    return pooled.statements.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+
+            try {
+                return method.invoke(pooled.raw, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // SQLState class 08 = connection exception; don't reuse this connection
+                    if (state != null && state.startsWith("08")) {
+                        pooled.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
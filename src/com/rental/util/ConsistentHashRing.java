@@ -0,0 +1,100 @@
+// com/rental/util/ConsistentHashRing.java
+package com.rental.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of integer keys (vehicle IDs) onto named nodes
+ *
+ * Every node is placed on a 64-bit ring at several pseudo-random points
+ * ("virtual nodes"); a key belongs to the first point at or after its own hash,
+ * wrapping around. Adding a node therefore only moves the keys that now fall
+ * just before one of its points - about 1/n of them, all towards the new node -
+ * and the virtual nodes keep the shares of the nodes roughly equal.
+ *
+ * Rings are immutable: withNode() returns a new ring, so a reader never sees a
+ * half-built one and old and new placement can be compared while rebalancing.
+ */
+public final class ConsistentHashRing {
+    private final TreeMap<Long, String> points;
+    private final List<String> nodes;
+    private final int virtualNodes;
+
+    /**
+     * @param nodes node names (e.g. "host:port"), must be unique
+     * @param virtualNodes points per node on the ring
+     */
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.points = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < this.virtualNodes; i++) {
+                // A collision between two nodes' points is astronomically unlikely; first one wins
+                Long point = hash(node + "#" + i);
+                if (!points.containsKey(point)) {
+                    points.put(point, node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Node that owns a key
+     */
+    public String nodeFor(int key) {
+        Map.Entry<Long, String> entry = points.ceilingEntry(mix(key));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Same ring with one more node
+     */
+    public ConsistentHashRing withNode(String node) {
+        if (nodes.contains(node)) {
+            throw new IllegalArgumentException("Node already in the ring: " + node);
+        }
+        List<String> grown = new ArrayList<>(nodes);
+        grown.add(node);
+        return new ConsistentHashRing(grown, virtualNodes);
+    }
+
+    /**
+     * Nodes in the order they were added
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 64-bit FNV-1a of a name, finished with the same mixer as keys
+     */
+    private static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Spread consecutive keys over the whole ring (SplitMix64 finalizer)
+     */
+    private static long mix(long x) {
+        x ^= x >>> 30;
+        x *= 0xbf58476d1ce4e5b9L;
+        x ^= x >>> 27;
+        x *= 0x94d049bb133111ebL;
+        x ^= x >>> 31;
+        return x;
+    }
+}
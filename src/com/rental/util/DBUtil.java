@@ -4,38 +4,169 @@ package com.rental.util;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Database utility class for managing JDBC connections
  * Supports both local (MySQL/PostgreSQL) and cloud (Supabase) databases
  * Uses environment variables for flexible deployment
+ *
+ * Connections are pooled by default (see ConnectionPool for the DB_POOL_* settings);
+ * set DB_POOL_ENABLED=false to open a fresh connection per call as before.
+ *
+ * Read replicas: DAO methods that only read call getReadConnection(), everything
+ * else calls getConnection() and goes to the primary. With DB_READ_URLS set
+ * (comma-separated JDBC URLs, same user and password) reads are spread over the
+ * replicas by ReplicaRouter and fall back to the primary when none is up.
+ * A client that has just written reads from the primary for DB_READ_STICKY_MS
+ * (default 5000) so it always sees its own writes; see ReadSession.
  */
 public class DBUtil {
     // Database connection from environment variables
     // This allows the same code to work locally and on Railway/Supabase
-    private static final String URL = System.getenv("DB_URL");
-    private static final String USER = System.getenv("DB_USER");
-    private static final String PASSWORD = System.getenv("DB_PASSWORD");
+    private static final String URL = Config.getString("DB_URL", null);
+    private static final String USER = System.getProperty("DB_USER", System.getenv("DB_USER"));
+    private static final String PASSWORD = System.getProperty("DB_PASSWORD", System.getenv("DB_PASSWORD"));
+    private static final boolean POOL_ENABLED = Config.getBoolean("DB_POOL_ENABLED", true);
+    private static final List<String> READ_URLS = parseUrls(Config.getString("DB_READ_URLS", ""));
+    private static final long READ_STICKY_MS = Config.getLong("DB_READ_STICKY_MS", 5000);
+
+    // Session of the command running on this thread, if the server bound one
+    private static final ThreadLocal<ReadSession> CURRENT_SESSION = new ThreadLocal<>();
+
+    // Created on first use so the server can start without a database
+    private static volatile ConnectionPool pool;
+    private static volatile ReplicaRouter replicas;
+    private static final AtomicLong replicaReads = new AtomicLong();
+    private static final AtomicLong primaryReads = new AtomicLong();
+    // Run at JVM exit while connections can still be borrowed
+    private static final List<Runnable> SHUTDOWN_TASKS = new CopyOnWriteArrayList<>();
 
     // Static block to load PostgreSQL JDBC driver
     static {
         try {
             // Load PostgreSQL JDBC Driver (works with Supabase)
             Class.forName("org.postgresql.Driver");
-            System.out.println("PostgreSQL JDBC Driver loaded successfully.");
+            Log.info("PostgreSQL JDBC Driver loaded successfully.");
         } catch (ClassNotFoundException e) {
-            System.err.println("PostgreSQL JDBC Driver not found. Make sure postgresql.jar is in classpath.");
+            Log.error("PostgreSQL JDBC Driver not found. Make sure postgresql.jar is in classpath.");
             throw new RuntimeException("PostgreSQL JDBC Driver not found", e);
         }
+
+        // One hook, so pending writes are flushed before the pool closes
+        // (separate hooks would run concurrently)
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Runnable task : SHUTDOWN_TASKS) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.error("Shutdown task failed: " + e.getMessage(), e);
+                    }
+                }
+                ReplicaRouter router = replicas;
+                if (router != null) {
+                    router.shutdown();
+                }
+                ConnectionPool created = pool;
+                if (created != null) {
+                    created.shutdown();
+                }
+            }
+        }, "db-shutdown"));
+    }
+
+    /**
+     * Register work (e.g. flushing queued writes) to run at JVM exit,
+     * before the connection pool is shut down
+     */
+    public static void addShutdownTask(Runnable task) {
+        SHUTDOWN_TASKS.add(task);
+    }
+
+    /**
+     * Per-client routing state: after a write, reads stay on the primary for a while
+     * The server keeps one per connection and binds it around each command. Any
+     * getConnection() counts as a write, which also covers reads that gate a write.
+     */
+    public static final class ReadSession {
+        private volatile long primaryUntil;
+
+        void wrote() {
+            primaryUntil = System.currentTimeMillis() + READ_STICKY_MS;
+        }
+
+        boolean readsFromPrimary() {
+            return System.currentTimeMillis() < primaryUntil;
+        }
     }
 
     /**
-     * Get a database connection
+     * Bind the session of the command about to run on this thread
+     * @param session session to bind, or null to unbind
+     * @return the previously bound session, to restore afterwards
+     */
+    public static ReadSession bindReadSession(ReadSession session) {
+        ReadSession previous = CURRENT_SESSION.get();
+        if (session == null) {
+            CURRENT_SESSION.remove();
+        } else {
+            CURRENT_SESSION.set(session);
+        }
+        return previous;
+    }
+
+    /**
+     * Get a connection for a query that only reads and may see slightly stale data
+     * Goes to a read replica if DB_READ_URLS is set, one is up and the current
+     * session has not written recently; otherwise to the primary as getConnection().
+     * @throws SQLException if connection fails
+     * @throws IllegalStateException if DB_URL environment variable is not set
+     */
+    public static Connection getReadConnection() throws SQLException {
+        ReplicaRouter router = getReplicaRouter();
+        if (router != null) {
+            ReadSession session = CURRENT_SESSION.get();
+            if (session == null || !session.readsFromPrimary()) {
+                Connection conn = router.getConnection();
+                if (conn != null) {
+                    replicaReads.incrementAndGet();
+                    return conn;
+                }
+            }
+            primaryReads.incrementAndGet();
+        }
+        return openPrimary();
+    }
+
+    /**
+     * Get a database connection to the primary, for writes and for reads that must be current
+     * With pooling enabled, closing the connection returns it to the pool
      * @return Connection object
      * @throws SQLException if connection fails
      * @throws IllegalStateException if DB_URL environment variable is not set
      */
     public static Connection getConnection() throws SQLException {
+        ReadSession session = CURRENT_SESSION.get();
+        if (session != null && !READ_URLS.isEmpty()) {
+            session.wrote();
+        }
+        return openPrimary();
+    }
+
+    private static Connection openPrimary() throws SQLException {
+        checkConfigured();
+        if (!POOL_ENABLED) {
+            return DriverManager.getConnection(URL, USER, PASSWORD);
+        }
+        return getPool().getConnection();
+    }
+
+    private static void checkConfigured() {
         if (URL == null || URL.isEmpty()) {
             throw new IllegalStateException(
                 "DB_URL environment variable is not set. " +
@@ -49,8 +180,129 @@ public class DBUtil {
                 "Please set all required environment variables: DB_URL, DB_USER, DB_PASSWORD"
             );
         }
+    }
+
+    /**
+     * Get the shared connection pool, creating it on first use
+     * @return pool, or null if pooling is disabled
+     */
+    public static ConnectionPool getPool() {
+        if (!POOL_ENABLED) {
+            return null;
+        }
+        ConnectionPool result = pool;
+        if (result == null) {
+            synchronized (DBUtil.class) {
+                result = pool;
+                if (result == null) {
+                    result = new ConnectionPool("primary", URL, USER, PASSWORD);
+                    pool = result;
+                    registerPoolGauges(result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the shared pool without creating it (e.g. to check its load)
+     * @return pool, or null if it was not created yet or pooling is disabled
+     */
+    public static ConnectionPool getPoolIfCreated() {
+        return pool;
+    }
+
+    /**
+     * Get the replica router, creating it (and the replica pools) on first use
+     * @return router, or null if DB_READ_URLS is not set
+     */
+    private static ReplicaRouter getReplicaRouter() {
+        if (READ_URLS.isEmpty()) {
+            return null;
+        }
+        ReplicaRouter result = replicas;
+        if (result == null) {
+            synchronized (DBUtil.class) {
+                result = replicas;
+                if (result == null) {
+                    checkConfigured();
+                    result = new ReplicaRouter(READ_URLS, USER, PASSWORD, POOL_ENABLED);
+                    replicas = result;
+                    registerReplicaGauges(result);
+                }
+            }
+        }
+        return result;
+    }
 
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+    private static List<String> parseUrls(String value) {
+        List<String> urls = new ArrayList<>();
+        for (String url : value.split(",")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+
+    private static void registerReplicaGauges(final ReplicaRouter router) {
+        Metrics.registerGauge("rental_db_replicas_healthy", "Read replicas currently serving reads", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return router.getHealthyCount();
+            }
+        });
+        Metrics.registerGauge("rental_db_reads_replica", "Read connections served by a replica", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return replicaReads.get();
+            }
+        });
+        Metrics.registerGauge("rental_db_reads_primary", "Read connections sent to the primary (recent write or no replica up)", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return primaryReads.get();
+            }
+        });
+    }
+
+    private static void registerPoolGauges(final ConnectionPool created) {
+        Metrics.registerGauge("rental_db_pool_active", "Connections currently borrowed", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getActiveCount();
+            }
+        });
+        Metrics.registerGauge("rental_db_pool_idle", "Open connections waiting in the pool", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getIdleCount();
+            }
+        });
+        Metrics.registerGauge("rental_db_pool_waiting", "Threads waiting for a connection", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getWaitingCount();
+            }
+        });
+        Metrics.registerGauge("rental_db_pool_max", "Maximum pool size", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getMaxSize();
+            }
+        });
+        Metrics.registerGauge("rental_db_statement_cache_hits", "Prepared statements reused from the cache", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getStatementCacheHits();
+            }
+        });
+        Metrics.registerGauge("rental_db_statement_cache_misses", "Prepared statements created", new Metrics.Gauge() {
+            @Override
+            public double value() {
+                return created.getStatementCacheMisses();
+            }
+        });
     }
 
     /**
@@ -60,15 +312,14 @@ public class DBUtil {
     public static boolean testConnection() {
         try (Connection conn = getConnection()) {
             if (conn != null && !conn.isClosed()) {
-                System.out.println("Database connection successful!");
-                System.out.println("Connected to: " + conn.getMetaData().getURL());
+                Log.info("Database connection successful!");
+                Log.info("Connected to: " + conn.getMetaData().getURL());
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("Database connection failed: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Database connection failed: " + e.getMessage(), e);
         } catch (IllegalStateException e) {
-            System.err.println("Configuration error: " + e.getMessage());
+            Log.error("Configuration error: " + e.getMessage());
         }
         return false;
     }
@@ -0,0 +1,213 @@
+// com/rental/util/IntervalTree.java
+package com.rental.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Interval tree over half-open ranges [start, end) of long values
+ *
+ * Implemented as a treap (randomised balanced BST) ordered by (start, key) where
+ * every node also stores the largest end in its subtree. That lets an overlap
+ * query skip whole subtrees, so insert, remove and "does anything overlap"
+ * are all O(log n) expected.
+ *
+ * Not thread-safe; callers synchronise externally.
+ *
+ * @param <T> value stored with each interval
+ */
+public class IntervalTree<T> {
+    private Node<T> root;
+    private int size;
+
+    /**
+     * Add an interval
+     * @param start inclusive start
+     * @param end exclusive end (must be greater than start)
+     * @param key unique id used to tell intervals with the same start apart
+     * @param value payload returned by queries
+     */
+    public void insert(long start, long end, long key, T value) {
+        if (end <= start) {
+            throw new IllegalArgumentException("Interval end must be after start");
+        }
+        root = insert(root, new Node<>(start, end, key, value));
+        size++;
+    }
+
+    /**
+     * Remove the interval with the given start and key
+     * @return true if it was present
+     */
+    public boolean remove(long start, long key) {
+        int before = size;
+        root = remove(root, start, key);
+        return size < before;
+    }
+
+    /**
+     * Find any interval overlapping [start, end)
+     * @return value of an overlapping interval, or null if the range is free
+     */
+    public T findOverlap(long start, long end) {
+        Node<T> node = root;
+        while (node != null) {
+            if (node.start < end && start < node.end) {
+                return node.value;
+            }
+            // If the left subtree reaches past our start, an overlap exists there or not at all
+            // (anything on the right starts even later); otherwise only the right side can match
+            if (node.left != null && node.left.maxEnd > start) {
+                node = node.left;
+            } else {
+                if (node.start >= end) {
+                    return null;
+                }
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collect every interval overlapping [start, end), ordered by start
+     */
+    public List<T> findAllOverlapping(long start, long end) {
+        List<T> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void collect(Node<T> node, long start, long end, List<T> out) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        collect(node.left, start, end, out);
+        if (node.start < end && start < node.end) {
+            out.add(node.value);
+        }
+        if (node.start < end) {
+            collect(node.right, start, end, out);
+        }
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.key, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node<T> remove(Node<T> node, long start, long key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, key, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, start, key);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, start, key);
+        } else {
+            size--;
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Join two treaps where every key in left is smaller than every key in right
+     */
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static int compare(long start, long key, Node<?> node) {
+        if (start != node.start) {
+            return start < node.start ? -1 : 1;
+        }
+        return Long.compare(key, node.key);
+    }
+
+    private static final class Node<T> {
+        final long start;
+        final long end;
+        final long key;
+        final T value;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        long maxEnd;
+        Node<T> left;
+        Node<T> right;
+
+        Node(long start, long end, long key, T value) {
+            this.start = start;
+            this.end = end;
+            this.key = key;
+            this.value = value;
+            this.maxEnd = end;
+        }
+
+        void update() {
+            long max = end;
+            if (left != null && left.maxEnd > max) {
+                max = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > max) {
+                max = right.maxEnd;
+            }
+            maxEnd = max;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// com/rental/util/LatencyHistogram.java
+package com.rental.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histogram in the style of HdrHistogram
+ *
+ * Values (microseconds) are counted in log-linear buckets: exact below 128,
+ * then 64 sub-buckets per power of two, so any reported percentile is within
+ * about 1.6% of the real value. Recording is lock-free and safe from many threads.
+ * Used by the server metrics (Metrics) and the load generator.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;  // exact range 0..127
+    private static final int HALF = SUB_BUCKETS / 2;               // sub-buckets per power of two above that
+    /** Larger values are clamped; one hour is far beyond any useful request latency */
+    private static final long MAX_VALUE = 3600L * 1000 * 1000;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one latency
+     * @param micros latency in microseconds (negative values count as 0)
+     */
+    public void record(long micros) {
+        long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until max is at least value
+        }
+    }
+
+    /**
+     * Add all values from another histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        total.addAndGet(other.total.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // Retry until max is at least otherMax
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Sum of all recorded values in microseconds */
+    public long getSum() {
+        return sum.get();
+    }
+
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Value at the given percentile
+     * @param percentile 0-100, e.g. 99.9
+     * @return upper bound of the bucket holding that percentile, in microseconds
+     */
+    public long getPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (64 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >> shift) - HALF);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,274 @@
+// com/rental/util/Log.java
+package com.rental.util;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger for the server
+ *
+ * Callers only drop an entry into a lock-free ring buffer; a background thread
+ * formats and writes it to stdout (DEBUG/INFO) or stderr (WARN/ERROR). When the
+ * buffer is full, entries are dropped and counted instead of blocking the caller.
+ *
+ * Settings:
+ * - LOG_LEVEL            DEBUG, INFO, WARN or ERROR (default INFO)
+ * - LOG_ASYNC            false writes synchronously, useful when debugging (default true)
+ * - LOG_BUFFER_SIZE      ring buffer entries, rounded up to a power of two (default 8192)
+ * - LOG_MAX_PAYLOAD      longer messages are truncated to this many chars (default 300)
+ * - LOG_SAMPLE_RATE      log 1 in N commands in ClientHandler (default 1 = every command)
+ * - LOG_SAMPLE_<COMMAND> per-command override, e.g. LOG_SAMPLE_LIST_VEHICLES=100
+ */
+public class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final Level LEVEL = parseLevel(Config.getString("LOG_LEVEL", "INFO"));
+    private static final boolean ASYNC = Config.getBoolean("LOG_ASYNC", true);
+    private static final int MAX_PAYLOAD = Config.getInt("LOG_MAX_PAYLOAD", 300);
+    private static final int DEFAULT_SAMPLE_RATE = Math.max(1, Config.getInt("LOG_SAMPLE_RATE", 1));
+    private static final int MAX_SAMPLERS = 64;
+
+    private static final int CAPACITY = roundUpToPowerOfTwo(Math.max(64, Config.getInt("LOG_BUFFER_SIZE", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    private static final AtomicReferenceArray<Entry> RING = new AtomicReferenceArray<>(CAPACITY);
+    // Next slot to claim (producers) and next slot to read (flusher only)
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static final AtomicLong HEAD = new AtomicLong();
+    // Dropped since the last warning / since startup
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final AtomicLong DROPPED_TOTAL = new AtomicLong();
+
+    private static final ConcurrentHashMap<String, Sampler> SAMPLERS = new ConcurrentHashMap<>();
+    private static final Sampler DEFAULT_SAMPLER = new Sampler(DEFAULT_SAMPLE_RATE);
+
+    private static final ThreadLocal<SimpleDateFormat> FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm:ss.SSS");
+        }
+    };
+
+    private static final Thread FLUSHER;
+
+    static {
+        if (ASYNC) {
+            FLUSHER = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flushLoop();
+                }
+            }, "log-flusher");
+            FLUSHER.setDaemon(true);
+            FLUSHER.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "log-shutdown"));
+        } else {
+            FLUSHER = null;
+        }
+    }
+
+    private Log() {}
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message, null);
+    }
+
+    /**
+     * Log an error with its stack trace (formatted on the flusher thread)
+     */
+    public static void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    /**
+     * Check a level before building an expensive message
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= LEVEL.ordinal();
+    }
+
+    /**
+     * Per-command sampling: true for 1 in N calls with the same command name
+     * @param command command name such as "LIST_VEHICLES"
+     */
+    public static boolean sample(String command) {
+        Sampler sampler = SAMPLERS.get(command);
+        if (sampler == null) {
+            // Command names come from clients; don't let junk names grow the map
+            if (SAMPLERS.size() >= MAX_SAMPLERS) {
+                return DEFAULT_SAMPLER.next();
+            }
+            int rate = Math.max(1, Config.getInt("LOG_SAMPLE_" + command, DEFAULT_SAMPLE_RATE));
+            Sampler created = new Sampler(rate);
+            sampler = SAMPLERS.putIfAbsent(command, created);
+            if (sampler == null) {
+                sampler = created;
+            }
+        }
+        return sampler.next();
+    }
+
+    /**
+     * Number of entries dropped because the buffer was full
+     */
+    public static long getDroppedCount() {
+        return DROPPED_TOTAL.get();
+    }
+
+    private static void log(Level level, String message, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), level, message, error);
+        if (!ASYNC) {
+            write(entry, FORMAT.get());
+            return;
+        }
+
+        while (true) {
+            long tail = TAIL.get();
+            if (tail - HEAD.get() >= CAPACITY) {
+                DROPPED.incrementAndGet();
+                DROPPED_TOTAL.incrementAndGet();
+                return;
+            }
+            if (TAIL.compareAndSet(tail, tail + 1)) {
+                RING.set((int) (tail & MASK), entry);
+                return;
+            }
+        }
+    }
+
+    private static void flushLoop() {
+        while (true) {
+            if (!drain()) {
+                LockSupport.parkNanos(2000000L); // 2 ms; nothing to do
+            }
+        }
+    }
+
+    /**
+     * Write everything currently in the buffer
+     * @return true if at least one entry was written
+     */
+    private static synchronized boolean drain() {
+        SimpleDateFormat timeFormat = FORMAT.get();
+        boolean wrote = false;
+        long head = HEAD.get();
+        while (head < TAIL.get()) {
+            int index = (int) (head & MASK);
+            Entry entry = RING.get(index);
+            if (entry == null) {
+                // Slot claimed but not yet filled in by its producer
+                break;
+            }
+            RING.set(index, null);
+            head++;
+            HEAD.lazySet(head);
+            write(entry, timeFormat);
+            wrote = true;
+        }
+
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            System.err.println(timeFormat.format(new Date()) + " WARN  [log] Dropped " + dropped + " log entries (buffer full)");
+        }
+        if (wrote) {
+            System.out.flush();
+            System.err.flush();
+        }
+        return wrote;
+    }
+
+    private static void write(Entry entry, SimpleDateFormat timeFormat) {
+        PrintStream stream = entry.level.ordinal() >= Level.WARN.ordinal() ? System.err : System.out;
+        StringBuilder line = new StringBuilder(64 + Math.min(entry.message.length(), MAX_PAYLOAD));
+        line.append(timeFormat.format(new Date(entry.time))).append(' ');
+        line.append(entry.level.name());
+        for (int i = entry.level.name().length(); i < 6; i++) {
+            line.append(' ');
+        }
+        line.append(truncate(entry.message, MAX_PAYLOAD));
+        stream.println(line);
+
+        if (entry.error != null) {
+            StringWriter trace = new StringWriter();
+            entry.error.printStackTrace(new PrintWriter(trace));
+            stream.print(trace);
+        }
+    }
+
+    /**
+     * Shorten long payloads such as a full LIST_VEHICLES response
+     */
+    public static String truncate(String message, int maxLength) {
+        if (message == null || message.length() <= maxLength) {
+            return message;
+        }
+        return message.substring(0, maxLength) + "... (" + message.length() + " chars)";
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int result = Integer.highestOneBit(value);
+        return result == value ? value : result << 1;
+    }
+
+    private static final class Entry {
+        final long time;
+        final Level level;
+        final String message;
+        final Throwable error;
+
+        Entry(long time, Level level, String message, Throwable error) {
+            this.time = time;
+            this.level = level;
+            this.message = message == null ? "null" : message;
+            this.error = error;
+        }
+    }
+
+    private static final class Sampler {
+        final int rate;
+        final AtomicLong counter = new AtomicLong();
+
+        Sampler(int rate) {
+            this.rate = rate;
+        }
+
+        boolean next() {
+            return rate == 1 || counter.getAndIncrement() % rate == 0;
+        }
+    }
+}
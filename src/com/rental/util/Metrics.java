@@ -0,0 +1,253 @@
+// com/rental/util/Metrics.java
+package com.rental.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process metrics registry for the server
+ *
+ * Records latency histograms and error counts per command and per DAO method,
+ * connection counts, and gauges registered by other components (pool, cache).
+ * Everything is cumulative since startup and cheap to record from any thread.
+ *
+ * Read it with the admin STATS command or, if METRICS_HTTP_PORT is set,
+ * from the Prometheus-style endpoint (see MetricsHttpServer).
+ */
+public class Metrics {
+
+    /**
+     * A value read when metrics are collected, e.g. pool size
+     */
+    public interface Gauge {
+        double value();
+    }
+
+    // Sorted so output order is stable
+    private static final ConcurrentSkipListMap<String, Timer> COMMANDS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, Timer> QUERIES = new ConcurrentSkipListMap<>();
+    private static final Map<String, GaugeEntry> GAUGES = new ConcurrentSkipListMap<>();
+    private static final AtomicLong ACTIVE_CONNECTIONS = new AtomicLong();
+    private static final AtomicLong TOTAL_CONNECTIONS = new AtomicLong();
+    private static final long STARTED = System.currentTimeMillis();
+
+    private Metrics() {}
+
+    /**
+     * Record one handled command
+     * @param command command name; callers map unknown names to a fixed label so clients can't add series
+     * @param startNanos System.nanoTime() when handling started
+     * @param ok false if the command answered with an error
+     */
+    public static void recordCommand(String command, long startNanos, boolean ok) {
+        timer(COMMANDS, command).record(startNanos, ok);
+    }
+
+    /**
+     * Record one DAO call
+     * @param query label such as "VehicleDAO.getVehicleById"
+     */
+    public static void recordQuery(String query, long startNanos, boolean ok) {
+        timer(QUERIES, query).record(startNanos, ok);
+    }
+
+    public static void connectionOpened() {
+        ACTIVE_CONNECTIONS.incrementAndGet();
+        TOTAL_CONNECTIONS.incrementAndGet();
+    }
+
+    public static void connectionClosed() {
+        ACTIVE_CONNECTIONS.decrementAndGet();
+    }
+
+    /**
+     * Register (or replace) a gauge
+     * @param name Prometheus-style name, e.g. "rental_db_pool_active"
+     * @param help one-line description
+     */
+    public static void registerGauge(String name, String help, Gauge gauge) {
+        GAUGES.put(name, new GaugeEntry(help, gauge));
+    }
+
+    /**
+     * Wrap an interface implementation so every call is recorded with recordQuery
+     * Used for the DAOs: calls are labelled "Interface.method". Calls that throw
+     * count as errors; DAO methods that swallow SQLException are not visible here.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T timed(Class<T> type, final T target) {
+        final String prefix = type.getSimpleName() + ".";
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(target, args);
+                }
+                long start = System.nanoTime();
+                boolean ok = false;
+                try {
+                    Object result = method.invoke(target, args);
+                    ok = true;
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    recordQuery(prefix + method.getName(), start, ok);
+                }
+            }
+        });
+    }
+
+    /**
+     * Snapshot for the STATS command, one record per line:
+     * - uptime,seconds
+     * - connections,active,total
+     * - command,NAME,count,errors,p50_us,p99_us,p999_us,max_us
+     * - query,NAME,count,errors,p50_us,p99_us,p999_us,max_us
+     * - gauge,NAME,value
+     */
+    public static List<String[]> snapshot() {
+        List<String[]> records = new ArrayList<>();
+        records.add(new String[] { "uptime", String.valueOf((System.currentTimeMillis() - STARTED) / 1000) });
+        records.add(new String[] { "connections",
+                String.valueOf(ACTIVE_CONNECTIONS.get()), String.valueOf(TOTAL_CONNECTIONS.get()) });
+        addTimers(records, "command", COMMANDS);
+        addTimers(records, "query", QUERIES);
+        for (Map.Entry<String, GaugeEntry> entry : GAUGES.entrySet()) {
+            records.add(new String[] { "gauge", entry.getKey(), formatNumber(entry.getValue().read()) });
+        }
+        return records;
+    }
+
+    /**
+     * Render everything in the Prometheus text exposition format
+     * Latencies are summaries (quantiles since startup) in seconds.
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP rental_uptime_seconds Seconds since the server started\n");
+        out.append("# TYPE rental_uptime_seconds gauge\n");
+        out.append("rental_uptime_seconds ").append((System.currentTimeMillis() - STARTED) / 1000).append('\n');
+        out.append("# HELP rental_connections_active Open client connections\n");
+        out.append("# TYPE rental_connections_active gauge\n");
+        out.append("rental_connections_active ").append(ACTIVE_CONNECTIONS.get()).append('\n');
+        out.append("# HELP rental_connections_total Client connections accepted since startup\n");
+        out.append("# TYPE rental_connections_total counter\n");
+        out.append("rental_connections_total ").append(TOTAL_CONNECTIONS.get()).append('\n');
+
+        appendTimers(out, "rental_command", "command", "Command handling", COMMANDS);
+        appendTimers(out, "rental_db_query", "query", "DAO call", QUERIES);
+
+        for (Map.Entry<String, GaugeEntry> entry : GAUGES.entrySet()) {
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(entry.getValue().help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(" gauge\n");
+            out.append(entry.getKey()).append(' ').append(formatNumber(entry.getValue().read())).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static Timer timer(ConcurrentSkipListMap<String, Timer> timers, String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    private static void addTimers(List<String[]> records, String kind, Map<String, Timer> timers) {
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            LatencyHistogram histogram = entry.getValue().histogram;
+            records.add(new String[] {
+                    kind,
+                    entry.getKey(),
+                    String.valueOf(histogram.getCount()),
+                    String.valueOf(entry.getValue().errors.get()),
+                    String.valueOf(histogram.getPercentile(50)),
+                    String.valueOf(histogram.getPercentile(99)),
+                    String.valueOf(histogram.getPercentile(99.9)),
+                    String.valueOf(histogram.getMax()) });
+        }
+    }
+
+    private static void appendTimers(StringBuilder out, String metric, String label, String what,
+                                     Map<String, Timer> timers) {
+        if (timers.isEmpty()) {
+            return;
+        }
+        out.append("# HELP ").append(metric).append("_latency_seconds ").append(what).append(" latency\n");
+        out.append("# TYPE ").append(metric).append("_latency_seconds summary\n");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            LatencyHistogram histogram = entry.getValue().histogram;
+            String labels = label + "=\"" + entry.getKey() + "\"";
+            for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                out.append(metric).append("_latency_seconds{").append(labels)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(microsToSeconds(histogram.getPercentile(quantile * 100))).append('\n');
+            }
+            out.append(metric).append("_latency_seconds_sum{").append(labels).append("} ")
+                    .append(microsToSeconds(histogram.getSum())).append('\n');
+            out.append(metric).append("_latency_seconds_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        out.append("# HELP ").append(metric).append("_errors_total ").append(what).append(" errors\n");
+        out.append("# TYPE ").append(metric).append("_errors_total counter\n");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            out.append(metric).append("_errors_total{").append(label).append("=\"").append(entry.getKey())
+                    .append("\"} ").append(entry.getValue().errors.get()).append('\n');
+        }
+    }
+
+    private static String microsToSeconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+    }
+
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return String.valueOf((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static final class Timer {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+
+        void record(long startNanos, boolean ok) {
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class GaugeEntry {
+        final String help;
+        final Gauge gauge;
+
+        GaugeEntry(String help, Gauge gauge) {
+            this.help = help;
+            this.gauge = gauge;
+        }
+
+        double read() {
+            try {
+                return gauge.value();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        }
+    }
+}
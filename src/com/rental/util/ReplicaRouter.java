@@ -0,0 +1,234 @@
+// com/rental/util/ReplicaRouter.java
+package com.rental.util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks a read replica for DBUtil.getReadConnection()
+ *
+ * Each replica gets its own ConnectionPool (or plain DriverManager connections
+ * when pooling is disabled). A read goes to the healthy replica with the fewest
+ * borrowed and waiting connections; ties rotate round-robin so an idle cluster
+ * still spreads the load. A background check marks replicas up or down, and a
+ * replica that fails to hand out a connection is marked down at once, so reads
+ * move on to the next replica or, with none left, to the primary. A replica whose
+ * pool is merely exhausted (SQLTimeoutException) is busy, not down: the read
+ * tries the other replicas and it stays in rotation.
+ *
+ * The check opens its own DriverManager connection rather than borrowing from
+ * the replica's pool, so a saturated pool cannot fail it.
+ *
+ * Settings:
+ * - DB_READ_HEALTH_CHECK_MS  how often replicas are checked (default 5000)
+ * - DB_READ_MAX_LAG_MS       PostgreSQL only: treat a replica whose last replayed
+ *                            transaction is older than this as down (default 0 = off)
+ */
+public class ReplicaRouter {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Replay lag of a PostgreSQL standby; NULL on a primary
+    private static final String LAG_SQL =
+            "SELECT EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000";
+
+    private final List<Replica> replicas;
+    private final String user;
+    private final String password;
+    private final long maxLagMs;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param urls JDBC URLs of the replicas (at least one)
+     * @param pooled give each replica a ConnectionPool
+     */
+    public ReplicaRouter(List<String> urls, String user, String password, boolean pooled) {
+        this.user = user;
+        this.password = password;
+        this.maxLagMs = Config.getLong("DB_READ_MAX_LAG_MS", 0);
+
+        List<Replica> created = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            created.add(new Replica(name, urls.get(i),
+                    pooled ? new ConnectionPool(name, urls.get(i), user, password) : null));
+        }
+        this.replicas = Collections.unmodifiableList(created);
+
+        long intervalMs = Math.max(100, Config.getLong("DB_READ_HEALTH_CHECK_MS", 5000));
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "db-replica-health");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkAll();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+
+        Log.info("[DB READ] Routing reads to " + replicas.size() + " replica(s), health check every " + intervalMs + "ms");
+    }
+
+    /**
+     * Borrow a connection from the least loaded healthy replica
+     * @return connection, or null if no replica is up (the caller uses the primary)
+     */
+    public Connection getConnection() {
+        int start = Math.abs(nextReplica.getAndIncrement() % replicas.size());
+        // Replicas whose pool timed out on this read; busy, so not marked down
+        boolean[] busy = new boolean[replicas.size()];
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            Replica chosen = null;
+            int chosenIndex = -1;
+            int chosenLoad = Integer.MAX_VALUE;
+            for (int i = 0; i < replicas.size(); i++) {
+                int index = (start + i) % replicas.size();
+                Replica replica = replicas.get(index);
+                if (replica.healthy && !busy[index]) {
+                    int load = replica.getLoad();
+                    if (load < chosenLoad) {
+                        chosen = replica;
+                        chosenIndex = index;
+                        chosenLoad = load;
+                    }
+                }
+            }
+            if (chosen == null) {
+                return null;
+            }
+            try {
+                return chosen.open();
+            } catch (SQLTimeoutException e) {
+                busy[chosenIndex] = true;
+            } catch (SQLException e) {
+                chosen.markDown(e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /** Replicas currently considered up */
+    public int getHealthyCount() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Stop health checks and close the replica pools
+     */
+    public void shutdown() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.pool != null) {
+                replica.pool.shutdown();
+            }
+        }
+    }
+
+    private void checkAll() {
+        for (Replica replica : replicas) {
+            String problem;
+            try (Connection conn = DriverManager.getConnection(replica.url, user, password)) {
+                problem = check(conn);
+            } catch (SQLException e) {
+                problem = e.getMessage();
+            } catch (RuntimeException e) {
+                problem = e.toString();
+            }
+            if (problem == null) {
+                replica.markUp();
+            } else {
+                replica.markDown(problem);
+            }
+        }
+    }
+
+    /**
+     * @return why the replica must not serve reads, or null if it may
+     */
+    private String check(Connection conn) throws SQLException {
+        if (!conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+            return "connection is not valid";
+        }
+        if (maxLagMs <= 0) {
+            return null;
+        }
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(LAG_SQL)) {
+            if (rs.next()) {
+                double lagMs = rs.getDouble(1);
+                if (!rs.wasNull() && lagMs > maxLagMs) {
+                    return "replication lag " + (long) lagMs + "ms exceeds " + maxLagMs + "ms";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One replica and its health
+     */
+    private class Replica {
+        final String name;
+        final String url;
+        final ConnectionPool pool;
+        volatile boolean healthy = true;
+
+        Replica(String name, String url, ConnectionPool pool) {
+            this.name = name;
+            this.url = url;
+            this.pool = pool;
+        }
+
+        Connection open() throws SQLException {
+            if (pool != null) {
+                return pool.getConnection();
+            }
+            return DriverManager.getConnection(url, user, password);
+        }
+
+        /** Borrowed plus waiting; unpooled replicas all count as idle and just rotate */
+        int getLoad() {
+            return pool != null ? pool.getActiveCount() + pool.getWaitingCount() : 0;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                healthy = true;
+                Log.info("[DB READ] " + name + " is back, serving reads again");
+            }
+        }
+
+        void markDown(String reason) {
+            if (healthy) {
+                healthy = false;
+                Log.warn("[DB READ] " + name + " is down (" + reason + "), reads fall back to other replicas or the primary");
+            }
+        }
+    }
+}
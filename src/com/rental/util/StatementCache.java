@@ -0,0 +1,215 @@
+// com/rental/util/StatementCache.java
+package com.rental.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements for one pooled connection
+ *
+ * DAOs keep calling conn.prepareStatement(sql) in try-with-resources; the pool's
+ * connection proxy routes that here. The first call prepares the statement, later
+ * calls with the same SQL get the same statement back, and close() only resets it
+ * (clears parameters, closes its result sets) instead of closing it. Reusing the
+ * statement object is what lets the PostgreSQL driver switch to a server-side
+ * prepared statement after a few executions (prepareThreshold), so the query is
+ * no longer parsed and planned every time.
+ *
+ * Evicted statements are closed; everything is closed with the connection.
+ */
+class StatementCache {
+    private final Connection raw;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, CachedStatement> entries;
+    private volatile boolean connectionBroken;
+
+    /**
+     * @param raw physical connection the statements belong to
+     * @param maxSize statements kept per connection
+     * @param hits pool-wide hit counter
+     * @param misses pool-wide miss counter
+     */
+    StatementCache(Connection raw, final int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.raw = raw;
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get a statement for sql, reusing a cached one when it is not already in use
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS / NO_GENERATED_KEYS, or -1 if not given
+     */
+    synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys < 0 ? sql : autoGeneratedKeys + ":" + sql;
+        CachedStatement entry = entries.get(key);
+        if (entry != null && !entry.inUse) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            PreparedStatement statement = autoGeneratedKeys < 0
+                    ? raw.prepareStatement(sql)
+                    : raw.prepareStatement(sql, autoGeneratedKeys);
+            if (entry != null) {
+                // Same SQL open twice at once on this connection: the second one is not cached
+                return statement;
+            }
+            entry = new CachedStatement(statement);
+            entries.put(key, entry);
+        }
+        entry.inUse = true;
+        return entry.newProxy();
+    }
+
+    /**
+     * True if a statement failed with a connection error (SQLState class 08)
+     */
+    boolean isConnectionBroken() {
+        return connectionBroken;
+    }
+
+    /**
+     * Close every cached statement; called before the connection itself is closed
+     */
+    synchronized void closeAll() {
+        for (CachedStatement entry : entries.values()) {
+            entry.evict();
+        }
+        entries.clear();
+    }
+
+    private synchronized void release(CachedStatement entry, boolean failed) {
+        entry.inUse = false;
+        entry.closeResultSets();
+        boolean reusable = !failed && !entry.evicted;
+        if (reusable) {
+            try {
+                entry.statement.clearParameters();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        if (!reusable) {
+            entries.values().remove(entry);
+            entry.evict();
+        }
+    }
+
+    /**
+     * One cached statement; only one borrower at a time may use it
+     */
+    private class CachedStatement {
+        final PreparedStatement statement;
+        final List<ResultSet> openResults = new ArrayList<>(1);
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement newProxy() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new StatementHandler(this));
+        }
+
+        /** Close the statement now, or when its current borrower releases it */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // Statement is being thrown away anyway
+                }
+            }
+        }
+
+        void closeResultSets() {
+            for (ResultSet rs : openResults) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    // Ignore; the next execute replaces it anyway
+                }
+            }
+            openResults.clear();
+        }
+    }
+
+    /**
+     * Forwards to the cached statement; close() hands it back to the cache
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final CachedStatement entry;
+        private boolean closed;
+        private boolean failed;
+
+        StatementHandler(CachedStatement entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    release(entry, failed);
+                }
+                return null;
+            }
+            if (methodName.equals("isClosed")) {
+                return closed;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+
+            try {
+                Object result = method.invoke(entry.statement, args);
+                if (result instanceof ResultSet) {
+                    entry.openResults.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // Don't keep a statement that just failed (e.g. schema changed under it);
+                    // constraint violations (class 23) are data errors and leave it usable
+                    if (state == null || !state.startsWith("23")) {
+                        failed = true;
+                    }
+                    if (state != null && state.startsWith("08")) {
+                        connectionBroken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
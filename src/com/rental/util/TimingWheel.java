@@ -0,0 +1,211 @@
+// com/rental/util/TimingWheel.java
+package com.rental.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel: many coarse timers served by one thread
+ *
+ * The wheel is a ring of slots, each a linked list of timers. A background thread
+ * moves one slot per tick and runs the timers in that slot whose round count has
+ * reached zero; a timer further away than one turn of the wheel waits for the
+ * right number of rounds. Scheduling and cancelling are O(1) and need no lock
+ * on the caller's side (new timers are handed over through a queue, cancelled
+ * ones are dropped when their slot comes up), so tens of thousands of
+ * connections can each keep a timer without a thread or a heap operation each.
+ *
+ * Precision is one tick. Tasks run on the wheel thread and must be short;
+ * anything slow should be handed off to another thread.
+ */
+public class TimingWheel {
+    private final long tickNanos;
+    private final Slot[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean stopped;
+    // Ticks processed so far; only touched by the worker thread
+    private long tick;
+
+    /**
+     * @param name thread name
+     * @param tickMillis precision of the timers
+     * @param wheelSize number of slots (rounded up to a power of two); one turn is tickMillis * wheelSize
+     */
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWheel();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Run task once, about delayMillis from now (never earlier)
+     * @return handle to cancel the timer
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(task, deadline);
+        pendingCount.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Timers scheduled and neither run nor cancelled yet
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stop the wheel thread; timers that have not run yet never will
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void runWheel() {
+        while (!stopped) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferAdded();
+            slots[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Put newly scheduled timers into their slot
+     */
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // Ticks from the start at which the timer is due; never a tick already processed
+            long dueTick = Math.max(tick, (timeout.deadline + tickNanos - 1) / tickNanos - 1);
+            timeout.remainingRounds = (dueTick - tick) / slots.length;
+            slots[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    private void runTask(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            Log.error("[TIMER] Timer task failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Handle of one scheduled task
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        // Set once, by whichever comes first: cancel() or the wheel running the task
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevent the task from running; harmless if it already ran
+         */
+        public void cancel() {
+            if (finished.compareAndSet(false, true)) {
+                cancelled = true;
+                // The wheel thread unlinks it when the slot comes up
+                pendingCount.decrementAndGet();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Doubly linked list of timers; only touched by the wheel thread
+     */
+    private final class Slot {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            timeout.prev = null;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void expire(long tickDeadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.cancelled) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= tickDeadline) {
+                    remove(timeout);
+                    if (timeout.finished.compareAndSet(false, true)) {
+                        pendingCount.decrementAndGet();
+                        runTask(timeout);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+        }
+    }
+}
@@ -30,6 +30,11 @@ CREATE TABLE public.vehicles (
 
 -- Table: bookings
 -- Stores rental reservations
+-- Dates are half-open: the vehicle is free again on end_date
+-- The exclusion constraint is a last line of defence; the server checks
+-- overlaps in memory before inserting
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
 CREATE TABLE public.bookings (
   id SERIAL PRIMARY KEY,
   user_id INT NOT NULL REFERENCES public.users(id),
@@ -37,15 +42,22 @@ CREATE TABLE public.bookings (
   start_date DATE NOT NULL,
   end_date DATE NOT NULL,
   total_price NUMERIC(10,2) NOT NULL,
-  status VARCHAR(20) NOT NULL  -- 'BOOKED', 'CANCELLED', 'COMPLETED'
+  status VARCHAR(20) NOT NULL,  -- 'BOOKED', 'CANCELLED', 'COMPLETED'
+  CHECK (end_date > start_date),
+  EXCLUDE USING gist (
+    vehicle_id WITH =,
+    daterange(start_date, end_date, '[)') WITH &&
+  ) WHERE (status = 'BOOKED')
 );
 
 -- Create indexes for better performance
 CREATE INDEX idx_users_email ON public.users(email);
 CREATE INDEX idx_vehicles_type ON public.vehicles(type);
 CREATE INDEX idx_vehicles_available ON public.vehicles(available);
+-- Paged / streamed LIST_VEHICLES: seek by id within one type
+CREATE INDEX idx_vehicles_type_available_id ON public.vehicles(type, available, id);
 CREATE INDEX idx_bookings_user ON public.bookings(user_id);
-CREATE INDEX idx_bookings_vehicle ON public.bookings(vehicle_id);
+CREATE INDEX idx_bookings_vehicle ON public.bookings(vehicle_id, status);
 
 -- Insert demo users
 INSERT INTO public.users (name, email, password, role) VALUES